@@ -19,11 +19,15 @@ import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
 import de.schliweb.sambalite.cache.IntelligentCacheManager;
+import de.schliweb.sambalite.data.smb.BandwidthGovernor;
+import de.schliweb.sambalite.data.smb.BufferPool;
+import de.schliweb.sambalite.data.smb.TransferTuner;
 import de.schliweb.sambalite.di.AppComponent;
 import de.schliweb.sambalite.di.DaggerAppComponent;
 import de.schliweb.sambalite.transfer.TransferWorker;
 import de.schliweb.sambalite.transfer.db.PendingTransferDao;
 import de.schliweb.sambalite.transfer.db.TransferDatabase;
+import de.schliweb.sambalite.ui.utils.PreferenceUtils;
 import de.schliweb.sambalite.util.LogUtils;
 import de.schliweb.sambalite.util.SambaLiteLifecycleTracker;
 import de.schliweb.sambalite.util.SimplePerformanceMonitor;
@@ -195,6 +199,27 @@ public class SambaLiteApp extends Application implements Configuration.Provider
       cleanupStaleTempFiles();
       LogUtils.i("SambaLiteApp", "Stale temp file cleanup completed");
 
+      // Bandwidth caps per server and network type for the SMB I/O layer
+      BandwidthGovernor.getInstance()
+          .setCapSource(serverId -> PreferenceUtils.getEffectiveBandwidthCap(this, serverId));
+
+      // Transfer windows learned per server survive process restarts
+      TransferTuner.getInstance()
+          .setStore(
+              new TransferTuner.Store() {
+                @Override
+                public int load(@NonNull String key, int chunkSize) {
+                  return PreferenceUtils.getLearnedTransferWindow(
+                      SambaLiteApp.this, key, chunkSize);
+                }
+
+                @Override
+                public void save(@NonNull String key, int chunkSize, int window) {
+                  PreferenceUtils.setLearnedTransferWindow(
+                      SambaLiteApp.this, key, chunkSize, window);
+                }
+              });
+
       // Initialize WorkManager with custom configuration (default initializer is disabled)
       try {
         WorkManager.initialize(this, getWorkManagerConfiguration());
@@ -253,6 +278,9 @@ public class SambaLiteApp extends Application implements Configuration.Provider
       LogUtils.i("SambaLiteApp", "Cache cleared due to low memory");
     }
 
+    // Drop idle transfer buffers
+    BufferPool.getInstance().trim();
+
     // Force garbage collection
     System.gc();
   }
@@ -264,6 +292,7 @@ public class SambaLiteApp extends Application implements Configuration.Provider
 
     // Perform cleanup for significant memory pressure using non-deprecated levels
     if (level == TRIM_MEMORY_UI_HIDDEN || level >= TRIM_MEMORY_BACKGROUND) {
+      BufferPool.getInstance().trim();
       System.gc();
       LogUtils.w("SambaLiteApp", "Performed memory cleanup");
     }
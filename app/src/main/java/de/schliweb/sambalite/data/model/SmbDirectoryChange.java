@@ -0,0 +1,57 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import lombok.Getter;
+
+/** Model class representing one change reported by the server for a watched directory. */
+@Getter
+public class SmbDirectoryChange {
+
+  /** Kind of change, mirroring the SMB2 FILE_NOTIFY_INFORMATION actions. */
+  public enum Action {
+    ADDED,
+    REMOVED,
+    MODIFIED,
+    RENAMED_OLD_NAME,
+    RENAMED_NEW_NAME
+  }
+
+  private final Action action;
+  private final String name;
+  private final SmbFileItem item;
+
+  /**
+   * Constructor for SmbDirectoryChange.
+   *
+   * @param action What happened to the entry
+   * @param name Name of the entry within the watched directory
+   * @param item Current state of the entry for ADDED, MODIFIED and RENAMED_NEW_NAME, or null if it
+   *     is gone or could not be read
+   */
+  public SmbDirectoryChange(
+      @NonNull Action action, @NonNull String name, @Nullable SmbFileItem item) {
+    this.action = action;
+    this.name = name;
+    this.item = item;
+  }
+
+  /** Returns true if the entry no longer exists under {@link #getName()}. */
+  public boolean isRemoval() {
+    return action == Action.REMOVED || action == Action.RENAMED_OLD_NAME;
+  }
+
+  @Override
+  public String toString() {
+    return "SmbDirectoryChange{" + action + " '" + name + "'}";
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.model;
+
+import androidx.annotation.NonNull;
+import lombok.Getter;
+
+/** Model class representing a share announced by an SMB server (SHARE_INFO_1). */
+@Getter
+public class SmbShareInfo {
+
+  /** Share type of a disk share (STYPE_DISKTREE). */
+  public static final int STYPE_DISKTREE = 0x00000000;
+
+  /** Share type of a print queue (STYPE_PRINTQ). */
+  public static final int STYPE_PRINTQ = 0x00000001;
+
+  /** Share type of a communication device (STYPE_DEVICE). */
+  public static final int STYPE_DEVICE = 0x00000002;
+
+  /** Share type of the interprocess communication share IPC$ (STYPE_IPC). */
+  public static final int STYPE_IPC = 0x00000003;
+
+  /** Flag of administrative shares such as C$ or ADMIN$ (STYPE_SPECIAL). */
+  public static final int STYPE_SPECIAL = 0x80000000;
+
+  /** Flag of temporary shares (STYPE_TEMPORARY). */
+  public static final int STYPE_TEMPORARY = 0x40000000;
+
+  private static final int STYPE_MASK = 0x0FFFFFFF;
+
+  private final String name;
+  private final int type;
+  private final String comment;
+
+  /**
+   * Constructor for SmbShareInfo.
+   *
+   * @param name Name of the share
+   * @param type Share type as reported by the server, including the special and temporary flags
+   * @param comment Comment (remark) of the share, empty if the server has none
+   */
+  public SmbShareInfo(@NonNull String name, int type, @NonNull String comment) {
+    this.name = name;
+    this.type = type;
+    this.comment = comment;
+  }
+
+  /** Returns the share type without the special and temporary flags. */
+  public int getBaseType() {
+    return type & STYPE_MASK;
+  }
+
+  /** Returns true if the share holds files and can be browsed. */
+  public boolean isDisk() {
+    return getBaseType() == STYPE_DISKTREE;
+  }
+
+  /** Returns true for administrative shares such as C$ or ADMIN$. */
+  public boolean isSpecial() {
+    return (type & STYPE_SPECIAL) != 0;
+  }
+
+  @Override
+  public String toString() {
+    return "SmbShareInfo{" + name + ", type=0x" + Integer.toHexString(type) + "}";
+  }
+}
@@ -13,7 +13,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import de.schliweb.sambalite.data.background.BackgroundSmbManager;
 import de.schliweb.sambalite.data.model.SmbConnection;
+import de.schliweb.sambalite.data.model.SmbDirectoryChange;
 import de.schliweb.sambalite.data.model.SmbFileItem;
+import de.schliweb.sambalite.data.model.SmbShareInfo;
 import java.io.File;
 import java.util.List;
 import java.util.function.Consumer;
@@ -203,6 +205,38 @@ public interface SmbRepository {
       @NonNull SmbConnection connection, @NonNull String oldPath, @NonNull String newName)
       throws Exception;
 
+  /**
+   * Copies a file or directory within the share. The server copies the data itself (server-side
+   * copy) when it supports it, otherwise the data is copied through the client. Directories are
+   * copied recursively.
+   *
+   * @param connection The SMB connection to use
+   * @param sourcePath The path of the file or directory to copy
+   * @param targetPath The full path of the copy, which must not exist yet
+   * @param progressCallback The callback to report progress updates (may be null)
+   * @throws Exception if an error occurs during the copy
+   */
+  void copy(
+      @NonNull SmbConnection connection,
+      @NonNull String sourcePath,
+      @NonNull String targetPath,
+      @Nullable BackgroundSmbManager.ProgressCallback progressCallback)
+      throws Exception;
+
+  /**
+   * Moves a file or directory within the share, also into another directory. The move is a rename
+   * on the server; only if the server cannot rename across the two locations is the entry copied
+   * and the source deleted.
+   *
+   * @param connection The SMB connection to use
+   * @param sourcePath The path of the file or directory to move
+   * @param targetPath The new full path, which must not exist yet
+   * @throws Exception if an error occurs during the move
+   */
+  void move(
+      @NonNull SmbConnection connection, @NonNull String sourcePath, @NonNull String targetPath)
+      throws Exception;
+
   /**
    * Creates a new directory on the SMB server.
    *
@@ -249,12 +283,24 @@ public interface SmbRepository {
    *
    * @param connection The SMB connection to use (only server, username, password, domain are
    *     needed)
-   * @return A list of share names available on the server
+   * @return The names of the browsable disk shares, without administrative shares such as C$
    * @throws Exception if an error occurs during the share listing
    */
   @NonNull
   List<String> listShares(@NonNull SmbConnection connection) throws Exception;
 
+  /**
+   * Lists the shares of the SMB server with their type and comment. The list is obtained with the
+   * server service RPC (NetrShareEnum) and cached per server and user for a few minutes; servers
+   * that deny the RPC are probed for common share names instead.
+   *
+   * @param connection The connection to the SMB server
+   * @return All shares announced by the server, including printers, IPC$ and administrative shares
+   * @throws Exception if the server cannot be reached or the login fails
+   */
+  @NonNull
+  List<SmbShareInfo> listShareInfos(@NonNull SmbConnection connection) throws Exception;
+
   /**
    * Downloads a folder from the SMB server.
    *
@@ -301,6 +347,51 @@ public interface SmbRepository {
       @Nullable BackgroundSmbManager.ProgressCallback progressCallback)
       throws Exception;
 
+  /**
+   * Watches a directory for changes made on the server. An SMB2 CHANGE_NOTIFY request is kept
+   * outstanding on the directory until the returned watch is cancelled, and every completed request
+   * is reported to the listener on a background thread. All watches of a connection share one
+   * pooled session and one thread, so listeners should return quickly.
+   *
+   * @param connection The SMB connection to use
+   * @param path The path of the directory to watch
+   * @param listener The listener receiving changes and failures
+   * @return A handle to stop the watch
+   * @throws Exception if the watch could not be started
+   */
+  @NonNull
+  DirectoryWatch watchDirectory(
+      @NonNull SmbConnection connection,
+      @NonNull String path,
+      @NonNull DirectoryChangeListener listener)
+      throws Exception;
+
+  /** Receives changes of a directory watched with {@link #watchDirectory}. */
+  interface DirectoryChangeListener {
+    /**
+     * Called for every batch of changes reported by the server.
+     *
+     * @param path The watched directory
+     * @param changes The changed entries; empty if the server only reported that the directory
+     *     changed (e.g. after its change buffer overflowed) and it must be listed again
+     */
+    void onChanged(@NonNull String path, @NonNull List<SmbDirectoryChange> changes);
+
+    /**
+     * Called once when the watch ended because of an error. It is not restarted.
+     *
+     * @param path The watched directory
+     * @param error The cause
+     */
+    void onWatchFailed(@NonNull String path, @NonNull Exception error);
+  }
+
+  /** A running directory watch. */
+  interface DirectoryWatch {
+    /** Stops the watch and closes its directory handle on the server. */
+    void cancel();
+  }
+
   /** Closes all active connections and sessions in the repository. */
   void closeConnections();
 }
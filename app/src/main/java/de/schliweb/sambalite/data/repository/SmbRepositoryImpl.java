@@ -14,35 +14,41 @@ import androidx.annotation.Nullable;
 import com.hierynomus.msdtyp.AccessMask;
 import com.hierynomus.msdtyp.FileTime;
 import com.hierynomus.msfscc.FileAttributes;
+import com.hierynomus.msfscc.FileNotifyAction;
+import com.hierynomus.msfscc.fileinformation.FileAllInformation;
 import com.hierynomus.msfscc.fileinformation.FileBasicInformation;
 import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
+import com.hierynomus.mssmb2.SMB2CompletionFilter;
 import com.hierynomus.mssmb2.SMB2CreateDisposition;
 import com.hierynomus.mssmb2.SMB2ShareAccess;
-import com.hierynomus.smbj.SMBClient;
-import com.hierynomus.smbj.SmbConfig;
-import com.hierynomus.smbj.auth.AuthenticationContext;
-import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.mssmb2.SMBApiException;
+import com.hierynomus.mssmb2.messages.SMB2ChangeNotifyResponse;
 import com.hierynomus.smbj.session.Session;
 import com.hierynomus.smbj.share.Directory;
 import com.hierynomus.smbj.share.DiskShare;
 import com.hierynomus.smbj.share.File;
-import com.hierynomus.smbj.transport.tcp.async.AsyncDirectTcpTransportFactory;
 import de.schliweb.sambalite.data.background.BackgroundSmbManager;
 import de.schliweb.sambalite.data.model.SmbConnection;
+import de.schliweb.sambalite.data.model.SmbDirectoryChange;
 import de.schliweb.sambalite.data.model.SmbFileItem;
+import de.schliweb.sambalite.data.model.SmbShareInfo;
+import de.schliweb.sambalite.data.smb.BandwidthGovernor;
+import de.schliweb.sambalite.data.smb.CompletionMap;
+import de.schliweb.sambalite.data.smb.PipelinedDownloader;
+import de.schliweb.sambalite.data.smb.PipelinedUploader;
+import de.schliweb.sambalite.data.smb.ServerSideCopier;
+import de.schliweb.sambalite.data.smb.SmbClientRegistry;
+import de.schliweb.sambalite.data.smb.SmbSessionPool;
+import de.schliweb.sambalite.data.smb.SrvsvcClient;
 import de.schliweb.sambalite.util.LogUtils;
 import de.schliweb.sambalite.util.SmartErrorHandler;
 import de.schliweb.sambalite.util.TimestampUtils;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -50,204 +56,59 @@ import javax.inject.Singleton;
 @Singleton
 public class SmbRepositoryImpl implements SmbRepository {
 
-  // Larger read/write/transact buffers reduce the number of SMB2 READ/WRITE packets per
-  // transfer, which lowers per-packet overhead (especially with SMB3 encryption). The
-  // effective size is still capped by what the server negotiates.
-  private static final int TRANSFER_BUFFER_SIZE = 8 * 1024 * 1024;
-  // Copy buffer used when shoveling bytes between SMB streams and local files.
-  private static final int COPY_BUFFER_SIZE = 256 * 1024;
+  // NTSTATUS returned when a rename would cross volumes on the server side.
+  private static final long STATUS_NOT_SAME_DEVICE = 0xC00000D4L;
 
-  @NonNull private final SMBClient smbClient;
-  // Thread-local to track the currently connected share name for path normalization
-  @NonNull private final ThreadLocal<String> currentShareName = new ThreadLocal<>();
-  @NonNull private final BackgroundSmbManager backgroundManager;
-  @NonNull private final SmartErrorHandler errorHandler;
-  @NonNull private final ScheduledExecutorService scheduler;
-  @NonNull private final Map<String, CachedShare> sessionCache = new ConcurrentHashMap<>();
-  @NonNull private final Map<String, ReentrantLock> connectionLocks = new ConcurrentHashMap<>();
+  // NTSTATUS returned by CHANGE_NOTIFY when the server dropped changes; the directory must be
+  // listed again.
+  private static final long STATUS_NOTIFY_ENUM_DIR = 0x0000010CL;
 
-  private volatile boolean downloadCancelled = false;
-  private volatile boolean uploadCancelled = false;
+  // Changes per notification that are resolved to file items; larger batches trigger a re-list.
+  private static final int MAX_RESOLVED_CHANGES = 32;
 
-  /**
-   * Retrieves an SMBClient instance configured based on the given SmbConnection settings.
-   *
-   * @param connection the SmbConnection containing configuration details for encryption and signing
-   * @return an SMBClient instance with customized or default settings, based on the SmbConnection
-   */
-  private SMBClient getClientFor(SmbConnection connection) {
-    boolean encrypt = false;
-    boolean sign = false;
-    boolean async = false;
-    try {
-      encrypt = connection.isEncryptData();
-      sign = connection.isSigningRequired();
-      async = connection.isAsyncTransport();
-    } catch (Throwable ignored) {
-    }
+  private static final Set<SMB2CompletionFilter> WATCH_FILTER =
+      EnumSet.of(
+          SMB2CompletionFilter.FILE_NOTIFY_CHANGE_FILE_NAME,
+          SMB2CompletionFilter.FILE_NOTIFY_CHANGE_DIR_NAME,
+          SMB2CompletionFilter.FILE_NOTIFY_CHANGE_SIZE,
+          SMB2CompletionFilter.FILE_NOTIFY_CHANGE_LAST_WRITE);
 
-    boolean anonymous = isAnonymousConnection(connection);
+  private static final java.util.concurrent.atomic.AtomicInteger WATCH_COUNTER =
+      new java.util.concurrent.atomic.AtomicInteger();
 
-    if (!encrypt && !sign && !async && !anonymous) {
-      return this.smbClient; // shared default client
-    }
-
-    SmbConfig.Builder builder =
-        SmbConfig.builder().withEncryptData(encrypt).withSigningRequired(sign);
-    applyTransferBufferSizes(builder);
-
-    if (async) {
-      builder.withTransportLayerFactory(new AsyncDirectTcpTransportFactory<>());
-      LogUtils.i("SmbRepositoryImpl", "Using AsyncDirectTcpTransport for improved performance");
-    }
+  // How often a directory watcher checks its outstanding CHANGE_NOTIFY requests for completion.
+  private static final long WATCH_POLL_INTERVAL_MS = 250;
 
-    if (anonymous) {
-      // Anonymous/guest sessions: restrict to SMB2 dialects. SMBJ 0.14.0 crashes with a
-      // NullPointerException when deriving SMB3 signing keys for anonymous sessions if the
-      // server does not set the IS_NULL/IS_GUEST session flags (hierynomus/smbj#792).
-      // SMB3 signing/encryption offers no protection for anonymous sessions anyway.
-      try {
-        builder.withDialects(
-            com.hierynomus.mssmb2.SMB2Dialect.SMB_2_1, com.hierynomus.mssmb2.SMB2Dialect.SMB_2_0_2);
-      } catch (Throwable ignored) {
-        /* keep SMBJ defaults if the running SMBJ version rejects these values */
-      }
-      LogUtils.i("SmbRepositoryImpl", "Anonymous connection: restricting to SMB2 dialects");
-    } else {
-      // Optional, prevents fallback to NT1:
-      try {
-        builder.withDialects(
-            com.hierynomus.mssmb2.SMB2Dialect.SMB_3_1_1,
-            com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0_2,
-            com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0,
-            com.hierynomus.mssmb2.SMB2Dialect.SMB_2_1,
-            com.hierynomus.mssmb2.SMB2Dialect.SMB_2_0_2);
-      } catch (Throwable ignored) {
-        /* older SMBJ versions do not support these dialects */
-      }
-    }
+  // How long a server's share list is reused before it is enumerated again.
+  private static final long SHARE_CACHE_TTL_MS = 5 * 60 * 1000L;
 
-    LogUtils.d(
-        "SmbRepositoryImpl",
-        "SMB client config: encrypt=" + encrypt + ", sign=" + sign + ", async=" + async);
-    return new SMBClient(builder.build());
-  }
+  // Share lists per server and user, see listShareInfos
+  @NonNull private final Map<String, CachedShares> shareCache = new ConcurrentHashMap<>();
 
-  /**
-   * Enforces security requirements such as encryption and signing for the SMB connection. Validates
-   * the session configuration against the required security settings, and throws an exception if
-   * the requirements are not met.
-   *
-   * @param cfg the SMB connection configuration containing the security requirements (e.g.,
-   *     encryption and signing settings).
-   * @param session the current SMB session to be validated against the security requirements.
-   * @throws IOException if the server does not support the required security features such as
-   *     encryption or signing.
-   */
-  @SuppressWarnings("UnusedVariable")
-  private void enforceSecurityRequirements(SmbConnection cfg, Session session) throws IOException {
-    // No post-verification needed – SMBJ enforces the policy already during negotiation.
-    // Intentionally left empty to avoid false positives.
-  }
+  // Directory watchers per session identity and share, see watchDirectory
+  @NonNull private final Map<String, ConnectionWatcher> watchers = new HashMap<>();
 
-  /**
-   * Applies the larger transfer buffer sizes to the given config builder. Falls back to SMBJ
-   * defaults if the running SMBJ version rejects these values.
-   */
-  private static void applyTransferBufferSizes(SmbConfig.Builder builder) {
-    try {
-      builder
-          .withReadBufferSize(TRANSFER_BUFFER_SIZE)
-          .withWriteBufferSize(TRANSFER_BUFFER_SIZE)
-          .withTransactBufferSize(TRANSFER_BUFFER_SIZE);
-    } catch (Throwable ignored) {
-      /* keep SMBJ defaults if the running SMBJ version rejects these values */
-    }
-  }
+  // Thread-local to track the currently connected share name for path normalization
+  @NonNull private final ThreadLocal<String> currentShareName = new ThreadLocal<>();
+  @NonNull private final BackgroundSmbManager backgroundManager;
+  @NonNull private final SmartErrorHandler errorHandler;
+  @NonNull private final SmbSessionPool sessionPool;
 
-  /** Creates the shared default SMB client with performance-tuned buffer sizes. */
-  private static SMBClient createDefaultClient() {
-    SmbConfig.Builder builder = SmbConfig.builder();
-    applyTransferBufferSizes(builder);
-    return new SMBClient(builder.build());
-  }
+  private volatile boolean downloadCancelled = false;
+  private volatile boolean uploadCancelled = false;
 
   @Inject
   public SmbRepositoryImpl(@NonNull BackgroundSmbManager backgroundManager) {
-    this.smbClient = createDefaultClient();
     this.backgroundManager = backgroundManager;
     this.errorHandler = SmartErrorHandler.getInstance();
-    this.scheduler = Executors.newSingleThreadScheduledExecutor();
-    startCacheCleanupTask();
-  }
-
-  private void startCacheCleanupTask() {
-    scheduler.scheduleAtFixedRate(this::cleanupIdleSessions, 30, 30, TimeUnit.SECONDS);
-  }
-
-  private void cleanupIdleSessions() {
-    long now = System.currentTimeMillis();
-    long idleTimeout = 30000; // 30 seconds
-    Iterator<Map.Entry<String, CachedShare>> it = sessionCache.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<String, CachedShare> entry = it.next();
-      String connectionId = entry.getKey();
-      CachedShare cached = entry.getValue();
-      if (cached != null && (now - cached.lastAccess > idleTimeout)) {
-        ReentrantLock lock =
-            connectionLocks.computeIfAbsent(connectionId, k -> new ReentrantLock());
-        lock.lock();
-        try {
-          // Double check after locking (could have been accessed or removed)
-          CachedShare current = sessionCache.get(connectionId);
-          if (current == cached && (now - current.lastAccess > idleTimeout)) {
-            LogUtils.d(
-                "SmbRepositoryImpl", "Closing idle SMB session for connection: " + connectionId);
-            closeCachedShare(current);
-            it.remove();
-          }
-        } finally {
-          lock.unlock();
-        }
-      }
-    }
-  }
-
-  private void closeCachedShare(CachedShare cached) {
-    try {
-      if (cached.share != null) cached.share.close();
-    } catch (Exception e) {
-      LogUtils.w("SmbRepositoryImpl", "Error closing cached share: " + e.getMessage());
-    }
-    try {
-      if (cached.session != null) cached.session.close();
-    } catch (Exception e) {
-      LogUtils.w("SmbRepositoryImpl", "Error closing cached session: " + e.getMessage());
-    }
-    try {
-      if (cached.connection != null) cached.connection.close();
-    } catch (Exception e) {
-      LogUtils.w("SmbRepositoryImpl", "Error closing cached connection: " + e.getMessage());
-    }
+    this.sessionPool = SmbSessionPool.getInstance();
   }
 
   @Override
   public void closeConnections() {
-    LogUtils.d("SmbRepositoryImpl", "Closing all cached SMB connections");
-    Iterator<Map.Entry<String, CachedShare>> it = sessionCache.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<String, CachedShare> entry = it.next();
-      String connectionId = entry.getKey();
-      CachedShare cached = entry.getValue();
-      ReentrantLock lock = connectionLocks.computeIfAbsent(connectionId, k -> new ReentrantLock());
-      lock.lock();
-      try {
-        closeCachedShare(cached);
-        it.remove();
-      } finally {
-        lock.unlock();
-      }
-    }
+    LogUtils.d("SmbRepositoryImpl", "Closing all idle pooled SMB sessions");
+    sessionPool.closeIdle();
+    SmbClientRegistry.getInstance().closeUnused();
   }
 
   @Override
@@ -276,20 +137,12 @@ public class SmbRepositoryImpl implements SmbRepository {
     List<SmbFileItem> result = new ArrayList<>();
     String folderPath = path == null || path.isEmpty() ? "" : path;
 
-    try (Connection conn = getClientFor(connection).connect(connection.getServer())) {
-      AuthenticationContext authContext = createAuthContext(connection);
-      try (Session session = conn.authenticate(authContext)) {
-        enforceSecurityRequirements(connection, session);
-
-        String shareName = getShareName(connection.getShare());
-        try (DiskShare share = (DiskShare) session.connectShare(shareName)) {
-          searchFilesRecursive(
-              share, folderPath, query, result, searchType, includeSubfolders, onResult);
+    try (SmbSessionPool.Lease lease = sessionPool.acquire(connection)) {
+      searchFilesRecursive(
+          lease.getShare(), folderPath, query, result, searchType, includeSubfolders, onResult);
 
-          LogUtils.i(
-              "SmbRepositoryImpl", "Streaming search completed. Found " + result.size() + " items");
-        }
-      }
+      LogUtils.i(
+          "SmbRepositoryImpl", "Streaming search completed. Found " + result.size() + " items");
     } catch (Exception e) {
       LogUtils.e("SmbRepositoryImpl", "Error in streaming search: " + e.getMessage());
       throw e;
@@ -369,43 +222,6 @@ public class SmbRepositoryImpl implements SmbRepository {
         SmartErrorHandler.ErrorSeverity.MEDIUM);
   }
 
-  /**
-   * Returns true if the connection has neither username nor password, i.e. anonymous/guest access
-   * is requested.
-   */
-  private static boolean isAnonymousConnection(SmbConnection connection) {
-    String username = connection.getUsername() != null ? connection.getUsername() : "";
-    String password = connection.getPassword() != null ? connection.getPassword() : "";
-    return username.isEmpty() && password.isEmpty();
-  }
-
-  /**
-   * Creates an AuthenticationContext from the connection details. If both username and password are
-   * empty, uses anonymous authentication (behaves like {@code mount.cifs -o guest}, see issue #32).
-   */
-  private AuthenticationContext createAuthContext(SmbConnection connection) {
-    LogUtils.d(
-        "SmbRepositoryImpl",
-        "Creating authentication context for user: " + connection.getUsername());
-    String domain = connection.getDomain() != null ? connection.getDomain() : "";
-    String username = connection.getUsername() != null ? connection.getUsername() : "";
-    String password = connection.getPassword() != null ? connection.getPassword() : "";
-
-    if (domain.isEmpty()) {
-      LogUtils.d("SmbRepositoryImpl", "No domain specified");
-    } else {
-      LogUtils.d("SmbRepositoryImpl", "Using domain: " + domain);
-    }
-
-    // If both username and password are empty, use anonymous authentication
-    if (username.isEmpty() && password.isEmpty()) {
-      LogUtils.d("SmbRepositoryImpl", "Using anonymous (guest) authentication");
-      return new AuthenticationContext("", new char[0], domain);
-    }
-
-    return new AuthenticationContext(username, password.toCharArray(), domain);
-  }
-
   /** Extracts the share name from the full share path. */
   private String getShareName(String sharePath) {
     LogUtils.d("SmbRepositoryImpl", "Extracting share name from path: " + sharePath);
@@ -543,6 +359,7 @@ public class SmbRepositoryImpl implements SmbRepository {
       throws IOException {
     int maxRetries = 3;
     Exception lastException = null;
+    CompletionMap done = null;
     for (int attempt = 1; attempt <= maxRetries; attempt++) {
       if (attempt > 1) {
         LogUtils.i(
@@ -585,29 +402,15 @@ public class SmbRepositoryImpl implements SmbRepository {
                 + remoteTimestamp
                 + "ms)");
 
-        long resumeFrom = (attempt > 1 && localFile.exists()) ? localFile.length() : 0;
-        try (InputStream is = remoteFile.getInputStream();
-            java.io.FileOutputStream fos =
-                new java.io.FileOutputStream(localFile, resumeFrom > 0)) {
-          if (resumeFrom > 0) {
-            long skipped = is.skip(resumeFrom);
-            LogUtils.d("SmbRepositoryImpl", "Skipped " + skipped + " bytes for resume");
-          }
-          byte[] buffer = new byte[COPY_BUFFER_SIZE];
-          int bytesRead;
-          long totalBytes = resumeFrom;
-          while ((bytesRead = is.read(buffer)) != -1) {
-            fos.write(buffer, 0, bytesRead);
-            totalBytes += bytesRead;
-          }
-          LogUtils.i(
-              "SmbRepositoryImpl",
-              "File downloaded successfully: "
-                  + localFile.getAbsolutePath()
-                  + " ("
-                  + totalBytes
-                  + " bytes)");
-        }
+        done = completionMapFor(remoteFile, localFile, done);
+        long totalBytes = downloadPipelined(remoteFile, localFile, done, null, 0);
+        LogUtils.i(
+            "SmbRepositoryImpl",
+            "File downloaded successfully: "
+                + localFile.getAbsolutePath()
+                + " ("
+                + totalBytes
+                + " bytes)");
 
         // Set timestamp after download (outside stream try-with-resources, file is closed)
         TimestampUtils.setLastModified(localFile, remoteTimestamp);
@@ -628,97 +431,119 @@ public class SmbRepositoryImpl implements SmbRepository {
         }
       }
     }
+    partFileOf(localFile).delete();
     throw new IOException("Error downloading file: " + remoteFilePath, lastException);
   }
 
-  // Generic helper method for SMB operations with Background-Awareness
-  private <T> T withShare(SmbConnection connection, SmbShareCallback<T> callback) throws Exception {
-    return withShareWithRetry(connection, callback, 1);
+  /** Receives byte progress of a single file download. */
+  private interface BytesProgress {
+    void update(long currentBytes, long totalBytes);
   }
 
-  private DiskShare getOrCreateShare(SmbConnection connection) throws Exception {
-    String connectionId = connection.getId();
-    if (connectionId == null) {
-      connectionId = connection.getServer() + ":" + connection.getShare();
-    }
-
-    CachedShare cached = sessionCache.get(connectionId);
-    if (cached != null && cached.share.isConnected()) {
-      cached.lastAccess = System.currentTimeMillis();
-      return cached.share;
-    }
-
-    ReentrantLock lock = connectionLocks.computeIfAbsent(connectionId, k -> new ReentrantLock());
-    lock.lock();
-    try {
-      // Re-check after locking
-      cached = sessionCache.get(connectionId);
-      if (cached != null && cached.share.isConnected()) {
-        cached.lastAccess = System.currentTimeMillis();
-        return cached.share;
-      }
-
-      // If existing but not connected, clean up
-      if (cached != null) {
-        closeCachedShare(cached);
-        sessionCache.remove(connectionId);
-      }
-
+  /**
+   * Returns the completion map to use for downloading {@code remoteFile} to {@code localFile}:
+   * {@code previous} if it still describes the remote file and its partial file exists, otherwise a
+   * new, empty map whose block size is the read chunk size learned for the server.
+   */
+  private static CompletionMap completionMapFor(
+      File remoteFile, java.io.File localFile, @Nullable CompletionMap previous) {
+    long fileSize = remoteFile.getFileInformation().getStandardInformation().getEndOfFile();
+    if (previous != null
+        && previous.getLength() == fileSize
+        && partFileOf(localFile).length() == fileSize) {
       LogUtils.d(
-          "SmbRepositoryImpl",
-          "Establishing new SMB connection for: "
-              + connection.getServer()
-              + ":"
-              + connection.getPort());
-      Connection conn =
-          getClientFor(connection).connect(connection.getServer(), connection.getPort());
-      try {
-        AuthenticationContext authContext = createAuthContext(connection);
-        Session session = conn.authenticate(authContext);
-        try {
-          enforceSecurityRequirements(connection, session);
-          String shareName = getShareName(connection.getShare());
-          DiskShare share = (DiskShare) session.connectShare(shareName);
+          "SmbRepositoryImpl", "Resuming download of " + localFile.getName() + ": " + previous);
+      return previous;
+    }
+    int blockSize =
+        PipelinedDownloader.forShare(remoteFile.getDiskShare()).getWindow().getChunkSize();
+    return new CompletionMap(fileSize, blockSize);
+  }
 
-          if (!share.isConnected()) {
-            throw new IOException("Share connection failed for: " + shareName);
-          }
+  /** Partial file the positional download writes to before it is renamed to {@code localFile}. */
+  private static java.io.File partFileOf(java.io.File localFile) {
+    return new java.io.File(localFile.getParentFile(), localFile.getName() + ".part");
+  }
 
-          CachedShare newCached = new CachedShare(conn, session, share);
-          sessionCache.put(connectionId, newCached);
-          return share;
-        } catch (Exception e) {
-          try {
-            session.close();
-          } catch (Exception ignored) {
-          }
-          throw e;
-        }
-      } catch (Exception e) {
-        try {
-          conn.close();
-        } catch (Exception ignored) {
-        }
-        throw e;
-      }
-    } finally {
-      lock.unlock();
+  /**
+   * Downloads {@code remoteFile} into {@code localFile} using the shared pipelined engine, which
+   * keeps several SMB READs in flight within the window learned for the server. Chunks are written
+   * at their offset of a preallocated partial file as they arrive; only blocks that {@code done}
+   * does not yet record are fetched, so a retry with the same map resumes where the previous
+   * attempt failed. The partial file replaces {@code localFile} once every block is written.
+   *
+   * <p>Progress is throttled to at most every 500 ms or every {@code 1/maxProgressUpdates} of the
+   * file. The download stops with an IOException when {@link #cancelDownload()} is called.
+   *
+   * @return the number of bytes the local file holds after the download
+   */
+  private long downloadPipelined(
+      File remoteFile,
+      java.io.File localFile,
+      CompletionMap done,
+      @Nullable BytesProgress progress,
+      int maxProgressUpdates)
+      throws IOException {
+    final long fileSize = done.getLength();
+    final long updateThreshold = Math.max(fileSize / Math.max(maxProgressUpdates, 1), 1);
+    final long[] lastUpdate = {0, -1}; // {time, bytes}
+    PipelinedDownloader downloader = PipelinedDownloader.forShare(remoteFile.getDiskShare());
+    java.io.File partFile = partFileOf(localFile);
+    boolean completed =
+        downloader.downloadToFile(
+            PipelinedDownloader.reader(remoteFile),
+            partFile,
+            done,
+            (position, chunkLength) -> {
+              if (downloadCancelled) {
+                return false;
+              }
+              if (progress != null && fileSize > 0) {
+                long now = System.currentTimeMillis();
+                if (now - lastUpdate[0] >= 500
+                    || position - lastUpdate[1] >= updateThreshold
+                    || lastUpdate[1] < 0
+                    || position == fileSize) {
+                  progress.update(position, fileSize);
+                  lastUpdate[0] = now;
+                  lastUpdate[1] = position;
+                }
+              }
+              return true;
+            });
+    if (!completed) {
+      LogUtils.i("SmbRepositoryImpl", "Download cancelled during transfer: " + localFile.getName());
+      partFile.delete();
+      throw new IOException("Download was cancelled by user");
+    }
+    if (localFile.exists() && !localFile.delete()) {
+      throw new IOException("Failed to replace local file: " + localFile.getAbsolutePath());
     }
+    if (!partFile.renameTo(localFile)) {
+      throw new IOException("Failed to move downloaded file to: " + localFile.getAbsolutePath());
+    }
+    return fileSize;
+  }
+
+  // Generic helper method for SMB operations with Background-Awareness
+  private <T> T withShare(SmbConnection connection, SmbShareCallback<T> callback) throws Exception {
+    return withShareWithRetry(connection, callback, 1);
   }
 
   // Extended withShare with Retry-Logic for Background-Problems
   private <T> T withShareWithRetry(
       SmbConnection connection, SmbShareCallback<T> callback, int attempt) throws Exception {
     final int MAX_ATTEMPTS = 3;
+    SmbSessionPool.Lease lease = null;
     try {
-      DiskShare share = getOrCreateShare(connection);
+      lease = sessionPool.acquire(connection);
       String shareName = getShareName(connection.getShare());
       LogUtils.d(
-          "SmbRepositoryImpl", "Using cached share: " + shareName + " (attempt " + attempt + ")");
+          "SmbRepositoryImpl", "Using pooled share: " + shareName + " (attempt " + attempt + ")");
       // Set active share name for path normalization within this thread
       currentShareName.set(shareName);
       try {
-        return callback.doWithShare(share);
+        return callback.doWithShare(lease.getShare());
       } finally {
         currentShareName.remove();
       }
@@ -727,22 +552,14 @@ public class SmbRepositoryImpl implements SmbRepository {
           "SmbRepositoryImpl",
           "Share operation failed (attempt " + attempt + "): " + e.getMessage());
 
-      // Invalidate cache on failure
-      String connectionId = connection.getId();
-      if (connectionId == null) {
-        connectionId = connection.getServer() + ":" + connection.getShare();
-      }
-      ReentrantLock lock = connectionLocks.get(connectionId);
-      if (lock != null) {
-        lock.lock();
-        try {
-          CachedShare cached = sessionCache.remove(connectionId);
-          if (cached != null) {
-            closeCachedShare(cached);
-          }
-        } finally {
-          lock.unlock();
+      // Drop the pooled session if the failure points at a broken connection; the lease is
+      // returned before retrying so the retry gets a fresh session.
+      if (lease != null) {
+        if (isBackgroundRelatedError(e)) {
+          lease.invalidate();
         }
+        lease.close();
+        lease = null;
       }
 
       recordErrorWithContext(e, "shareOperation", "attempt:" + attempt);
@@ -769,6 +586,10 @@ public class SmbRepositoryImpl implements SmbRepository {
 
       // Non-retryable error or maximum attempts reached
       throw new IOException("Failed to execute share operation after " + attempt + " attempts", e);
+    } finally {
+      if (lease != null) {
+        lease.close();
+      }
     }
   }
 
@@ -783,7 +604,12 @@ public class SmbRepositoryImpl implements SmbRepository {
         connection,
         share -> {
           List<SmbFileItem> result = new ArrayList<>();
-          for (FileIdBothDirectoryInformation info : share.list(folderPath)) {
+          List<FileIdBothDirectoryInformation> entries;
+          // Listings are interactive: bulk transfers to this server give way meanwhile
+          try (BandwidthGovernor.Lease io = BandwidthGovernor.getInstance().interactive(share)) {
+            entries = share.list(folderPath);
+          }
+          for (FileIdBothDirectoryInformation info : entries) {
             if (".".equals(info.getFileName()) || "..".equals(info.getFileName())) continue;
             String name = info.getFileName();
             String fullPath = folderPath.isEmpty() ? name : folderPath + "/" + name;
@@ -975,6 +801,233 @@ public class SmbRepositoryImpl implements SmbRepository {
     }
   }
 
+  @Override
+  public void copy(
+      @NonNull SmbConnection connection,
+      @NonNull String sourcePath,
+      @NonNull String targetPath,
+      @Nullable BackgroundSmbManager.ProgressCallback progressCallback)
+      throws Exception {
+    LogUtils.d("SmbRepositoryImpl", "Copying: " + sourcePath + " to " + targetPath);
+    withShare(
+        connection,
+        share -> {
+          String source = getPathWithoutShare(sourcePath);
+          String target = getPathWithoutShare(targetPath);
+          boolean isFile = checkCopyOrMove(share, source, target);
+          CopyProgress progress = new CopyProgress(sizeOfTree(share, source), progressCallback);
+          if (isFile) {
+            copySmbFile(share, source, target, progress);
+          } else {
+            copySmbDirectory(share, source, target, progress);
+          }
+          LogUtils.i(
+              "SmbRepositoryImpl",
+              "Copied " + source + " to " + target + " (" + progress.completedBytes + " bytes)");
+          return null;
+        });
+  }
+
+  @Override
+  public void move(
+      @NonNull SmbConnection connection, @NonNull String sourcePath, @NonNull String targetPath)
+      throws Exception {
+    LogUtils.d("SmbRepositoryImpl", "Moving: " + sourcePath + " to " + targetPath);
+    withShare(
+        connection,
+        share -> {
+          String source = getPathWithoutShare(sourcePath);
+          String target = getPathWithoutShare(targetPath);
+          boolean isFile = checkCopyOrMove(share, source, target);
+          try {
+            if (isFile) {
+              renameSmbFile(share, source, target);
+            } else {
+              renameSmbDirectory(share, source, target);
+            }
+          } catch (SMBApiException e) {
+            if (e.getStatusCode() != STATUS_NOT_SAME_DEVICE) {
+              throw e;
+            }
+            // Source and target live on different volumes behind the share: copy, then delete
+            LogUtils.w("SmbRepositoryImpl", "Cannot rename across volumes, copying: " + source);
+            CopyProgress progress = new CopyProgress(0, null);
+            if (isFile) {
+              copySmbFile(share, source, target, progress);
+              share.rm(source);
+            } else {
+              copySmbDirectory(share, source, target, progress);
+              share.rmdir(source, true);
+            }
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Validates a copy or move from {@code source} to {@code target}.
+   *
+   * @return true if the source is a file, false if it is a directory
+   * @throws IOException if the source is missing, the target exists or lies inside the source
+   */
+  private static boolean checkCopyOrMove(DiskShare share, String source, String target)
+      throws IOException {
+    boolean isFile = share.fileExists(source);
+    if (!isFile && !share.folderExists(source)) {
+      throw new IOException("File or directory not found: " + source);
+    }
+    if (share.fileExists(target) || share.folderExists(target)) {
+      throw new IOException("Target path already exists: " + target);
+    }
+    String from = smbJoin(source, "").toLowerCase(Locale.ROOT);
+    String to = smbJoin(target, "").toLowerCase(Locale.ROOT);
+    if (!isFile && (to.equals(from) || to.startsWith(from + "\\"))) {
+      throw new IOException("Cannot copy or move a directory into itself: " + target);
+    }
+    return isFile;
+  }
+
+  /** Returns the size of a file, or the total size of all files below a directory. */
+  private static long sizeOfTree(DiskShare share, String path) {
+    if (share.fileExists(path)) {
+      return share.getFileInformation(path).getStandardInformation().getEndOfFile();
+    }
+    long total = 0;
+    for (FileIdBothDirectoryInformation entry : share.list(path)) {
+      String name = entry.getFileName();
+      if (".".equals(name) || "..".equals(name)) continue;
+      if ((entry.getFileAttributes() & FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue()) != 0) {
+        total += sizeOfTree(share, smbJoin(path, name));
+      } else {
+        total += entry.getEndOfFile();
+      }
+    }
+    return total;
+  }
+
+  private void copySmbDirectory(
+      DiskShare share, String source, String target, CopyProgress progress) throws IOException {
+    share.mkdir(target);
+    for (FileIdBothDirectoryInformation entry : share.list(source)) {
+      String name = entry.getFileName();
+      if (".".equals(name) || "..".equals(name)) continue;
+      if ((entry.getFileAttributes() & FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue()) != 0) {
+        copySmbDirectory(share, smbJoin(source, name), smbJoin(target, name), progress);
+      } else {
+        copySmbFile(share, smbJoin(source, name), smbJoin(target, name), progress);
+      }
+    }
+  }
+
+  /**
+   * Copies one file within the share. Uses server-side copy in parallel ranges and falls back to
+   * copying through the client if the server does not support it; such a server is copied through
+   * the client right away from then on. A partially written target is removed on failure; the last
+   * write time of the source is preserved.
+   */
+  private void copySmbFile(DiskShare share, String source, String target, CopyProgress progress)
+      throws IOException {
+    String name = target.substring(Math.max(target.lastIndexOf('/'), target.lastIndexOf('\\')) + 1);
+    long size;
+    long lastWriteTime;
+    try (File src =
+        share.openFile(
+            source,
+            EnumSet.of(AccessMask.GENERIC_READ),
+            null,
+            SMB2ShareAccess.ALL,
+            SMB2CreateDisposition.FILE_OPEN,
+            null)) {
+      FileAllInformation info = src.getFileInformation();
+      size = info.getStandardInformation().getEndOfFile();
+      lastWriteTime = info.getBasicInformation().getLastWriteTime().toEpochMillis();
+      File dst =
+          share.openFile(
+              target,
+              EnumSet.of(AccessMask.GENERIC_READ, AccessMask.GENERIC_WRITE),
+              null,
+              SMB2ShareAccess.ALL,
+              SMB2CreateDisposition.FILE_CREATE,
+              null);
+      boolean complete = false;
+      try {
+        boolean serverSide = !ServerSideCopier.isKnownUnsupported(share);
+        if (serverSide) {
+          try {
+            dst.setLength(size);
+            new ServerSideCopier()
+                .copy(
+                    size,
+                    ServerSideCopier.copier(src, dst),
+                    (copied, rangeLength) -> {
+                      progress.report(copied, name, false);
+                      return true;
+                    });
+          } catch (IOException | RuntimeException e) {
+            if (!ServerSideCopier.isNotSupported(e)) {
+              throw e;
+            }
+            // Skip the failing request for every further copy on this server
+            ServerSideCopier.markUnsupported(share);
+            LogUtils.w(
+                "SmbRepositoryImpl",
+                "Server-side copy not supported, copying via client: " + source);
+            serverSide = false;
+          }
+        }
+        if (!serverSide) {
+          try (InputStream in = src.getInputStream()) {
+            PipelinedUploader.forShare(share)
+                .upload(
+                    in,
+                    0,
+                    PipelinedUploader.writer(dst),
+                    (position, chunkLength) -> {
+                      progress.report(position, name, false);
+                      return true;
+                    });
+          }
+        }
+        complete = true;
+      } finally {
+        dst.close();
+        if (!complete) {
+          try {
+            share.rm(target);
+          } catch (Exception e) {
+            LogUtils.w("SmbRepositoryImpl", "Could not remove partial copy: " + target);
+          }
+        }
+      }
+    }
+    progress.completedBytes += size;
+    progress.report(0, name, true);
+    setRemoteFileLastModified(share, target, lastWriteTime);
+  }
+
+  /** Byte progress of a copy across all of its files, throttled to one update per 500 ms. */
+  private static final class CopyProgress {
+    final long totalBytes;
+    @Nullable final BackgroundSmbManager.ProgressCallback callback;
+    long completedBytes;
+    private long lastUpdate;
+
+    CopyProgress(long totalBytes, @Nullable BackgroundSmbManager.ProgressCallback callback) {
+      this.totalBytes = totalBytes;
+      this.callback = callback;
+    }
+
+    /** Reports {@code fileBytes} of the current file on top of the files already copied. */
+    synchronized void report(long fileBytes, String fileName, boolean force) {
+      if (callback == null) return;
+      long now = System.currentTimeMillis();
+      if (force || now - lastUpdate >= 500) {
+        lastUpdate = now;
+        callback.updateBytesProgress(completedBytes + fileBytes, totalBytes, fileName);
+      }
+    }
+  }
+
   @Override
   public void createDirectory(
       @NonNull SmbConnection connection, @NonNull String path, @NonNull String name)
@@ -1094,16 +1147,18 @@ public class SmbRepositoryImpl implements SmbRepository {
         connection,
         share -> {
           String filePath = getPathWithoutShare(remotePath);
-          try (File remoteFile =
-              share.openFile(
-                  filePath,
-                  EnumSet.of(AccessMask.GENERIC_READ),
-                  null,
-                  SMB2ShareAccess.ALL,
-                  SMB2CreateDisposition.FILE_OPEN,
-                  null)) {
+          try (BandwidthGovernor.Lease io = BandwidthGovernor.getInstance().interactive(share);
+              File remoteFile =
+                  share.openFile(
+                      filePath,
+                      EnumSet.of(AccessMask.GENERIC_READ),
+                      null,
+                      SMB2ShareAccess.ALL,
+                      SMB2CreateDisposition.FILE_OPEN,
+                      null)) {
             byte[] buffer = new byte[length];
             int read = remoteFile.read(buffer, offset, 0, length);
+            io.charge(read);
             if (read < length) {
               return Arrays.copyOf(buffer, Math.max(0, read));
             }
@@ -1121,14 +1176,15 @@ public class SmbRepositoryImpl implements SmbRepository {
         connection,
         share -> {
           String filePath = getPathWithoutShare(remotePath);
-          try (File remoteFile =
-              share.openFile(
-                  filePath,
-                  EnumSet.of(AccessMask.GENERIC_READ),
-                  null,
-                  SMB2ShareAccess.ALL,
-                  SMB2CreateDisposition.FILE_OPEN,
-                  null)) {
+          try (BandwidthGovernor.Lease io = BandwidthGovernor.getInstance().interactive(share);
+              File remoteFile =
+                  share.openFile(
+                      filePath,
+                      EnumSet.of(AccessMask.GENERIC_READ),
+                      null,
+                      SMB2ShareAccess.ALL,
+                      SMB2CreateDisposition.FILE_OPEN,
+                      null)) {
             long fileSize = remoteFile.getFileInformation().getStandardInformation().getEndOfFile();
             if (maxBytes > 0 && fileSize > maxBytes) {
               throw new IOException(
@@ -1138,20 +1194,22 @@ public class SmbRepositoryImpl implements SmbRepository {
                       + fileSize
                       + " bytes)");
             }
-            java.io.ByteArrayOutputStream out =
-                new java.io.ByteArrayOutputStream((int) Math.max(16, fileSize));
-            byte[] chunk = new byte[(int) Math.min(chunkSize, Math.max(1, fileSize))];
-            long offset = 0;
-            while (offset < fileSize) {
-              int toRead = (int) Math.min(chunk.length, fileSize - offset);
-              int read = remoteFile.read(chunk, offset, 0, toRead);
+            if (fileSize > Integer.MAX_VALUE - 8) {
+              throw new IOException("File too large to read into memory: " + remotePath);
+            }
+            // Read straight into the result array; no intermediate chunk buffer or stream copy
+            byte[] data = new byte[(int) fileSize];
+            int offset = 0;
+            while (offset < data.length) {
+              int toRead = Math.min(chunkSize, data.length - offset);
+              int read = remoteFile.read(data, offset, offset, toRead);
               if (read <= 0) {
                 break;
               }
-              out.write(chunk, 0, read);
+              io.charge(read);
               offset += read;
             }
-            return out.toByteArray();
+            return offset == data.length ? data : Arrays.copyOf(data, offset);
           }
         });
   }
@@ -1241,90 +1299,62 @@ public class SmbRepositoryImpl implements SmbRepository {
       throws Exception {
     // Reset download cancellation flag at the start
     downloadCancelled = false;
+    // Survives share-level retries so a retried attempt only fetches missing blocks
+    final CompletionMap[] resume = {null};
 
-    withShare(
-        connection,
-        share -> {
-          String filePath = getPathWithoutShare(remotePath);
-          if (!share.fileExists(filePath)) {
-            throw new IOException("File not found: " + filePath);
-          }
-
-          // Check if download was cancelled before starting
-          if (downloadCancelled) {
-            LogUtils.i("SmbRepositoryImpl", "Download cancelled before starting: " + filePath);
-            throw new IOException("Download was cancelled by user");
-          }
+    try {
+      withShare(
+          connection,
+          share -> {
+            String filePath = getPathWithoutShare(remotePath);
+            if (!share.fileExists(filePath)) {
+              throw new IOException("File not found: " + filePath);
+            }
 
-          try (File remoteFile =
-              share.openFile(
-                  filePath,
-                  EnumSet.of(AccessMask.GENERIC_READ),
-                  null,
-                  SMB2ShareAccess.ALL,
-                  SMB2CreateDisposition.FILE_OPEN,
-                  null)) {
-
-            // Read remote timestamp before downloading
-            long remoteTimestamp =
-                remoteFile
-                    .getFileInformation()
-                    .getBasicInformation()
-                    .getLastWriteTime()
-                    .toEpochMillis();
-            LogUtils.d(
-                "SmbRepositoryImpl",
-                "[TIMESTAMP] Remote lastWriteTime: "
-                    + localFile.getName()
-                    + " = "
-                    + TimestampUtils.formatTimestamp(remoteTimestamp)
-                    + " ("
-                    + remoteTimestamp
-                    + "ms)");
-
-            try (InputStream is = remoteFile.getInputStream();
-                java.io.FileOutputStream fos = new java.io.FileOutputStream(localFile)) {
-
-              byte[] buffer = new byte[COPY_BUFFER_SIZE];
-              int bytesRead;
-              long totalBytes = 0;
-              long fileSize =
-                  remoteFile.getFileInformation().getStandardInformation().getEndOfFile();
-
-              // Progress throttling (same scheme as uploads)
-              long lastProgressUpdate = 0;
-              final long PROGRESS_UPDATE_INTERVAL = 500;
-              final int MAX_PROGRESS_UPDATES = 100;
-              final long updateThreshold = Math.max(fileSize / MAX_PROGRESS_UPDATES, 1);
-              long lastUpdateBytes = 0;
-
-              while ((bytesRead = is.read(buffer)) != -1) {
-                // Check for cancellation during download
-                if (downloadCancelled) {
-                  LogUtils.i(
-                      "SmbRepositoryImpl", "Download cancelled during transfer: " + filePath);
-                  throw new IOException("Download was cancelled by user");
-                }
+            // Check if download was cancelled before starting
+            if (downloadCancelled) {
+              LogUtils.i("SmbRepositoryImpl", "Download cancelled before starting: " + filePath);
+              throw new IOException("Download was cancelled by user");
+            }
 
-                fos.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
-
-                // Throttled progress update
-                if (progressCallback != null && fileSize > 0) {
-                  long currentTime = System.currentTimeMillis();
-                  boolean shouldUpdate =
-                      (currentTime - lastProgressUpdate >= PROGRESS_UPDATE_INTERVAL)
-                          || (totalBytes - lastUpdateBytes >= updateThreshold)
-                          || (lastUpdateBytes == 0)
-                          || (totalBytes == fileSize);
-                  if (shouldUpdate) {
-                    progressCallback.updateBytesProgress(totalBytes, fileSize, localFile.getName());
-                    lastProgressUpdate = currentTime;
-                    lastUpdateBytes = totalBytes;
-                  }
-                }
-              }
+            try (File remoteFile =
+                share.openFile(
+                    filePath,
+                    EnumSet.of(AccessMask.GENERIC_READ),
+                    null,
+                    SMB2ShareAccess.ALL,
+                    SMB2CreateDisposition.FILE_OPEN,
+                    null)) {
 
+              // Read remote timestamp before downloading
+              long remoteTimestamp =
+                  remoteFile
+                      .getFileInformation()
+                      .getBasicInformation()
+                      .getLastWriteTime()
+                      .toEpochMillis();
+              LogUtils.d(
+                  "SmbRepositoryImpl",
+                  "[TIMESTAMP] Remote lastWriteTime: "
+                      + localFile.getName()
+                      + " = "
+                      + TimestampUtils.formatTimestamp(remoteTimestamp)
+                      + " ("
+                      + remoteTimestamp
+                      + "ms)");
+
+              resume[0] = completionMapFor(remoteFile, localFile, resume[0]);
+              long totalBytes =
+                  downloadPipelined(
+                      remoteFile,
+                      localFile,
+                      resume[0],
+                      progressCallback == null
+                          ? null
+                          : (current, total) ->
+                              progressCallback.updateBytesProgress(
+                                  current, total, localFile.getName()),
+                      100);
               LogUtils.i(
                   "SmbRepositoryImpl",
                   "File downloaded successfully: "
@@ -1332,13 +1362,16 @@ public class SmbRepositoryImpl implements SmbRepository {
                       + " ("
                       + totalBytes
                       + " bytes)");
-            }
 
-            // Set timestamp after download (file is closed)
-            TimestampUtils.setLastModified(localFile, remoteTimestamp);
-          }
-          return null;
-        });
+              // Set timestamp after download (file is closed)
+              TimestampUtils.setLastModified(localFile, remoteTimestamp);
+            }
+            return null;
+          });
+    } catch (Exception e) {
+      partFileOf(localFile).delete();
+      throw e;
+    }
     return null;
   }
 
@@ -1484,52 +1517,51 @@ public class SmbRepositoryImpl implements SmbRepository {
                       SMB2ShareAccess.ALL,
                       SMB2CreateDisposition.FILE_SUPERSEDE,
                       null);
-              java.io.FileInputStream fis = new java.io.FileInputStream(localFile);
-              OutputStream os = remoteFile.getOutputStream()) {
+              java.io.FileInputStream fis = new java.io.FileInputStream(localFile)) {
 
-            byte[] buffer = new byte[COPY_BUFFER_SIZE];
-            int bytesRead;
-            long totalBytes = 0;
             long fileSize = localFile.length();
 
             // Progress throttling for uploads
-            long lastProgressUpdate = 0;
             final long PROGRESS_UPDATE_INTERVAL = 500;
             final int MAX_PROGRESS_UPDATES = 100;
             final long updateThreshold = Math.max(fileSize / MAX_PROGRESS_UPDATES, 1);
-            long lastUpdateBytes = 0;
-
-            while ((bytesRead = fis.read(buffer)) != -1) {
-              // Check for cancellation during upload
-              if (uploadCancelled) {
-                LogUtils.i(
-                    "SmbRepositoryImpl",
-                    "Upload cancelled during transfer: " + localFile.getName());
-                throw new IOException("Upload was cancelled by user");
-              }
-
-              os.write(buffer, 0, bytesRead);
-              totalBytes += bytesRead;
-
-              // Throttled progress update
-              if (progressCallback != null && fileSize > 0) {
-                long currentTime = System.currentTimeMillis();
-                boolean shouldUpdate =
-                    (currentTime - lastProgressUpdate >= PROGRESS_UPDATE_INTERVAL)
-                        || (totalBytes - lastUpdateBytes >= updateThreshold)
-                        || (lastUpdateBytes == 0)
-                        || (totalBytes == fileSize);
-                if (shouldUpdate) {
-                  progressCallback.updateBytesProgress(totalBytes, fileSize, localFile.getName());
-                  lastProgressUpdate = currentTime;
-                  lastUpdateBytes = totalBytes;
-                }
-              }
+            final long[] lastUpdate = {0, -1}; // {time, bytes}
+
+            // Several positional writes in flight; progress follows the acknowledged prefix
+            PipelinedUploader uploader = PipelinedUploader.forShare(share);
+            boolean completed =
+                uploader.upload(
+                    fis,
+                    0,
+                    PipelinedUploader.writer(remoteFile),
+                    (totalBytes, chunkLength) -> {
+                      if (uploadCancelled) {
+                        return false;
+                      }
+                      if (progressCallback != null && fileSize > 0) {
+                        long currentTime = System.currentTimeMillis();
+                        boolean shouldUpdate =
+                            (currentTime - lastUpdate[0] >= PROGRESS_UPDATE_INTERVAL)
+                                || (totalBytes - lastUpdate[1] >= updateThreshold)
+                                || (lastUpdate[1] < 0)
+                                || (totalBytes == fileSize);
+                        if (shouldUpdate) {
+                          progressCallback.updateBytesProgress(
+                              totalBytes, fileSize, localFile.getName());
+                          lastUpdate[0] = currentTime;
+                          lastUpdate[1] = totalBytes;
+                        }
+                      }
+                      return true;
+                    });
+            if (!completed) {
+              LogUtils.i(
+                  "SmbRepositoryImpl", "Upload cancelled during transfer: " + localFile.getName());
+              throw new IOException("Upload was cancelled by user");
             }
-
             LogUtils.i(
                 "SmbRepositoryImpl",
-                "File uploaded successfully: " + remotePath + " (" + totalBytes + " bytes)");
+                "File uploaded successfully: " + remotePath + " (" + fileSize + " bytes)");
           }
 
           // Set the remote file's last modified time to match the local file
@@ -1748,338 +1780,393 @@ public class SmbRepositoryImpl implements SmbRepository {
 
   @Override
   public @NonNull List<String> listShares(@NonNull SmbConnection connection) throws Exception {
-    LogUtils.d("SmbRepositoryImpl", "Listing shares on server: " + connection.getServer());
-    try (Connection conn = getClientFor(connection).connect(connection.getServer())) {
-      AuthenticationContext authContext = createAuthContext(connection);
-      try (Session session = conn.authenticate(authContext)) {
-        // Enforce per-connection security requirements (encryption/signing)
-        enforceSecurityRequirements(connection, session);
-
-        // Fallback: Try common share names
-        String[] commonShares = {
-          // General
-          "Share",
-          "Shared",
-          "Data",
-          "Files",
-          "Home",
-          "Homes",
-          "Public",
-          "Common",
-          "General",
-          "Freigabe",
-          "Gemeinsam",
-          "Oeffentlich",
-          "Publico",
-          "Partage",
-          "Publica",
-          "Alle",
-          "All",
-          "Samba",
-          "SMB",
-          "SharedDocs",
-          "CommonFiles",
-          "Storage",
-          "Resource",
-          "Global",
-
-          // Users & Docs
-          "Users",
-          "Documents",
-          "Dokumente",
-          "Downloads",
-          "Download",
-          "Documentos",
-          "Mis Documentos",
-          "Mes Documents",
-          "Dropbox",
-          "Cloud",
-          "Personal",
-          "Private",
-          "Work",
-          "Projekte",
-          "Projects",
-          "Projectos",
-          "Clients",
-          "Kunden",
-          "Archive",
-          "Archiv",
-          "Notes",
-          "Notizen",
-          "Desktop",
-          "Favorites",
-          "Favoriten",
-          "Templates",
-          "Vorlagen",
-
-          // Media
-          "Music",
-          "Musik",
-          "Musica",
-          "Musique",
-          "Audio",
-          "Sounds",
-          "MP3",
-          "Playlist",
-          "Pictures",
-          "Bilder",
-          "Photos",
-          "Photo",
-          "Fotos",
-          "Foto",
-          "Images",
-          "Imagenes",
-          "Gallery",
-          "Galerie",
-          "Camera",
-          "Kamera",
-          "Shot",
-          "Shots",
-          "Videos",
-          "Video",
-          "Movies",
-          "Filme",
-          "Peliculas",
-          "Films",
-          "Cinema",
-          "Kino",
-          "Multimedia",
-          "Media",
-          "Medien",
-          "Streaming",
-          "Library",
-          "Bibliothek",
-          "Recordings",
-          "Aufnahmen",
-          "TV",
-          "Shows",
-          "Series",
-          "Serien",
-
-          // Technical & Backup
-          "Backup",
-          "Backups",
-          "Sicherung",
-          "TimeMachine",
-          "Time-Machine",
-          "Time_Machine",
-          "TM",
-          "TMS",
-          "Recover",
-          "Recovery",
-          "Restore",
-          "Sync",
-          "Synchronisation",
-          "NAS",
-          "Storage",
-          "Speicher",
-          "Network",
-          "Netzwerk",
-          "Server",
-          "Volume",
-          "Software",
-          "Apps",
-          "Games",
-          "Spiele",
-          "Portable",
-          "ISO",
-          "Images",
-          "Install",
-          "Temp",
-          "Temporary",
-          "Transfer",
-          "Austausch",
-          "Incoming",
-          "Outgoing",
-          "Drop",
-          "Scan",
-          "Scans",
-          "Fax",
-          "Faxes",
-          "Print",
-          "Printers",
-          "Scanner",
-          "Digital",
-
-          // Infrastructure
-          "Netlogon",
-          "Sysvol",
-          "C$",
-          "D$",
-          "E$",
-          "F$",
-          "G$",
-          "Z$",
-          "ADMIN$",
-          "Web",
-          "WWW",
-          "HTTP",
-          "Logs",
-          "Log",
-          "Database",
-          "DB",
-          "Config",
-          "Settings",
-          "Einstellung",
-          "Scripts",
-          "Tools",
-
-          // NAS specific (Vendor defaults)
-          "multimedia",
-          "download",
-          "backup",
-          "recordings",
-          "web",
-          "public",
-          "home",
-          "photo",
-          "video",
-          "music",
-          "photos",
-          "videos",
-          "downloads",
-          "backups",
-          "homes",
-          "shared",
-          "external",
-          "usb",
-          "sd",
-          "sata",
-          "media_server",
-          "plex",
-          "share",
-          "data",
-          "files",
-          "archive",
-          "storage",
-          "cloud",
-          "sync",
-          "admin",
-          "user",
-          "guest",
-          "temp",
-          "tmp",
-          "logs",
-          "config",
-          "netbackup",
-          "surveillance",
-          "docker",
-          "containers",
-          "vm",
-          "virtual",
-          "snapshot",
-
-          // Additional Creative/Contextual
-          "Family",
-          "Familie",
-          "Kids",
-          "Kinder",
-          "School",
-          "Schule",
-          "University",
-          "Uni",
-          "Office",
-          "Buero",
-          "HomeOffice",
-          "Remote",
-          "Travel",
-          "Urlaub",
-          "Trip",
-          "Holidays",
-          "Events",
-          "Party",
-          "Wedding",
-          "Hochzeit",
-          "Christmas",
-          "Birthday",
-          "Finance",
-          "Finanzen",
-          "Tax",
-          "Steuer",
-          "Insurance",
-          "Versicherung",
-          "Legal",
-          "Recht",
-          "Medical",
-          "Gesundheit",
-          "Health",
-          "Fitness"
-        };
-
-        // Use a set to avoid duplicate checks (e.g., if "Download" is in multiple categories)
-        Set<String> uniqueCommonShares = new LinkedHashSet<>(Arrays.asList(commonShares));
-
-        List<String> rawShareList = Collections.synchronizedList(new ArrayList<>());
-
-        // Use a fixed thread pool for parallel share discovery
-        // 8 threads should provide a good balance between speed and server load
-        ExecutorService discoveryExecutor = Executors.newFixedThreadPool(8);
-
-        for (String shareName : uniqueCommonShares) {
-          discoveryExecutor.submit(
-              () -> {
-                try {
-                  // Check for interruption to avoid long-running discovery on many shares
-                  if (Thread.currentThread().isInterrupted()) {
-                    return;
-                  }
+    // Deduplicate share names case-insensitively and sort the list
+    Set<String> processedNames = new HashSet<>();
+    List<String> sortedShares = new ArrayList<>();
+
+    List<String> foundShares = new ArrayList<>();
+    for (SmbShareInfo share : listShareInfos(connection)) {
+      // Only browsable disk shares; administrative shares like C$ or ADMIN$ are hidden
+      if (share.isDisk() && !share.isSpecial()) {
+        foundShares.add(share.getName());
+      }
+    }
+    Collections.sort(foundShares);
 
-                  // Try to connect to the share to see if it exists
-                  try (DiskShare share = (DiskShare) session.connectShare(shareName)) {
-                    if (share.isConnected()) {
-                      rawShareList.add(shareName);
-                      LogUtils.d("SmbRepositoryImpl", "Found share: " + shareName);
-                    }
-                  }
-                } catch (Exception e) {
-                  // Share doesn't exist or is not accessible, ignore silently
-                }
-              });
-        }
+    for (String share : foundShares) {
+      String lowerCaseName = share.toLowerCase(Locale.ROOT);
+      if (!processedNames.contains(lowerCaseName)) {
+        sortedShares.add(share);
+        processedNames.add(lowerCaseName);
+      }
+    }
 
-        // Wait for all discovery tasks to complete with a timeout
-        try {
-          discoveryExecutor.shutdown();
-          // Wait up to 15 seconds for all shares to be checked
-          if (!discoveryExecutor.awaitTermination(15, TimeUnit.SECONDS)) {
-            LogUtils.w("SmbRepositoryImpl", "Share discovery timed out before checking all shares");
-            discoveryExecutor.shutdownNow();
-          }
-        } catch (InterruptedException e) {
-          LogUtils.w("SmbRepositoryImpl", "Share discovery interrupted");
-          discoveryExecutor.shutdownNow();
-          Thread.currentThread().interrupt();
+    LogUtils.i(
+        "SmbRepositoryImpl",
+        "Found " + sortedShares.size() + " accessible shares on server: " + connection.getServer());
+    return sortedShares;
+  }
+
+  @Override
+  public @NonNull List<SmbShareInfo> listShareInfos(@NonNull SmbConnection connection)
+      throws Exception {
+    String key = shareCacheKey(connection);
+    CachedShares cached = shareCache.get(key);
+    if (cached != null && System.currentTimeMillis() - cached.timestamp < SHARE_CACHE_TTL_MS) {
+      LogUtils.d("SmbRepositoryImpl", "Using cached share list for: " + connection.getServer());
+      return cached.shares;
+    }
+
+    LogUtils.d("SmbRepositoryImpl", "Listing shares on server: " + connection.getServer());
+    List<SmbShareInfo> shares;
+    try (SmbSessionPool.Lease lease = sessionPool.acquireSession(connection)) {
+      try {
+        shares = SrvsvcClient.enumerateShares(lease.getSession(), connection.getServer());
+      } catch (Exception e) {
+        if (!SrvsvcClient.isUnavailable(e)) {
+          throw e;
         }
+        LogUtils.w(
+            "SmbRepositoryImpl",
+            "Share enumeration via srvsvc not permitted, probing common share names: "
+                + e.getMessage());
+        shares = probeShares(lease.getSession());
+      }
+    }
+    shares = Collections.unmodifiableList(new ArrayList<>(shares));
+    shareCache.put(key, new CachedShares(shares));
+    return shares;
+  }
 
-        // Deduplicate share names case-insensitively and sort the list
-        Set<String> processedNames = new HashSet<>();
-        List<String> sortedShares = new ArrayList<>();
+  /**
+   * Finds shares by connecting to a list of common share names. Only used when the server does not
+   * allow share enumeration over RPC.
+   */
+  private List<SmbShareInfo> probeShares(Session session) {
+    String[] commonShares = {
+      // General
+      "Share",
+      "Shared",
+      "Data",
+      "Files",
+      "Home",
+      "Homes",
+      "Public",
+      "Common",
+      "General",
+      "Freigabe",
+      "Gemeinsam",
+      "Oeffentlich",
+      "Publico",
+      "Partage",
+      "Publica",
+      "Alle",
+      "All",
+      "Samba",
+      "SMB",
+      "SharedDocs",
+      "CommonFiles",
+      "Storage",
+      "Resource",
+      "Global",
+
+      // Users & Docs
+      "Users",
+      "Documents",
+      "Dokumente",
+      "Downloads",
+      "Download",
+      "Documentos",
+      "Mis Documentos",
+      "Mes Documents",
+      "Dropbox",
+      "Cloud",
+      "Personal",
+      "Private",
+      "Work",
+      "Projekte",
+      "Projects",
+      "Projectos",
+      "Clients",
+      "Kunden",
+      "Archive",
+      "Archiv",
+      "Notes",
+      "Notizen",
+      "Desktop",
+      "Favorites",
+      "Favoriten",
+      "Templates",
+      "Vorlagen",
+
+      // Media
+      "Music",
+      "Musik",
+      "Musica",
+      "Musique",
+      "Audio",
+      "Sounds",
+      "MP3",
+      "Playlist",
+      "Pictures",
+      "Bilder",
+      "Photos",
+      "Photo",
+      "Fotos",
+      "Foto",
+      "Images",
+      "Imagenes",
+      "Gallery",
+      "Galerie",
+      "Camera",
+      "Kamera",
+      "Shot",
+      "Shots",
+      "Videos",
+      "Video",
+      "Movies",
+      "Filme",
+      "Peliculas",
+      "Films",
+      "Cinema",
+      "Kino",
+      "Multimedia",
+      "Media",
+      "Medien",
+      "Streaming",
+      "Library",
+      "Bibliothek",
+      "Recordings",
+      "Aufnahmen",
+      "TV",
+      "Shows",
+      "Series",
+      "Serien",
+
+      // Technical & Backup
+      "Backup",
+      "Backups",
+      "Sicherung",
+      "TimeMachine",
+      "Time-Machine",
+      "Time_Machine",
+      "TM",
+      "TMS",
+      "Recover",
+      "Recovery",
+      "Restore",
+      "Sync",
+      "Synchronisation",
+      "NAS",
+      "Storage",
+      "Speicher",
+      "Network",
+      "Netzwerk",
+      "Server",
+      "Volume",
+      "Software",
+      "Apps",
+      "Games",
+      "Spiele",
+      "Portable",
+      "ISO",
+      "Images",
+      "Install",
+      "Temp",
+      "Temporary",
+      "Transfer",
+      "Austausch",
+      "Incoming",
+      "Outgoing",
+      "Drop",
+      "Scan",
+      "Scans",
+      "Fax",
+      "Faxes",
+      "Print",
+      "Printers",
+      "Scanner",
+      "Digital",
+
+      // Infrastructure
+      "Netlogon",
+      "Sysvol",
+      "C$",
+      "D$",
+      "E$",
+      "F$",
+      "G$",
+      "Z$",
+      "ADMIN$",
+      "Web",
+      "WWW",
+      "HTTP",
+      "Logs",
+      "Log",
+      "Database",
+      "DB",
+      "Config",
+      "Settings",
+      "Einstellung",
+      "Scripts",
+      "Tools",
+
+      // NAS specific (Vendor defaults)
+      "multimedia",
+      "download",
+      "backup",
+      "recordings",
+      "web",
+      "public",
+      "home",
+      "photo",
+      "video",
+      "music",
+      "photos",
+      "videos",
+      "downloads",
+      "backups",
+      "homes",
+      "shared",
+      "external",
+      "usb",
+      "sd",
+      "sata",
+      "media_server",
+      "plex",
+      "share",
+      "data",
+      "files",
+      "archive",
+      "storage",
+      "cloud",
+      "sync",
+      "admin",
+      "user",
+      "guest",
+      "temp",
+      "tmp",
+      "logs",
+      "config",
+      "netbackup",
+      "surveillance",
+      "docker",
+      "containers",
+      "vm",
+      "virtual",
+      "snapshot",
+
+      // Additional Creative/Contextual
+      "Family",
+      "Familie",
+      "Kids",
+      "Kinder",
+      "School",
+      "Schule",
+      "University",
+      "Uni",
+      "Office",
+      "Buero",
+      "HomeOffice",
+      "Remote",
+      "Travel",
+      "Urlaub",
+      "Trip",
+      "Holidays",
+      "Events",
+      "Party",
+      "Wedding",
+      "Hochzeit",
+      "Christmas",
+      "Birthday",
+      "Finance",
+      "Finanzen",
+      "Tax",
+      "Steuer",
+      "Insurance",
+      "Versicherung",
+      "Legal",
+      "Recht",
+      "Medical",
+      "Gesundheit",
+      "Health",
+      "Fitness"
+    };
+
+    // Use a set to avoid duplicate checks (e.g., if "Download" is in multiple categories)
+    Set<String> uniqueCommonShares = new LinkedHashSet<>(Arrays.asList(commonShares));
+
+    List<String> rawShareList = Collections.synchronizedList(new ArrayList<>());
+
+    // Use a fixed thread pool for parallel share discovery
+    // 8 threads should provide a good balance between speed and server load
+    ExecutorService discoveryExecutor = Executors.newFixedThreadPool(8);
+
+    for (String shareName : uniqueCommonShares) {
+      discoveryExecutor.submit(
+          () -> {
+            try {
+              // Check for interruption to avoid long-running discovery on many shares
+              if (Thread.currentThread().isInterrupted()) {
+                return;
+              }
 
-        // Use a temporary list for sorting before deduplication to ensure consistent results
-        List<String> foundShares = new ArrayList<>(rawShareList);
-        Collections.sort(foundShares);
+              // Try to connect to the share to see if it exists
+              try (DiskShare share = (DiskShare) session.connectShare(shareName)) {
+                if (share.isConnected()) {
+                  rawShareList.add(shareName);
+                  LogUtils.d("SmbRepositoryImpl", "Found share: " + shareName);
+                }
+              }
+            } catch (Exception e) {
+              // Share doesn't exist or is not accessible, ignore silently
+            }
+          });
+    }
 
-        for (String share : foundShares) {
-          String lowerCaseName = share.toLowerCase(Locale.ROOT);
-          if (!processedNames.contains(lowerCaseName)) {
-            sortedShares.add(share);
-            processedNames.add(lowerCaseName);
-          }
-        }
+    // Wait for all discovery tasks to complete with a timeout
+    try {
+      discoveryExecutor.shutdown();
+      // Wait up to 15 seconds for all shares to be checked
+      if (!discoveryExecutor.awaitTermination(15, TimeUnit.SECONDS)) {
+        LogUtils.w("SmbRepositoryImpl", "Share discovery timed out before checking all shares");
+        discoveryExecutor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      LogUtils.w("SmbRepositoryImpl", "Share discovery interrupted");
+      discoveryExecutor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
 
-        // If no shares found, suggest the user enter manually
-        if (sortedShares.isEmpty()) {
-          LogUtils.w("SmbRepositoryImpl", "No accessible shares found using common names");
-        }
+    // If no shares found, suggest the user enter manually
+    if (rawShareList.isEmpty()) {
+      LogUtils.w("SmbRepositoryImpl", "No accessible shares found using common names");
+    }
 
-        LogUtils.i(
-            "SmbRepositoryImpl",
-            "Found "
-                + sortedShares.size()
-                + " accessible shares on server: "
-                + connection.getServer());
-        return sortedShares;
+    List<SmbShareInfo> shares = new ArrayList<>();
+    for (String name : new ArrayList<>(rawShareList)) {
+      int type = SmbShareInfo.STYPE_DISKTREE;
+      if (name.endsWith("$")) {
+        type |= SmbShareInfo.STYPE_SPECIAL;
       }
+      shares.add(new SmbShareInfo(name, type, ""));
+    }
+    return shares;
+  }
+
+  private static String shareCacheKey(SmbConnection connection) {
+    // Access-based enumeration shows different shares to different users; the credential
+    // fingerprint keeps a wrong or changed password from being answered without authenticating
+    return SmbSessionPool.sessionIdentityOf(connection);
+  }
+
+  /** Share list of one server and user, see {@link #listShareInfos}. */
+  private static final class CachedShares {
+    final List<SmbShareInfo> shares;
+    final long timestamp = System.currentTimeMillis();
+
+    CachedShares(List<SmbShareInfo> shares) {
+      this.shares = shares;
     }
   }
 
@@ -2221,6 +2308,7 @@ public class SmbRepositoryImpl implements SmbRepository {
       throws IOException {
     int maxRetries = 3;
     Exception lastException = null;
+    CompletionMap done = null;
     for (int attempt = 1; attempt <= maxRetries; attempt++) {
       if (attempt > 1) {
         LogUtils.i(
@@ -2263,81 +2351,24 @@ public class SmbRepositoryImpl implements SmbRepository {
                 + remoteTimestamp
                 + "ms)");
 
-        long resumeFrom = (attempt > 1 && localFile.exists()) ? localFile.length() : 0;
-        try (InputStream is = remoteFile.getInputStream();
-            java.io.FileOutputStream fos =
-                new java.io.FileOutputStream(localFile, resumeFrom > 0)) {
-          if (resumeFrom > 0) {
-            long skipped = is.skip(resumeFrom);
-            LogUtils.d("SmbRepositoryImpl", "Skipped " + skipped + " bytes for resume");
-          }
-
-          byte[] buffer = new byte[COPY_BUFFER_SIZE];
-          int bytesRead;
-          long totalBytes = resumeFrom;
-          long fileSize = remoteFile.getFileInformation().getStandardInformation().getEndOfFile();
-
-          // Progress throttling for large files
-          long lastProgressUpdate = 0;
-          final long PROGRESS_UPDATE_INTERVAL =
-              500; // Max every 0.5 seconds (reduced from 2 seconds)
-
-          // Limit progress updates to max 300 times (increased from 100)
-          final int MAX_PROGRESS_UPDATES = 300;
-          final long updateThreshold =
-              Math.max(fileSize / MAX_PROGRESS_UPDATES, 1); // Ensure at least 1 byte
-          long lastUpdateBytes = 0;
-
-          while ((bytesRead = is.read(buffer)) != -1) {
-            // Check for cancellation during file download
-            if (downloadCancelled) {
-              LogUtils.i(
-                  "SmbRepositoryImpl",
-                  "Download cancelled during file transfer: " + localFile.getName());
-              throw new IOException("Download was cancelled by user");
-            }
-
-            fos.write(buffer, 0, bytesRead);
-            totalBytes += bytesRead;
-
-            // Progress update for bytes - but throttled for large files
-            if (progressCallback != null && fileSize > 0) {
-              long currentTime = System.currentTimeMillis();
-              // Use Math.round with floating-point division for accurate percentage calculation
-              int percentage = (int) Math.round((totalBytes * 100.0) / fileSize);
-
-              // Update at important milestones or after significant progress
-              boolean shouldUpdate =
-                  // Time-based throttling OR bytes-based throttling
-                  (currentTime - lastProgressUpdate >= PROGRESS_UPDATE_INTERVAL)
-                      ||
-                      // Bytes-based throttling (ensure we don't update too frequently)
-                      (totalBytes - lastUpdateBytes >= updateThreshold)
-                      ||
-                      // Important percentage milestones (every 5% instead of 10%)
-                      (percentage % 5 == 0 && percentage != 0)
-                      ||
-                      // First update (0%)
-                      (lastUpdateBytes == 0)
-                      ||
-                      // Last update (100%)
-                      (totalBytes == fileSize);
-
-              if (shouldUpdate) {
-                progressCallback.updateBytesProgress(totalBytes, fileSize, localFile.getName());
-                lastProgressUpdate = currentTime;
-                lastUpdateBytes = totalBytes;
-              }
-            }
-          }
-          LogUtils.i(
-              "SmbRepositoryImpl",
-              "File downloaded successfully with progress: "
-                  + localFile.getAbsolutePath()
-                  + " ("
-                  + totalBytes
-                  + " bytes)");
-        }
+        done = completionMapFor(remoteFile, localFile, done);
+        long totalBytes =
+            downloadPipelined(
+                remoteFile,
+                localFile,
+                done,
+                progressCallback == null
+                    ? null
+                    : (current, total) ->
+                        progressCallback.updateBytesProgress(current, total, localFile.getName()),
+                300);
+        LogUtils.i(
+            "SmbRepositoryImpl",
+            "File downloaded successfully with progress: "
+                + localFile.getAbsolutePath()
+                + " ("
+                + totalBytes
+                + " bytes)");
 
         // Set timestamp after download (file is closed)
         TimestampUtils.setLastModified(localFile, remoteTimestamp);
@@ -2365,6 +2396,7 @@ public class SmbRepositoryImpl implements SmbRepository {
         }
       }
     }
+    partFileOf(localFile).delete();
     throw new IOException("Error downloading file: " + remoteFilePath, lastException);
   }
 
@@ -2432,23 +2464,322 @@ public class SmbRepositoryImpl implements SmbRepository {
     return SmartErrorHandler.ErrorSeverity.MEDIUM;
   }
 
-  // Callback-Interface
-  @FunctionalInterface
-  private interface SmbShareCallback<T> {
-    T doWithShare(DiskShare share) throws Exception;
+  @Override
+  public @NonNull DirectoryWatch watchDirectory(
+      @NonNull SmbConnection connection,
+      @NonNull String path,
+      @NonNull DirectoryChangeListener listener)
+      throws Exception {
+    String dirPath = getPathWithoutShare(path);
+    String key =
+        SmbSessionPool.sessionIdentityOf(connection)
+            + "|"
+            + SmbSessionPool.shareNameOf(connection.getShare());
+    ConnectionWatcher watcher;
+    synchronized (watchers) {
+      watcher = watchers.get(key);
+      if (watcher == null) {
+        watcher = new ConnectionWatcher(key, sessionPool.acquire(connection));
+        watchers.put(key, watcher);
+      }
+      // Keeps the watcher and its lease alive while the directory is opened
+      watcher.users++;
+    }
+    Directory directory;
+    try {
+      directory =
+          watcher
+              .lease
+              .getShare()
+              .openDirectory(
+                  dirPath,
+                  EnumSet.of(AccessMask.FILE_LIST_DIRECTORY, AccessMask.FILE_READ_ATTRIBUTES),
+                  null,
+                  SMB2ShareAccess.ALL,
+                  SMB2CreateDisposition.FILE_OPEN,
+                  null);
+    } catch (Exception e) {
+      watcher.release();
+      throw e;
+    }
+    DirectoryWatchTask task = new DirectoryWatchTask(watcher, directory, path, dirPath, listener);
+    watcher.add(task);
+    LogUtils.d("SmbRepositoryImpl", "Watching directory: " + (dirPath.isEmpty() ? "/" : dirPath));
+    return task;
+  }
+
+  /**
+   * Runs the directory watches of one connection and share on one session lease and one thread.
+   * CHANGE_NOTIFY requests are asynchronous, so the requests of all watched directories are
+   * outstanding on the session at the same time while it stays available for other callers; the
+   * thread only waits for the next of them to complete. The lease is returned once the last watch
+   * has ended.
+   */
+  private final class ConnectionWatcher implements Runnable {
+    private final String key;
+    private final SmbSessionPool.Lease lease;
+    private final List<DirectoryWatchTask> tasks = new ArrayList<>();
+
+    /** Watches that are running or being started; guarded by {@link #watchers}. */
+    int users;
+
+    private boolean started;
+
+    ConnectionWatcher(String key, SmbSessionPool.Lease lease) {
+      this.key = key;
+      this.lease = lease;
+    }
+
+    /** Adds a started watch and runs the thread if it does not run yet. */
+    void add(DirectoryWatchTask task) {
+      synchronized (this) {
+        tasks.add(task);
+        notifyAll();
+        if (started) return;
+        started = true;
+      }
+      Thread thread = new Thread(this, "smb-watch-" + WATCH_COUNTER.incrementAndGet());
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    /** Wakes the thread, e.g. to close a cancelled watch. */
+    synchronized void wakeUp() {
+      notifyAll();
+    }
+
+    /** Ends the use of a watch; the last one returns the lease. */
+    void release() {
+      synchronized (watchers) {
+        if (--users > 0) return;
+        watchers.remove(key);
+      }
+      lease.close();
+      wakeUp();
+    }
+
+    @Override
+    public void run() {
+      List<DirectoryWatchTask> current = new ArrayList<>();
+      while (true) {
+        synchronized (this) {
+          current.clear();
+          current.addAll(tasks);
+        }
+        if (current.isEmpty()) {
+          synchronized (watchers) {
+            // Keeps running while a watch is being started
+            if (users == 0) break;
+          }
+        }
+        boolean completed = false;
+        for (DirectoryWatchTask task : current) {
+          if (task.poll()) {
+            completed = true;
+          }
+          if (task.ended) {
+            synchronized (this) {
+              tasks.remove(task);
+            }
+            task.close();
+          }
+        }
+        if (completed) continue;
+        synchronized (this) {
+          try {
+            // Futures of the requests offer no callback; completions are picked up on wake-up
+            wait(WATCH_POLL_INTERVAL_MS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+      }
+      synchronized (this) {
+        current.clear();
+        current.addAll(tasks);
+        tasks.clear();
+      }
+      for (DirectoryWatchTask task : current) {
+        task.close();
+      }
+      LogUtils.d("SmbRepositoryImpl", "Stopped directory watcher " + Thread.currentThread());
+    }
   }
 
-  private static class CachedShare {
-    final Connection connection;
-    final Session session;
-    final DiskShare share;
-    volatile long lastAccess;
+  /**
+   * Keeps one CHANGE_NOTIFY request outstanding on an open directory and reports every response.
+   * Polled by the {@link ConnectionWatcher} of its connection; the directory handle is held until
+   * the watch ends.
+   */
+  private final class DirectoryWatchTask implements DirectoryWatch {
+    private final ConnectionWatcher watcher;
+    private final Directory directory;
+    private final String path;
+    private final String dirPath;
+    private final DirectoryChangeListener listener;
+    private volatile boolean cancelled;
+
+    /** Set once the watch was cancelled or failed; the watcher then closes it. */
+    volatile boolean ended;
+
+    private Future<SMB2ChangeNotifyResponse> pending;
+
+    DirectoryWatchTask(
+        ConnectionWatcher watcher,
+        Directory directory,
+        String path,
+        String dirPath,
+        DirectoryChangeListener listener) {
+      this.watcher = watcher;
+      this.directory = directory;
+      this.path = path;
+      this.dirPath = dirPath;
+      this.listener = listener;
+    }
+
+    /**
+     * Sends the next CHANGE_NOTIFY request if none is outstanding, and reports the response once
+     * it has arrived. Called on the watcher thread.
+     *
+     * @return true if a response was reported
+     */
+    boolean poll() {
+      if (cancelled) {
+        ended = true;
+        return false;
+      }
+      try {
+        if (pending == null) {
+          pending = directory.watchAsync(WATCH_FILTER, false);
+        }
+        if (!pending.isDone()) {
+          return false;
+        }
+        Future<SMB2ChangeNotifyResponse> request = pending;
+        pending = null;
+        List<SmbDirectoryChange> changes = readChanges(request);
+        if (!cancelled) {
+          listener.onChanged(path, changes);
+        }
+        return true;
+      } catch (Exception e) {
+        ended = true;
+        if (!cancelled) {
+          LogUtils.w(
+              "SmbRepositoryImpl", "Directory watch ended for " + dirPath + ": " + e.getMessage());
+          if (e instanceof ExecutionException
+              && e.getCause() instanceof Exception
+              && isBackgroundRelatedError((Exception) e.getCause())) {
+            watcher.lease.invalidate();
+          }
+          listener.onWatchFailed(path, e);
+        }
+        return true;
+      }
+    }
+
+    /** Returns the changes of a completed request; empty if the directory must be listed. */
+    private List<SmbDirectoryChange> readChanges(Future<SMB2ChangeNotifyResponse> request)
+        throws Exception {
+      SMB2ChangeNotifyResponse response;
+      try {
+        response = request.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof SMBApiException
+            && ((SMBApiException) e.getCause()).getStatusCode() == STATUS_NOTIFY_ENUM_DIR) {
+          return Collections.emptyList();
+        }
+        throw e;
+      }
+      long status = response.getHeader().getStatusCode();
+      if (status == STATUS_NOTIFY_ENUM_DIR) {
+        return Collections.emptyList();
+      } else if (status != 0) {
+        throw new IOException("CHANGE_NOTIFY failed with status 0x" + Long.toHexString(status));
+      }
+      List<SmbDirectoryChange> changes = new ArrayList<>();
+      var infos = response.getFileNotifyInfoList();
+      // Large batches are cheaper to apply by listing the directory once
+      if (infos.size() <= MAX_RESOLVED_CHANGES) {
+        for (var info : infos) {
+          SmbDirectoryChange change = toChange(info.getAction(), info.getFileName());
+          if (change == null) {
+            return Collections.emptyList();
+          }
+          changes.add(change);
+        }
+      }
+      return changes;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      // The watcher thread closes the handle, so cancelling does no I/O on the caller's thread
+      watcher.wakeUp();
+    }
 
-    CachedShare(Connection connection, Session session, DiskShare share) {
-      this.connection = connection;
-      this.session = session;
-      this.share = share;
-      this.lastAccess = System.currentTimeMillis();
+    /** Closes the directory handle and releases the watcher. Called on the watcher thread. */
+    void close() {
+      Future<SMB2ChangeNotifyResponse> request = pending;
+      if (request != null) {
+        request.cancel(true);
+      }
+      try {
+        directory.close();
+      } catch (Exception e) {
+        LogUtils.d("SmbRepositoryImpl", "Closing watched directory failed: " + e.getMessage());
+      }
+      watcher.release();
     }
+
+    /** Maps a FILE_NOTIFY_INFORMATION action, or returns null for an unknown action. */
+    @Nullable
+    private SmbDirectoryChange toChange(FileNotifyAction action, String name) {
+      switch (action) {
+        case FILE_ACTION_ADDED:
+          return new SmbDirectoryChange(SmbDirectoryChange.Action.ADDED, name, lookupItem(name));
+        case FILE_ACTION_MODIFIED:
+          return new SmbDirectoryChange(SmbDirectoryChange.Action.MODIFIED, name, lookupItem(name));
+        case FILE_ACTION_RENAMED_NEW_NAME:
+          return new SmbDirectoryChange(
+              SmbDirectoryChange.Action.RENAMED_NEW_NAME, name, lookupItem(name));
+        case FILE_ACTION_REMOVED:
+          return new SmbDirectoryChange(SmbDirectoryChange.Action.REMOVED, name, null);
+        case FILE_ACTION_RENAMED_OLD_NAME:
+          return new SmbDirectoryChange(SmbDirectoryChange.Action.RENAMED_OLD_NAME, name, null);
+        default:
+          return null;
+      }
+    }
+
+    /** Reads the current metadata of an entry the same way {@link #listFiles} reports it. */
+    @Nullable
+    private SmbFileItem lookupItem(String name) {
+      try {
+        FileAllInformation info =
+            watcher.lease.getShare().getFileInformation(smbJoin(dirPath, name));
+        boolean isDirectory =
+            (info.getBasicInformation().getFileAttributes()
+                    & FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue())
+                != 0;
+        return new SmbFileItem(
+            name,
+            path.isEmpty() ? name : path + "/" + name,
+            isDirectory ? SmbFileItem.Type.DIRECTORY : SmbFileItem.Type.FILE,
+            info.getStandardInformation().getEndOfFile(),
+            new Date(info.getBasicInformation().getLastWriteTime().toEpochMillis()));
+      } catch (Exception e) {
+        // Removed again before it could be read; a later notification reports that
+        return null;
+      }
+    }
+  }
+
+  // Callback-Interface
+  @FunctionalInterface
+  private interface SmbShareCallback<T> {
+    T doWithShare(DiskShare share) throws Exception;
   }
 }
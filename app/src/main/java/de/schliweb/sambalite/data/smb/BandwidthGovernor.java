@@ -0,0 +1,503 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.hierynomus.smbj.share.DiskShare;
+import de.schliweb.sambalite.util.LogUtils;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide bandwidth governor for SMB traffic, one token bucket per server.
+ *
+ * <p>Interactive requests (directory listings, thumbnails, range reads) never wait; they are
+ * announced through {@link #interactive} and their bytes are charged to the bucket. Bulk traffic
+ * (transfer queue, folder sync) asks its {@link Gate} for the bytes of each request before issuing
+ * it. While interactive requests run, and for {@link #INTERACTIVE_GRACE_MS} after the last one,
+ * bulk traffic to that server is limited to {@link #BULK_SHARE_WHILE_INTERACTIVE} of its recently
+ * measured rate, so the server queue stays short and browsing stays responsive. An optional cap
+ * from the {@link CapSource} limits bulk traffic at all times. Bulk requests waiting on the same
+ * bucket are served in start-time fair order weighted by {@link Flow}, so a folder sync cannot
+ * starve the transfer queue or the other way round.
+ */
+public final class BandwidthGovernor {
+
+  private static final String TAG = "BandwidthGovernor";
+
+  /** Fraction of the measured bulk rate that bulk traffic keeps while the user is browsing. */
+  static final double BULK_SHARE_WHILE_INTERACTIVE = 0.25;
+
+  /** Bulk traffic is never throttled below this rate for interactive traffic. */
+  static final long MIN_BULK_RATE = 256 * 1024;
+
+  /** Bulk traffic stays throttled this long after the last interactive request. */
+  static final long INTERACTIVE_GRACE_MS = 500;
+
+  /** Caps are looked up again after this interval, e.g. after a network change. */
+  static final long CAP_REFRESH_MS = 5000;
+
+  /** Bytes a limited bucket may accumulate, as time at the current rate. */
+  static final long BURST_MS = 250;
+
+  /** Length of the window used to measure rates. */
+  static final long MEASURE_WINDOW_MS = 1000;
+
+  /** Longest single wait, so a changed limit is noticed quickly. */
+  private static final long MAX_WAIT_MS = 100;
+
+  /** Number of remembered servers; the least recently used bucket is dropped beyond this. */
+  private static final int MAX_ENTRIES = 32;
+
+  private static BandwidthGovernor instance;
+
+  /** Time the current thread has waited in bulk gates since it last called takeWaitedNanos. */
+  private static final ThreadLocal<long[]> WAITED = ThreadLocal.withInitial(() -> new long[1]);
+
+  /** Origin of SMB traffic. Bulk flows share the limited rate in proportion to their weight. */
+  public enum Flow {
+    INTERACTIVE(0),
+    TRANSFER(2),
+    SYNC(1);
+
+    final int weight;
+
+    Flow(int weight) {
+      this.weight = weight;
+    }
+  }
+
+  /** Supplies the configured cap for a server. */
+  @FunctionalInterface
+  public interface CapSource {
+    /**
+     * @param serverId host:port of the server
+     * @return the cap in bytes per second, 0 for no cap
+     */
+    long capBytesPerSec(@NonNull String serverId);
+  }
+
+  private final LongSupplier nanoTime;
+  private final Map<String, Bucket> buckets =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+  private volatile CapSource capSource = serverId -> 0;
+
+  @VisibleForTesting
+  BandwidthGovernor(@NonNull LongSupplier nanoTime) {
+    this.nanoTime = nanoTime;
+  }
+
+  /** Singleton instance retrieval. Ensures thread-safe lazy initialization. */
+  public static synchronized @NonNull BandwidthGovernor getInstance() {
+    if (instance == null) {
+      instance = new BandwidthGovernor(System::nanoTime);
+    }
+    return instance;
+  }
+
+  /** Sets where caps come from. Takes effect within {@link #CAP_REFRESH_MS}. */
+  public void setCapSource(@NonNull CapSource capSource) {
+    this.capSource = capSource;
+  }
+
+  /** Returns the gate for {@code flow} traffic to the server behind {@code share}. */
+  public @NonNull Gate gate(@Nullable DiskShare share, @NonNull Flow flow) {
+    return gate(TransferTuner.serverIdFor(share), flow);
+  }
+
+  @VisibleForTesting
+  @NonNull
+  Gate gate(@NonNull String serverId, @NonNull Flow flow) {
+    return new Gate(bucket(serverId), flow);
+  }
+
+  /**
+   * Announces an interactive request to the server behind {@code share}. Bulk traffic to that
+   * server is throttled until the returned lease is closed and the grace period has passed.
+   */
+  public @NonNull Lease interactive(@Nullable DiskShare share) {
+    return interactive(TransferTuner.serverIdFor(share));
+  }
+
+  @VisibleForTesting
+  @NonNull
+  Lease interactive(@NonNull String serverId) {
+    Bucket bucket = bucket(serverId);
+    bucket.beginInteractive();
+    return new Lease(bucket);
+  }
+
+  /** Wraps {@code in} so that every read asks the gate for its bytes first. */
+  public @NonNull InputStream throttle(
+      @NonNull InputStream in, @Nullable DiskShare share, @NonNull Flow flow) {
+    Gate gate = gate(share, flow);
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        gate.acquire(1);
+        return super.read();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        gate.acquire(len);
+        return super.read(b, off, len);
+      }
+    };
+  }
+
+  /**
+   * Returns and resets the time the calling thread has spent waiting in {@link Gate#acquire}.
+   * Transfer engines subtract it from request latencies, so that a throttle is not mistaken for a
+   * congested server.
+   */
+  public static long takeWaitedNanos() {
+    long[] waited = WAITED.get();
+    long nanos = waited[0];
+    waited[0] = 0;
+    return nanos;
+  }
+
+  /** Returns one line per server with recent traffic, for diagnostics. */
+  public @NonNull List<String> describe() {
+    List<Bucket> snapshot;
+    synchronized (this) {
+      snapshot = new ArrayList<>(buckets.values());
+    }
+    List<String> lines = new ArrayList<>(snapshot.size());
+    for (Bucket bucket : snapshot) {
+      String line = bucket.describe();
+      if (line != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  /** Returns the current bulk limit for {@code serverId} in bytes per second, 0 if unlimited. */
+  @VisibleForTesting
+  long bulkLimit(@NonNull String serverId) {
+    return bucket(serverId).currentBulkLimit();
+  }
+
+  private synchronized Bucket bucket(String serverId) {
+    Bucket bucket = buckets.get(serverId);
+    if (bucket == null) {
+      bucket = new Bucket(serverId);
+      buckets.put(serverId, bucket);
+    }
+    return bucket;
+  }
+
+  /** Admission point for one flow to one server. Thread-safe and cheap to keep per transfer. */
+  public static final class Gate {
+    private final Bucket bucket;
+    private final Flow flow;
+
+    Gate(Bucket bucket, Flow flow) {
+      this.bucket = bucket;
+      this.flow = flow;
+    }
+
+    /**
+     * Waits until {@code bytes} may be sent or requested. Interactive gates only charge the bytes.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+      if (bytes <= 0) {
+        return;
+      }
+      if (flow == Flow.INTERACTIVE) {
+        bucket.charge(flow, bytes);
+        return;
+      }
+      long start = System.nanoTime();
+      try {
+        bucket.acquireBulk(flow, bytes);
+      } finally {
+        WAITED.get()[0] += System.nanoTime() - start;
+      }
+    }
+  }
+
+  /** An interactive request in progress. */
+  public static final class Lease implements Closeable {
+    private final Bucket bucket;
+    private boolean closed;
+
+    Lease(Bucket bucket) {
+      this.bucket = bucket;
+    }
+
+    /** Charges bytes read or written by the interactive request. */
+    public void charge(long bytes) {
+      if (bytes > 0) {
+        bucket.charge(Flow.INTERACTIVE, bytes);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        bucket.endInteractive();
+      }
+    }
+  }
+
+  /** A bulk request waiting for its turn. */
+  private static final class Ticket implements Comparable<Ticket> {
+    final double start;
+    final long seq;
+
+    Ticket(double start, long seq) {
+      this.start = start;
+      this.seq = seq;
+    }
+
+    @Override
+    public int compareTo(Ticket o) {
+      int c = Double.compare(start, o.start);
+      return c != 0 ? c : Long.compare(seq, o.seq);
+    }
+  }
+
+  /** Token bucket and rate statistics of one server. */
+  private final class Bucket {
+    final String serverId;
+
+    // Token bucket; tokens go negative when a request is larger than the burst (debt)
+    long tokens;
+    long refilledAt;
+
+    // Configured cap
+    long cap;
+    long capCheckedAt = Long.MIN_VALUE;
+
+    // Interactive activity
+    int activeInteractive;
+    long lastInteractiveAt = Long.MIN_VALUE;
+
+    // Start-time fair queueing of waiting bulk requests
+    final PriorityQueue<Ticket> waiting = new PriorityQueue<>();
+    final double[] finishTags = new double[Flow.values().length];
+    double virtualTime;
+    long nextSeq;
+
+    // Rate measurement
+    long windowStart;
+    final long[] windowBytes = new long[Flow.values().length];
+    boolean windowThrottled;
+    final double[] rates = new double[Flow.values().length];
+    double measuredBulkRate;
+    long lastTrafficAt = Long.MIN_VALUE;
+
+    Bucket(String serverId) {
+      this.serverId = serverId;
+      long now = nanoTime.getAsLong();
+      this.refilledAt = now;
+      this.windowStart = now;
+    }
+
+    synchronized void beginInteractive() {
+      activeInteractive++;
+      lastInteractiveAt = nanoTime.getAsLong();
+    }
+
+    synchronized void endInteractive() {
+      activeInteractive = Math.max(0, activeInteractive - 1);
+      lastInteractiveAt = nanoTime.getAsLong();
+      notifyAll();
+    }
+
+    /** Counts bytes that do not wait; they still consume tokens of a limited bucket. */
+    synchronized void charge(Flow flow, long bytes) {
+      long now = nanoTime.getAsLong();
+      if (refill(now) > 0) {
+        tokens -= bytes;
+      }
+      if (flow == Flow.INTERACTIVE) {
+        lastInteractiveAt = now;
+      }
+      record(flow, bytes, now);
+    }
+
+    synchronized void acquireBulk(Flow flow, int bytes) throws InterruptedIOException {
+      Ticket ticket = null;
+      try {
+        while (true) {
+          long now = nanoTime.getAsLong();
+          long rate = refill(now);
+          if (rate <= 0) {
+            break;
+          }
+          if (ticket == null) {
+            double start = Math.max(virtualTime, finishTags[flow.ordinal()]);
+            finishTags[flow.ordinal()] = start + (double) bytes / flow.weight;
+            ticket = new Ticket(start, nextSeq++);
+            waiting.add(ticket);
+          }
+          if (waiting.peek() == ticket && tokens >= 0) {
+            tokens -= bytes;
+            break;
+          }
+          long waitMs =
+              waiting.peek() == ticket ? Math.max(1, -tokens * 1000 / rate + 1) : MAX_WAIT_MS;
+          wait(Math.min(waitMs, MAX_WAIT_MS));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+      } finally {
+        if (ticket != null) {
+          waiting.remove(ticket);
+          virtualTime = Math.max(virtualTime, ticket.start);
+          notifyAll();
+        }
+      }
+      record(flow, bytes, nanoTime.getAsLong());
+    }
+
+    /** Adds the tokens earned since the last call and returns the bulk rate, 0 if unlimited. */
+    private long refill(long now) {
+      long rate = bulkLimit(now);
+      if (rate <= 0) {
+        tokens = 0;
+      } else {
+        long burst = Math.max(1, rate * BURST_MS / 1000);
+        long earned = (long) ((now - refilledAt) / 1e9 * rate);
+        tokens = Math.min(burst, tokens + earned);
+      }
+      refilledAt = now;
+      return rate;
+    }
+
+    private long bulkLimit(long now) {
+      if (now - capCheckedAt >= CAP_REFRESH_MS * 1_000_000L || capCheckedAt == Long.MIN_VALUE) {
+        capCheckedAt = now;
+        long newCap;
+        try {
+          newCap = Math.max(0, capSource.capBytesPerSec(serverId));
+        } catch (RuntimeException e) {
+          LogUtils.w(TAG, "Could not read bandwidth cap: " + e.getMessage());
+          newCap = 0;
+        }
+        if (newCap != cap) {
+          LogUtils.d(TAG, "Bandwidth cap for " + serverId + ": " + newCap + " bytes/s");
+          cap = newCap;
+        }
+      }
+      if (!isInteractive(now)) {
+        return cap;
+      }
+      windowThrottled = true;
+      long base = cap > 0 ? cap : (long) measuredBulkRate;
+      if (base <= 0) {
+        // Nothing measured yet; do not guess a limit
+        return 0;
+      }
+      return Math.max(MIN_BULK_RATE, (long) (base * BULK_SHARE_WHILE_INTERACTIVE));
+    }
+
+    private boolean isInteractive(long now) {
+      return activeInteractive > 0
+          || (lastInteractiveAt != Long.MIN_VALUE
+              && now - lastInteractiveAt < INTERACTIVE_GRACE_MS * 1_000_000L);
+    }
+
+    private void record(Flow flow, long bytes, long now) {
+      rollWindow(now);
+      windowBytes[flow.ordinal()] += bytes;
+      lastTrafficAt = now;
+    }
+
+    private void rollWindow(long now) {
+      long elapsed = now - windowStart;
+      if (elapsed < MEASURE_WINDOW_MS * 1_000_000L) {
+        return;
+      }
+      double seconds = elapsed / 1e9;
+      long bulkBytes = 0;
+      for (Flow f : Flow.values()) {
+        rates[f.ordinal()] = windowBytes[f.ordinal()] / seconds;
+        if (f != Flow.INTERACTIVE) {
+          bulkBytes += windowBytes[f.ordinal()];
+        }
+        windowBytes[f.ordinal()] = 0;
+      }
+      // Only unthrottled windows show what the link can carry
+      if (!windowThrottled && bulkBytes > 0) {
+        double sample = bulkBytes / seconds;
+        measuredBulkRate = measuredBulkRate == 0 ? sample : 0.5 * measuredBulkRate + 0.5 * sample;
+      }
+      windowThrottled = isInteractive(now);
+      windowStart = now;
+    }
+
+    synchronized long currentBulkLimit() {
+      return bulkLimit(nanoTime.getAsLong());
+    }
+
+    synchronized @Nullable String describe() {
+      long now = nanoTime.getAsLong();
+      if (lastTrafficAt == Long.MIN_VALUE && activeInteractive == 0 && cap == 0) {
+        return null;
+      }
+      rollWindow(now);
+      long limit = bulkLimit(now);
+      StringBuilder line = new StringBuilder(serverId).append(": ");
+      if (limit > 0) {
+        line.append("bulk ").append(mbps(limit));
+        if (isInteractive(now)) {
+          line.append(" (browsing)");
+        } else {
+          line.append(" (cap)");
+        }
+      } else {
+        line.append("bulk unlimited");
+      }
+      if (measuredBulkRate > 0) {
+        line.append(", measured ").append(mbps(measuredBulkRate));
+      }
+      line.append(", transfer ")
+          .append(mbps(rates[Flow.TRANSFER.ordinal()]))
+          .append(", sync ")
+          .append(mbps(rates[Flow.SYNC.ordinal()]))
+          .append(", browse ")
+          .append(mbps(rates[Flow.INTERACTIVE.ordinal()]));
+      if (!waiting.isEmpty()) {
+        line.append(", ").append(waiting.size()).append(" waiting");
+      }
+      return line.toString();
+    }
+  }
+
+  private static String mbps(double bytesPerSec) {
+    return String.format(Locale.ROOT, "%.1f MB/s", bytesPerSec / (1024 * 1024));
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * Process-wide pool of transfer buffers shared by all transfer engines.
+ *
+ * <p>Buffers come in power-of-two size classes from {@link #MIN_CLASS_SIZE} to {@link
+ * #MAX_CLASS_SIZE}, so a buffer may be larger than requested. The bytes held by the pool (leased
+ * plus idle) are capped at {@link #getMaxBytes()}: idle buffers of other classes are dropped to
+ * make room, and {@link #acquire} waits for leased buffers to come back before exceeding the cap.
+ * After {@link #ACQUIRE_TIMEOUT_MS} it allocates anyway so a stuck consumer cannot stall every
+ * transfer.
+ *
+ * <p>Every acquired buffer must be released exactly once and must not be used afterwards.
+ */
+public final class BufferPool {
+
+  /** Smallest size class. */
+  static final int MIN_CLASS_SIZE = 64 * 1024;
+
+  /** Largest size class; bigger requests are allocated directly and never pooled. */
+  static final int MAX_CLASS_SIZE = 8 * 1024 * 1024;
+
+  /** Upper bound for the default cap; smaller heaps get a quarter of the heap. */
+  static final long DEFAULT_MAX_BYTES = 96L * 1024 * 1024;
+
+  /** Longest time {@link #acquire} waits for a buffer before allocating beyond the cap. */
+  static final long ACQUIRE_TIMEOUT_MS = 10_000;
+
+  private static final int CLASS_COUNT =
+      Integer.numberOfTrailingZeros(MAX_CLASS_SIZE) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE)
+          + 1;
+
+  private static BufferPool instance;
+
+  private final long maxBytes;
+
+  @SuppressWarnings("unchecked")
+  private final ArrayDeque<byte[]>[] free = new ArrayDeque[CLASS_COUNT];
+
+  private long leasedBytes;
+  private long idleBytes;
+  private long peakBytes;
+  private long hits;
+  private long misses;
+  private long overflows;
+
+  @VisibleForTesting
+  BufferPool(long maxBytes) {
+    this.maxBytes = Math.max(MAX_CLASS_SIZE, maxBytes);
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      free[i] = new ArrayDeque<>();
+    }
+  }
+
+  /** Singleton instance retrieval. Ensures thread-safe lazy initialization. */
+  public static synchronized @NonNull BufferPool getInstance() {
+    if (instance == null) {
+      instance =
+          new BufferPool(Math.min(DEFAULT_MAX_BYTES, Runtime.getRuntime().maxMemory() / 4));
+    }
+    return instance;
+  }
+
+  /**
+   * Returns a buffer of at least {@code minSize} bytes, waiting for released buffers if the pool is
+   * at its cap.
+   *
+   * @throws InterruptedIOException if the calling thread is interrupted while waiting
+   */
+  public @NonNull byte[] acquire(int minSize) throws InterruptedIOException {
+    if (minSize > MAX_CLASS_SIZE) {
+      synchronized (this) {
+        misses++;
+      }
+      return new byte[minSize];
+    }
+    int cls = classOf(minSize);
+    int size = sizeOf(cls);
+    long deadline = System.currentTimeMillis() + ACQUIRE_TIMEOUT_MS;
+    synchronized (this) {
+      while (true) {
+        byte[] idle = takeIdle(cls);
+        if (idle != null) {
+          return idle;
+        }
+        if (reserve(size)) {
+          break;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          overflows++;
+          misses++;
+          leasedBytes += size;
+          peakBytes = Math.max(peakBytes, leasedBytes + idleBytes);
+          break;
+        }
+        try {
+          wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for a transfer buffer");
+        }
+      }
+    }
+    return new byte[size];
+  }
+
+  /**
+   * Returns a buffer of at least {@code minSize} bytes, or null if that would exceed the cap. Used
+   * by pipelines that already hold buffers and must drain them instead of waiting.
+   */
+  public @Nullable byte[] tryAcquire(int minSize) {
+    if (minSize > MAX_CLASS_SIZE) {
+      return null;
+    }
+    int cls = classOf(minSize);
+    int size = sizeOf(cls);
+    synchronized (this) {
+      byte[] idle = takeIdle(cls);
+      if (idle != null) {
+        return idle;
+      }
+      if (!reserve(size)) {
+        return null;
+      }
+    }
+    return new byte[size];
+  }
+
+  /** Returns a buffer obtained from {@link #acquire} or {@link #tryAcquire} to the pool. */
+  public void release(@Nullable byte[] buffer) {
+    if (buffer == null || buffer.length > MAX_CLASS_SIZE || !isClassSize(buffer.length)) {
+      return;
+    }
+    int size = buffer.length;
+    synchronized (this) {
+      leasedBytes = Math.max(0, leasedBytes - size);
+      if (leasedBytes + idleBytes + size <= maxBytes) {
+        free[classOf(size)].push(buffer);
+        idleBytes += size;
+      }
+      notifyAll();
+    }
+  }
+
+  /** Drops all idle buffers. */
+  public synchronized void trim() {
+    for (ArrayDeque<byte[]> q : free) {
+      q.clear();
+    }
+    idleBytes = 0;
+    notifyAll();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** Number of requests served from an idle pooled buffer. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** Number of requests that had to allocate a new buffer. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** Number of allocations that exceeded the cap after waiting {@link #ACQUIRE_TIMEOUT_MS}. */
+  public synchronized long getOverflows() {
+    return overflows;
+  }
+
+  /** Highest number of bytes held (leased plus idle) since the pool was created. */
+  public synchronized long getPeakBytes() {
+    return peakBytes;
+  }
+
+  public synchronized long getLeasedBytes() {
+    return leasedBytes;
+  }
+
+  public synchronized long getIdleBytes() {
+    return idleBytes;
+  }
+
+  /** Takes an idle buffer of the class and counts a hit, or returns null. Caller holds the lock. */
+  private @Nullable byte[] takeIdle(int cls) {
+    byte[] buffer = free[cls].poll();
+    if (buffer == null) {
+      return null;
+    }
+    idleBytes -= buffer.length;
+    leasedBytes += buffer.length;
+    hits++;
+    return buffer;
+  }
+
+  /**
+   * Accounts a new allocation of {@code size} bytes if it fits under the cap, dropping idle buffers
+   * of other classes if necessary. Caller holds the lock.
+   */
+  private boolean reserve(int size) {
+    for (int i = CLASS_COUNT - 1; i >= 0 && leasedBytes + idleBytes + size > maxBytes; i--) {
+      while (!free[i].isEmpty() && leasedBytes + idleBytes + size > maxBytes) {
+        idleBytes -= free[i].poll().length;
+      }
+    }
+    if (leasedBytes + idleBytes + size > maxBytes) {
+      return false;
+    }
+    misses++;
+    leasedBytes += size;
+    peakBytes = Math.max(peakBytes, leasedBytes + idleBytes);
+    return true;
+  }
+
+  static int classOf(int size) {
+    int rounded = size <= MIN_CLASS_SIZE ? MIN_CLASS_SIZE : Integer.highestOneBit(size - 1) << 1;
+    return Integer.numberOfTrailingZeros(rounded) - Integer.numberOfTrailingZeros(MIN_CLASS_SIZE);
+  }
+
+  static int sizeOf(int cls) {
+    return MIN_CLASS_SIZE << cls;
+  }
+
+  private static boolean isClassSize(int length) {
+    return length >= MIN_CLASS_SIZE && Integer.bitCount(length) == 1;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import java.util.BitSet;
+
+/**
+ * Sparse record of which fixed-size blocks of a file have been written.
+ *
+ * <p>Used by the positional download mode of {@link PipelinedDownloader}: blocks complete in any
+ * order, and a retry with the same map only fetches the blocks that are still missing. The last
+ * block may be shorter than {@link #getBlockSize()}. Instances are thread-safe.
+ */
+public final class CompletionMap {
+
+  private final long length;
+  private final int blockSize;
+  private final int blockCount;
+  private final BitSet done;
+  private long completedBytes;
+
+  /**
+   * @param length size of the file in bytes
+   * @param blockSize size of one block; every block except the last has exactly this size
+   */
+  public CompletionMap(long length, int blockSize) {
+    if (length < 0 || blockSize <= 0) {
+      throw new IllegalArgumentException("length=" + length + ", blockSize=" + blockSize);
+    }
+    long blocks = (length + blockSize - 1) / blockSize;
+    if (blocks > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many blocks for " + length + " bytes");
+    }
+    this.length = length;
+    this.blockSize = blockSize;
+    this.blockCount = (int) blocks;
+    this.done = new BitSet(blockCount);
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public int getBlockCount() {
+    return blockCount;
+  }
+
+  /** File offset of the first byte of {@code block}. */
+  public long offsetOf(int block) {
+    return (long) block * blockSize;
+  }
+
+  /** Number of bytes in {@code block}; only the last block may be shorter. */
+  public int lengthOf(int block) {
+    return (int) Math.min(blockSize, length - offsetOf(block));
+  }
+
+  /** Marks {@code block} as written. Marking a block twice has no effect. */
+  public synchronized void markDone(int block) {
+    checkBlock(block);
+    if (!done.get(block)) {
+      done.set(block);
+      completedBytes += lengthOf(block);
+    }
+  }
+
+  public synchronized boolean isDone(int block) {
+    checkBlock(block);
+    return done.get(block);
+  }
+
+  /** Returns the first missing block at or after {@code fromBlock}, or -1 if there is none. */
+  public synchronized int nextMissing(int fromBlock) {
+    int block = done.nextClearBit(Math.max(0, fromBlock));
+    return block < blockCount ? block : -1;
+  }
+
+  /** Number of bytes in blocks marked as written. */
+  public synchronized long getCompletedBytes() {
+    return completedBytes;
+  }
+
+  public synchronized boolean isComplete() {
+    return completedBytes == length;
+  }
+
+  /** Forgets all completed blocks, e.g. when the partially written file was lost. */
+  public synchronized void clear() {
+    done.clear();
+    completedBytes = 0;
+  }
+
+  private void checkBlock(int block) {
+    if (block < 0 || block >= blockCount) {
+      throw new IndexOutOfBoundsException("block " + block + " of " + blockCount);
+    }
+  }
+
+  @NonNull
+  @Override
+  public synchronized String toString() {
+    return done.cardinality() + "/" + blockCount + " blocks (" + completedBytes + " bytes)";
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.hierynomus.smbj.share.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+/**
+ * End-to-end checksum of a file, computed on the bytes that already flow through a copy loop.
+ *
+ * <p>CRC32C uses the CRC instructions of ARMv8 CPUs and costs next to nothing per byte; SHA-256 is
+ * available where a cryptographic digest is required. Values are stored as {@code
+ * "<algorithm>:<hex>"}, so a later verification knows how to recompute them. {@link #ofRemote}
+ * reads a remote file back with several reads in flight and hashes the chunks in order.
+ */
+public final class ContentChecksum {
+
+  /** Supported checksum algorithms. */
+  public enum Algorithm {
+    CRC32C("crc32c"),
+    SHA256("sha256");
+
+    final String prefix;
+
+    Algorithm(String prefix) {
+      this.prefix = prefix;
+    }
+
+    /** Returns the algorithm for a name such as "crc32c" or "sha256", or null for anything else. */
+    public static @Nullable Algorithm parse(@Nullable String name) {
+      if (name == null) {
+        return null;
+      }
+      String normalized = name.trim().toLowerCase(Locale.ROOT).replace("-", "");
+      for (Algorithm a : values()) {
+        if (a.prefix.equals(normalized)) {
+          return a;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final Algorithm algorithm;
+  private final CRC32C crc;
+  private final MessageDigest digest;
+  private long length;
+  private String value;
+
+  private ContentChecksum(Algorithm algorithm) {
+    this.algorithm = algorithm;
+    if (algorithm == Algorithm.CRC32C) {
+      this.crc = new CRC32C();
+      this.digest = null;
+    } else {
+      this.crc = null;
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 not available", e);
+      }
+    }
+  }
+
+  /** Returns a new checksum, or null if {@code algorithm} is null (integrity mode off). */
+  public static @Nullable ContentChecksum create(@Nullable Algorithm algorithm) {
+    return algorithm != null ? new ContentChecksum(algorithm) : null;
+  }
+
+  /** Returns the algorithm of a stored checksum value, or null if it is not recognized. */
+  public static @Nullable Algorithm algorithmOf(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+    int colon = value.indexOf(':');
+    return colon > 0 ? Algorithm.parse(value.substring(0, colon)) : null;
+  }
+
+  public @NonNull Algorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  /** Returns the number of bytes hashed so far. */
+  public synchronized long getLength() {
+    return length;
+  }
+
+  /** Adds {@code len} bytes of {@code b} to the checksum. */
+  public synchronized void update(@NonNull byte[] b, int off, int len) {
+    if (value != null) {
+      throw new IllegalStateException("Checksum already finished");
+    }
+    if (crc != null) {
+      crc.update(b, off, len);
+    } else {
+      digest.update(b, off, len);
+    }
+    length += len;
+  }
+
+  /** Finishes the checksum and returns it as {@code "<algorithm>:<hex>"}. */
+  public synchronized @NonNull String getValue() {
+    if (value == null) {
+      String hex;
+      if (crc != null) {
+        hex = String.format(Locale.ROOT, "%08x", crc.getValue());
+      } else {
+        StringBuilder sb = new StringBuilder(64);
+        for (byte x : digest.digest()) {
+          sb.append(String.format(Locale.ROOT, "%02x", x));
+        }
+        hex = sb.toString();
+      }
+      value = algorithm.prefix + ":" + hex;
+    }
+    return value;
+  }
+
+  /**
+   * Reads and hashes up to {@code count} bytes of {@code in}, e.g. the part of a file that a
+   * resumed transfer does not copy again.
+   *
+   * @return the number of bytes hashed; less than {@code count} only at EOF
+   */
+  public long absorb(@NonNull InputStream in, long count) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long total = 0;
+    while (total < count) {
+      int n = in.read(buffer, 0, (int) Math.min(buffer.length, count - total));
+      if (n < 0) {
+        break;
+      }
+      update(buffer, 0, n);
+      total += n;
+    }
+    return total;
+  }
+
+  /** Wraps {@code in} so that every byte read, or skipped, is hashed. */
+  public @NonNull InputStream wrap(@NonNull InputStream in) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          update(new byte[] {(byte) b}, 0, 1);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+          update(b, off, n);
+        }
+        return n;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        // Skipped bytes are part of the file; read them so they are hashed
+        return absorb(in, n);
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    };
+  }
+
+  /** Wraps {@code out} so that every byte written is hashed. */
+  public @NonNull OutputStream wrap(@NonNull OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        update(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        update(b, off, len);
+      }
+    };
+  }
+
+  /** Returns the finished value of {@code checksum}, or null if no checksum was computed. */
+  public static @Nullable String valueOf(@Nullable ContentChecksum checksum) {
+    return checksum != null ? checksum.getValue() : null;
+  }
+
+  /** Returns true if {@code expected} and {@code actual} denote the same checksum. */
+  public static boolean matches(@Nullable String expected, @Nullable String actual) {
+    return expected != null && expected.equalsIgnoreCase(actual);
+  }
+
+  /**
+   * Reads {@code size} bytes of an open remote file back and returns their checksum. Several reads
+   * are kept in flight (see {@link PipelinedDownloader}); the chunks are hashed in file order.
+   *
+   * @throws InterruptedIOException if the listener stopped the verification
+   */
+  public static @NonNull String ofRemote(
+      @NonNull File remoteFile,
+      long size,
+      @NonNull Algorithm algorithm,
+      @NonNull BandwidthGovernor.Flow flow,
+      @NonNull PipelinedDownloader.ProgressListener listener)
+      throws IOException {
+    ContentChecksum checksum = new ContentChecksum(algorithm);
+    OutputStream sink =
+        new OutputStream() {
+          @Override
+          public void write(int b) {
+            checksum.update(new byte[] {(byte) b}, 0, 1);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) {
+            checksum.update(b, off, len);
+          }
+        };
+    boolean completed =
+        PipelinedDownloader.forShare(remoteFile.getDiskShare())
+            .download(PipelinedDownloader.reader(remoteFile, flow), 0, size, sink, listener);
+    if (!completed) {
+      throw new InterruptedIOException("Verification stopped");
+    }
+    return checksum.getValue();
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.hierynomus.smbj.share.DiskShare;
+import com.hierynomus.smbj.share.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Download engine that keeps several SMB READ requests in flight on one connection.
+ *
+ * <p>The SMB connection multiplexes the outstanding reads, which hides network round-trip latency
+ * and keeps the pipe full on high-latency links. Chunk size and the number of outstanding reads
+ * come from a {@link TransferWindow}. A dedicated, per-download serial writer decouples slow
+ * SAF/disk writes from the read pipeline; chunk buffers come from the shared {@link BufferPool} and
+ * the write queue is bounded to cap memory usage. Downloads can start at an arbitrary offset
+ * (resume) and are stopped cooperatively through the {@link ProgressListener}.
+ *
+ * <p>Two sink modes exist. {@link #download} writes to an output stream strictly in order, which is
+ * required for SAF streams. {@link #downloadToFile} writes each chunk at its own offset of a
+ * preallocated local file as soon as it arrives, so a slow chunk does not hold back the ones behind
+ * it, and tracks finished blocks in a {@link CompletionMap} so a retry fetches only missing ranges.
+ */
+public final class PipelinedDownloader {
+
+  /** Maximum number of chunks queued for the writer before the read loop waits. */
+  public static final int DEFAULT_WRITE_QUEUE = 2;
+
+  private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+  /**
+   * Shared, elastic thread pool for reads and writes (also used by {@link PipelinedUploader}); idle
+   * threads die after 60 s.
+   */
+  static final ExecutorService IO_EXECUTOR =
+      Executors.newCachedThreadPool(
+          r -> {
+            Thread t = new Thread(r, "smb-pipeline-" + THREAD_COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          });
+
+  /** Reads up to {@code length} bytes at {@code fileOffset} into {@code buffer}. */
+  @FunctionalInterface
+  public interface RangeReader {
+    int read(byte[] buffer, long fileOffset, int bufferOffset, int length) throws IOException;
+  }
+
+  /** Receives the download position after each chunk has been handed to the writer. */
+  @FunctionalInterface
+  public interface ProgressListener {
+    /**
+     * @param position absolute number of bytes of the file that have been received so far
+     * @param chunkLength size of the chunk that was just received
+     * @return true to continue, false to stop the download
+     */
+    boolean onProgress(long position, int chunkLength) throws IOException;
+  }
+
+  private final TransferWindow window;
+  private final int writeQueue;
+  private final BufferPool buffers;
+
+  public PipelinedDownloader(@NonNull TransferWindow window, int writeQueue) {
+    this(window, writeQueue, BufferPool.getInstance());
+  }
+
+  PipelinedDownloader(@NonNull TransferWindow window, int writeQueue, @NonNull BufferPool buffers) {
+    this.window = window;
+    this.writeQueue = Math.max(1, writeQueue);
+    this.buffers = buffers;
+  }
+
+  /** Creates an engine with a fixed chunk size and number of outstanding reads. */
+  public PipelinedDownloader(int chunkSize, int readers, int writeQueue) {
+    this(TransferWindow.fixed(chunkSize, readers), writeQueue);
+  }
+
+  /**
+   * Returns an engine using the adaptive read window learned for the server behind {@code share}.
+   */
+  public static @NonNull PipelinedDownloader forShare(@Nullable DiskShare share) {
+    return new PipelinedDownloader(
+        TransferTuner.getInstance().downloadWindow(share), DEFAULT_WRITE_QUEUE);
+  }
+
+  public @NonNull TransferWindow getWindow() {
+    return window;
+  }
+
+  /** Files of at least this size should use {@link #download}; smaller ones stream directly. */
+  public long getParallelThreshold() {
+    return window.getParallelThreshold();
+  }
+
+  /** Adapts an open SMBJ file handle to a {@link RangeReader} for the transfer queue. */
+  public static @NonNull RangeReader reader(@NonNull File remoteFile) {
+    return reader(remoteFile, BandwidthGovernor.Flow.TRANSFER);
+  }
+
+  /**
+   * Adapts an open SMBJ file handle to a {@link RangeReader} whose reads wait for the {@link
+   * BandwidthGovernor} of the file's server.
+   */
+  public static @NonNull RangeReader reader(
+      @NonNull File remoteFile, @NonNull BandwidthGovernor.Flow flow) {
+    BandwidthGovernor.Gate gate =
+        BandwidthGovernor.getInstance().gate(remoteFile.getDiskShare(), flow);
+    return (buffer, fileOffset, bufferOffset, length) -> {
+      gate.acquire(length);
+      return remoteFile.read(buffer, fileOffset, bufferOffset, length);
+    };
+  }
+
+  /**
+   * Downloads the byte range {@code [startOffset, endOffset)} and writes it to {@code out} in
+   * order. The stream is flushed but not closed.
+   *
+   * @return true if the whole range was written, false if the listener stopped the download. In
+   *     both cases every byte reported to the listener has been written to {@code out}.
+   * @throws IOException on read/write failures or if the remote file ends prematurely
+   */
+  public boolean download(
+      @NonNull RangeReader reader,
+      long startOffset,
+      long endOffset,
+      @NonNull OutputStream out,
+      @NonNull ProgressListener listener)
+      throws IOException {
+    SerialExecutor writer = new SerialExecutor(IO_EXECUTOR);
+    AtomicBoolean writeFailed = new AtomicBoolean(false);
+    final int chunkSize = window.getChunkSize();
+    ArrayDeque<Chunk> inFlight = new ArrayDeque<>(window.getMaxWindow());
+    ArrayDeque<Future<?>> pendingWrites = new ArrayDeque<>(writeQueue + 1);
+    long submitOffset = startOffset;
+    long position = startOffset;
+    boolean completed = false;
+    try {
+      while (submitOffset < endOffset || !inFlight.isEmpty()) {
+        // Keep the read pipeline full; the window adapts to the observed latency
+        while (inFlight.size() < window.getWindow() && submitOffset < endOffset) {
+          final long offset = submitOffset;
+          final int length = (int) Math.min(chunkSize, endOffset - offset);
+          // Only wait for memory when nothing is in flight; otherwise drain first
+          final byte[] buffer =
+              inFlight.isEmpty() ? buffers.acquire(length) : buffers.tryAcquire(length);
+          if (buffer == null) {
+            break;
+          }
+          submitOffset += length;
+          final long issued = System.nanoTime();
+          FutureTask<Void> task =
+              new FutureTask<>(
+                  () -> {
+                    // Time spent in the bandwidth gate is not server latency
+                    BandwidthGovernor.takeWaitedNanos();
+                    try {
+                      readChunk(reader, buffer, offset, length);
+                      window.onChunkCompleted(
+                          length, System.nanoTime() - issued - BandwidthGovernor.takeWaitedNanos());
+                      return null;
+                    } catch (IOException e) {
+                      window.onChunkFailed();
+                      throw e;
+                    }
+                  });
+          IO_EXECUTOR.execute(task);
+          inFlight.add(new Chunk(buffer, length, task));
+        }
+
+        final Chunk chunk = inFlight.peek();
+        await(chunk.read);
+        inFlight.remove();
+
+        // Writes stay strictly in order (serial writer) and never stall the read pipeline.
+        // The write task owns the buffer from here on and returns it to the pool.
+        FutureTask<Void> write =
+            new FutureTask<>(
+                () -> {
+                  try {
+                    // A failed write must not be followed by later chunks (would corrupt order)
+                    if (writeFailed.get()) {
+                      throw new IOException("Skipped write after earlier write failure");
+                    }
+                    out.write(chunk.buffer, 0, chunk.length);
+                  } catch (IOException | RuntimeException e) {
+                    writeFailed.set(true);
+                    throw e;
+                  } finally {
+                    buffers.release(chunk.buffer);
+                  }
+                  return null;
+                });
+        writer.execute(write);
+        pendingWrites.add(write);
+        while (pendingWrites.size() > writeQueue) {
+          await(pendingWrites.remove());
+        }
+
+        position += chunk.length;
+        if (!listener.onProgress(position, chunk.length)) {
+          break;
+        }
+      }
+      completed = position >= endOffset;
+
+      // Wait for all outstanding writes to reach the output stream before returning
+      while (!pendingWrites.isEmpty()) {
+        await(pendingWrites.remove());
+      }
+      out.flush();
+      return completed;
+    } finally {
+      // Outstanding reads still fill their buffers; wait for them before pooling the buffers.
+      for (Chunk c : inFlight) {
+        try {
+          c.read.get();
+        } catch (Exception ignored) {
+          // the primary failure is propagated by the caller's exception
+        }
+        buffers.release(c.buffer);
+      }
+      if (!completed) {
+        // Let already queued writes finish so the output reflects every reported byte.
+        for (Future<?> f : pendingWrites) {
+          try {
+            f.get();
+          } catch (Exception ignored) {
+            // the primary failure is propagated by the caller's exception
+          }
+        }
+      }
+      TransferTuner.getInstance().remember(window);
+    }
+  }
+
+  /**
+   * Downloads every block that {@code done} does not yet record and writes it at its offset of
+   * {@code target}. The file is created if needed and sized to {@link CompletionMap#getLength()};
+   * if it had to be resized, previously completed blocks are discarded. Blocks are written as their
+   * reads complete, in any order, and marked in {@code done} once they are on disk, so calling this
+   * again with the same map and file after a failure only fetches the missing blocks.
+   *
+   * @return true if the file is complete, false if the listener stopped the download. In both
+   *     cases every block recorded in {@code done} has been written to {@code target}.
+   * @throws IOException on read/write failures or if the remote file ends prematurely
+   */
+  public boolean downloadToFile(
+      @NonNull RangeReader reader,
+      @NonNull java.io.File target,
+      @NonNull CompletionMap done,
+      @NonNull ProgressListener listener)
+      throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+      if (raf.length() != done.getLength()) {
+        done.clear();
+        raf.setLength(done.getLength());
+      }
+      final FileChannel channel = raf.getChannel();
+      CompletionService<Integer> completions = new ExecutorCompletionService<>(IO_EXECUTOR);
+      int inFlight = 0;
+      int nextBlock = done.nextMissing(0);
+      try {
+        while (nextBlock >= 0 || inFlight > 0) {
+          // Keep the read pipeline full; the window adapts to the observed latency
+          while (inFlight < window.getWindow() && nextBlock >= 0) {
+            final int block = nextBlock;
+            final int length = done.lengthOf(block);
+            // Only wait for memory when nothing is in flight; otherwise drain first
+            final byte[] buffer =
+                inFlight == 0 ? buffers.acquire(length) : buffers.tryAcquire(length);
+            if (buffer == null) {
+              break;
+            }
+            nextBlock = done.nextMissing(block + 1);
+            final long offset = done.offsetOf(block);
+            final long issued = System.nanoTime();
+            completions.submit(
+                () -> {
+                  // Time spent in the bandwidth gate is not server latency
+                  BandwidthGovernor.takeWaitedNanos();
+                  try {
+                    try {
+                      readChunk(reader, buffer, offset, length);
+                    } catch (IOException e) {
+                      window.onChunkFailed();
+                      throw e;
+                    }
+                    window.onChunkCompleted(
+                        length, System.nanoTime() - issued - BandwidthGovernor.takeWaitedNanos());
+                    writeFully(channel, buffer, offset, length);
+                  } finally {
+                    buffers.release(buffer);
+                  }
+                  done.markDone(block);
+                  return length;
+                });
+            inFlight++;
+          }
+          if (inFlight == 0) {
+            break;
+          }
+
+          // Take whichever block finished first; no head-of-line blocking behind a slow read
+          Future<Integer> finished = takeCompleted(completions);
+          inFlight--;
+          int length = await(finished);
+          if (!listener.onProgress(done.getCompletedBytes(), length)) {
+            return false;
+          }
+        }
+        return done.isComplete();
+      } finally {
+        // Outstanding tasks still use the channel and their buffers; wait before closing
+        while (inFlight > 0) {
+          try {
+            takeCompleted(completions).get();
+          } catch (Exception ignored) {
+            // the primary failure is propagated by the caller's exception
+          }
+          inFlight--;
+        }
+        TransferTuner.getInstance().remember(window);
+      }
+    }
+  }
+
+  private static Future<Integer> takeCompleted(CompletionService<Integer> completions)
+      throws InterruptedIOException {
+    try {
+      return completions.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Transfer interrupted");
+    }
+  }
+
+  /** Writes {@code length} bytes of {@code buffer} at {@code position} of {@code channel}. */
+  static void writeFully(FileChannel channel, byte[] buffer, long position, int length)
+      throws IOException {
+    ByteBuffer src = ByteBuffer.wrap(buffer, 0, length);
+    while (src.hasRemaining()) {
+      position += channel.write(src, position);
+    }
+  }
+
+  /** Reads exactly {@code length} bytes starting at {@code offset} into {@code buffer}. */
+  static void readChunk(RangeReader reader, byte[] buffer, long offset, int length)
+      throws IOException {
+    int pos = 0;
+    while (pos < length) {
+      int read = reader.read(buffer, offset + pos, pos, length - pos);
+      if (read <= 0) {
+        throw new IOException("Unexpected EOF at offset " + (offset + pos));
+      }
+      pos += read;
+    }
+  }
+
+  static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Transfer interrupted");
+    } catch (CancellationException e) {
+      throw new InterruptedIOException("Transfer cancelled");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  /** A pooled buffer and the read filling its first {@code length} bytes. */
+  private static final class Chunk {
+    final byte[] buffer;
+    final int length;
+    final Future<Void> read;
+
+    Chunk(byte[] buffer, int length, Future<Void> read) {
+      this.buffer = buffer;
+      this.length = length;
+      this.read = read;
+    }
+  }
+
+  /** Runs submitted tasks one at a time, in submission order, on a backing executor. */
+  private static final class SerialExecutor implements Executor {
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final Executor backing;
+    private Runnable active;
+
+    SerialExecutor(Executor backing) {
+      this.backing = backing;
+    }
+
+    @Override
+    public synchronized void execute(@NonNull Runnable r) {
+      tasks.add(
+          () -> {
+            try {
+              r.run();
+            } finally {
+              scheduleNext();
+            }
+          });
+      if (active == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      active = tasks.poll();
+      if (active != null) {
+        backing.execute(active);
+      }
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.hierynomus.smbj.share.DiskShare;
+import com.hierynomus.smbj.share.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Upload engine that reads the local source ahead into chunks and keeps several positional SMB
+ * WRITE requests in flight on one connection.
+ *
+ * <p>Chunk size and the number of outstanding writes come from a {@link TransferWindow}. Each chunk
+ * is written at its own file offset, so the requests may complete in any order. The engine reports
+ * progress only for the contiguous prefix of the file that has been acknowledged by the server,
+ * which makes the reported position a safe resume offset. Before returning or throwing, all
+ * outstanding writes are awaited so no request races with closing the file handle. Chunk buffers
+ * come from the shared {@link BufferPool}.
+ */
+public final class PipelinedUploader {
+
+  /** Writes {@code length} bytes of {@code buffer} at {@code fileOffset} of the remote file. */
+  @FunctionalInterface
+  public interface RangeWriter {
+    void write(byte[] buffer, long fileOffset, int bufferOffset, int length) throws IOException;
+  }
+
+  /** Receives the acknowledged, contiguous upload position after each completed chunk. */
+  @FunctionalInterface
+  public interface ProgressListener {
+    /**
+     * @param position number of bytes from the start of the file that are known to be written
+     * @param chunkLength size of the chunk that was just acknowledged
+     * @return true to continue, false to stop the upload
+     */
+    boolean onProgress(long position, int chunkLength) throws IOException;
+  }
+
+  private final TransferWindow window;
+  private final BufferPool buffers;
+
+  public PipelinedUploader(@NonNull TransferWindow window) {
+    this(window, BufferPool.getInstance());
+  }
+
+  PipelinedUploader(@NonNull TransferWindow window, @NonNull BufferPool buffers) {
+    this.window = window;
+    this.buffers = buffers;
+  }
+
+  /** Creates an engine with a fixed chunk size and number of outstanding writes. */
+  public PipelinedUploader(int chunkSize, int writers) {
+    this(TransferWindow.fixed(chunkSize, writers));
+  }
+
+  /**
+   * Returns an engine using the adaptive write window learned for the server behind {@code share}.
+   */
+  public static @NonNull PipelinedUploader forShare(@Nullable DiskShare share) {
+    return new PipelinedUploader(TransferTuner.getInstance().uploadWindow(share));
+  }
+
+  public @NonNull TransferWindow getWindow() {
+    return window;
+  }
+
+  /** Adapts an open SMBJ file handle to a {@link RangeWriter} for the transfer queue. */
+  public static @NonNull RangeWriter writer(@NonNull File remoteFile) {
+    return writer(remoteFile, BandwidthGovernor.Flow.TRANSFER);
+  }
+
+  /**
+   * Adapts an open SMBJ file handle to a {@link RangeWriter} whose writes wait for the {@link
+   * BandwidthGovernor} of the file's server.
+   */
+  public static @NonNull RangeWriter writer(
+      @NonNull File remoteFile, @NonNull BandwidthGovernor.Flow flow) {
+    BandwidthGovernor.Gate gate =
+        BandwidthGovernor.getInstance().gate(remoteFile.getDiskShare(), flow);
+    return (buffer, fileOffset, bufferOffset, length) -> {
+      gate.acquire(length);
+      remoteFile.write(buffer, fileOffset, bufferOffset, length);
+    };
+  }
+
+  /**
+   * Uploads {@code in} until EOF, writing the first byte read at {@code startOffset}. The caller is
+   * responsible for positioning the stream (for resume) and for closing it.
+   *
+   * @return true if the stream was uploaded completely, false if the listener stopped the upload.
+   *     When stopped, every byte up to the last reported position has been written.
+   * @throws IOException on read/write failures
+   */
+  public boolean upload(
+      @NonNull InputStream in,
+      long startOffset,
+      @NonNull RangeWriter writer,
+      @NonNull ProgressListener listener)
+      throws IOException {
+    final int chunkSize = window.getChunkSize();
+    ArrayDeque<Future<Integer>> inFlight = new ArrayDeque<>(window.getMaxWindow());
+    long submitOffset = startOffset;
+    long position = startOffset;
+    boolean eof = false;
+    boolean stopped = false;
+    try {
+      while (true) {
+        // Read ahead and keep the write window full; the window adapts to the observed latency
+        while (!eof && !stopped && inFlight.size() < window.getWindow()) {
+          // Only wait for memory when nothing is in flight; otherwise drain first
+          final byte[] chunk =
+              inFlight.isEmpty() ? buffers.acquire(chunkSize) : buffers.tryAcquire(chunkSize);
+          if (chunk == null) {
+            break;
+          }
+          final int length;
+          try {
+            length = readFully(in, chunk, chunkSize);
+          } catch (IOException | RuntimeException e) {
+            buffers.release(chunk);
+            throw e;
+          }
+          if (length < chunkSize) {
+            eof = true;
+          }
+          if (length <= 0) {
+            buffers.release(chunk);
+            break;
+          }
+          final long offset = submitOffset;
+          submitOffset += length;
+          final long issued = System.nanoTime();
+          FutureTask<Integer> task =
+              new FutureTask<>(
+                  () -> {
+                    // Time spent in the bandwidth gate is not server latency
+                    BandwidthGovernor.takeWaitedNanos();
+                    try {
+                      writer.write(chunk, offset, 0, length);
+                    } catch (IOException e) {
+                      window.onChunkFailed();
+                      throw e;
+                    } finally {
+                      buffers.release(chunk);
+                    }
+                    window.onChunkCompleted(
+                        length, System.nanoTime() - issued - BandwidthGovernor.takeWaitedNanos());
+                    return length;
+                  });
+          PipelinedDownloader.IO_EXECUTOR.execute(task);
+          inFlight.add(task);
+        }
+        if (inFlight.isEmpty()) {
+          break;
+        }
+
+        // Chunks are queued in offset order, so the head advances the contiguous position
+        int written = PipelinedDownloader.await(inFlight.remove());
+        position += written;
+        if (!stopped && !listener.onProgress(position, written)) {
+          stopped = true;
+        }
+      }
+      return !stopped;
+    } finally {
+      // Never leave writes running against a handle the caller is about to close
+      for (Future<Integer> f : inFlight) {
+        try {
+          f.get();
+        } catch (Exception ignored) {
+          // the primary failure is propagated to the caller
+        }
+      }
+      TransferTuner.getInstance().remember(window);
+    }
+  }
+
+  /** Reads up to {@code length} bytes into {@code buffer}. Returns fewer bytes only at EOF. */
+  static int readFully(InputStream in, byte[] buffer, int length) throws IOException {
+    int pos = 0;
+    while (pos < length) {
+      int read = in.read(buffer, pos, length - pos);
+      if (read < 0) {
+        break;
+      }
+      pos += read;
+    }
+    return pos;
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.hierynomus.mserref.NtStatus;
+import com.hierynomus.mssmb2.SMBApiException;
+import com.hierynomus.protocol.commons.buffer.Buffer;
+import com.hierynomus.smbj.share.DiskShare;
+import com.hierynomus.smbj.share.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a file on the server without moving the data over the client's network link.
+ *
+ * <p>The file is split into ranges of {@link #RANGE_SIZE}; each range is one server-side copy
+ * (FSCTL_SRV_REQUEST_RESUME_KEY followed by FSCTL_SRV_COPYCHUNK_WRITE batches, see {@link
+ * File#remoteCopyTo(long, File, long, long)}). Several ranges are kept in flight on the same
+ * connection so the server can work on them concurrently. Servers that do not implement
+ * server-side copy are recognised with {@link #isNotSupported(Throwable)}, so the caller can fall
+ * back to copying through the client. Such servers are remembered for the life of the process
+ * (see {@link #markUnsupported(DiskShare)}), so later copies skip the failing request.
+ */
+public final class ServerSideCopier {
+
+  /**
+   * Bytes per range. SMBJ issues one COPYCHUNK request per 16 chunks of 1 MB, the limit most
+   * servers advertise, so one range is one request on the wire.
+   */
+  static final long RANGE_SIZE = 16L * 1024 * 1024;
+
+  /** Number of ranges copied concurrently. */
+  static final int DEFAULT_PARALLEL_RANGES = 4;
+
+  /** host:port of servers that rejected server-side copy in this process. */
+  private static final Set<String> UNSUPPORTED_SERVERS = ConcurrentHashMap.newKeySet();
+
+  /** Copies {@code length} bytes at {@code offset} from the source to the same target offset. */
+  @FunctionalInterface
+  public interface RangeCopier {
+    void copy(long offset, long length) throws IOException;
+  }
+
+  /** Receives the number of bytes copied so far after each completed range. */
+  @FunctionalInterface
+  public interface ProgressListener {
+    /**
+     * @param copiedBytes bytes of the file copied so far (ranges complete in any order)
+     * @param rangeLength size of the range that was just copied
+     * @return true to continue, false to stop the copy
+     */
+    boolean onProgress(long copiedBytes, long rangeLength) throws IOException;
+  }
+
+  private final long rangeSize;
+  private final int parallelRanges;
+
+  public ServerSideCopier() {
+    this(RANGE_SIZE, DEFAULT_PARALLEL_RANGES);
+  }
+
+  public ServerSideCopier(long rangeSize, int parallelRanges) {
+    this.rangeSize = Math.max(1, rangeSize);
+    this.parallelRanges = Math.max(1, parallelRanges);
+  }
+
+  /**
+   * Adapts two open SMBJ file handles on the same share to a {@link RangeCopier}. The target must
+   * be opened with read and write access.
+   */
+  public static @NonNull RangeCopier copier(@NonNull File source, @NonNull File target) {
+    return (offset, length) -> {
+      try {
+        source.remoteCopyTo(offset, target, offset, length);
+      } catch (Buffer.BufferException e) {
+        throw new IOException("Invalid server-side copy response", e);
+      }
+    };
+  }
+
+  /**
+   * Returns true if {@code e} (or one of its causes) shows that the server does not support
+   * server-side copy, as opposed to a failure of the copy itself.
+   */
+  public static boolean isNotSupported(@Nullable Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof SMBApiException) {
+        NtStatus status = ((SMBApiException) t).getStatus();
+        return status == NtStatus.STATUS_NOT_SUPPORTED
+            || status == NtStatus.STATUS_INVALID_DEVICE_REQUEST;
+      }
+    }
+    return false;
+  }
+
+  /** Returns true if the server behind {@code share} already rejected server-side copy. */
+  public static boolean isKnownUnsupported(@Nullable DiskShare share) {
+    return isKnownUnsupported(TransferTuner.serverIdFor(share));
+  }
+
+  /**
+   * Remembers that the server behind {@code share} does not support server-side copy, after a copy
+   * failed with {@link #isNotSupported(Throwable)}.
+   */
+  public static void markUnsupported(@Nullable DiskShare share) {
+    markUnsupported(TransferTuner.serverIdFor(share));
+  }
+
+  @VisibleForTesting
+  static boolean isKnownUnsupported(@NonNull String serverId) {
+    return UNSUPPORTED_SERVERS.contains(serverId);
+  }
+
+  @VisibleForTesting
+  static void markUnsupported(@NonNull String serverId) {
+    // Without a server identity nothing can be said about the next copy
+    if (!"unknown".equals(serverId)) {
+      UNSUPPORTED_SERVERS.add(serverId);
+    }
+  }
+
+  /**
+   * Copies {@code length} bytes range by range.
+   *
+   * @return true if every range was copied, false if the listener stopped the copy
+   * @throws IOException if a range fails; ranges still in flight are awaited first
+   */
+  public boolean copy(long length, @NonNull RangeCopier copier, @NonNull ProgressListener listener)
+      throws IOException {
+    CompletionService<Long> completions =
+        new ExecutorCompletionService<>(PipelinedDownloader.IO_EXECUTOR);
+    long submitOffset = 0;
+    long copied = 0;
+    int inFlight = 0;
+    try {
+      while (submitOffset < length || inFlight > 0) {
+        while (inFlight < parallelRanges && submitOffset < length) {
+          final long offset = submitOffset;
+          final long rangeLength = Math.min(rangeSize, length - offset);
+          submitOffset += rangeLength;
+          completions.submit(
+              () -> {
+                copier.copy(offset, rangeLength);
+                return rangeLength;
+              });
+          inFlight++;
+        }
+
+        Future<Long> finished = take(completions);
+        inFlight--;
+        long rangeLength = PipelinedDownloader.await(finished);
+        copied += rangeLength;
+        if (!listener.onProgress(copied, rangeLength)) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      // Never leave copies running against handles the caller is about to close
+      while (inFlight > 0) {
+        try {
+          take(completions).get();
+        } catch (Exception ignored) {
+          // the primary failure is propagated to the caller
+        }
+        inFlight--;
+      }
+    }
+  }
+
+  private static Future<Long> take(CompletionService<Long> completions)
+      throws InterruptedIOException {
+    try {
+      return completions.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Copy interrupted");
+    }
+  }
+}
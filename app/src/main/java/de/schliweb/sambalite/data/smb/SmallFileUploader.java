@@ -0,0 +1,158 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import com.hierynomus.msdtyp.AccessMask;
+import com.hierynomus.msdtyp.FileTime;
+import com.hierynomus.msfscc.FileAttributes;
+import com.hierynomus.msfscc.fileinformation.FileBasicInformation;
+import com.hierynomus.mssmb2.SMB2CreateDisposition;
+import com.hierynomus.mssmb2.SMB2ShareAccess;
+import com.hierynomus.smbj.share.DiskShare;
+import com.hierynomus.smbj.share.File;
+import de.schliweb.sambalite.util.LogUtils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+
+/**
+ * Upload path for small files that needs a single CREATE, WRITE, SET_INFO and CLOSE per file.
+ *
+ * <p>The regular upload path queries the remote size for resume, opens the file, writes it, opens
+ * it again for the integrity check and a third time to set the timestamp. For small files those
+ * round trips dominate the transfer time. Here the whole file is held in memory, written through
+ * the handle it was created with, verified against the byte counts of the WRITE responses and
+ * stamped with its last-modified time on the same handle before it is closed. Resume is not needed
+ * because a small file is rewritten quickly.
+ */
+public final class SmallFileUploader {
+
+  private static final String TAG = "SmallFileUploader";
+
+  /** Files up to this size take the small-file path. */
+  public static final int MAX_SIZE = 1024 * 1024;
+
+  /** An open remote file handle. */
+  public interface Handle extends Closeable {
+    /** Writes {@code length} bytes and returns the byte count the server acknowledged. */
+    long write(byte[] buffer, long fileOffset, int bufferOffset, int length) throws IOException;
+
+    /** Sets the last write time of the file without touching the other timestamps. */
+    void setLastWriteTime(long timeMillis) throws IOException;
+  }
+
+  /** Creates or overwrites a remote file for writing. */
+  @FunctionalInterface
+  public interface Opener {
+    @NonNull
+    Handle create(@NonNull String path) throws IOException;
+  }
+
+  private SmallFileUploader() {
+    // Utility class
+  }
+
+  /** Returns an {@link Opener} that creates files on {@code share} for the transfer queue. */
+  public static @NonNull Opener opener(@NonNull DiskShare share) {
+    return opener(share, BandwidthGovernor.Flow.TRANSFER);
+  }
+
+  /**
+   * Returns an {@link Opener} that creates files on {@code share}; writes wait for the {@link
+   * BandwidthGovernor} of the share's server.
+   */
+  public static @NonNull Opener opener(
+      @NonNull DiskShare share, @NonNull BandwidthGovernor.Flow flow) {
+    BandwidthGovernor.Gate gate = BandwidthGovernor.getInstance().gate(share, flow);
+    return path -> {
+      File file =
+          share.openFile(
+              path,
+              EnumSet.of(AccessMask.GENERIC_WRITE),
+              EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
+              SMB2ShareAccess.ALL,
+              SMB2CreateDisposition.FILE_OVERWRITE_IF,
+              null);
+      return new Handle() {
+        @Override
+        public long write(byte[] buffer, long fileOffset, int bufferOffset, int length)
+            throws IOException {
+          gate.acquire(length);
+          return file.write(buffer, fileOffset, bufferOffset, length);
+        }
+
+        @Override
+        public void setLastWriteTime(long timeMillis) {
+          // Zero times and attributes leave the current values unchanged
+          file.setFileInformation(
+              new FileBasicInformation(
+                  FileBasicInformation.DONT_SET,
+                  FileBasicInformation.DONT_SET,
+                  FileTime.ofEpochMillis(timeMillis),
+                  FileBasicInformation.DONT_SET,
+                  0));
+        }
+
+        @Override
+        public void close() {
+          file.close();
+        }
+      };
+    };
+  }
+
+  /**
+   * Reads {@code in} into {@code buffer} until EOF.
+   *
+   * @return the number of bytes read, or -1 if the stream does not fit into the buffer
+   */
+  public static int readAll(@NonNull InputStream in, @NonNull byte[] buffer) throws IOException {
+    int total = 0;
+    while (total < buffer.length) {
+      int n = in.read(buffer, total, buffer.length - total);
+      if (n < 0) {
+        return total;
+      }
+      total += n;
+    }
+    return in.read() < 0 ? total : -1;
+  }
+
+  /**
+   * Creates or overwrites {@code path} with the first {@code length} bytes of {@code data}.
+   *
+   * @param lastModified last-modified time to set on the remote file, or 0 to keep the server's
+   * @throws IOException if the file cannot be written or the server acknowledged fewer bytes
+   */
+  public static void upload(
+      @NonNull Opener opener,
+      @NonNull String path,
+      @NonNull byte[] data,
+      int length,
+      long lastModified)
+      throws IOException {
+    try (Handle handle = opener.create(path)) {
+      long written = length > 0 ? handle.write(data, 0, 0, length) : 0;
+      if (written != length) {
+        throw new IOException(
+            "Integrity check failed: server acknowledged " + written + " of " + length + " bytes");
+      }
+      if (lastModified > 0) {
+        try {
+          handle.setLastWriteTime(lastModified);
+        } catch (IOException | RuntimeException e) {
+          LogUtils.w(TAG, "Could not set last modified time for: " + path + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import com.hierynomus.mssmb2.SMB2Dialect;
+import com.hierynomus.smbj.SMBClient;
+import com.hierynomus.smbj.SmbConfig;
+import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.smbj.transport.tcp.async.AsyncDirectTcpTransportFactory;
+import de.schliweb.sambalite.data.model.SmbConnection;
+import de.schliweb.sambalite.util.LogUtils;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide registry of reusable {@link SMBClient} instances, one per {@link Profile} (dialects,
+ * encryption, signing, transport and buffer sizes).
+ *
+ * <p>Building an SMBClient sets up its own buffers, threads and (for async transport) a transport
+ * factory, so creating one per operation is expensive. Clients are reference counted through
+ * {@link ClientRef}; {@link #closeUnused()} closes clients nobody holds anymore. SMBClient itself
+ * caches one TCP connection per host:port, so all sessions of a profile share that connection; it
+ * is counted per session and closed with the last one, see {@link #releaseConnection}.
+ */
+public final class SmbClientRegistry {
+
+  private static final String TAG = "SmbClientRegistry";
+
+  /** Requested SMB2 read/write/transact buffer size; capped by what the server negotiates. */
+  static final int TRANSFER_BUFFER_SIZE = 8 * 1024 * 1024;
+
+  private static final SMB2Dialect[] ALL_DIALECTS = {
+    SMB2Dialect.SMB_3_1_1,
+    SMB2Dialect.SMB_3_0_2,
+    SMB2Dialect.SMB_3_0,
+    SMB2Dialect.SMB_2_1,
+    SMB2Dialect.SMB_2_0_2
+  };
+
+  // Anonymous/guest sessions: restrict to SMB2 dialects. SMBJ 0.14.0 crashes with a
+  // NullPointerException when deriving SMB3 signing keys for anonymous sessions if the server
+  // does not set the IS_NULL/IS_GUEST session flags (hierynomus/smbj#792).
+  private static final SMB2Dialect[] ANONYMOUS_DIALECTS = {
+    SMB2Dialect.SMB_2_1, SMB2Dialect.SMB_2_0_2
+  };
+
+  private static SmbClientRegistry instance;
+
+  private final Map<Profile, Entry> clients = new HashMap<>();
+  // Pooled sessions per connection obtained through connect(); guarded by itself
+  private final Map<Connection, Integer> connectionUsers = new IdentityHashMap<>();
+  private int transportFactories;
+
+  @VisibleForTesting
+  SmbClientRegistry() {}
+
+  /** Singleton instance retrieval. Ensures thread-safe lazy initialization. */
+  public static synchronized @NonNull SmbClientRegistry getInstance() {
+    if (instance == null) {
+      instance = new SmbClientRegistry();
+    }
+    return instance;
+  }
+
+  /**
+   * Returns a reference to the client for {@code profile}, creating it on first use. The caller
+   * must close the reference when it no longer needs the client.
+   */
+  public synchronized @NonNull ClientRef acquire(@NonNull Profile profile) {
+    Entry entry = clients.get(profile);
+    if (entry == null) {
+      entry = new Entry(profile, createClient(profile));
+      clients.put(profile, entry);
+      LogUtils.d(TAG, "Created SMB client for " + profile + " (live=" + clients.size() + ")");
+    }
+    entry.refs++;
+    return new ClientRef(this, entry);
+  }
+
+  /**
+   * Connects to {@code server:port} using the referenced client. SMBClient reuses an established
+   * connection to the same endpoint, so the connection may be shared with other sessions; the
+   * caller must give it up with {@link #releaseConnection} instead of closing it.
+   */
+  @NonNull
+  Connection connect(@NonNull ClientRef ref, @NonNull String server, int port) throws IOException {
+    for (int attempt = 0; attempt < 3; attempt++) {
+      Connection conn = ref.getClient().connect(server, port);
+      synchronized (connectionUsers) {
+        // The last session of a cached connection may have closed it since it was handed out
+        if (conn.isConnected()) {
+          connectionUsers.merge(conn, 1, Integer::sum);
+          return conn;
+        }
+      }
+    }
+    throw new IOException("Connection to " + server + ":" + port + " was closed while connecting");
+  }
+
+  /**
+   * Gives up a connection obtained through {@link #connect}. It is closed once no session uses it
+   * anymore; closing it earlier would log off every other session multiplexed on it.
+   */
+  void releaseConnection(@NonNull Connection conn) {
+    synchronized (connectionUsers) {
+      Integer users = connectionUsers.get(conn);
+      if (users != null && users > 1) {
+        connectionUsers.put(conn, users - 1);
+        return;
+      }
+      connectionUsers.remove(conn);
+      try {
+        conn.close();
+      } catch (Exception e) {
+        LogUtils.w(TAG, "Error closing SMB connection: " + e.getMessage());
+      }
+    }
+  }
+
+  private synchronized void release(Entry entry) {
+    entry.refs = Math.max(0, entry.refs - 1);
+  }
+
+  /** Closes every client that is no longer referenced. Returns the number of closed clients. */
+  public synchronized int closeUnused() {
+    int closed = 0;
+    for (Iterator<Entry> it = clients.values().iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if (entry.refs == 0) {
+        it.remove();
+        closeClient(entry);
+        closed++;
+      }
+    }
+    if (closed > 0) {
+      LogUtils.d(TAG, "Closed " + closed + " unused SMB client(s), live=" + clients.size());
+    }
+    return closed;
+  }
+
+  /** Returns the number of SMB clients currently held by the registry. */
+  public synchronized int getLiveClientCount() {
+    return clients.size();
+  }
+
+  /** Returns the number of async transport factories owned by live clients. */
+  public synchronized int getLiveTransportFactoryCount() {
+    return transportFactories;
+  }
+
+  /** Returns the number of TCP connections opened through the registry that are still connected. */
+  public int getLiveTransportCount() {
+    int live = 0;
+    synchronized (connectionUsers) {
+      for (Connection conn : connectionUsers.keySet()) {
+        try {
+          if (conn != null && conn.isConnected()) live++;
+        } catch (Exception ignored) {
+          // treat as disconnected
+        }
+      }
+    }
+    return live;
+  }
+
+  /** Creates the client for a profile. Overridden in tests to avoid real SMBJ instances. */
+  @VisibleForTesting
+  @NonNull
+  SMBClient createClient(@NonNull Profile profile) {
+    SmbConfig.Builder builder =
+        SmbConfig.builder().withEncryptData(profile.encrypt).withSigningRequired(profile.sign);
+    try {
+      builder
+          .withReadBufferSize(profile.readBufferSize)
+          .withWriteBufferSize(profile.writeBufferSize)
+          .withTransactBufferSize(profile.transactBufferSize);
+    } catch (Throwable ignored) {
+      /* keep SMBJ defaults if the running SMBJ version rejects these values */
+    }
+    if (profile.async) {
+      builder.withTransportLayerFactory(new AsyncDirectTcpTransportFactory<>());
+      transportFactories++;
+    }
+    try {
+      builder.withDialects(profile.dialects.toArray(new SMB2Dialect[0]));
+    } catch (Throwable ignored) {
+      /* keep SMBJ defaults if the running SMBJ version rejects these values */
+    }
+    return new SMBClient(builder.build());
+  }
+
+  private void closeClient(Entry entry) {
+    if (entry.profile.async) {
+      transportFactories = Math.max(0, transportFactories - 1);
+    }
+    try {
+      entry.client.close();
+    } catch (Exception e) {
+      LogUtils.w(TAG, "Error closing SMB client: " + e.getMessage());
+    }
+  }
+
+  /** Configuration profile that determines which shared client a connection uses. */
+  public static final class Profile {
+    final List<SMB2Dialect> dialects;
+    final boolean encrypt;
+    final boolean sign;
+    final boolean async;
+    final int readBufferSize;
+    final int writeBufferSize;
+    final int transactBufferSize;
+
+    Profile(
+        List<SMB2Dialect> dialects,
+        boolean encrypt,
+        boolean sign,
+        boolean async,
+        int readBufferSize,
+        int writeBufferSize,
+        int transactBufferSize) {
+      this.dialects = Collections.unmodifiableList(dialects);
+      this.encrypt = encrypt;
+      this.sign = sign;
+      this.async = async;
+      this.readBufferSize = readBufferSize;
+      this.writeBufferSize = writeBufferSize;
+      this.transactBufferSize = transactBufferSize;
+    }
+
+    /** Derives the profile for the given connection settings. */
+    public static @NonNull Profile of(@NonNull SmbConnection connection) {
+      boolean anonymous = SmbSessionPool.isAnonymous(connection);
+      return new Profile(
+          Arrays.asList(anonymous ? ANONYMOUS_DIALECTS : ALL_DIALECTS),
+          connection.isEncryptData(),
+          connection.isSigningRequired(),
+          connection.isAsyncTransport(),
+          TRANSFER_BUFFER_SIZE,
+          TRANSFER_BUFFER_SIZE,
+          TRANSFER_BUFFER_SIZE);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Profile)) return false;
+      Profile p = (Profile) o;
+      return encrypt == p.encrypt
+          && sign == p.sign
+          && async == p.async
+          && readBufferSize == p.readBufferSize
+          && writeBufferSize == p.writeBufferSize
+          && transactBufferSize == p.transactBufferSize
+          && dialects.equals(p.dialects);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(
+          dialects, encrypt, sign, async, readBufferSize, writeBufferSize, transactBufferSize);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return "Profile{dialects="
+          + dialects
+          + ", encrypt="
+          + encrypt
+          + ", sign="
+          + sign
+          + ", async="
+          + async
+          + ", buffers="
+          + readBufferSize
+          + "/"
+          + writeBufferSize
+          + "/"
+          + transactBufferSize
+          + "}";
+    }
+  }
+
+  private static final class Entry {
+    final Profile profile;
+    final SMBClient client;
+    int refs;
+
+    Entry(Profile profile, SMBClient client) {
+      this.profile = profile;
+      this.client = client;
+    }
+  }
+
+  /** A counted reference to a shared client. Closing it releases the reference. */
+  public static final class ClientRef implements AutoCloseable {
+    private final SmbClientRegistry registry;
+    private final Entry entry;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private ClientRef(SmbClientRegistry registry, Entry entry) {
+      this.registry = registry;
+      this.entry = entry;
+    }
+
+    public @NonNull SMBClient getClient() {
+      return entry.client;
+    }
+
+    public @NonNull Profile getProfile() {
+      return entry.profile;
+    }
+
+    /** Gives up a connection obtained through {@link SmbClientRegistry#connect}. */
+    void releaseConnection(@NonNull Connection conn) {
+      registry.releaseConnection(conn);
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        registry.release(entry);
+      }
+    }
+  }
+}
@@ -0,0 +1,657 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.hierynomus.smbj.auth.AuthenticationContext;
+import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.DiskShare;
+import de.schliweb.sambalite.data.model.SmbConnection;
+import de.schliweb.sambalite.util.LogUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide, bounded pool of authenticated SMB sessions shared by the repository and all
+ * background workers (transfer queue, folder sync, search).
+ *
+ * <p>Sessions are keyed by server, port, credentials, transport/security flags and share name. A
+ * caller obtains a {@link Lease} via {@link #acquire(SmbConnection)} and returns it by closing the
+ * lease; the underlying connection, session and share stay open for the next caller. SMB
+ * multiplexes requests on one session, so a busy session is shared rather than blocking the
+ * caller once the per-server cap is reached. Idle sessions are evicted after {@link
+ * #setIdleTimeoutMs(long) a timeout}, and unhealthy ones are dropped on acquire and during
+ * eviction.
+ */
+public final class SmbSessionPool {
+
+  private static final String TAG = "SmbSessionPool";
+
+  /**
+   * Default upper bound for concurrently open sessions per server:port. Sessions of one client
+   * profile share a TCP connection (see {@link SmbClientRegistry}), so this also bounds the number
+   * of connections to a server, which is usually one per profile.
+   */
+  public static final int DEFAULT_MAX_SESSIONS_PER_SERVER = 4;
+
+  /** Default time after which an unused session is closed. */
+  public static final long DEFAULT_IDLE_TIMEOUT_MS = 60_000;
+
+  private static final long EVICTION_INTERVAL_MS = 15_000;
+  private static final long ACQUIRE_WAIT_MS = 30_000;
+
+  private static SmbSessionPool instance;
+
+  private final SessionFactory factory;
+  private final Map<Key, List<PooledSession>> sessions = new HashMap<>();
+  private final Map<String, Integer> pendingOpens = new HashMap<>();
+  @Nullable private final ScheduledExecutorService evictor;
+
+  private volatile int maxSessionsPerServer = DEFAULT_MAX_SESSIONS_PER_SERVER;
+  private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+
+  /** Opens the SMB objects backing one pooled session. Replaceable for tests. */
+  @VisibleForTesting
+  interface SessionFactory {
+    @NonNull
+    PooledSession open(@NonNull Key key, @NonNull SmbConnection connection) throws IOException;
+  }
+
+  @VisibleForTesting
+  SmbSessionPool(@NonNull SessionFactory factory, boolean startEvictor) {
+    this.factory = factory;
+    if (startEvictor) {
+      this.evictor =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread t = new Thread(r, "SmbSessionPool-evictor");
+                t.setDaemon(true);
+                return t;
+              });
+      this.evictor.scheduleWithFixedDelay(
+          this::evictIdle, EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    } else {
+      this.evictor = null;
+    }
+  }
+
+  /** Singleton instance retrieval. Ensures thread-safe lazy initialization. */
+  public static synchronized @NonNull SmbSessionPool getInstance() {
+    if (instance == null) {
+      instance = new SmbSessionPool(new DefaultSessionFactory(), true);
+    }
+    return instance;
+  }
+
+  /** Sets the maximum number of sessions kept open per server:port (minimum 1). */
+  public void setMaxSessionsPerServer(int max) {
+    this.maxSessionsPerServer = Math.max(1, max);
+  }
+
+  public int getMaxSessionsPerServer() {
+    return maxSessionsPerServer;
+  }
+
+  /** Sets the idle time after which an unused session is closed by the evictor. */
+  public void setIdleTimeoutMs(long idleTimeoutMs) {
+    this.idleTimeoutMs = Math.max(1_000, idleTimeoutMs);
+  }
+
+  /**
+   * Leases a session connected to the share configured in {@code connection}.
+   *
+   * @throws IOException if no session could be established
+   */
+  public @NonNull Lease acquire(@NonNull SmbConnection connection) throws IOException {
+    return acquire(connection, shareNameOf(connection.getShare()));
+  }
+
+  /**
+   * Leases an authenticated session without a connected share, e.g. for share enumeration.
+   *
+   * @throws IOException if no session could be established
+   */
+  public @NonNull Lease acquireSession(@NonNull SmbConnection connection) throws IOException {
+    return acquire(connection, "");
+  }
+
+  private Lease acquire(SmbConnection connection, String shareName) throws IOException {
+    Key key = Key.of(connection, shareName);
+    long deadline = System.currentTimeMillis() + ACQUIRE_WAIT_MS;
+    while (true) {
+      synchronized (this) {
+        PooledSession best = pickLeastLoaded(key);
+        int open = countForServer(key.serverId());
+        boolean canOpen = open < maxSessionsPerServer;
+        if (!canOpen && best == null) {
+          canOpen = closeOneIdleForServer(key.serverId());
+        }
+        if (best != null && (best.leases == 0 || !canOpen)) {
+          best.leases++;
+          return new Lease(this, best);
+        }
+        if (canOpen) {
+          pendingOpens.merge(key.serverId(), 1, Integer::sum);
+        } else {
+          // Every slot for this server is held by sessions of other keys that are in use.
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            throw new IOException(
+                "Timed out waiting for a free SMB session slot on " + key.serverId());
+          }
+          try {
+            wait(remaining);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an SMB session", e);
+          }
+          continue;
+        }
+      }
+      return openNew(key, connection);
+    }
+  }
+
+  private Lease openNew(Key key, SmbConnection connection) throws IOException {
+    PooledSession opened = null;
+    try {
+      LogUtils.d(TAG, "Opening new SMB session: " + key);
+      opened = factory.open(key, connection);
+    } finally {
+      synchronized (this) {
+        pendingOpens.computeIfPresent(key.serverId(), (k, v) -> v > 1 ? v - 1 : null);
+        if (opened != null) {
+          opened.leases = 1;
+          sessions.computeIfAbsent(key, k -> new ArrayList<>()).add(opened);
+        }
+        notifyAll();
+      }
+    }
+    return new Lease(this, opened);
+  }
+
+  /** Returns the least-loaded healthy session for {@code key}, dropping unhealthy idle ones. */
+  private PooledSession pickLeastLoaded(Key key) {
+    List<PooledSession> list = sessions.get(key);
+    if (list == null) return null;
+    PooledSession best = null;
+    Iterator<PooledSession> it = list.iterator();
+    while (it.hasNext()) {
+      PooledSession s = it.next();
+      if (s.retired) continue;
+      if (!s.isHealthy()) {
+        s.retired = true;
+        if (s.leases == 0) {
+          it.remove();
+          s.closeQuietly();
+        }
+        continue;
+      }
+      if (best == null || s.leases < best.leases) {
+        best = s;
+      }
+    }
+    if (list.isEmpty()) sessions.remove(key);
+    return best;
+  }
+
+  private int countForServer(String serverId) {
+    int count = pendingOpens.getOrDefault(serverId, 0);
+    for (Map.Entry<Key, List<PooledSession>> e : sessions.entrySet()) {
+      if (e.getKey().serverId().equals(serverId)) {
+        count += e.getValue().size();
+      }
+    }
+    return count;
+  }
+
+  /** Closes one unused session of the given server to make room for another key. */
+  private boolean closeOneIdleForServer(String serverId) {
+    for (Iterator<Map.Entry<Key, List<PooledSession>>> it = sessions.entrySet().iterator();
+        it.hasNext(); ) {
+      Map.Entry<Key, List<PooledSession>> e = it.next();
+      if (!e.getKey().serverId().equals(serverId)) continue;
+      List<PooledSession> list = e.getValue();
+      for (Iterator<PooledSession> sit = list.iterator(); sit.hasNext(); ) {
+        PooledSession s = sit.next();
+        if (s.leases == 0) {
+          sit.remove();
+          s.closeQuietly();
+          if (list.isEmpty()) it.remove();
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private synchronized void release(PooledSession session, boolean broken) {
+    session.leases = Math.max(0, session.leases - 1);
+    session.lastReturned = System.currentTimeMillis();
+    if (broken) {
+      session.retired = true;
+    }
+    if (session.retired && session.leases == 0) {
+      List<PooledSession> list = sessions.get(session.key);
+      if (list != null) {
+        list.remove(session);
+        if (list.isEmpty()) sessions.remove(session.key);
+      }
+      session.closeQuietly();
+    }
+    notifyAll();
+  }
+
+  /** Closes sessions that have been idle longer than the idle timeout or are no longer healthy. */
+  @VisibleForTesting
+  synchronized void evictIdle() {
+    long now = System.currentTimeMillis();
+    int closed = 0;
+    for (Iterator<Map.Entry<Key, List<PooledSession>>> it = sessions.entrySet().iterator();
+        it.hasNext(); ) {
+      List<PooledSession> list = it.next().getValue();
+      for (Iterator<PooledSession> sit = list.iterator(); sit.hasNext(); ) {
+        PooledSession s = sit.next();
+        if (s.leases > 0) continue;
+        if (s.retired || now - s.lastReturned > idleTimeoutMs || !s.isHealthy()) {
+          sit.remove();
+          s.closeQuietly();
+          closed++;
+        }
+      }
+      if (list.isEmpty()) it.remove();
+    }
+    if (closed > 0) {
+      LogUtils.d(TAG, "Evicted " + closed + " idle SMB session(s)");
+      notifyAll();
+    }
+  }
+
+  /**
+   * Closes all sessions that are currently not leased. Leased sessions are retired and closed as
+   * soon as their last lease is returned, so running transfers are not interrupted.
+   */
+  public synchronized void closeIdle() {
+    for (List<PooledSession> list : sessions.values()) {
+      for (PooledSession s : list) {
+        s.retired = true;
+      }
+    }
+    evictIdle();
+  }
+
+  /** Returns the number of open sessions (including leased ones). */
+  public synchronized int getOpenSessionCount() {
+    int count = 0;
+    for (List<PooledSession> list : sessions.values()) {
+      count += list.size();
+    }
+    return count;
+  }
+
+  /** Returns the number of currently outstanding leases. */
+  public synchronized int getLeaseCount() {
+    int count = 0;
+    for (List<PooledSession> list : sessions.values()) {
+      for (PooledSession s : list) {
+        count += s.leases;
+      }
+    }
+    return count;
+  }
+
+  /** Extracts the share name from a share path such as {@code "/share/sub"}. */
+  public static @NonNull String shareNameOf(@Nullable String sharePath) {
+    if (sharePath == null || sharePath.isEmpty()) return "";
+    String path = sharePath;
+    while (path.startsWith("/") || path.startsWith("\\")) {
+      path = path.substring(1);
+    }
+    int slashIndex = path.indexOf('/');
+    if (slashIndex == -1) slashIndex = path.indexOf('\\');
+    return slashIndex == -1 ? path : path.substring(0, slashIndex);
+  }
+
+  /**
+   * Returns the identity of the sessions a connection is served by, regardless of the share: the
+   * fields of the pool key including the port and the credential fingerprint. Suitable as key of
+   * caches for data that depends on server and user, so a changed password never hits an entry
+   * that was filled with the old one.
+   */
+  public static @NonNull String sessionIdentityOf(@NonNull SmbConnection connection) {
+    return Key.of(connection, "").identity();
+  }
+
+  /**
+   * Returns true if the connection has neither username nor password, i.e. anonymous/guest access
+   * is requested.
+   */
+  public static boolean isAnonymous(@NonNull SmbConnection connection) {
+    String username = connection.getUsername() != null ? connection.getUsername() : "";
+    String password = connection.getPassword() != null ? connection.getPassword() : "";
+    return username.isEmpty() && password.isEmpty();
+  }
+
+  /**
+   * Creates an AuthenticationContext from the connection details. If both username and password are
+   * empty, uses anonymous authentication (behaves like {@code mount.cifs -o guest}, see issue #32).
+   */
+  public static @NonNull AuthenticationContext createAuthContext(
+      @NonNull SmbConnection connection) {
+    String domain = connection.getDomain() != null ? connection.getDomain() : "";
+    String username = connection.getUsername() != null ? connection.getUsername() : "";
+    String password = connection.getPassword() != null ? connection.getPassword() : "";
+    if (username.isEmpty() && password.isEmpty()) {
+      return new AuthenticationContext("", new char[0], domain);
+    }
+    return new AuthenticationContext(username, password.toCharArray(), domain);
+  }
+
+  /** Identity of a pooled session. Credentials are only kept as a fingerprint. */
+  @VisibleForTesting
+  static final class Key {
+    final String server;
+    final int port;
+    final String domain;
+    final String username;
+    final String credentialHash;
+    final boolean encrypt;
+    final boolean sign;
+    final boolean async;
+    final boolean anonymous;
+    final String shareName;
+
+    Key(
+        String server,
+        int port,
+        String domain,
+        String username,
+        String credentialHash,
+        boolean encrypt,
+        boolean sign,
+        boolean async,
+        boolean anonymous,
+        String shareName) {
+      this.server = server;
+      this.port = port;
+      this.domain = domain;
+      this.username = username;
+      this.credentialHash = credentialHash;
+      this.encrypt = encrypt;
+      this.sign = sign;
+      this.async = async;
+      this.anonymous = anonymous;
+      this.shareName = shareName;
+    }
+
+    static Key of(SmbConnection connection, String shareName) {
+      String server = connection.getServer() != null ? connection.getServer() : "";
+      int port = connection.getPort() > 0 ? connection.getPort() : 445;
+      String domain = connection.getDomain() != null ? connection.getDomain() : "";
+      String username = connection.getUsername() != null ? connection.getUsername() : "";
+      String password = connection.getPassword() != null ? connection.getPassword() : "";
+      return new Key(
+          server.toLowerCase(java.util.Locale.ROOT),
+          port,
+          domain,
+          username,
+          fingerprint(domain + '\0' + username + '\0' + password),
+          connection.isEncryptData(),
+          connection.isSigningRequired(),
+          connection.isAsyncTransport(),
+          isAnonymous(connection),
+          shareName != null ? shareName : "");
+    }
+
+    String serverId() {
+      return server + ":" + port;
+    }
+
+    /** Returns every field but the share name, see {@link #sessionIdentityOf}. */
+    String identity() {
+      return serverId()
+          + "|"
+          + domain
+          + "|"
+          + username
+          + "|"
+          + credentialHash
+          + "|"
+          + encrypt
+          + "|"
+          + sign
+          + "|"
+          + async
+          + "|"
+          + anonymous;
+    }
+
+    private static String fingerprint(String secret) {
+      try {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] digest = md.digest(secret.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+          sb.append(String.format(java.util.Locale.ROOT, "%02x", b));
+        }
+        return sb.toString();
+      } catch (NoSuchAlgorithmException e) {
+        return Integer.toHexString(secret.hashCode());
+      }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return port == k.port
+          && encrypt == k.encrypt
+          && sign == k.sign
+          && async == k.async
+          && anonymous == k.anonymous
+          && server.equals(k.server)
+          && domain.equals(k.domain)
+          && username.equals(k.username)
+          && credentialHash.equals(k.credentialHash)
+          && shareName.equals(k.shareName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(
+          server, port, domain, username, credentialHash, encrypt, sign, async, anonymous,
+          shareName);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return serverId()
+          + "/"
+          + shareName
+          + " (user="
+          + (anonymous ? "<anonymous>" : username)
+          + ", encrypt="
+          + encrypt
+          + ", sign="
+          + sign
+          + ", async="
+          + async
+          + ")";
+    }
+  }
+
+  /** One open connection/session/share triple owned by the pool. */
+  @VisibleForTesting
+  static final class PooledSession {
+    final Key key;
+    @Nullable final SmbClientRegistry.ClientRef clientRef;
+    final Connection connection;
+    final Session session;
+    @Nullable final DiskShare share;
+    int leases;
+    long lastReturned = System.currentTimeMillis();
+    boolean retired;
+
+    PooledSession(
+        Key key,
+        @Nullable SmbClientRegistry.ClientRef clientRef,
+        Connection connection,
+        Session session,
+        @Nullable DiskShare share) {
+      this.key = key;
+      this.clientRef = clientRef;
+      this.connection = connection;
+      this.session = session;
+      this.share = share;
+    }
+
+    boolean isHealthy() {
+      try {
+        return connection.isConnected() && (share == null || share.isConnected());
+      } catch (Exception e) {
+        return false;
+      }
+    }
+
+    /**
+     * Disconnects the share and logs off the session. A connection from the registry is only
+     * released, since other pooled sessions may still be multiplexed on it.
+     */
+    void closeQuietly() {
+      try {
+        if (share != null) share.close();
+      } catch (Exception e) {
+        LogUtils.w(TAG, "Error closing pooled share: " + e.getMessage());
+      }
+      try {
+        session.close();
+      } catch (Exception e) {
+        LogUtils.w(TAG, "Error closing pooled session: " + e.getMessage());
+      }
+      if (clientRef != null) {
+        // The connection is shared with the other sessions of the profile and server
+        clientRef.releaseConnection(connection);
+        clientRef.close();
+      } else {
+        try {
+          connection.close();
+        } catch (Exception e) {
+          LogUtils.w(TAG, "Error closing pooled connection: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * A borrowed session. Closing the lease returns the session to the pool; callers must not close
+   * the share, session or connection themselves. Call {@link #invalidate()} when an operation
+   * failed in a way that suggests the session is broken, so it is not handed out again.
+   */
+  public static final class Lease implements AutoCloseable {
+    private final SmbSessionPool pool;
+    private final PooledSession pooled;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile boolean invalidated;
+
+    private Lease(SmbSessionPool pool, PooledSession pooled) {
+      this.pool = pool;
+      this.pooled = pooled;
+    }
+
+    /** Returns the connected disk share. Only available for leases obtained via acquire(). */
+    public @NonNull DiskShare getShare() {
+      if (pooled.share == null) {
+        throw new IllegalStateException("Lease has no connected share");
+      }
+      return pooled.share;
+    }
+
+    public @NonNull Session getSession() {
+      return pooled.session;
+    }
+
+    public @NonNull Connection getConnection() {
+      return pooled.connection;
+    }
+
+    /** Marks the underlying session as broken; it is closed once every lease is returned. */
+    public void invalidate() {
+      invalidated = true;
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        pool.release(pooled, invalidated || !pooled.isHealthy());
+      }
+    }
+  }
+
+  /**
+   * Opens the connection, session and (optionally) share of a pooled entry using the shared client
+   * of the connection's profile from {@link SmbClientRegistry}.
+   */
+  private static final class DefaultSessionFactory implements SessionFactory {
+    @NonNull
+    @Override
+    public PooledSession open(@NonNull Key key, @NonNull SmbConnection connection)
+        throws IOException {
+      SmbClientRegistry registry = SmbClientRegistry.getInstance();
+      SmbClientRegistry.ClientRef clientRef =
+          registry.acquire(SmbClientRegistry.Profile.of(connection));
+      Connection conn = null;
+      Session session = null;
+      try {
+        conn = registry.connect(clientRef, key.server, key.port);
+        session = conn.authenticate(createAuthContext(connection));
+        DiskShare share = null;
+        if (!key.shareName.isEmpty()) {
+          share = (DiskShare) session.connectShare(key.shareName);
+          if (!share.isConnected()) {
+            throw new IOException("Share connection failed for: " + key.shareName);
+          }
+        }
+        return new PooledSession(key, clientRef, conn, session, share);
+      } catch (IOException | RuntimeException e) {
+        closeQuietly(session);
+        if (conn != null) {
+          registry.releaseConnection(conn);
+        }
+        clientRef.close();
+        throw e;
+      }
+    }
+
+    private static void closeQuietly(@Nullable AutoCloseable closeable) {
+      if (closeable == null) return;
+      try {
+        closeable.close();
+      } catch (Exception ignored) {
+      }
+    }
+  }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.hierynomus.msdtyp.AccessMask;
+import com.hierynomus.mserref.NtStatus;
+import com.hierynomus.mssmb2.SMB2CreateDisposition;
+import com.hierynomus.mssmb2.SMB2ImpersonationLevel;
+import com.hierynomus.mssmb2.SMB2ShareAccess;
+import com.hierynomus.mssmb2.SMBApiException;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.NamedPipe;
+import com.hierynomus.smbj.share.PipeShare;
+import com.hierynomus.smbj.share.Share;
+import de.schliweb.sambalite.data.model.SmbShareInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Minimal DCE/RPC client for the server service (srvsvc) on the {@code \PIPE\srvsvc} named pipe of
+ * IPC$. It implements exactly what share enumeration needs: an unauthenticated bind to the srvsvc
+ * interface over the already authenticated SMB session, and NetrShareEnum (opnum 15) at level 1,
+ * which returns name, type and comment of every share.
+ *
+ * <p>All PDUs use NDR with little-endian data representation. Replies may span several fragments;
+ * the first comes back with the pipe transaction and the rest are read from the pipe.
+ */
+public final class SrvsvcClient {
+
+  /** Name of the srvsvc named pipe on IPC$. */
+  public static final String PIPE_NAME = "srvsvc";
+
+  /** Largest fragment sent or accepted; the size Windows uses for named pipes. */
+  static final int MAX_FRAGMENT = 4280;
+
+  static final int OPNUM_NET_SHARE_ENUM = 15;
+
+  /** Win32 error and DCE fault status for a denied call. */
+  static final int ERROR_ACCESS_DENIED = 5;
+
+  /** Win32 error telling that the reply is incomplete and must be resumed. */
+  static final int ERROR_MORE_DATA = 234;
+
+  private static final int PTYPE_REQUEST = 0;
+  private static final int PTYPE_RESPONSE = 2;
+  private static final int PTYPE_FAULT = 3;
+  private static final int PTYPE_BIND = 11;
+  private static final int PTYPE_BIND_ACK = 12;
+  private static final int PTYPE_BIND_NAK = 13;
+
+  private static final int PFC_FIRST_FRAG = 0x01;
+  private static final int PFC_LAST_FRAG = 0x02;
+
+  private static final int HEADER_LENGTH = 16;
+
+  /** Length of the request and response headers (common header plus call fields). */
+  private static final int CALL_HEADER_LENGTH = 24;
+
+  /** Upper bound for one enumeration reply; guards against a runaway fragment stream. */
+  private static final int MAX_REPLY_LENGTH = 16 * 1024 * 1024;
+
+  private static final byte[] SRVSVC_SYNTAX = syntax("4b324fc8-1670-01d3-1278-5a47bf6ee188", 3);
+  private static final byte[] NDR_SYNTAX = syntax("8a885d04-1ceb-11c9-9fe8-08002b104860", 2);
+
+  /** Byte channel to the named pipe. */
+  public interface PipeTransport {
+    /** Writes {@code request} as one message and returns the first part of the reply. */
+    @NonNull
+    byte[] transact(@NonNull byte[] request) throws IOException;
+
+    /** Reads further reply bytes; returns the number of bytes read. */
+    int read(@NonNull byte[] buffer, int offset, int length) throws IOException;
+  }
+
+  /** The server rejected the bind or the call (bind NAK, RPC fault or a Win32 error result). */
+  public static final class RpcException extends IOException {
+    private final long status;
+
+    RpcException(@NonNull String message, long status) {
+      super(message + " (status 0x" + Long.toHexString(status) + ")");
+      this.status = status;
+    }
+
+    public long getStatus() {
+      return status;
+    }
+
+    public boolean isAccessDenied() {
+      return status == ERROR_ACCESS_DENIED;
+    }
+  }
+
+  private int callId;
+
+  private SrvsvcClient() {}
+
+  /**
+   * Lists the shares of the server {@code session} is connected to.
+   *
+   * @param serverName host name or address of the server, sent as the RPC server name
+   * @throws IOException if the pipe cannot be opened or the server rejects the call; see {@link
+   *     #isUnavailable(Throwable)}
+   */
+  public static @NonNull List<SmbShareInfo> enumerateShares(
+      @NonNull Session session, @NonNull String serverName) throws IOException {
+    try (Share share = session.connectShare("IPC$")) {
+      if (!(share instanceof PipeShare)) {
+        throw new RpcException(
+            "IPC$ is not a pipe share", NtStatus.STATUS_NOT_SUPPORTED.getValue());
+      }
+      try (NamedPipe pipe =
+          ((PipeShare) share)
+              .open(
+                  PIPE_NAME,
+                  SMB2ImpersonationLevel.Impersonation,
+                  EnumSet.of(AccessMask.FILE_READ_DATA, AccessMask.FILE_WRITE_DATA),
+                  null,
+                  SMB2ShareAccess.ALL,
+                  SMB2CreateDisposition.FILE_OPEN,
+                  null)) {
+        return enumerateShares(
+            new PipeTransport() {
+              @Override
+              public @NonNull byte[] transact(@NonNull byte[] request) {
+                return pipe.transact(request);
+              }
+
+              @Override
+              public int read(@NonNull byte[] buffer, int offset, int length) {
+                return pipe.read(buffer, offset, length);
+              }
+            },
+            serverName);
+      }
+    }
+  }
+
+  /** Binds to srvsvc on {@code pipe} and lists the shares with NetrShareEnum at level 1. */
+  @VisibleForTesting
+  static @NonNull List<SmbShareInfo> enumerateShares(
+      @NonNull PipeTransport pipe, @NonNull String serverName) throws IOException {
+    SrvsvcClient client = new SrvsvcClient();
+    client.bind(pipe);
+    List<SmbShareInfo> shares = new ArrayList<>();
+    int resumeHandle = 0;
+    while (true) {
+      NdrReader reply =
+          new NdrReader(
+              client.call(
+                  pipe, OPNUM_NET_SHARE_ENUM, encodeShareEnum("\\\\" + serverName, resumeHandle)));
+      resumeHandle = decodeShareEnum(reply, shares);
+      int result = reply.readInt();
+      if (result == 0) {
+        return shares;
+      }
+      if (result != ERROR_MORE_DATA || resumeHandle == 0) {
+        throw new RpcException("NetrShareEnum failed", result & 0xFFFFFFFFL);
+      }
+    }
+  }
+
+  /**
+   * Returns true if {@code e} (or one of its causes) shows that the server does not let this user
+   * enumerate shares over RPC, as opposed to a network or authentication failure.
+   */
+  public static boolean isUnavailable(@Nullable Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof RpcException) {
+        return true;
+      }
+      if (t instanceof SMBApiException) {
+        NtStatus status = ((SMBApiException) t).getStatus();
+        return status == NtStatus.STATUS_ACCESS_DENIED
+            || status == NtStatus.STATUS_OBJECT_NAME_NOT_FOUND
+            || status == NtStatus.STATUS_BAD_NETWORK_NAME
+            || status == NtStatus.STATUS_NOT_SUPPORTED;
+      }
+    }
+    return false;
+  }
+
+  private void bind(PipeTransport pipe) throws IOException {
+    ByteBuffer pdu = header(PTYPE_BIND, 72);
+    pdu.putShort((short) MAX_FRAGMENT); // max_xmit_frag
+    pdu.putShort((short) MAX_FRAGMENT); // max_recv_frag
+    pdu.putInt(0); // assoc_group_id
+    pdu.put((byte) 1).put((byte) 0).putShort((short) 0); // one presentation context
+    pdu.putShort((short) 0).put((byte) 1).put((byte) 0); // context id 0, one transfer syntax
+    pdu.put(SRVSVC_SYNTAX);
+    pdu.put(NDR_SYNTAX);
+
+    byte[] ack = new PduReader(pipe, pipe.transact(pdu.array())).next();
+    int type = ack[2] & 0xFF;
+    if (type == PTYPE_BIND_NAK) {
+      throw new RpcException("srvsvc bind rejected", le16(ack, 16));
+    }
+    if (type != PTYPE_BIND_ACK) {
+      throw new IOException("Unexpected reply to srvsvc bind: PDU type " + type);
+    }
+    int secondaryAddressLength = le16(ack, 24);
+    int results = align4(26 + secondaryAddressLength);
+    if (results + 8 > ack.length || ack[results] == 0) {
+      throw new IOException("Malformed srvsvc bind acknowledgement");
+    }
+    int result = le16(ack, results + 4);
+    if (result != 0) {
+      throw new RpcException("srvsvc interface not accepted", le16(ack, results + 6));
+    }
+  }
+
+  /** Sends one request and returns the reassembled stub data of the response. */
+  private byte[] call(PipeTransport pipe, int opnum, byte[] stub) throws IOException {
+    if (CALL_HEADER_LENGTH + stub.length > MAX_FRAGMENT) {
+      throw new IOException("srvsvc request too large: " + stub.length + " bytes");
+    }
+    ByteBuffer pdu = header(PTYPE_REQUEST, CALL_HEADER_LENGTH + stub.length);
+    pdu.putInt(stub.length); // alloc_hint
+    pdu.putShort((short) 0); // context id
+    pdu.putShort((short) opnum);
+    pdu.put(stub);
+    int expectedCallId = callId;
+
+    PduReader reader = new PduReader(pipe, pipe.transact(pdu.array()));
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    while (true) {
+      byte[] fragment = reader.next();
+      int type = fragment[2] & 0xFF;
+      if (type == PTYPE_FAULT && fragment.length >= CALL_HEADER_LENGTH + 4) {
+        throw new RpcException("srvsvc call failed", le32(fragment, CALL_HEADER_LENGTH));
+      }
+      if (type != PTYPE_RESPONSE || le32(fragment, 12) != expectedCallId) {
+        throw new IOException("Unexpected srvsvc reply: PDU type " + type);
+      }
+      int authLength = le16(fragment, 10);
+      int end = authLength > 0 ? fragment.length - authLength - 8 : fragment.length;
+      if (end < CALL_HEADER_LENGTH || response.size() + end > MAX_REPLY_LENGTH) {
+        throw new IOException("Malformed srvsvc reply");
+      }
+      response.write(fragment, CALL_HEADER_LENGTH, end - CALL_HEADER_LENGTH);
+      if ((fragment[3] & PFC_LAST_FRAG) != 0) {
+        return response.toByteArray();
+      }
+    }
+  }
+
+  private ByteBuffer header(int type, int length) {
+    ByteBuffer pdu = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    pdu.put((byte) 5).put((byte) 0); // version 5.0
+    pdu.put((byte) type).put((byte) (PFC_FIRST_FRAG | PFC_LAST_FRAG));
+    pdu.put(new byte[] {0x10, 0, 0, 0}); // little-endian, ASCII, IEEE floats
+    pdu.putShort((short) length);
+    pdu.putShort((short) 0); // auth_length
+    pdu.putInt(++callId);
+    return pdu;
+  }
+
+  /** NDR stub of NetrShareEnum(ServerName, InfoStruct level 1, MAXDWORD, ResumeHandle). */
+  @VisibleForTesting
+  static @NonNull byte[] encodeShareEnum(@NonNull String serverName, int resumeHandle) {
+    NdrWriter w = new NdrWriter();
+    w.writeReferent();
+    w.writeString(serverName);
+    w.writeInt(1); // Level
+    w.writeInt(1); // union discriminant
+    w.writeReferent(); // SHARE_INFO_1_CONTAINER
+    w.writeInt(0); // EntriesRead
+    w.writeInt(0); // Buffer (null)
+    w.writeInt(0xFFFFFFFF); // PreferedMaximumLength: everything at once
+    w.writeReferent();
+    w.writeInt(resumeHandle);
+    return w.toByteArray();
+  }
+
+  /**
+   * Decodes the out parameters of NetrShareEnum up to the return value and appends the shares.
+   *
+   * @return the resume handle for a follow-up call
+   */
+  @VisibleForTesting
+  static int decodeShareEnum(@NonNull NdrReader r, @NonNull List<SmbShareInfo> shares)
+      throws IOException {
+    int level = r.readInt();
+    r.readInt(); // union discriminant
+    if (r.readInt() != 0) {
+      r.readInt(); // EntriesRead
+      if (r.readInt() != 0) {
+        int count = r.readInt();
+        if (count < 0 || count > r.remaining() / 12) {
+          throw new IOException("Malformed share list: " + count + " entries");
+        }
+        boolean[] hasName = new boolean[count];
+        int[] types = new int[count];
+        boolean[] hasComment = new boolean[count];
+        for (int i = 0; i < count; i++) {
+          hasName[i] = r.readInt() != 0;
+          types[i] = r.readInt();
+          hasComment[i] = r.readInt() != 0;
+        }
+        for (int i = 0; i < count; i++) {
+          String name = hasName[i] ? r.readString() : "";
+          String comment = hasComment[i] ? r.readString() : "";
+          if (level == 1 && !name.isEmpty()) {
+            shares.add(new SmbShareInfo(name, types[i], comment));
+          }
+        }
+      }
+    }
+    r.readInt(); // TotalEntries
+    return r.readInt() != 0 ? r.readInt() : 0;
+  }
+
+  private static byte[] syntax(String uuid, int majorVersion) {
+    String hex = uuid.replace("-", "");
+    ByteBuffer b = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+    b.putInt((int) Long.parseLong(hex.substring(0, 8), 16));
+    b.putShort((short) Integer.parseInt(hex.substring(8, 12), 16));
+    b.putShort((short) Integer.parseInt(hex.substring(12, 16), 16));
+    for (int i = 16; i < 32; i += 2) {
+      b.put((byte) Integer.parseInt(hex.substring(i, i + 2), 16));
+    }
+    b.putShort((short) majorVersion).putShort((short) 0);
+    return b.array();
+  }
+
+  private static int align4(int offset) {
+    return (offset + 3) & ~3;
+  }
+
+  private static int le16(byte[] b, int offset) {
+    return (b[offset] & 0xFF) | (b[offset + 1] & 0xFF) << 8;
+  }
+
+  private static int le32(byte[] b, int offset) {
+    return le16(b, offset) | le16(b, offset + 2) << 16;
+  }
+
+  /** Splits the reply byte stream into PDUs, reading from the pipe as needed. */
+  private static final class PduReader {
+    private final PipeTransport pipe;
+    private byte[] buffer;
+    private int start;
+    private int end;
+
+    PduReader(PipeTransport pipe, byte[] first) {
+      this.pipe = pipe;
+      this.buffer = first.length >= MAX_FRAGMENT ? first : Arrays.copyOf(first, MAX_FRAGMENT);
+      this.end = first.length;
+    }
+
+    byte[] next() throws IOException {
+      fill(HEADER_LENGTH);
+      if (buffer[start] != 5 || (buffer[start + 4] & 0xF0) != 0x10) {
+        throw new IOException("Unsupported RPC reply (version or data representation)");
+      }
+      int length = le16(buffer, start + 8);
+      if (length < HEADER_LENGTH) {
+        throw new IOException("Malformed RPC fragment length " + length);
+      }
+      fill(length);
+      byte[] pdu = Arrays.copyOfRange(buffer, start, start + length);
+      start += length;
+      return pdu;
+    }
+
+    private void fill(int length) throws IOException {
+      while (end - start < length) {
+        if (start > 0) {
+          System.arraycopy(buffer, start, buffer, 0, end - start);
+          end -= start;
+          start = 0;
+        }
+        if (end == buffer.length) {
+          buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int n = pipe.read(buffer, end, buffer.length - end);
+        if (n <= 0) {
+          throw new EOFException("Truncated RPC reply");
+        }
+        end += n;
+      }
+    }
+  }
+
+  /** Writes NDR primitives with natural alignment. */
+  @VisibleForTesting
+  static final class NdrWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int referent = 0x00020000;
+
+    void writeInt(int value) {
+      align();
+      out.write(value);
+      out.write(value >>> 8);
+      out.write(value >>> 16);
+      out.write(value >>> 24);
+    }
+
+    /** Writes the referent id of a non-null unique pointer. */
+    void writeReferent() {
+      writeInt(referent);
+      referent += 4;
+    }
+
+    /** Writes a conformant varying, NUL-terminated UTF-16 string. */
+    void writeString(String value) {
+      byte[] chars = (value + '\0').getBytes(StandardCharsets.UTF_16LE);
+      writeInt(chars.length / 2); // max_count
+      writeInt(0); // offset
+      writeInt(chars.length / 2); // actual_count
+      out.write(chars, 0, chars.length);
+    }
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+
+    private void align() {
+      while (out.size() % 4 != 0) {
+        out.write(0);
+      }
+    }
+  }
+
+  /** Reads NDR primitives with natural alignment and bounds checks. */
+  @VisibleForTesting
+  static final class NdrReader {
+    private final byte[] data;
+    private int position;
+
+    NdrReader(byte[] data) {
+      this.data = data;
+    }
+
+    int readInt() throws IOException {
+      position = align4(position);
+      require(4);
+      int value = le32(data, position);
+      position += 4;
+      return value;
+    }
+
+    /** Reads a conformant varying UTF-16 string and strips the terminating NUL. */
+    String readString() throws IOException {
+      readInt(); // max_count
+      readInt(); // offset
+      int count = readInt();
+      if (count < 0 || count > remaining() / 2) {
+        throw new IOException("Malformed string of " + count + " characters");
+      }
+      String value = new String(data, position, count * 2, StandardCharsets.UTF_16LE);
+      position += count * 2;
+      int nul = value.indexOf('\0');
+      return nul >= 0 ? value.substring(0, nul) : value;
+    }
+
+    int remaining() {
+      return data.length - position;
+    }
+
+    private void require(int length) throws IOException {
+      if (position + length > data.length) {
+        throw new EOFException("Truncated NDR data");
+      }
+    }
+  }
+}
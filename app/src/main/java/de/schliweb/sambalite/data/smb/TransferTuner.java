@@ -0,0 +1,207 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.smbj.connection.NegotiatedProtocol;
+import com.hierynomus.smbj.share.DiskShare;
+import de.schliweb.sambalite.util.LogUtils;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide registry of {@link TransferWindow}s, one per server, direction and negotiated
+ * request size. Transfers to the same server start with the window learned by earlier transfers
+ * instead of a fixed default. Learned windows are kept in a {@link Store} keyed by direction and
+ * host:port, so a new process starts where the last one left off.
+ */
+public final class TransferTuner {
+
+  private static final String TAG = "TransferTuner";
+
+  /** Number of remembered windows; the least recently used entry is dropped beyond this. */
+  private static final int MAX_ENTRIES = 32;
+
+  /** Keeps learned windows across process restarts. */
+  public interface Store {
+    /**
+     * @param key direction and host:port of the server
+     * @param chunkSize chunk size the window is used with
+     * @return the stored window, 0 if none was stored for this chunk size
+     */
+    int load(@NonNull String key, int chunkSize);
+
+    /** Stores the window learned for {@code key} with {@code chunkSize}. */
+    void save(@NonNull String key, int chunkSize, int window);
+  }
+
+  private static final Store NO_STORE =
+      new Store() {
+        @Override
+        public int load(@NonNull String key, int chunkSize) {
+          return 0;
+        }
+
+        @Override
+        public void save(@NonNull String key, int chunkSize, int window) {}
+      };
+
+  private static TransferTuner instance;
+
+  private volatile Store store = NO_STORE;
+
+  private final Map<String, TransferWindow> windows =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TransferWindow> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  @VisibleForTesting
+  TransferTuner() {}
+
+  /** Singleton instance retrieval. Ensures thread-safe lazy initialization. */
+  public static synchronized @NonNull TransferTuner getInstance() {
+    if (instance == null) {
+      instance = new TransferTuner();
+    }
+    return instance;
+  }
+
+  /** Sets where learned windows are persisted. */
+  public void setStore(@NonNull Store store) {
+    this.store = store;
+  }
+
+  /** Returns the read window for the server behind {@code share}. */
+  public @NonNull TransferWindow downloadWindow(@Nullable DiskShare share) {
+    Connection conn = connectionOf(share);
+    NegotiatedProtocol negotiated = negotiatedOf(conn);
+    return window("read", serverIdOf(conn), negotiated != null ? negotiated.getMaxReadSize() : 0);
+  }
+
+  /** Returns the write window for the server behind {@code share}. */
+  public @NonNull TransferWindow uploadWindow(@Nullable DiskShare share) {
+    Connection conn = connectionOf(share);
+    NegotiatedProtocol negotiated = negotiatedOf(conn);
+    return window("write", serverIdOf(conn), negotiated != null ? negotiated.getMaxWriteSize() : 0);
+  }
+
+  @VisibleForTesting
+  synchronized @NonNull TransferWindow window(
+      @NonNull String direction, @NonNull String serverId, int negotiatedMaxSize) {
+    String key = direction + "|" + serverId + "|" + negotiatedMaxSize;
+    TransferWindow window = windows.get(key);
+    if (window == null) {
+      int stored = load(storeKey(direction, serverId), negotiatedMaxSize);
+      window =
+          new TransferWindow(
+              negotiatedMaxSize, stored > 0 ? stored : TransferWindow.INITIAL_WINDOW);
+      windows.put(key, window);
+      LogUtils.d(TAG, "New " + direction + " window for " + serverId + ": " + window);
+    }
+    return window;
+  }
+
+  /**
+   * Persists the current state of {@code window}, called when a transfer using it ends. Windows not
+   * handed out by this tuner are ignored.
+   */
+  public void remember(@NonNull TransferWindow window) {
+    String key = null;
+    synchronized (this) {
+      for (Map.Entry<String, TransferWindow> e : windows.entrySet()) {
+        if (e.getValue() == window) {
+          String[] parts = e.getKey().split("\\|", 3);
+          key = storeKey(parts[0], parts[1]);
+          break;
+        }
+      }
+    }
+    if (key == null || key.endsWith("|unknown")) {
+      return;
+    }
+    try {
+      store.save(key, window.getChunkSize(), window.getWindow());
+    } catch (RuntimeException e) {
+      LogUtils.w(TAG, "Could not store transfer window: " + e.getMessage());
+    }
+  }
+
+  /** Returns one line per remembered window for diagnostics. */
+  public synchronized @NonNull List<String> describe() {
+    List<String> lines = new ArrayList<>(windows.size());
+    for (Map.Entry<String, TransferWindow> e : windows.entrySet()) {
+      String[] parts = e.getKey().split("\\|", 3);
+      lines.add(parts[1] + " " + parts[0] + ": " + e.getValue());
+    }
+    return lines;
+  }
+
+  /** Forgets all learned windows. */
+  public synchronized void reset() {
+    windows.clear();
+  }
+
+  private int load(@NonNull String key, int negotiatedMaxSize) {
+    if (key.endsWith("|unknown")) {
+      return 0;
+    }
+    try {
+      return store.load(key, TransferWindow.chunkSizeFor(negotiatedMaxSize));
+    } catch (RuntimeException e) {
+      LogUtils.w(TAG, "Could not load transfer window: " + e.getMessage());
+      return 0;
+    }
+  }
+
+  private static @NonNull String storeKey(@NonNull String direction, @NonNull String serverId) {
+    return direction + "|" + serverId;
+  }
+
+  /** Returns the host:port key of the server behind {@code share}, "unknown" if not connected. */
+  static @NonNull String serverIdFor(@Nullable DiskShare share) {
+    return serverIdOf(connectionOf(share));
+  }
+
+  private static @Nullable Connection connectionOf(@Nullable DiskShare share) {
+    if (share == null) return null;
+    try {
+      return share.getTreeConnect().getSession().getConnection();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static @Nullable NegotiatedProtocol negotiatedOf(@Nullable Connection conn) {
+    if (conn == null) return null;
+    try {
+      return conn.getNegotiatedProtocol();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static @NonNull String serverIdOf(@Nullable Connection conn) {
+    if (conn == null) return "unknown";
+    try {
+      return conn.getRemoteHostname().toLowerCase(Locale.ROOT) + ":" + conn.getRemotePort();
+    } catch (Exception e) {
+      return "unknown";
+    }
+  }
+}
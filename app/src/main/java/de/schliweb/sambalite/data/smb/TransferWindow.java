@@ -0,0 +1,192 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import androidx.annotation.NonNull;
+import java.util.Locale;
+
+/**
+ * Adaptive in-flight window for pipelined SMB transfers to one server.
+ *
+ * <p>The chunk size is derived from the negotiated maxReadSize/maxWriteSize. The number of
+ * outstanding requests follows an AIMD scheme driven by observed per-chunk latency: once per round
+ * (one window worth of chunks) the controller estimates how many chunks are queued at the server,
+ * {@code window * (1 - minLatency / avgLatency)}, which is the window minus the bandwidth-delay
+ * product in chunks. Below {@link #QUEUE_LOW} the window grows by one, above {@link #QUEUE_HIGH} it
+ * shrinks by one, and a failed request halves it. A slow NAS therefore settles at a small window,
+ * while a fast server grows towards {@link #MAX_IN_FLIGHT_BYTES}.
+ *
+ * <p>Instances are shared by all transfers to the same server (see {@link TransferTuner}) and are
+ * thread-safe.
+ */
+public final class TransferWindow {
+
+  /** Smallest chunk size; SMB 2.0.2 servers negotiate 64 KB. */
+  static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+  /** Largest chunk size; larger requests only add memory without improving pipelining. */
+  static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+  /** Upper bound for bytes held by outstanding requests of one transfer. */
+  static final long MAX_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+
+  /** Upper bound for the number of outstanding requests. */
+  static final int MAX_WINDOW = 16;
+
+  /** Initial window for a server without history. */
+  static final int INITIAL_WINDOW = 4;
+
+  /** Files spanning at least this many chunks use the pipelined path. */
+  static final int PARALLEL_THRESHOLD_CHUNKS = 4;
+
+  /** Grow while fewer chunks than this are queued at the server. */
+  static final double QUEUE_LOW = 1.0;
+
+  /** Shrink while more chunks than this are queued at the server. */
+  static final double QUEUE_HIGH = 3.0;
+
+  private final int chunkSize;
+  private final int maxWindow;
+  private final boolean adaptive;
+
+  private int window;
+  private long minLatencyNanos = Long.MAX_VALUE;
+  private int roundChunks;
+  private long roundLatencyNanos;
+  private long roundBytes;
+  private long roundStartNanos;
+  private double throughputBytesPerSec;
+
+  /**
+   * Creates an adaptive window.
+   *
+   * @param negotiatedMaxSize maxReadSize or maxWriteSize negotiated with the server, 0 if unknown
+   * @param initialWindow starting number of outstanding requests
+   */
+  public TransferWindow(int negotiatedMaxSize, int initialWindow) {
+    this(chunkSizeFor(negotiatedMaxSize), initialWindow, true);
+  }
+
+  private TransferWindow(int chunkSize, int initialWindow, boolean adaptive) {
+    this.chunkSize = chunkSize;
+    this.maxWindow =
+        adaptive
+            ? (int) Math.max(1, Math.min(MAX_WINDOW, MAX_IN_FLIGHT_BYTES / chunkSize))
+            : Math.max(1, initialWindow);
+    this.adaptive = adaptive;
+    this.window = Math.max(1, Math.min(maxWindow, initialWindow));
+  }
+
+  /** Creates a window that never adapts. Used for tests and explicit tuning. */
+  public static @NonNull TransferWindow fixed(int chunkSize, int window) {
+    return new TransferWindow(Math.max(MIN_CHUNK_SIZE, chunkSize), window, false);
+  }
+
+  /** Maps a negotiated maximum request size to the chunk size used for pipelining. */
+  static int chunkSizeFor(int negotiatedMaxSize) {
+    if (negotiatedMaxSize <= 0) {
+      return MAX_CHUNK_SIZE;
+    }
+    return Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, negotiatedMaxSize));
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /** Returns the current number of requests that may be outstanding. */
+  public synchronized int getWindow() {
+    return window;
+  }
+
+  public int getMaxWindow() {
+    return maxWindow;
+  }
+
+  /** Files of at least this size benefit from several outstanding requests. */
+  public long getParallelThreshold() {
+    return (long) chunkSize * PARALLEL_THRESHOLD_CHUNKS;
+  }
+
+  /** Smoothed throughput of the last rounds in bytes per second, 0 if nothing was measured. */
+  public synchronized double getThroughputBytesPerSec() {
+    return throughputBytesPerSec;
+  }
+
+  /** Smallest observed request latency in milliseconds, or -1 if nothing was measured. */
+  public synchronized long getMinLatencyMs() {
+    return minLatencyNanos == Long.MAX_VALUE ? -1 : minLatencyNanos / 1_000_000;
+  }
+
+  /**
+   * Records a completed request.
+   *
+   * @param bytes bytes transferred by the request
+   * @param latencyNanos time between issuing the request and its completion
+   */
+  public synchronized void onChunkCompleted(int bytes, long latencyNanos) {
+    long now = System.nanoTime();
+    if (roundChunks == 0) {
+      roundStartNanos = now - Math.max(0, latencyNanos);
+    }
+    latencyNanos = Math.max(1, latencyNanos);
+    minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+    roundChunks++;
+    roundLatencyNanos += latencyNanos;
+    roundBytes += bytes;
+    if (roundChunks < window) {
+      return;
+    }
+
+    long elapsed = Math.max(1, now - roundStartNanos);
+    double sample = roundBytes * 1_000_000_000.0 / elapsed;
+    throughputBytesPerSec =
+        throughputBytesPerSec == 0 ? sample : 0.75 * throughputBytesPerSec + 0.25 * sample;
+
+    if (adaptive) {
+      long avgLatency = roundLatencyNanos / roundChunks;
+      double queued = window * (1.0 - (double) minLatencyNanos / avgLatency);
+      if (queued < QUEUE_LOW) {
+        window = Math.min(maxWindow, window + 1);
+      } else if (queued > QUEUE_HIGH) {
+        window = Math.max(1, window - 1);
+      }
+      // Let the base latency drift up slowly so a changed route is learned again
+      minLatencyNanos += minLatencyNanos >> 6;
+    }
+    roundChunks = 0;
+    roundLatencyNanos = 0;
+    roundBytes = 0;
+  }
+
+  /** Records a failed request; halves the window (multiplicative decrease). */
+  public synchronized void onChunkFailed() {
+    if (adaptive) {
+      window = Math.max(1, window / 2);
+    }
+    roundChunks = 0;
+    roundLatencyNanos = 0;
+    roundBytes = 0;
+  }
+
+  @NonNull
+  @Override
+  public synchronized String toString() {
+    return (chunkSize / 1024)
+        + " KB x "
+        + window
+        + "/"
+        + maxWindow
+        + (throughputBytesPerSec > 0
+            ? String.format(Locale.ROOT, ", %.1f MB/s", throughputBytesPerSec / (1024 * 1024))
+            : "")
+        + (minLatencyNanos != Long.MAX_VALUE ? ", min " + getMinLatencyMs() + " ms" : "");
+  }
+}
@@ -21,15 +21,10 @@ import androidx.work.Data;
 import androidx.work.ForegroundInfo;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
-import com.hierynomus.smbj.SMBClient;
-import com.hierynomus.smbj.SmbConfig;
-import com.hierynomus.smbj.auth.AuthenticationContext;
-import com.hierynomus.smbj.connection.Connection;
-import com.hierynomus.smbj.session.Session;
 import com.hierynomus.smbj.share.DiskShare;
-import com.hierynomus.smbj.transport.tcp.async.AsyncDirectTcpTransportFactory;
 import de.schliweb.sambalite.data.model.SmbConnection;
 import de.schliweb.sambalite.data.repository.ConnectionRepositoryImpl;
+import de.schliweb.sambalite.data.smb.SmbSessionPool;
 import de.schliweb.sambalite.search.db.SearchDatabase;
 import de.schliweb.sambalite.search.db.SearchResult;
 import de.schliweb.sambalite.search.db.SearchResultDao;
@@ -109,40 +104,29 @@ public class SearchWorker extends Worker {
     List<SearchResult> batch = new ArrayList<>(BATCH_SIZE);
 
     try {
-      SMBClient client = createSmbClient(connection);
-      try (client;
-          Connection conn = client.connect(connection.getServer())) {
+      try (SmbSessionPool.Lease lease = SmbSessionPool.getInstance().acquire(connection)) {
         if (isStopped()) return Result.success();
-
-        AuthenticationContext authContext = createAuthContext(connection);
-        try (Session session = conn.authenticate(authContext)) {
-          if (isStopped()) return Result.success();
-
-          String shareName = getShareName(connection.getShare());
-          try (DiskShare share = (DiskShare) session.connectShare(shareName)) {
-            if (isStopped()) return Result.success();
-
-            // Use streaming search from SmbRepositoryImpl pattern
-            searchRecursive(
-                share,
-                path,
-                query,
-                searchType,
-                includeSubfolders,
-                dao,
-                searchId,
-                connectionId,
-                batch);
-
-            // Flush remaining batch
-            if (!batch.isEmpty()) {
-              dao.insertAll(batch);
-              batch.clear();
-            }
-
-            hitCount = dao.getResultsSync(searchId).size();
-          }
+        DiskShare share = lease.getShare();
+
+        // Use streaming search from SmbRepositoryImpl pattern
+        searchRecursive(
+            share,
+            path,
+            query,
+            searchType,
+            includeSubfolders,
+            dao,
+            searchId,
+            connectionId,
+            batch);
+
+        // Flush remaining batch
+        if (!batch.isEmpty()) {
+          dao.insertAll(batch);
+          batch.clear();
         }
+
+        hitCount = dao.getResultsSync(searchId).size();
       }
     } catch (Exception e) {
       if (isStopped()) {
@@ -324,68 +308,4 @@ public class SearchWorker extends Worker {
       notificationManager.notify(NOTIFICATION_ID, buildNotification(title, content));
     }
   }
-
-  private SMBClient createSmbClient(SmbConnection connection) {
-    boolean encrypt = false;
-    boolean sign = false;
-    boolean async = false;
-    try {
-      encrypt = connection.isEncryptData();
-      sign = connection.isSigningRequired();
-      async = connection.isAsyncTransport();
-    } catch (Throwable ignored) {
-    }
-
-    if (!encrypt && !sign && !async) {
-      return new SMBClient();
-    }
-
-    SmbConfig.Builder builder =
-        SmbConfig.builder().withEncryptData(encrypt).withSigningRequired(sign);
-
-    if (async) {
-      builder.withTransportLayerFactory(new AsyncDirectTcpTransportFactory<>());
-      LogUtils.i(TAG, "Using AsyncDirectTcpTransport for improved search performance");
-    }
-
-    try {
-      builder.withDialects(
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_1_1,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0_2,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_2_1,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_2_0_2);
-    } catch (Throwable ignored) {
-    }
-
-    LogUtils.d(
-        TAG, "SMB client config: encrypt=" + encrypt + ", sign=" + sign + ", async=" + async);
-    return new SMBClient(builder.build());
-  }
-
-  private AuthenticationContext createAuthContext(SmbConnection connection) {
-    String domain = connection.getDomain() != null ? connection.getDomain() : "";
-    String username = connection.getUsername() != null ? connection.getUsername() : "";
-    String password = connection.getPassword() != null ? connection.getPassword() : "";
-
-    if (username.isEmpty() && password.isEmpty()) {
-      return AuthenticationContext.guest();
-    }
-
-    return new AuthenticationContext(username, password.toCharArray(), domain);
-  }
-
-  private String getShareName(String sharePath) {
-    if (sharePath == null || sharePath.isEmpty()) return "";
-
-    String path = sharePath;
-    while (path.startsWith("/") || path.startsWith("\\")) {
-      path = path.substring(1);
-    }
-
-    int slashIndex = path.indexOf('/');
-    if (slashIndex == -1) slashIndex = path.indexOf('\\');
-
-    return slashIndex == -1 ? path : path.substring(0, slashIndex);
-  }
 }
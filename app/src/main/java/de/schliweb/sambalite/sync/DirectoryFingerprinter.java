@@ -0,0 +1,66 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync;
+
+import androidx.annotation.NonNull;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hashes the entries of one directory listing into a fingerprint that does not depend on the order
+ * of the listing. Files contribute their name, size and last modified time, subdirectories only
+ * their name: each subdirectory has its own fingerprint, and a change below it does not make its
+ * parent differ. This class has no Android dependencies.
+ */
+final class DirectoryFingerprinter {
+
+  private final List<String> entries = new ArrayList<>();
+
+  /** Adds a file of the directory. */
+  void addFile(@NonNull String name, long size, long lastModified) {
+    entries.add("f\u0000" + name + "\u0000" + size + "\u0000" + lastModified);
+  }
+
+  /** Adds a subdirectory of the directory. */
+  void addDirectory(@NonNull String name) {
+    entries.add("d\u0000" + name);
+  }
+
+  /** Returns the number of entries added. */
+  int getCount() {
+    return entries.size();
+  }
+
+  /** Returns the SHA-256 of the sorted entries as a hex string. */
+  @NonNull
+  String digest() {
+    List<String> sorted = new ArrayList<>(entries);
+    Collections.sort(sorted);
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+    for (String entry : sorted) {
+      md.update(entry.getBytes(StandardCharsets.UTF_8));
+      md.update((byte) '\n');
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : md.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
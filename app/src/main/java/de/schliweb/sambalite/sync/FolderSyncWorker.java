@@ -19,9 +19,12 @@ import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.net.Uri;
 import android.os.Build;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.documentfile.provider.DocumentFile;
+import androidx.work.Data;
 import androidx.work.ForegroundInfo;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
@@ -32,20 +35,29 @@ import com.hierynomus.msfscc.fileinformation.FileBasicInformation;
 import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
 import com.hierynomus.mssmb2.SMB2CreateDisposition;
 import com.hierynomus.mssmb2.SMB2ShareAccess;
-import com.hierynomus.smbj.SMBClient;
-import com.hierynomus.smbj.SmbConfig;
-import com.hierynomus.smbj.auth.AuthenticationContext;
-import com.hierynomus.smbj.connection.Connection;
-import com.hierynomus.smbj.session.Session;
 import com.hierynomus.smbj.share.DiskShare;
 import com.hierynomus.smbj.share.File;
-import com.hierynomus.smbj.transport.tcp.async.AsyncDirectTcpTransportFactory;
 import de.schliweb.sambalite.data.model.SmbConnection;
 import de.schliweb.sambalite.data.repository.ConnectionRepositoryImpl;
+import de.schliweb.sambalite.data.smb.BandwidthGovernor;
+import de.schliweb.sambalite.data.smb.BufferPool;
+import de.schliweb.sambalite.data.smb.ContentChecksum;
+import de.schliweb.sambalite.data.smb.PipelinedDownloader;
+import de.schliweb.sambalite.data.smb.PipelinedUploader;
+import de.schliweb.sambalite.data.smb.SmbSessionPool;
+import de.schliweb.sambalite.sync.db.DirectoryFingerprint;
+import de.schliweb.sambalite.sync.db.DirectoryFingerprintStore;
 import de.schliweb.sambalite.sync.db.FileSyncState;
+import de.schliweb.sambalite.sync.db.SyncPlan;
+import de.schliweb.sambalite.sync.db.SyncPlanAction;
+import de.schliweb.sambalite.sync.db.SyncPlanStore;
+import de.schliweb.sambalite.sync.db.SyncPlanSummary;
 import de.schliweb.sambalite.sync.db.SyncStateStore;
+import de.schliweb.sambalite.ui.utils.PreferenceUtils;
+import de.schliweb.sambalite.util.DiskSpaceAccountant;
 import de.schliweb.sambalite.util.EnhancedFileUtils;
 import de.schliweb.sambalite.util.LogUtils;
+import de.schliweb.sambalite.util.SafTreeEnumerator;
 import de.schliweb.sambalite.util.StorageCapabilityResolver;
 import de.schliweb.sambalite.util.TimestampCapability;
 import de.schliweb.sambalite.util.TimestampUtils;
@@ -54,18 +66,24 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.Normalizer;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -92,50 +110,47 @@ public class FolderSyncWorker extends Worker {
     return CONFIG_LOCKS.computeIfAbsent(configId, id -> new ReentrantLock());
   }
 
-  /**
-   * Requested SMB2 read/write/transact buffer size (8 MB). Larger buffers reduce the number of SMB2
-   * packets per transfer; the effective size is capped by server negotiation.
-   */
-  private static final int TRANSFER_BUFFER_SIZE = 8 * 1024 * 1024;
+  public static final String KEY_SYNC_CONFIG_ID = "sync_config_id";
 
   /**
-   * Files at or above this size are downloaded with multiple concurrently outstanding SMB READ
-   * requests (pipelined). Smaller files use the simple streamed path.
+   * Input flag: only plan the sync of {@link #KEY_SYNC_CONFIG_ID} and persist the plan as a
+   * preview, without transferring anything.
    */
-  private static final long PARALLEL_DOWNLOAD_THRESHOLD = 16L * 1024 * 1024;
+  public static final String KEY_DRY_RUN = "sync_dry_run";
 
-  /**
-   * Chunk size for parallel downloads. Each chunk is fetched with a single SMB READ request (must
-   * stay at or below the negotiated maxReadSize, typically 8 MB on SMB 3.x servers).
-   */
-  private static final int PARALLEL_CHUNK_SIZE = 4 * 1024 * 1024;
+  /** Progress data: actions of the running plan that have run. */
+  public static final String KEY_PROGRESS_DONE = "sync_progress_done";
 
-  /**
-   * Number of concurrently outstanding SMB READ requests during parallel downloads. The SMB
-   * connection is multiplexed, so multiple requests are pipelined over the same TCP connection,
-   * hiding network round-trip latency.
-   */
-  private static final int PARALLEL_READERS = 6;
+  /** Progress data: actions of the running plan. */
+  public static final String KEY_PROGRESS_TOTAL = "sync_progress_total";
 
-  /**
-   * Maximum number of chunk writes that may be queued behind the dedicated writer thread during
-   * parallel downloads. Decouples slow SAF/disk writes from the SMB read pipeline while keeping
-   * memory usage bounded (PARALLEL_WRITE_QUEUE * PARALLEL_CHUNK_SIZE additional bytes at most).
-   */
-  private static final int PARALLEL_WRITE_QUEUE = 2;
+  /** Progress data: bytes of the transfers that have run. */
+  public static final String KEY_PROGRESS_BYTES = "sync_progress_bytes";
+
+  /** Progress data: bytes of all transfers of the running plan. */
+  public static final String KEY_PROGRESS_TOTAL_BYTES = "sync_progress_total_bytes";
 
-  private static final long DISK_CHECK_INTERVAL = 10L * 1024 * 1024;
-  public static final String KEY_SYNC_CONFIG_ID = "sync_config_id";
   private static final String SYNC_CHANNEL_ID = "FOLDER_SYNC_OPERATIONS";
   private static final int SYNC_NOTIFICATION_ID = 2001;
   private SyncActionLog actionLog;
   private final SyncComparator syncComparator = new SyncComparator();
   private SyncStateStore syncStateStore;
+  private final SyncPlanStore planStore;
+  private final DirectoryFingerprintStore fingerprintStore;
+  private final SafTreeEnumerator localTree;
+  private ContentChecksum.Algorithm checksumAlgorithm;
+  private boolean verifyUploads;
+  private int listConcurrency = PreferenceUtils.DEFAULT_SYNC_LIST_CONCURRENCY;
+  private int transferConcurrency = PreferenceUtils.DEFAULT_SYNC_TRANSFER_CONCURRENCY;
+  private int fullWalkInterval = PreferenceUtils.DEFAULT_SYNC_FULL_WALK_INTERVAL;
 
   public FolderSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
     super(context, params);
     this.actionLog = new SyncActionLog(context);
     this.syncStateStore = new SyncStateStore(context);
+    this.planStore = new SyncPlanStore(context);
+    this.fingerprintStore = new DirectoryFingerprintStore(context);
+    this.localTree = new SafTreeEnumerator(context);
   }
 
   @NonNull
@@ -145,6 +160,12 @@ public class FolderSyncWorker extends Worker {
   }
 
   private ForegroundInfo createForegroundInfo() {
+    return createForegroundInfo(0, 0, 0, 0);
+  }
+
+  /** Builds the foreground notification, with the progress of the plan once it is known. */
+  private ForegroundInfo createForegroundInfo(
+      int finished, int total, long finishedBytes, long totalBytes) {
     Context context = getApplicationContext();
 
     NotificationChannel channel =
@@ -159,14 +180,29 @@ public class FolderSyncWorker extends Worker {
       manager.createNotificationChannel(channel);
     }
 
-    Notification notification =
+    NotificationCompat.Builder builder =
         new NotificationCompat.Builder(context, SYNC_CHANNEL_ID)
             .setContentTitle(context.getString(de.schliweb.sambalite.R.string.sync_running))
             .setSmallIcon(de.schliweb.sambalite.R.drawable.ic_notification)
             .setOngoing(true)
             .setSilent(true)
-            .setPriority(NotificationCompat.PRIORITY_LOW)
-            .build();
+            .setPriority(NotificationCompat.PRIORITY_LOW);
+    if (total > 0) {
+      int percent =
+          totalBytes > 0
+              ? (int) (finishedBytes * 100 / totalBytes)
+              : (int) (finished * 100L / total);
+      builder
+          .setContentText(
+              context.getString(
+                  de.schliweb.sambalite.R.string.sync_progress,
+                  finished,
+                  total,
+                  EnhancedFileUtils.formatFileSize(finishedBytes),
+                  EnhancedFileUtils.formatFileSize(totalBytes)))
+          .setProgress(100, Math.min(100, percent), false);
+    }
+    Notification notification = builder.build();
 
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
       return new ForegroundInfo(
@@ -183,9 +219,12 @@ public class FolderSyncWorker extends Worker {
     // Check if a specific config ID was requested
     String specificConfigId = getInputData().getString(KEY_SYNC_CONFIG_ID);
     boolean isManualSync = specificConfigId != null;
+    boolean dryRun = isManualSync && getInputData().getBoolean(KEY_DRY_RUN, false);
     LogUtils.i(
         TAG,
-        "Sync type: " + (isManualSync ? "manual (config=" + specificConfigId + ")" : "periodic"));
+        "Sync type: "
+            + (isManualSync ? "manual (config=" + specificConfigId + ")" : "periodic")
+            + (dryRun ? ", preview only" : ""));
 
     // Promote to foreground to show notification and survive app kill
     try {
@@ -195,6 +234,16 @@ public class FolderSyncWorker extends Worker {
       LogUtils.w(TAG, "Could not promote to foreground: " + e.getMessage());
     }
 
+    // Integrity mode: checksums are computed inline and stored with the sync state
+    checksumAlgorithm =
+        ContentChecksum.Algorithm.parse(
+            PreferenceUtils.getTransferChecksum(getApplicationContext()));
+    verifyUploads =
+        checksumAlgorithm != null && PreferenceUtils.getVerifyUploads(getApplicationContext());
+    listConcurrency = PreferenceUtils.getSyncListConcurrency(getApplicationContext());
+    transferConcurrency = PreferenceUtils.getSyncTransferConcurrency(getApplicationContext());
+    fullWalkInterval = PreferenceUtils.getSyncFullWalkInterval(getApplicationContext());
+
     SyncRepository syncRepository = new SyncRepository(getApplicationContext());
     ConnectionRepositoryImpl connectionRepository =
         new ConnectionRepositoryImpl(getApplicationContext());
@@ -202,7 +251,9 @@ public class FolderSyncWorker extends Worker {
     List<SyncConfig> configs;
     if (specificConfigId != null) {
       LogUtils.i(TAG, "Starting sync for specific config: " + specificConfigId);
-      configs = syncRepository.getAllEnabledConfigs();
+      // A preview can also be requested for a disabled config
+      configs =
+          dryRun ? syncRepository.getAllSyncConfigs() : syncRepository.getAllEnabledConfigs();
       configs.removeIf(c -> !c.getId().equals(specificConfigId));
     } else {
       LogUtils.i(TAG, "Starting periodic sync for all enabled configs");
@@ -211,7 +262,7 @@ public class FolderSyncWorker extends Worker {
 
     if (configs.isEmpty()) {
       LogUtils.i(TAG, "No enabled sync configs found, finishing");
-      return Result.success();
+      return dryRun ? Result.failure() : Result.success();
     }
 
     List<SmbConnection> connections = connectionRepository.getAllConnections();
@@ -264,7 +315,7 @@ public class FolderSyncWorker extends Worker {
       }
 
       // Check if sync is restricted to WiFi only
-      if (config.isWifiOnly() && !isConnectedToWifi()) {
+      if (!dryRun && config.isWifiOnly() && !isConnectedToWifi()) {
         LogUtils.i(
             TAG,
             "Skipping config "
@@ -274,7 +325,8 @@ public class FolderSyncWorker extends Worker {
       }
 
       // Check disk space before starting sync for this config
-      if (!hasEnoughDiskSpace()) {
+      DiskSpaceAccountant.getInstance().refresh();
+      if (!dryRun && !hasEnoughDiskSpace()) {
         LogUtils.e(
             TAG, "Insufficient disk space \u2013 aborting sync for config: " + config.getId());
         anyFailure = true;
@@ -296,9 +348,15 @@ public class FolderSyncWorker extends Worker {
         continue;
       }
       try {
-        syncFolder(config, connection);
-        syncRepository.updateLastSyncTimestamp(config.getId(), System.currentTimeMillis());
-        LogUtils.i(TAG, "Sync completed for config: " + config.getId());
+        boolean finished = syncFolder(config, connection, dryRun);
+        if (dryRun) {
+          LogUtils.i(TAG, "Sync preview planned for config: " + config.getId());
+        } else if (finished) {
+          syncRepository.updateLastSyncTimestamp(config.getId(), System.currentTimeMillis());
+          LogUtils.i(TAG, "Sync completed for config: " + config.getId());
+        } else {
+          LogUtils.i(TAG, "Sync stopped for config " + config.getId() + ", plan kept for resume");
+        }
       } catch (InsufficientDiskSpaceException e) {
         LogUtils.e(TAG, "Sync aborted for config " + config.getId() + ": insufficient disk space");
         anyFailure = true;
@@ -311,13 +369,17 @@ public class FolderSyncWorker extends Worker {
       }
 
       // Check disk space between configs to avoid futile attempts
-      if (!hasEnoughDiskSpace()) {
+      if (!dryRun && !hasEnoughDiskSpace()) {
         LogUtils.e(TAG, "Insufficient disk space \u2013 aborting remaining sync configs");
         anyFailure = true;
         break;
       }
     }
 
+    if (anyFailure && dryRun) {
+      LogUtils.w(TAG, "Sync preview failed");
+      return Result.failure();
+    }
     if (anyFailure) {
       LogUtils.w(TAG, "Some sync operations failed, requesting retry");
       return Result.retry();
@@ -327,8 +389,16 @@ public class FolderSyncWorker extends Worker {
     return Result.success();
   }
 
-  /** Synchronizes a single folder pair based on the given config and connection. */
-  private void syncFolder(SyncConfig config, SmbConnection connection) throws Exception {
+  /**
+   * Synchronizes a single folder pair based on the given config and connection. The folder pair is
+   * planned first (see {@link #planFolder}) and the persisted plan is then executed; an interrupted
+   * plan of an earlier run is resumed instead of listing both trees again.
+   *
+   * @param dryRun only plan the sync and persist the plan as a preview
+   * @return false if the worker was stopped before the plan was executed completely
+   */
+  private boolean syncFolder(SyncConfig config, SmbConnection connection, boolean dryRun)
+      throws Exception {
     LogUtils.d(TAG, "Syncing folder for config: " + config.getId());
 
     DocumentFile localFolder =
@@ -337,104 +407,681 @@ public class FolderSyncWorker extends Worker {
       throw new Exception("Local folder not accessible: " + config.getLocalFolderUri());
     }
 
-    try (SMBClient client = createSmbClient(connection);
-        Connection conn = client.connect(connection.getServer())) {
+    // Sessions come from the process-wide pool and are returned (not closed) when done.
+    try (SmbSessionPool.Lease lease = SmbSessionPool.getInstance().acquire(connection)) {
+      DiskShare share = lease.getShare();
 
-      AuthenticationContext authContext = createAuthContext(connection);
-      try (Session session = conn.authenticate(authContext)) {
-        String shareName = getShareName(connection.getShare());
-        try (DiskShare share = (DiskShare) session.connectShare(shareName)) {
+      // Ensure remote directory exists; a preview does not change anything
+      String remotePath = config.getRemotePath() != null ? config.getRemotePath() : "";
+      if (!remotePath.isEmpty() && !dryRun) {
+        ensureRemoteDirectoryExists(share, remotePath);
+      }
 
-          // Ensure remote directory exists
-          String remotePath = config.getRemotePath();
-          if (remotePath != null && !remotePath.isEmpty()) {
-            ensureRemoteDirectoryExists(share, remotePath);
+      SyncPlan header = newPlanHeader(config, remotePath, dryRun);
+      // Planner, executor and mirror sweep all read the sync state of this root from one snapshot
+      syncStateStore.openSnapshot(header.localUri);
+      try {
+        List<SyncPlanAction> actions = dryRun ? null : resumablePlan(header);
+        PlanBuilder planned = null;
+        if (actions == null) {
+          planned = planFolder(share, config, localFolder, header);
+          if (isStopped()) {
+            // A partial plan would make the mirror sweep and the preview wrong; plan again later
+            return false;
+          }
+          header.mirrorNote = planned.mirrorNote;
+          boolean saved = planStore.savePlan(header, planned.actions);
+          if (dryRun) {
+            if (!saved) {
+              throw new IOException("Could not save sync preview for config " + config.getId());
+            }
+            return true;
           }
+          // Reload to get the IDs the actions are checkpointed by
+          List<SyncPlanAction> stored = saved ? planStore.getPendingActions(config.getId()) : null;
+          actions =
+              stored != null && stored.size() == planned.actions.size() ? stored : planned.actions;
+        }
+        boolean finished = executePlan(share, header, localFolder, actions, planned);
+        if (finished && planned != null) {
+          saveFingerprints(planned, actions);
+        }
+        return finished;
+      } finally {
+        syncStateStore.closeSnapshot();
+      }
+    }
+  }
+
+  /** Maximum age of an interrupted plan that is resumed instead of planning again. */
+  private static final long PLAN_RESUME_MAX_AGE_MS = 24L * 60L * 60L * 1000L;
+
+  private static SyncPlan newPlanHeader(SyncConfig config, String remotePath, boolean dryRun) {
+    SyncPlan plan = new SyncPlan();
+    // A preview must not replace the plan an interrupted sync resumes from
+    plan.configId = dryRun ? SyncPlanStore.previewKey(config.getId()) : config.getId();
+    plan.createdAt = System.currentTimeMillis();
+    plan.direction = config.getDirection().name();
+    plan.localUri = config.getLocalFolderUri();
+    plan.remotePath = remotePath;
+    // Mirror mode is only meaningful for one-way directions; it is ignored for BIDIRECTIONAL.
+    plan.mirror = config.isMirror() && config.getDirection() != SyncDirection.BIDIRECTIONAL;
+    plan.mirrorUseTrash = config.isMirrorUseTrash();
+    plan.dryRun = dryRun;
+    return plan;
+  }
 
-          String rootUri = config.getLocalFolderUri();
+  /**
+   * Returns the pending actions of an interrupted plan of the config, or null if the folder pair
+   * has to be planned again: there is no plan, it is a preview, it is older than {@link
+   * #PLAN_RESUME_MAX_AGE_MS} or it was computed for other settings than {@code current}.
+   */
+  @Nullable
+  private List<SyncPlanAction> resumablePlan(SyncPlan current) {
+    SyncPlan stored = planStore.getPlan(current.configId);
+    if (stored == null || stored.dryRun) return null;
+    long age = current.createdAt - stored.createdAt;
+    if (age < 0
+        || age > PLAN_RESUME_MAX_AGE_MS
+        || !stored.direction.equals(current.direction)
+        || !stored.localUri.equals(current.localUri)
+        || !stored.remotePath.equals(current.remotePath)
+        || stored.mirror != current.mirror
+        || stored.mirrorUseTrash != current.mirrorUseTrash) {
+      LogUtils.d(TAG, "Stored sync plan of config " + current.configId + " is outdated");
+      return null;
+    }
+    List<SyncPlanAction> pending = planStore.getPendingActions(current.configId);
+    if (pending.isEmpty()) return null;
+    LogUtils.i(
+        TAG,
+        "Resuming sync plan of config "
+            + current.configId
+            + ": "
+            + pending.size()
+            + " pending actions");
+    return pending;
+  }
 
-          // Mirror mode is only meaningful for one-way directions; it is ignored for BIDIRECTIONAL.
-          boolean mirror =
-              config.isMirror() && config.getDirection() != SyncDirection.BIDIRECTIONAL;
-          boolean useTrash = config.isMirrorUseTrash();
+  /**
+   * Snapshot/diff phase: lists both trees and decides what to transfer, without changing
+   * anything. Returns the actions in the order the walk visits them, i.e. every directory before
+   * its content, followed by the mirror deletions (deepest first).
+   */
+  private PlanBuilder planFolder(
+      DiskShare share, SyncConfig config, DocumentFile localFolder, SyncPlan header) {
+    PlanBuilder plan = new PlanBuilder(header.localUri, header.remotePath, header.dryRun);
+    loadFingerprints(config, plan);
+    switch (config.getDirection()) {
+      case LOCAL_TO_REMOTE:
+        walkLocalToRemote(share, localFolder, plan);
+        break;
+      case REMOTE_TO_LOCAL:
+        walkRemoteToLocal(share, localFolder, plan);
+        break;
+      case BIDIRECTIONAL:
+        walkLocalToRemote(share, localFolder, plan);
+        walkRemoteToLocal(share, localFolder, plan);
+        break;
+    }
+    if (header.mirror && !isStopped()) {
+      planMirror(config.getDirection() == SyncDirection.LOCAL_TO_REMOTE, plan);
+    }
 
-          switch (config.getDirection()) {
-            case LOCAL_TO_REMOTE:
-              syncLocalToRemote(share, localFolder, remotePath, rootUri, "");
-              if (mirror && !isStopped()) {
-                runMirrorSweepLocalSource(share, localFolder, remotePath, rootUri, useTrash);
-              }
-              break;
-            case REMOTE_TO_LOCAL:
-              syncRemoteToLocal(share, localFolder, remotePath, rootUri, "");
-              if (mirror && !isStopped()) {
-                runMirrorSweepRemoteSource(share, localFolder, remotePath, rootUri, useTrash);
-              }
-              break;
-            case BIDIRECTIONAL:
-              syncLocalToRemote(share, localFolder, remotePath, rootUri, "");
-              syncRemoteToLocal(share, localFolder, remotePath, rootUri, "");
-              break;
-          }
+    SyncPlanSummary summary = new SyncPlanSummary(null, plan.actions);
+    LogUtils.i(
+        TAG,
+        "Planned sync of config "
+            + config.getId()
+            + ": "
+            + summary.uploads
+            + " uploads, "
+            + summary.downloads
+            + " downloads, "
+            + summary.directories
+            + " directories, "
+            + summary.trash
+            + " deletions, "
+            + EnhancedFileUtils.formatFileSize(summary.getTotalBytes())
+            + (plan.storedFingerprints != null
+                ? ", " + plan.unchangedDirectories + " unchanged directories skipped"
+                : "")
+            + (plan.storedFingerprints != null && plan.fullWalk ? " (full walk)" : "")
+            + (header.dryRun ? " (preview)" : ""));
+    return plan;
+  }
+
+  /**
+   * Loads the fingerprints of the source directories for a one-way sync, and decides whether this
+   * run is a full walk that compares every directory anyway: when there are no fingerprints yet,
+   * when they were taken for another folder pair or connection, and after every {@link
+   * #fullWalkInterval} runs as a safety net for changes on the target side or changes a
+   * fingerprint does not capture.
+   */
+  private void loadFingerprints(SyncConfig config, PlanBuilder plan) {
+    SyncDirection direction = config.getDirection();
+    if (direction == SyncDirection.BIDIRECTIONAL) {
+      // Both sides are sources; each is listed anyway
+      return;
+    }
+    String side =
+        direction == SyncDirection.LOCAL_TO_REMOTE
+            ? DirectoryFingerprint.SIDE_LOCAL
+            : DirectoryFingerprint.SIDE_REMOTE;
+    plan.configId = config.getId();
+    plan.connectionId = config.getConnectionId() != null ? config.getConnectionId() : "";
+    plan.storedFingerprints = fingerprintStore.load(plan.configId, side);
+    DirectoryFingerprint root = plan.storedFingerprints.get("");
+    if (root != null && !root.sameScope(plan.connectionId, plan.rootUri, plan.remoteRoot)) {
+      // The target side of another pair was never compared with these listings
+      LogUtils.d(TAG, "Directory fingerprints of config " + plan.configId + " are outdated");
+      plan.storedFingerprints.clear();
+      root = null;
+    }
+    plan.fullWalk = root == null || root.incrementalRuns + 1 >= fullWalkInterval;
+    plan.incrementalRuns = plan.fullWalk ? 0 : root.incrementalRuns + 1;
+  }
+
+  /**
+   * Fingerprints the source side of a listed directory and returns true if it is unchanged since
+   * the last completed sync, so that its target side need not be listed. Called on a listing
+   * thread.
+   */
+  private static boolean sourceUnchanged(
+      PlanBuilder plan,
+      ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          listing,
+      boolean localSource) {
+    Map<String, DirectoryFingerprint> stored = plan.storedFingerprints;
+    if (stored == null) {
+      return false;
+    }
+    ParallelTreeLister.Directory<Uri> directory = listing.directory;
+    DirectoryFingerprint current =
+        localSource ? localFingerprint(listing) : remoteFingerprint(listing);
+    if (current == null) {
+      return false;
+    }
+    current.relativePath = directory.relPath;
+    current.localUri = directory.local != null ? directory.local.toString() : null;
+    plan.fingerprints.put(directory.relPath, current);
+
+    DirectoryFingerprint previous = stored.get(directory.relPath);
+    if (plan.fullWalk
+        || previous == null
+        || !previous.matches(current)
+        || !Objects.equals(previous.localUri, current.localUri)) {
+      return false;
+    }
+    if (!localSource) {
+      if (directory.local == null) {
+        return false;
+      }
+      // Without a local listing, subdirectories are followed by their recorded local URIs
+      for (FileIdBothDirectoryInformation info : remoteEntries(listing)) {
+        String name = info.getFileName();
+        if (!isDirectory(info) || isTrashAtRoot(name, directory.relPath)) continue;
+        DirectoryFingerprint child = stored.get(childRelPath(directory.relPath, name));
+        if (child == null || child.localUri == null) {
+          return false;
         }
       }
     }
+    return true;
   }
 
-  /** Syncs local files to remote. Uploads files that are newer locally or don't exist remotely. */
-  private void syncLocalToRemote(
-      DiskShare share,
-      DocumentFile localFolder,
-      String remotePath,
-      String rootUri,
-      String relPath) {
-    if (isStopped()) return;
+  /** Fingerprints a local directory listing. */
+  private static DirectoryFingerprint localFingerprint(
+      ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          listing) {
+    DirectoryFingerprinter fingerprinter = new DirectoryFingerprinter();
+    for (SafTreeEnumerator.Entry entry : listing.getLocal()) {
+      String name = entry.getName();
+      if (name == null || isTrashAtRoot(name, listing.directory.relPath)) continue;
+      if (entry.isDirectory()) {
+        fingerprinter.addDirectory(name);
+      } else {
+        fingerprinter.addFile(name, entry.length(), entry.lastModified());
+      }
+    }
+    DirectoryFingerprint fingerprint = new DirectoryFingerprint();
+    fingerprint.side = DirectoryFingerprint.SIDE_LOCAL;
+    fingerprint.entryCount = fingerprinter.getCount();
+    fingerprint.childrenHash = fingerprinter.digest();
+    return fingerprint;
+  }
+
+  /**
+   * Fingerprints a remote directory listing, including the timestamps of the directory itself
+   * from its "." entry. Returns null if the directory could not be listed.
+   */
+  @Nullable
+  private static DirectoryFingerprint remoteFingerprint(
+      ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          listing) {
+    List<FileIdBothDirectoryInformation> entries;
+    try {
+      entries = listing.getRemote();
+    } catch (IOException e) {
+      return null;
+    }
+    DirectoryFingerprint fingerprint = new DirectoryFingerprint();
+    fingerprint.side = DirectoryFingerprint.SIDE_REMOTE;
+    DirectoryFingerprinter fingerprinter = new DirectoryFingerprinter();
+    for (FileIdBothDirectoryInformation info : entries) {
+      String name = info.getFileName();
+      if (".".equals(name)) {
+        fingerprint.dirModified = info.getLastWriteTime().toEpochMillis();
+        fingerprint.dirChanged = info.getChangeTime().toEpochMillis();
+        continue;
+      }
+      if ("..".equals(name) || isTrashAtRoot(name, listing.directory.relPath)) continue;
+      if (isDirectory(info)) {
+        fingerprinter.addDirectory(name);
+      } else {
+        fingerprinter.addFile(
+            name, info.getEndOfFile(), info.getLastWriteTime().toEpochMillis());
+      }
+    }
+    fingerprint.entryCount = fingerprinter.getCount();
+    fingerprint.childrenHash = fingerprinter.digest();
+    return fingerprint;
+  }
+
+  /** Returns the remote entries of a listing without "." and "..", or none on a listing error. */
+  private static List<FileIdBothDirectoryInformation> remoteEntries(
+      ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          listing) {
+    List<FileIdBothDirectoryInformation> result = new ArrayList<>();
+    try {
+      for (FileIdBothDirectoryInformation info : listing.getRemote()) {
+        String name = info.getFileName();
+        if (!".".equals(name) && !"..".equals(name)) {
+          result.add(info);
+        }
+      }
+    } catch (IOException e) {
+      return Collections.emptyList();
+    }
+    return result;
+  }
+
+  /** Returns the local URI a skipped directory recorded for its subdirectory. */
+  private static Uri recordedLocalUri(PlanBuilder plan, String relPath) {
+    return Uri.parse(Objects.requireNonNull(plan.storedFingerprints.get(relPath)).localUri);
+  }
+
+  /**
+   * Stores the fingerprints of the source directories listed by this run once its plan has run
+   * completely. Directories with files that could not be planned or transferred are stored with
+   * an empty hash, so that the next sync compares them again.
+   */
+  private void saveFingerprints(PlanBuilder plan, List<SyncPlanAction> actions) {
+    if (plan.storedFingerprints == null) {
+      return;
+    }
+    Set<String> dirty = new HashSet<>(plan.dirtyDirectories);
+    for (SyncPlanAction action : actions) {
+      if (action.status == SyncPlanAction.STATUS_FAILED) {
+        dirty.add(action.getParentPath());
+      }
+    }
+    List<DirectoryFingerprint> rows = new ArrayList<>(plan.fingerprints.values());
+    for (DirectoryFingerprint row : rows) {
+      if (dirty.contains(row.relativePath)) {
+        row.childrenHash = "";
+      }
+      if (row.relativePath.isEmpty()) {
+        row.incrementalRuns = plan.incrementalRuns;
+      }
+      row.connectionId = plan.connectionId;
+      row.rootUri = plan.rootUri;
+      row.remoteRoot = plan.remoteRoot;
+    }
+    fingerprintStore.replace(plan.configId, rows);
+  }
+
+  /**
+   * Plans the deletions of a mirror sweep on the target side of a one-way sync, using the source
+   * listing collected while planning the transfers.
+   */
+  private void planMirror(boolean localSource, PlanBuilder plan) {
+    MirrorSweeper.Plan sweep =
+        new MirrorSweeper(syncStateStore).plan(plan.rootUri, plan.sourcePaths, plan.sourceComplete);
+    MirrorSweeper.Result rejected = sweep.rejected;
+    if (rejected != null) {
+      if (rejected.skipped) {
+        plan.mirrorNote = rejected.reason;
+      } else if (rejected.aborted) {
+        plan.mirrorNote =
+            "would delete "
+                + rejected.candidates
+                + " of "
+                + rejected.tracked
+                + " tracked entries (threshold)";
+      }
+      if (!plan.dryRun) {
+        logMirrorResult(localSource ? "LOCAL→REMOTE" : "REMOTE→LOCAL", rejected);
+      }
+      return;
+    }
+    for (String relPath : sweep.candidates) {
+      plan.add(
+          localSource ? SyncPlanAction.KIND_TRASH_REMOTE : SyncPlanAction.KIND_TRASH_LOCAL,
+          relPath,
+          smbJoin(plan.remoteRoot, relPath));
+    }
+  }
+
+  /** Actions and source listing collected while planning the sync of one folder pair. */
+  private static final class PlanBuilder {
+    final String rootUri;
+    final String remoteRoot;
+    final boolean dryRun;
+    final List<SyncPlanAction> actions = new ArrayList<>();
+
+    /** Relative paths seen on the source side, for the mirror sweep of a one-way sync. */
+    final Set<String> sourcePaths = new HashSet<>();
+
+    /** Relative paths planned for upload, which a bidirectional sync must not download back. */
+    final Set<String> uploads = new HashSet<>();
+
+    /** False if a source directory could not be listed or planning was stopped. */
+    boolean sourceComplete = true;
+
+    /** Why the mirror sweep plans no deletions, or null. */
+    @Nullable String mirrorNote;
+
+    /**
+     * Source directory fingerprints stored by the last completed sync, by relative path; null if
+     * no directories are skipped, i.e. for a bidirectional sync.
+     */
+    @Nullable Map<String, DirectoryFingerprint> storedFingerprints;
+
+    /** Config and connection the fingerprints belong to; set along with the fingerprints. */
+    String configId = "";
+
+    String connectionId = "";
+
+    /** True if every directory is compared, whatever its fingerprint. */
+    boolean fullWalk = true;
+
+    /** Number of syncs since the last full walk, including this one. */
+    int incrementalRuns;
+
+    /** Fingerprints of the source directories listed by this run, by relative path. */
+    final Map<String, DirectoryFingerprint> fingerprints = new ConcurrentHashMap<>();
+
+    /** Source directories with files that could not be planned. */
+    final Set<String> dirtyDirectories = new HashSet<>();
+
+    /** Number of directories whose target side was not listed because they are unchanged. */
+    int unchangedDirectories;
+
+    PlanBuilder(String rootUri, String remoteRoot, boolean dryRun) {
+      this.rootUri = rootUri;
+      this.remoteRoot = remoteRoot;
+      this.dryRun = dryRun;
+    }
+
+    SyncPlanAction add(String kind, String relPath, String remotePath) {
+      SyncPlanAction action = new SyncPlanAction();
+      action.kind = kind;
+      action.relativePath = relPath;
+      action.remotePath = remotePath;
+      actions.add(action);
+      return action;
+    }
+  }
+
+  /**
+   * Plans local→remote by walking the local tree. Directories are listed ahead of the walk by a
+   * {@link ParallelTreeLister}, following the local subdirectories.
+   */
+  private void walkLocalToRemote(DiskShare share, DocumentFile localFolder, PlanBuilder plan) {
+    try (TreeLister lister = new TreeLister(share, true, plan)) {
+      planLocalToRemote(lister, plan, localFolder.getUri(), plan.remoteRoot, "");
+      lister.logStats("local\u2192remote");
+    }
+  }
+
+  /**
+   * Plans remote→local by walking the remote tree. Directories are listed ahead of the walk by a
+   * {@link ParallelTreeLister}, following the remote subdirectories.
+   */
+  private void walkRemoteToLocal(DiskShare share, DocumentFile localFolder, PlanBuilder plan) {
+    try (TreeLister lister = new TreeLister(share, false, plan)) {
+      planRemoteToLocal(lister, plan, localFolder.getUri(), plan.remoteRoot, "");
+      lister.logStats("remote\u2192local");
+    }
+  }
+
+  /**
+   * Lists SAF directories with {@link SafTreeEnumerator} and SMB directories with one {@code
+   * share.list()} each, and predicts the subdirectories the walk descends into: the local ones
+   * for local→remote, the remote ones for remote→local.
+   */
+  private final class TreeLister implements AutoCloseable {
+    private final ParallelTreeLister<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+        lister;
+
+    TreeLister(DiskShare share, boolean followLocal, PlanBuilder plan) {
+      ParallelTreeLister.Source<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          source =
+              new ParallelTreeLister.Source<>() {
+                @NonNull
+                @Override
+                public List<SafTreeEnumerator.Entry> listLocal(@NonNull Uri directory) {
+                  return localTree.list(directory);
+                }
+
+                @NonNull
+                @Override
+                public List<FileIdBothDirectoryInformation> listRemote(@NonNull String path) {
+                  return share.list(path);
+                }
+
+                @NonNull
+                @Override
+                public List<ParallelTreeLister.Directory<Uri>> subdirectories(
+                    @NonNull
+                        ParallelTreeLister.Listing<
+                                Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+                            listing) {
+                  return followLocal
+                      ? localSubdirectories(listing)
+                      : remoteSubdirectories(listing, plan);
+                }
+
+                @Override
+                public boolean remoteFirst() {
+                  return !followLocal;
+                }
+
+                @Override
+                public boolean skipSecond(
+                    @NonNull
+                        ParallelTreeLister.Listing<
+                                Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+                            listing) {
+                  return sourceUnchanged(plan, listing, followLocal);
+                }
+              };
+      this.lister =
+          new ParallelTreeLister<>(source, listConcurrency, FolderSyncWorker.this::isStopped);
+    }
+
+    ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation> take(
+        String relPath, @Nullable Uri local, String remotePath) {
+      return lister.take(relPath, local, remotePath);
+    }
+
+    void logStats(String label) {
+      LogUtils.i(
+          TAG,
+          "Listed "
+              + lister.getListedCount()
+              + " directories "
+              + label
+              + ", "
+              + lister.getListedAheadCount()
+              + " ahead of the walk, "
+              + lister.getSkippedCount()
+              + " on the source side only ("
+              + listConcurrency
+              + " concurrent)");
+    }
+
+    @Override
+    public void close() {
+      lister.close();
+    }
+  }
+
+  /** Subdirectories visited by {@link #planLocalToRemote}, in the order it visits them. */
+  private static List<ParallelTreeLister.Directory<Uri>> localSubdirectories(
+      ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          listing) {
+    ParallelTreeLister.Directory<Uri> parent = listing.directory;
+    List<ParallelTreeLister.Directory<Uri>> result = new ArrayList<>();
+    for (SafTreeEnumerator.Entry entry : listing.getLocal()) {
+      String name = entry.getName();
+      if (name == null || !entry.isDirectory() || isTrashAtRoot(name, parent.relPath)) continue;
+      result.add(
+          new ParallelTreeLister.Directory<>(
+              childRelPath(parent.relPath, name),
+              entry.getUri(),
+              smbJoin(parent.remotePath, name)));
+    }
+    return result;
+  }
+
+  /** Subdirectories visited by {@link #planRemoteToLocal}, in the order it visits them. */
+  private static List<ParallelTreeLister.Directory<Uri>> remoteSubdirectories(
+      ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          listing,
+      PlanBuilder plan) {
+    ParallelTreeLister.Directory<Uri> parent = listing.directory;
+    List<FileIdBothDirectoryInformation> remote;
+    try {
+      remote = listing.getRemote();
+    } catch (IOException e) {
+      return Collections.emptyList();
+    }
+    Map<String, SafTreeEnumerator.Entry> byName = new HashMap<>();
+    Map<String, SafTreeEnumerator.Entry> byLowerName = new HashMap<>();
+    indexLocal(listing.getLocal(), byName, byLowerName);
+    List<ParallelTreeLister.Directory<Uri>> result = new ArrayList<>();
+    for (FileIdBothDirectoryInformation info : remote) {
+      String name = info.getFileName();
+      if (".".equals(name) || "..".equals(name) || isTrashAtRoot(name, parent.relPath)) continue;
+      if (!isDirectory(info)) continue;
+      String relPath = childRelPath(parent.relPath, name);
+      Uri localUri;
+      if (listing.isLocalSkipped()) {
+        localUri = recordedLocalUri(plan, relPath);
+      } else {
+        SafTreeEnumerator.Entry local = lookupLocal(byName, byLowerName, name);
+        localUri = local != null ? local.getUri() : null;
+      }
+      result.add(
+          new ParallelTreeLister.Directory<>(relPath, localUri, smbJoin(parent.remotePath, name)));
+    }
+    return result;
+  }
+
+  private static String childRelPath(String relPath, String name) {
+    return relPath.isEmpty() ? name : relPath + "/" + name;
+  }
+
+  private static boolean isDirectory(FileIdBothDirectoryInformation info) {
+    return (info.getFileAttributes() & FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue()) != 0;
+  }
+
+  /**
+   * Indexes local entries by NFC-normalized name and by its lowercase form, for {@link
+   * #lookupLocal}.
+   */
+  private static void indexLocal(
+      List<SafTreeEnumerator.Entry> entries,
+      Map<String, SafTreeEnumerator.Entry> byName,
+      Map<String, SafTreeEnumerator.Entry> byLowerName) {
+    for (SafTreeEnumerator.Entry f : entries) {
+      String n = f.getName();
+      if (n != null) {
+        String key = normalizeName(n);
+        byName.put(key, f);
+        byLowerName.put(key.toLowerCase(Locale.ROOT), f);
+      }
+    }
+  }
 
-    DocumentFile[] localFilesArray = localFolder.listFiles();
+  /**
+   * Plans local→remote: uploads of files that are newer locally or don't exist remotely, and the
+   * remote directories that are missing.
+   */
+  private void planLocalToRemote(
+      TreeLister lister, PlanBuilder plan, Uri localFolder, String remotePath, String relPath) {
+    if (isStopped()) {
+      plan.sourceComplete = false;
+      return;
+    }
 
-    // Performance (issue #21): fetch all remote metadata for this directory in a single
-    // share.list() round-trip instead of opening every remote file multiple times
-    // (fileExists + getRemoteFileLastModified + getRemoteFileSize) per file. This mirrors the
-    // approach already used by syncRemoteToLocal and dramatically reduces SMB round-trips,
-    // which dominate sync time on high-latency connections.
+    // Both sides were usually listed ahead of the walk by the lister's pool: one provider query
+    // for the names, types, sizes and timestamps of all local children, and one share.list()
+    // round-trip for all remote metadata (issue #21) instead of opening every remote file.
+    ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+        listing = lister.take(relPath, localFolder, remotePath);
+    List<SafTreeEnumerator.Entry> localFiles = listing.getLocal();
+    // Unchanged since the last completed sync: the remote side was not listed and nothing in this
+    // directory is compared, but its subdirectories are still visited
+    boolean unchanged = listing.isRemoteSkipped();
+    if (unchanged) {
+      plan.unchangedDirectories++;
+    }
     Map<String, FileIdBothDirectoryInformation> remoteMetadata =
-        listRemoteMetadata(share, remotePath);
+        remoteMetadataByName(listing);
 
-    for (DocumentFile localFile : localFilesArray) {
-      if (isStopped()) return;
+    for (SafTreeEnumerator.Entry localFile : localFiles) {
+      if (isStopped()) {
+        plan.sourceComplete = false;
+        return;
+      }
 
       String name = localFile.getName();
       if (name == null) continue;
       if (isTrashAtRoot(name, relPath)) continue;
 
       String remoteFilePath = smbJoin(remotePath, name);
+      String fileRelPath = childRelPath(relPath, name);
+      plan.sourcePaths.add(fileRelPath);
+      if (unchanged) {
+        if (localFile.isDirectory()) {
+          planLocalToRemote(lister, plan, localFile.getUri(), remoteFilePath, fileRelPath);
+        }
+        continue;
+      }
+      FileIdBothDirectoryInformation remoteInfo = remoteMetadata.get(name);
 
       if (localFile.isDirectory()) {
-        ensureRemoteDirectoryExists(share, remoteFilePath);
-        String childRelPath = relPath.isEmpty() ? name : relPath + "/" + name;
-        syncLocalToRemote(share, localFile, remoteFilePath, rootUri, childRelPath);
+        if (remoteInfo == null) {
+          plan.add(SyncPlanAction.KIND_MKDIR_REMOTE, fileRelPath, remoteFilePath);
+        }
+        planLocalToRemote(lister, plan, localFile.getUri(), remoteFilePath, fileRelPath);
       } else {
         try {
           long localModified = localFile.lastModified();
-          FileIdBothDirectoryInformation remoteInfo = remoteMetadata.get(name);
           boolean remoteExists = remoteInfo != null;
 
-          String fileRelPath = relPath.isEmpty() ? name : relPath + "/" + name;
-
           if (!remoteExists) {
-            long remoteSize = uploadFile(share, localFile, remoteFilePath);
-            actionLog.log(SyncActionLog.Action.UPLOADED, name);
-            // After upload the remote lastWriteTime is set to the local file's lastModified
-            // (see uploadFile), so no extra round-trips are needed to read it back.
-            syncStateStore.saveRemoteState(
-                rootUri, fileRelPath, remoteFilePath, remoteSize, localFile.lastModified(), false);
+            planUpload(plan, localFile, fileRelPath, remoteFilePath, 0);
           } else {
             long remoteModified = remoteInfo.getLastWriteTime().toEpochMillis();
             long remoteSize = remoteInfo.getEndOfFile();
             long localSize = localFile.length();
 
             // Check stored DB state first – SAF timestamps are unreliable
-            var storedState = syncStateStore.getRemoteState(rootUri, fileRelPath);
+            var storedState = syncStateStore.getRemoteState(plan.rootUri, fileRelPath);
             if (storedState != null
                 && storedState.remoteSize == remoteSize
                 && Math.abs(storedState.remoteLastModified - remoteModified)
@@ -442,176 +1089,567 @@ public class FolderSyncWorker extends Worker {
                 && localSize == remoteSize) {
               LogUtils.d(
                   TAG, "Skipping upload (DB state matches remote, local size same): " + name);
-              actionLog.log(SyncActionLog.Action.SKIPPED, name, "same (DB state)");
+              logPlanned(plan, SyncActionLog.Action.SKIPPED, name, "same (DB state)");
+            } else if (syncComparator.isSame(
+                localSize, localModified, remoteSize, remoteModified)) {
+              LogUtils.d(TAG, "Skipping upload (same): " + name);
+              logPlanned(plan, SyncActionLog.Action.SKIPPED, name, "same (size+timestamp)");
+            } else if (syncComparator.isLocalNewer(localModified, remoteModified)) {
+              planUpload(plan, localFile, fileRelPath, remoteFilePath, remoteModified);
+            } else {
+              LogUtils.d(TAG, "Skipping upload (remote is newer or within tolerance): " + name);
+              logPlanned(
+                  plan, SyncActionLog.Action.SKIPPED, name, "remote newer or within tolerance");
+            }
+          }
+        } catch (Exception e) {
+          LogUtils.e(TAG, "Error syncing local file " + name + ": " + e.getMessage());
+          plan.dirtyDirectories.add(relPath);
+          logPlanned(plan, SyncActionLog.Action.ERROR, name, e.getMessage());
+        }
+      }
+    }
+  }
+
+  private static void planUpload(
+      PlanBuilder plan,
+      SafTreeEnumerator.Entry localFile,
+      String relPath,
+      String remotePath,
+      long remoteModified) {
+    SyncPlanAction action = plan.add(SyncPlanAction.KIND_UPLOAD, relPath, remotePath);
+    action.localUri = localFile.getUri().toString();
+    action.size = localFile.length();
+    action.localModified = localFile.lastModified();
+    action.remoteModified = remoteModified;
+    plan.uploads.add(relPath);
+  }
+
+  /** Writes a planning decision to the action log; a preview leaves the log alone. */
+  private void logPlanned(
+      PlanBuilder plan, SyncActionLog.Action action, String name, @Nullable String details) {
+    if (!plan.dryRun) {
+      actionLog.log(action, name, details);
+    }
+  }
+
+  /**
+   * Returns a map of file name to remote metadata ({@link FileIdBothDirectoryInformation}), which
+   * already contains existence, size ({@code getEndOfFile()}) and timestamp ({@code
+   * getLastWriteTime()}). Returns an empty map if the directory does not exist yet or could not be
+   * listed.
+   */
+  private static Map<String, FileIdBothDirectoryInformation> remoteMetadataByName(
+      ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+          listing) {
+    Map<String, FileIdBothDirectoryInformation> result = new HashMap<>();
+    try {
+      for (FileIdBothDirectoryInformation info : listing.getRemote()) {
+        String name = info.getFileName();
+        if (".".equals(name) || "..".equals(name)) continue;
+        result.put(name, info);
+      }
+    } catch (Exception e) {
+      LogUtils.d(
+          TAG,
+          "Could not list remote directory "
+              + listing.directory.remotePath
+              + ": "
+              + e.getMessage());
+    }
+    return result;
+  }
+
+  /**
+   * Plans remote→local: downloads of files that are newer remotely or don't exist locally, and the
+   * local directories that are missing. {@code localFolder} is null below a directory that does
+   * not exist locally yet.
+   */
+  private void planRemoteToLocal(
+      TreeLister lister,
+      PlanBuilder plan,
+      @Nullable Uri localFolder,
+      String remotePath,
+      String relPath) {
+    if (isStopped()) {
+      plan.sourceComplete = false;
+      return;
+    }
+
+    // Usually listed ahead of the walk by the lister's pool
+    ParallelTreeLister.Listing<Uri, SafTreeEnumerator.Entry, FileIdBothDirectoryInformation>
+        listing = lister.take(relPath, localFolder, remotePath);
+    List<FileIdBothDirectoryInformation> remoteFiles;
+    try {
+      remoteFiles = listing.getRemote();
+    } catch (IOException e) {
+      LogUtils.e(TAG, "Error listing remote directory " + remotePath + ": " + e.getMessage());
+      plan.sourceComplete = false;
+      return;
+    }
+
+    // Cache local files to avoid expensive findFile calls which can cause duplicates in SAF.
+    // Keys are Unicode-normalized (NFC); a lowercase fallback map covers case-insensitive
+    // matches, since SMB is case-insensitive but HashMap lookups are not. Without this,
+    // a missed lookup would trigger createDirectory/createFile and the SAF provider would
+    // silently create a duplicate like "B (1)".
+    Map<String, SafTreeEnumerator.Entry> localFilesMap = new HashMap<>();
+    Map<String, SafTreeEnumerator.Entry> localFilesMapLower = new HashMap<>();
+    indexLocal(listing.getLocal(), localFilesMap, localFilesMapLower);
+
+    // Unchanged since the last completed sync: the local side was not listed and nothing in this
+    // directory is compared, but its subdirectories are still visited
+    boolean unchanged = listing.isLocalSkipped();
+    if (unchanged) {
+      plan.unchangedDirectories++;
+    }
+
+    for (FileIdBothDirectoryInformation remoteFile : remoteFiles) {
+      if (isStopped()) {
+        plan.sourceComplete = false;
+        return;
+      }
+
+      String name = remoteFile.getFileName();
+      if (".".equals(name) || "..".equals(name)) continue;
+      if (isTrashAtRoot(name, relPath)) continue;
+
+      String remoteFilePath = smbJoin(remotePath, name);
+      String fileRelPath = childRelPath(relPath, name);
+      plan.sourcePaths.add(fileRelPath);
+      if (unchanged) {
+        if (isDirectory(remoteFile)) {
+          planRemoteToLocal(
+              lister, plan, recordedLocalUri(plan, fileRelPath), remoteFilePath, fileRelPath);
+        }
+        continue;
+      }
+      SafTreeEnumerator.Entry localFile = lookupLocal(localFilesMap, localFilesMapLower, name);
+
+      if (isDirectory(remoteFile)) {
+        if (localFile == null) {
+          plan.add(SyncPlanAction.KIND_MKDIR_LOCAL, fileRelPath, remoteFilePath);
+        }
+        planRemoteToLocal(
+            lister,
+            plan,
+            localFile != null ? localFile.getUri() : null,
+            remoteFilePath,
+            fileRelPath);
+      } else if (!plan.uploads.contains(fileRelPath)) {
+        try {
+          long remoteModified = remoteFile.getLastWriteTime().toEpochMillis();
+          long remoteSize = remoteFile.getEndOfFile();
+
+          if (localFile == null) {
+            SyncPlanAction action =
+                planDownload(plan, fileRelPath, remoteFilePath, remoteSize, remoteModified, null);
+            if (localFolder != null) {
+              action.localParentUri = localFolder.toString();
+            }
+          } else {
+            // Use stored metadata as fallback for SAF timestamp comparison
+            long localModified = localFile.lastModified();
+            long localSize = localFile.length();
+
+            FileSyncState storedState = syncStateStore.getRemoteState(plan.rootUri, fileRelPath);
+            if (storedState != null
+                && storedState.remoteSize == remoteSize
+                && storedState.remoteLastModified == remoteModified) {
+              LogUtils.d(TAG, "Skipping download (unchanged per stored metadata): " + name);
+              logPlanned(plan, SyncActionLog.Action.SKIPPED, name, "unchanged (stored metadata)");
             } else if (syncComparator.isSame(
                 localSize, localModified, remoteSize, remoteModified)) {
-              LogUtils.d(TAG, "Skipping upload (same): " + name);
-              actionLog.log(SyncActionLog.Action.SKIPPED, name, "same (size+timestamp)");
-            } else if (syncComparator.isLocalNewer(localModified, remoteModified)) {
-              long newRemoteSize = uploadFile(share, localFile, remoteFilePath);
-              actionLog.log(SyncActionLog.Action.UPLOADED, name);
-              syncStateStore.saveRemoteState(
-                  rootUri,
-                  fileRelPath,
-                  remoteFilePath,
-                  newRemoteSize,
-                  localFile.lastModified(),
-                  false);
+              LogUtils.d(TAG, "Skipping download (same): " + name);
+              logPlanned(plan, SyncActionLog.Action.SKIPPED, name, "same (size+timestamp)");
+            } else if (syncComparator.isRemoteNewer(localModified, remoteModified)) {
+              planDownload(
+                  plan, fileRelPath, remoteFilePath, remoteSize, remoteModified, localFile);
             } else {
-              LogUtils.d(TAG, "Skipping upload (remote is newer or within tolerance): " + name);
-              actionLog.log(SyncActionLog.Action.SKIPPED, name, "remote newer or within tolerance");
+              LogUtils.d(TAG, "Skipping download (local is newer or within tolerance): " + name);
+              logPlanned(
+                  plan, SyncActionLog.Action.SKIPPED, name, "local newer or within tolerance");
             }
           }
         } catch (Exception e) {
-          LogUtils.e(TAG, "Error syncing local file " + name + ": " + e.getMessage());
-          actionLog.log(SyncActionLog.Action.ERROR, name, e.getMessage());
+          LogUtils.e(TAG, "Error syncing remote file " + name + ": " + e.getMessage());
+          plan.dirtyDirectories.add(relPath);
+          logPlanned(plan, SyncActionLog.Action.ERROR, name, e.getMessage());
         }
       }
     }
+
+    // Note: DB cleanup for remotely deleted files is handled by MirrorSweeper (see planMirror),
+    // which plans moving the corresponding local file to the trash (or deleting it); the DB entry
+    // is removed once that action has run. Performing the DB cleanup here would prevent the
+    // sweeper from finding any candidates, so the local file would never be moved to the trash.
   }
 
   /**
-   * Lists a remote directory once and returns a map of file name to its metadata ({@link
-   * FileIdBothDirectoryInformation}), which already contains existence, size ({@code
-   * getEndOfFile()}) and timestamp ({@code getLastWriteTime()}). Returns an empty map if the
-   * directory does not exist yet or cannot be listed.
+   * Adds a download; the size is the remote {@code EndOfFile} from the directory listing. The
+   * caller assigns the parent directory of a new file.
    */
-  private Map<String, FileIdBothDirectoryInformation> listRemoteMetadata(
-      DiskShare share, String remotePath) {
-    Map<String, FileIdBothDirectoryInformation> result = new HashMap<>();
+  private static SyncPlanAction planDownload(
+      PlanBuilder plan,
+      String relPath,
+      String remotePath,
+      long remoteSize,
+      long remoteModified,
+      @Nullable SafTreeEnumerator.Entry localFile) {
+    SyncPlanAction action = plan.add(SyncPlanAction.KIND_DOWNLOAD, relPath, remotePath);
+    action.size = remoteSize;
+    action.remoteModified = remoteModified;
+    if (localFile != null) {
+      action.localUri = localFile.getUri().toString();
+      action.localModified = localFile.lastModified();
+    }
+    return action;
+  }
+
+  /**
+   * Executes the pending actions of a plan: the directories first, in plan order, then the
+   * transfers on up to {@link #transferConcurrency} threads, then the mirror deletions. Each action
+   * is checkpointed as soon as it has run, so a stopped worker resumes with the pending ones. The
+   * plan is deleted once nothing is pending; failed actions are planned again by the next run.
+   *
+   * @param planned the result of planning in this run, or null if an interrupted plan is resumed
+   * @return false if the worker was stopped before all actions have run
+   */
+  private boolean executePlan(
+      DiskShare share,
+      SyncPlan header,
+      DocumentFile localFolder,
+      List<SyncPlanAction> actions,
+      @Nullable PlanBuilder planned)
+      throws InsufficientDiskSpaceException {
+    String rootUri = header.localUri;
+    String remotePath = header.remotePath;
+    List<SyncPlanAction> directories = new ArrayList<>();
+    List<SyncPlanAction> transfers = new ArrayList<>();
+    List<SyncPlanAction> deletions = new ArrayList<>();
+    for (SyncPlanAction action : actions) {
+      if (action.isMkdir()) {
+        directories.add(action);
+      } else if (action.isTransfer()) {
+        transfers.add(action);
+      } else if (action.isTrash()) {
+        deletions.add(action);
+      }
+    }
+    PlanProgress progress = new PlanProgress(actions);
+
+    // Local directories by relative path, for the downloads into directories created by the plan
+    Map<String, DocumentFile> localDirs = new ConcurrentHashMap<>();
+    localDirs.put("", localFolder);
+
+    for (SyncPlanAction action : directories) {
+      if (isStopped()) return false;
+      runDirectoryAction(share, localFolder, localDirs, action);
+      progress.finished(action);
+    }
+
+    runTransfers(share, rootUri, localFolder, localDirs, transfers, progress);
+    if (isStopped()) return false;
+
+    if (header.mirror) {
+      boolean localSource = SyncDirection.LOCAL_TO_REMOTE.name().equals(header.direction);
+      PlanBuilder source =
+          planned != null ? planned : relistSource(share, localFolder, remotePath, localSource);
+      boolean useTrash = header.mirrorUseTrash;
+      if (localSource) {
+        runMirrorLocalSource(share, remotePath, rootUri, useTrash, deletions, source, progress);
+      } else {
+        runMirrorRemoteSource(localFolder, rootUri, useTrash, deletions, source, progress);
+      }
+      if (isStopped()) return false;
+    }
+
+    planStore.deletePlan(header.configId);
+    return true;
+  }
+
+  /**
+   * Lists the source side of a resumed one-way plan again. The listing of the planning run is not
+   * persisted, but the mirror phase needs it to prune directories that became empty.
+   */
+  private PlanBuilder relistSource(
+      DiskShare share, DocumentFile localFolder, String remotePath, boolean localSource) {
+    PlanBuilder source = new PlanBuilder(localFolder.getUri().toString(), remotePath, false);
     try {
-      for (FileIdBothDirectoryInformation info : share.list(remotePath)) {
-        String name = info.getFileName();
-        if (".".equals(name) || "..".equals(name)) continue;
-        result.put(name, info);
+      if (localSource) {
+        collectLocalPaths(localFolder.getUri(), "", source.sourcePaths);
+      } else {
+        collectRemotePaths(share, remotePath, "", source.sourcePaths);
       }
+      source.sourceComplete = !isStopped();
     } catch (Exception e) {
-      LogUtils.d(TAG, "Could not list remote directory " + remotePath + ": " + e.getMessage());
+      LogUtils.w(TAG, "[MIRROR] Source listing failed: " + e.getMessage());
+      source.sourceComplete = false;
+    }
+    return source;
+  }
+
+  /** Creates a planned directory and checkpoints the action. */
+  private void runDirectoryAction(
+      DiskShare share,
+      DocumentFile localFolder,
+      Map<String, DocumentFile> localDirs,
+      SyncPlanAction action) {
+    String name = action.getName();
+    try {
+      if (SyncPlanAction.KIND_MKDIR_REMOTE.equals(action.kind)) {
+        createRemoteDirectory(share, action.remotePath);
+      } else {
+        DocumentFile parent =
+            localDirectory(localFolder, localDirs, action.getParentPath(), null);
+        DocumentFile created = parent != null ? createDirectorySafe(parent, name) : null;
+        if (created == null) {
+          throw new IOException("Could not create local directory: " + action.relativePath);
+        }
+        localDirs.put(action.relativePath, created);
+        actionLog.log(SyncActionLog.Action.CREATED_DIR, name);
+      }
+      planStore.markDone(action);
+    } catch (Exception e) {
+      LogUtils.e(TAG, "Error creating directory " + action.relativePath + ": " + e.getMessage());
+      actionLog.log(SyncActionLog.Action.ERROR, name, e.getMessage());
+      planStore.markFailed(action, e.getMessage());
     }
-    return result;
   }
 
   /**
-   * Syncs remote files to local. Downloads files that are newer remotely or don't exist locally.
+   * Creates a remote directory whose parent exists. A directory that already exists, e.g. because
+   * the action ran before the worker was stopped, counts as created.
    */
-  private void syncRemoteToLocal(
-      DiskShare share,
+  private void createRemoteDirectory(DiskShare share, String path) throws IOException {
+    try {
+      share.mkdir(path);
+      LogUtils.d(TAG, "Created remote directory: " + path);
+    } catch (Exception e) {
+      if (!share.folderExists(path)) {
+        throw new IOException(
+            "Could not create remote directory " + path + ": " + e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Returns the local directory at a relative path, from the cache or else by its document URI or
+   * by resolving the path, and caches it.
+   */
+  @Nullable
+  private DocumentFile localDirectory(
       DocumentFile localFolder,
-      String remotePath,
+      Map<String, DocumentFile> localDirs,
+      String relPath,
+      @Nullable String uri) {
+    DocumentFile dir = localDirs.get(relPath);
+    if (dir == null) {
+      dir =
+          uri != null
+              ? localTree.toDocumentFile(Uri.parse(uri))
+              : resolveLocal(localFolder, relPath);
+      if (dir != null) {
+        localDirs.put(relPath, dir);
+      }
+    }
+    return dir;
+  }
+
+  /**
+   * Runs the planned uploads and downloads on up to {@link #transferConcurrency} threads. When the
+   * disk runs full, the remaining downloads stay pending and the sync is aborted.
+   */
+  private void runTransfers(
+      DiskShare share,
       String rootUri,
-      String relPath) {
-    if (isStopped()) return;
+      DocumentFile localFolder,
+      Map<String, DocumentFile> localDirs,
+      List<SyncPlanAction> transfers,
+      PlanProgress progress)
+      throws InsufficientDiskSpaceException {
+    if (transfers.isEmpty()) return;
+    AtomicBoolean diskFull = new AtomicBoolean();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(Math.min(transferConcurrency, transfers.size()));
+    try {
+      List<Future<?>> futures = new ArrayList<>(transfers.size());
+      for (SyncPlanAction action : transfers) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  if (isStopped() || diskFull.get()) return;
+                  if (runTransfer(share, rootUri, localFolder, localDirs, action, diskFull)) {
+                    progress.finished(action);
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          LogUtils.e(TAG, "Transfer failed: " + e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+    if (diskFull.get()) {
+      throw new InsufficientDiskSpaceException("Insufficient disk space \u2013 downloads pending");
+    }
+  }
 
+  /**
+   * Runs one upload or download and checkpoints it.
+   *
+   * @return false if the action stays pending because the worker was stopped or the disk is full
+   */
+  private boolean runTransfer(
+      DiskShare share,
+      String rootUri,
+      DocumentFile localFolder,
+      Map<String, DocumentFile> localDirs,
+      SyncPlanAction action,
+      AtomicBoolean diskFull) {
+    String name = action.getName();
+    boolean upload = SyncPlanAction.KIND_UPLOAD.equals(action.kind);
     try {
-      List<FileIdBothDirectoryInformation> remoteFiles = share.list(remotePath);
-
-      // Cache local files to avoid expensive findFile calls which can cause duplicates in SAF.
-      // Keys are Unicode-normalized (NFC); a lowercase fallback map covers case-insensitive
-      // matches, since SMB is case-insensitive but HashMap lookups are not. Without this,
-      // a missed lookup would trigger createDirectory/createFile and the SAF provider would
-      // silently create a duplicate like "B (1)".
-      DocumentFile[] localFilesArray = localFolder.listFiles();
-      Map<String, DocumentFile> localFilesMap = new HashMap<>();
-      Map<String, DocumentFile> localFilesMapLower = new HashMap<>();
-      for (DocumentFile f : localFilesArray) {
-        String n = f.getName();
-        if (n != null) {
-          String key = normalizeName(n);
-          localFilesMap.put(key, f);
-          localFilesMapLower.put(key.toLowerCase(Locale.ROOT), f);
+      ContentChecksum checksum = ContentChecksum.create(checksumAlgorithm);
+      if (upload) {
+        long remoteSize = uploadFile(share, action, checksum);
+        actionLog.log(SyncActionLog.Action.UPLOADED, name);
+        // After upload the remote lastWriteTime is set to the local file's lastModified
+        // (see uploadFile), so no extra round-trips are needed to read it back.
+        syncStateStore.saveRemoteState(
+            rootUri,
+            action.relativePath,
+            action.remotePath,
+            remoteSize,
+            action.localModified,
+            false,
+            ContentChecksum.valueOf(checksum));
+      } else {
+        // Check disk space before each file download
+        if (!hasEnoughDiskSpace()) {
+          throw new InsufficientDiskSpaceException(
+              "Insufficient disk space before downloading: " + name);
+        }
+        DocumentFile target = downloadTarget(localFolder, localDirs, action);
+        if (target == null) {
+          throw new IOException("Could not create local file: " + action.relativePath);
         }
+        downloadFile(share, action.remotePath, target, checksum);
+        actionLog.log(SyncActionLog.Action.DOWNLOADED, name);
+        syncStateStore.saveRemoteState(
+            rootUri,
+            action.relativePath,
+            action.remotePath,
+            action.size,
+            action.remoteModified,
+            false,
+            ContentChecksum.valueOf(checksum));
+      }
+      planStore.markDone(action);
+      return true;
+    } catch (InsufficientDiskSpaceException e) {
+      LogUtils.e(TAG, e.getMessage());
+      diskFull.set(true);
+      return false;
+    } catch (Exception e) {
+      if (isStopped()) {
+        LogUtils.d(TAG, "Transfer interrupted, stays pending: " + action.relativePath);
+        return false;
+      }
+      String side = upload ? "local" : "remote";
+      LogUtils.e(TAG, "Error syncing " + side + " file " + name + ": " + e.getMessage());
+      actionLog.log(SyncActionLog.Action.ERROR, name, e.getMessage());
+      planStore.markFailed(action, e.getMessage());
+      // Check if the failure was caused by low disk space
+      if (!upload && !hasEnoughDiskSpace()) {
+        diskFull.set(true);
+      }
+      return true;
+    }
+  }
+
+  /** Returns the local file a download writes to: the existing file or a new one. */
+  @Nullable
+  private DocumentFile downloadTarget(
+      DocumentFile localFolder, Map<String, DocumentFile> localDirs, SyncPlanAction action) {
+    if (action.localUri != null) {
+      return localTree.toDocumentFile(Uri.parse(action.localUri));
+    }
+    DocumentFile parent =
+        localDirectory(localFolder, localDirs, action.getParentPath(), action.localParentUri);
+    return parent != null ? createFileSafe(parent, action.getName()) : null;
+  }
+
+  /**
+   * Creates a file and guards against the SAF provider deduplicating the name (e.g. "a (1).txt"
+   * because a resumed plan downloads into a file created before the worker was stopped). In that
+   * case the duplicate is removed and the existing file is reused.
+   */
+  @Nullable
+  private DocumentFile createFileSafe(DocumentFile parent, String name) {
+    DocumentFile created = parent.createFile(getMimeType(name), name);
+    if (created != null && !name.equals(created.getName())) {
+      DocumentFile existing = parent.findFile(name);
+      if (existing != null && existing.isFile() && !existing.getUri().equals(created.getUri())) {
+        LogUtils.w(TAG, "Provider renamed new file '" + name + "'; reusing existing entry");
+        created.delete();
+        return existing;
       }
+    }
+    return created;
+  }
 
-      for (FileIdBothDirectoryInformation remoteFile : remoteFiles) {
-        if (isStopped()) return;
+  /** Minimum interval between two progress updates of a running plan. */
+  private static final long PROGRESS_INTERVAL_MS = 1000L;
 
-        String name = remoteFile.getFileName();
-        if (".".equals(name) || "..".equals(name)) continue;
-        if (isTrashAtRoot(name, relPath)) continue;
-
-        String remoteFilePath = smbJoin(remotePath, name);
-        boolean isDirectory =
-            (remoteFile.getFileAttributes() & FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue())
-                != 0;
-
-        if (isDirectory) {
-          DocumentFile localSubDir = lookupLocal(localFilesMap, localFilesMapLower, name);
-          if (localSubDir == null) {
-            localSubDir = createDirectorySafe(localFolder, name);
-            actionLog.log(SyncActionLog.Action.CREATED_DIR, name);
-          }
-          if (localSubDir != null) {
-            String childRelPath = relPath.isEmpty() ? name : relPath + "/" + name;
-            syncRemoteToLocal(share, localSubDir, remoteFilePath, rootUri, childRelPath);
-          }
-        } else {
-          // Check disk space before each file download
-          if (!hasEnoughDiskSpace()) {
-            throw new InsufficientDiskSpaceException(
-                "Insufficient disk space before downloading: " + name);
-          }
-          try {
-            long remoteModified = remoteFile.getLastWriteTime().toEpochMillis();
-            long remoteSize = getRemoteFileSize(share, remoteFilePath);
-            String fileRelPath = relPath.isEmpty() ? name : relPath + "/" + name;
-            DocumentFile localFile = lookupLocal(localFilesMap, localFilesMapLower, name);
-
-            if (localFile == null) {
-              String mimeType = getMimeType(name);
-              DocumentFile newFile = localFolder.createFile(mimeType, name);
-              if (newFile != null) {
-                downloadFile(share, remoteFilePath, newFile);
-                actionLog.log(SyncActionLog.Action.DOWNLOADED, name);
-                syncStateStore.saveRemoteState(
-                    rootUri, fileRelPath, remoteFilePath, remoteSize, remoteModified, false);
-              }
-            } else {
-              // Use stored metadata as fallback for SAF timestamp comparison
-              long localModified = localFile.lastModified();
-              long localSize = localFile.length();
-
-              FileSyncState storedState = syncStateStore.getRemoteState(rootUri, fileRelPath);
-              if (storedState != null
-                  && storedState.remoteSize == remoteSize
-                  && storedState.remoteLastModified == remoteModified) {
-                LogUtils.d(TAG, "Skipping download (unchanged per stored metadata): " + name);
-                actionLog.log(SyncActionLog.Action.SKIPPED, name, "unchanged (stored metadata)");
-              } else if (syncComparator.isSame(
-                  localSize, localModified, remoteSize, remoteModified)) {
-                LogUtils.d(TAG, "Skipping download (same): " + name);
-                actionLog.log(SyncActionLog.Action.SKIPPED, name, "same (size+timestamp)");
-              } else if (syncComparator.isRemoteNewer(localModified, remoteModified)) {
-                downloadFile(share, remoteFilePath, localFile);
-                actionLog.log(SyncActionLog.Action.DOWNLOADED, name);
-                syncStateStore.saveRemoteState(
-                    rootUri, fileRelPath, remoteFilePath, remoteSize, remoteModified, false);
-              } else {
-                LogUtils.d(TAG, "Skipping download (local is newer or within tolerance): " + name);
-                actionLog.log(
-                    SyncActionLog.Action.SKIPPED, name, "local newer or within tolerance");
-              }
-            }
-          } catch (InsufficientDiskSpaceException e) {
-            throw e;
-          } catch (Exception e) {
-            LogUtils.e(TAG, "Error syncing remote file " + name + ": " + e.getMessage());
-            actionLog.log(SyncActionLog.Action.ERROR, name, e.getMessage());
-            // Check if the failure was caused by low disk space
-            if (!hasEnoughDiskSpace()) {
-              throw new InsufficientDiskSpaceException(
-                  "Insufficient disk space after failed download: " + name);
-            }
-          }
-        }
+  /**
+   * Counts the finished actions and bytes of a running plan and publishes them as work progress
+   * and in the foreground notification.
+   */
+  private final class PlanProgress {
+    private final int total;
+    private final long totalBytes;
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicLong finishedBytes = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong();
+
+    PlanProgress(List<SyncPlanAction> actions) {
+      SyncPlanSummary summary = new SyncPlanSummary(null, actions);
+      this.total = summary.getTotal();
+      this.totalBytes = summary.getTotalBytes();
+      report(0, 0);
+    }
+
+    void finished(SyncPlanAction action) {
+      int count = finished.incrementAndGet();
+      long bytes = action.isTransfer() ? finishedBytes.addAndGet(action.size) : finishedBytes.get();
+      long now = SystemClock.elapsedRealtime();
+      long last = lastReport.get();
+      if ((count == total || now - last >= PROGRESS_INTERVAL_MS)
+          && lastReport.compareAndSet(last, now)) {
+        report(count, bytes);
       }
+    }
 
-      // Note: DB cleanup for remotely deleted files is handled by MirrorSweeper
-      // (runMirrorSweepRemoteSource), which is responsible for moving the corresponding local
-      // file to the trash (or deleting it) and removing the DB entry afterwards. Performing the
-      // DB cleanup here would race with the sweeper and prevent it from finding any candidates,
-      // so the local file would never be moved to the trash.
-    } catch (Exception e) {
-      LogUtils.e(TAG, "Error listing remote directory " + remotePath + ": " + e.getMessage());
+    private void report(int count, long bytes) {
+      setProgressAsync(
+          new Data.Builder()
+              .putInt(KEY_PROGRESS_DONE, count)
+              .putInt(KEY_PROGRESS_TOTAL, total)
+              .putLong(KEY_PROGRESS_BYTES, bytes)
+              .putLong(KEY_PROGRESS_TOTAL_BYTES, totalBytes)
+              .build());
+      try {
+        setForegroundAsync(createForegroundInfo(count, total, bytes, totalBytes));
+      } catch (Exception e) {
+        LogUtils.d(TAG, "Could not update sync notification: " + e.getMessage());
+      }
     }
   }
 
@@ -621,13 +1659,12 @@ public class FolderSyncWorker extends Worker {
   }
 
   /**
-   * Looks up a local DocumentFile by name using NFC normalization, falling back to a
-   * case-insensitive match (SMB is case-insensitive, HashMap lookups are not).
+   * Looks up a local entry by name using NFC normalization, falling back to a case-insensitive
+   * match (SMB is case-insensitive, HashMap lookups are not).
    */
-  static DocumentFile lookupLocal(
-      Map<String, DocumentFile> byName, Map<String, DocumentFile> byLowerName, String name) {
+  static <T> T lookupLocal(Map<String, T> byName, Map<String, T> byLowerName, String name) {
     String key = normalizeName(name);
-    DocumentFile f = byName.get(key);
+    T f = byName.get(key);
     if (f == null) {
       f = byLowerName.get(key.toLowerCase(Locale.ROOT));
     }
@@ -662,28 +1699,34 @@ public class FolderSyncWorker extends Worker {
    * Finds an existing directory in {@code parent} whose name matches {@code name} after NFC
    * normalization and ignoring case, excluding {@code exclude}.
    */
-  private static DocumentFile findDirectoryByNameInsensitive(
+  private DocumentFile findDirectoryByNameInsensitive(
       DocumentFile parent, String name, DocumentFile exclude) {
     String key = normalizeName(name).toLowerCase(Locale.ROOT);
-    for (DocumentFile f : parent.listFiles()) {
+    for (SafTreeEnumerator.Entry f : localTree.list(parent)) {
       if (!f.isDirectory()) continue;
       if (exclude != null && f.getUri().equals(exclude.getUri())) continue;
       String n = f.getName();
       if (n != null && normalizeName(n).toLowerCase(Locale.ROOT).equals(key)) {
-        return f;
+        return localTree.toDocumentFile(f);
       }
     }
     return null;
   }
 
   /**
-   * Uploads a local DocumentFile to the remote SMB share.
+   * Uploads a planned local file to the remote SMB share. The local size and timestamp are the ones
+   * seen while planning.
    *
+   * @param checksum computed over the uploaded bytes if not null
    * @return the verified remote file size in bytes (from the integrity check)
    */
-  private long uploadFile(DiskShare share, DocumentFile localFile, String remotePath)
+  private long uploadFile(
+      DiskShare share, SyncPlanAction action, @Nullable ContentChecksum checksum)
       throws Exception {
-    LogUtils.d(TAG, "Uploading: " + localFile.getName() + " -> " + remotePath);
+    String name = action.getName();
+    String remotePath = action.remotePath;
+    Uri localUri = Uri.parse(action.localUri);
+    LogUtils.d(TAG, "Uploading: " + name + " -> " + remotePath);
 
     long remoteSize = -1;
     // Performance (issue #21): use a single file handle for writing, the post-upload size check
@@ -703,18 +1746,19 @@ public class FolderSyncWorker extends Worker {
             null)) {
 
       try (InputStream is =
-              getApplicationContext().getContentResolver().openInputStream(localFile.getUri());
-          OutputStream os = remoteFile.getOutputStream()) {
+          getApplicationContext().getContentResolver().openInputStream(localUri)) {
 
         if (is == null) {
-          throw new Exception("Could not open input stream for: " + localFile.getUri());
+          throw new Exception("Could not open input stream for: " + localUri);
         }
 
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int bytesRead;
-        while ((bytesRead = is.read(buffer)) != -1) {
-          os.write(buffer, 0, bytesRead);
-        }
+        // Several positional writes in flight instead of one sequential stream
+        PipelinedUploader.forShare(share)
+            .upload(
+                checksum != null ? checksum.wrap(is) : is,
+                0,
+                PipelinedUploader.writer(remoteFile, BandwidthGovernor.Flow.SYNC),
+                (position, length) -> true);
       }
 
       // Integrity check on the same handle: read the remote size without an extra file open
@@ -726,10 +1770,10 @@ public class FolderSyncWorker extends Worker {
 
       // Set remote file's lastWriteTime to match local file's lastModified
       // to prevent re-uploading on next sync cycle (same handle, no extra open)
-      setLastModifiedOnHandle(remoteFile, remotePath, localFile.lastModified());
+      setLastModifiedOnHandle(remoteFile, remotePath, action.localModified);
     }
 
-    long localSize = localFile.length();
+    long localSize = action.size;
     LogUtils.i(
         TAG,
         "Sync upload integrity check: remoteSize="
@@ -737,7 +1781,7 @@ public class FolderSyncWorker extends Worker {
             + ", localSize="
             + localSize
             + ", file="
-            + localFile.getName());
+            + name);
     if (remoteSize >= 0 && localSize >= 0 && remoteSize != localSize) {
       throw new Exception(
           "Sync upload integrity check failed: remoteSize="
@@ -753,15 +1797,52 @@ public class FolderSyncWorker extends Worker {
               + ", localSize="
               + localSize
               + ", file="
-              + localFile.getName());
+              + name);
+    }
+    if (verifyUploads && checksum != null && remoteSize >= 0) {
+      verifyUpload(share, remotePath, remoteSize, checksum.getValue());
     }
 
-    LogUtils.d(TAG, "Upload completed: " + localFile.getName());
+    LogUtils.d(TAG, "Upload completed: " + name);
     return remoteSize;
   }
 
-  /** Downloads a remote file to a local DocumentFile (SAF). */
-  private void downloadFile(DiskShare share, String remotePath, DocumentFile localFile)
+  /** Reads an uploaded file back and fails if its checksum differs from the uploaded bytes. */
+  private void verifyUpload(DiskShare share, String remotePath, long size, String expected)
+      throws Exception {
+    String actual;
+    try (File remoteFile =
+        share.openFile(
+            remotePath,
+            EnumSet.of(AccessMask.GENERIC_READ),
+            null,
+            SMB2ShareAccess.ALL,
+            SMB2CreateDisposition.FILE_OPEN,
+            null)) {
+      actual =
+          ContentChecksum.ofRemote(
+              remoteFile,
+              size,
+              ContentChecksum.algorithmOf(expected),
+              BandwidthGovernor.Flow.SYNC,
+              (position, chunkLength) -> !isStopped());
+    }
+    if (!ContentChecksum.matches(expected, actual)) {
+      throw new Exception(
+          "Sync upload checksum mismatch: expected " + expected + ", got " + actual);
+    }
+  }
+
+  /**
+   * Downloads a remote file to a local DocumentFile (SAF).
+   *
+   * @param checksum computed over the downloaded bytes if not null
+   */
+  private void downloadFile(
+      DiskShare share,
+      String remotePath,
+      DocumentFile localFile,
+      @Nullable ContentChecksum checksum)
       throws Exception {
     LogUtils.d(TAG, "Downloading: " + remotePath + " -> " + localFile.getName());
 
@@ -790,27 +1871,32 @@ public class FolderSyncWorker extends Worker {
 
       long fileSize = remoteFile.getFileInformation().getStandardInformation().getEndOfFile();
 
-      OutputStream rawOut =
-          getApplicationContext().getContentResolver().openOutputStream(localFile.getUri());
-      if (rawOut == null) {
-        throw new Exception("Could not open output stream for: " + localFile.getUri());
-      }
+      // Reserve the file size up front; waits while concurrent downloads hold the space
+      DiskSpaceAccountant.Reservation space =
+          DiskSpaceAccountant.getInstance().reserve(Math.max(0, fileSize), this::isStopped);
+      try {
+        OutputStream rawOut =
+            getApplicationContext().getContentResolver().openOutputStream(localFile.getUri());
+        if (rawOut == null) {
+          throw new Exception("Could not open output stream for: " + localFile.getUri());
+        }
 
-      try (OutputStream out = new BufferedOutputStream(rawOut, BUFFER_SIZE)) {
-        if (fileSize >= PARALLEL_DOWNLOAD_THRESHOLD) {
-          LogUtils.i(
-              TAG,
-              "Using parallel download ("
-                  + PARALLEL_READERS
-                  + " readers, "
-                  + PARALLEL_CHUNK_SIZE
-                  + " byte chunks) for: "
-                  + localFile.getName());
-          downloadParallel(remoteFile, out, fileSize, localFile.getName());
-        } else {
-          downloadStreamed(remoteFile, out, localFile.getName());
+        PipelinedDownloader downloader = PipelinedDownloader.forShare(share);
+        OutputStream buffered = new BufferedOutputStream(rawOut, BUFFER_SIZE);
+        try (OutputStream out = checksum != null ? checksum.wrap(buffered) : buffered) {
+          if (fileSize >= downloader.getParallelThreshold()) {
+            LogUtils.i(
+                TAG,
+                "Using parallel download (window " + downloader.getWindow() + ") for: "
+                    + localFile.getName());
+            downloadParallel(downloader, remoteFile, out, fileSize, localFile.getName(), space);
+          } else {
+            downloadStreamed(remoteFile, out, localFile.getName(), space);
+          }
+          out.flush();
         }
-        out.flush();
+      } finally {
+        space.close();
       }
     }
 
@@ -882,118 +1968,83 @@ public class FolderSyncWorker extends Worker {
   }
 
   /**
-   * Downloads a file using multiple concurrently outstanding SMB READ requests. The SMB connection
-   * multiplexes the requests over the same TCP connection, hiding network round-trip latency and
-   * keeping the pipe full. Chunks are written to the output stream strictly in order.
+   * Downloads a file using multiple concurrently outstanding SMB READ requests via the shared
+   * {@link PipelinedDownloader}, whose window adapts to the server. Chunks are written to the
+   * output stream strictly in order.
    */
-  private void downloadParallel(File remoteFile, OutputStream out, long fileSize, String name)
+  private void downloadParallel(
+      PipelinedDownloader downloader,
+      File remoteFile,
+      OutputStream out,
+      long fileSize,
+      String name,
+      DiskSpaceAccountant.Reservation space)
       throws Exception {
-    ExecutorService pool = Executors.newFixedThreadPool(PARALLEL_READERS);
-    ExecutorService writer = Executors.newSingleThreadExecutor();
-    try {
-      ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>(PARALLEL_READERS);
-      ArrayDeque<Future<?>> pendingWrites = new ArrayDeque<>(PARALLEL_WRITE_QUEUE + 1);
-      long submitOffset = 0;
-      long bytesSinceLastDiskCheck = 0;
-
-      while (submitOffset < fileSize || !inFlight.isEmpty()) {
-        // Keep the read pipeline full
-        while (inFlight.size() < PARALLEL_READERS && submitOffset < fileSize) {
-          final long offset = submitOffset;
-          final int length = (int) Math.min(PARALLEL_CHUNK_SIZE, fileSize - offset);
-          submitOffset += length;
-          inFlight.add(pool.submit(() -> readChunk(remoteFile, offset, length)));
-        }
-
-        final byte[] chunk = inFlight.remove().get();
-
-        // Hand the chunk to the dedicated writer thread so slow SAF/disk writes never stall
-        // the SMB read pipeline. Writes stay strictly in order (single writer thread).
-        pendingWrites.add(
-            writer.submit(
-                () -> {
-                  out.write(chunk);
-                  return null;
-                }));
-        // Bound the write queue to cap memory usage and surface write errors early
-        while (pendingWrites.size() > PARALLEL_WRITE_QUEUE) {
-          pendingWrites.remove().get();
-        }
-
-        bytesSinceLastDiskCheck += chunk.length;
-        if (bytesSinceLastDiskCheck >= DISK_CHECK_INTERVAL) {
-          if (!hasEnoughDiskSpace()) {
-            for (Future<byte[]> f : inFlight) {
-              f.cancel(true);
-            }
+    downloader.download(
+        PipelinedDownloader.reader(remoteFile, BandwidthGovernor.Flow.SYNC),
+        0,
+        fileSize,
+        out,
+        (position, chunkLength) -> {
+          if (!space.onWritten(chunkLength)) {
             LogUtils.e(TAG, "Download aborted \u2013 disk space low: " + name);
             throw new InsufficientDiskSpaceException("Insufficient disk space");
           }
-          bytesSinceLastDiskCheck = 0;
-        }
-      }
-
-      // Wait for all outstanding writes to hit the output stream before returning
-      while (!pendingWrites.isEmpty()) {
-        pendingWrites.remove().get();
-      }
-    } finally {
-      pool.shutdownNow();
-      writer.shutdownNow();
-    }
-  }
-
-  /** Reads exactly {@code length} bytes starting at {@code offset} from the remote file. */
-  private static byte[] readChunk(File remoteFile, long offset, int length) throws IOException {
-    byte[] buf = new byte[length];
-    int pos = 0;
-    while (pos < length) {
-      int read = remoteFile.read(buf, offset + pos, pos, length - pos);
-      if (read < 0) {
-        throw new IOException("Unexpected EOF at offset " + (offset + pos));
-      }
-      pos += read;
-    }
-    return buf;
+          return true;
+        });
   }
 
   /**
    * Downloads a file via a sequential input stream with a single-buffer prefetch (used for small
    * files or when the remote size is unknown).
    */
-  private void downloadStreamed(File remoteFile, OutputStream out, String name) throws Exception {
-    try (InputStream in = remoteFile.getInputStream()) {
-      byte[] bufferA = new byte[BUFFER_SIZE];
-      byte[] bufferB = new byte[BUFFER_SIZE];
-      long bytesSinceLastDiskCheck = 0;
+  private void downloadStreamed(
+      File remoteFile, OutputStream out, String name, DiskSpaceAccountant.Reservation space)
+      throws Exception {
+    BufferPool buffers = BufferPool.getInstance();
+    try (InputStream in =
+        BandwidthGovernor.getInstance()
+            .throttle(
+                remoteFile.getInputStream(),
+                remoteFile.getDiskShare(),
+                BandwidthGovernor.Flow.SYNC)) {
+      byte[] bufferA = buffers.acquire(BUFFER_SIZE);
+      byte[] bufferB = buffers.acquire(BUFFER_SIZE);
 
       ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+      Future<Integer> prefetchFuture = null;
       try {
-        int read = in.read(bufferA);
+        int read = in.read(bufferA, 0, BUFFER_SIZE);
         while (read != -1) {
           final byte[] nextBuf = bufferB;
-          Future<Integer> prefetchFuture = prefetchExecutor.submit(() -> in.read(nextBuf));
+          prefetchFuture = prefetchExecutor.submit(() -> in.read(nextBuf, 0, BUFFER_SIZE));
 
           out.write(bufferA, 0, read);
 
-          bytesSinceLastDiskCheck += read;
-          if (bytesSinceLastDiskCheck >= DISK_CHECK_INTERVAL) {
-            if (!hasEnoughDiskSpace()) {
-              prefetchFuture.cancel(true);
-              LogUtils.e(TAG, "Download aborted \u2013 disk space low: " + name);
-              throw new InsufficientDiskSpaceException("Insufficient disk space");
-            }
-            bytesSinceLastDiskCheck = 0;
+          if (!space.onWritten(read)) {
+            LogUtils.e(TAG, "Download aborted \u2013 disk space low: " + name);
+            throw new InsufficientDiskSpaceException("Insufficient disk space");
           }
 
           read = prefetchFuture.get();
+          prefetchFuture = null;
 
           byte[] tmp = bufferA;
           bufferA = bufferB;
           bufferB = tmp;
         }
       } finally {
+        // The prefetch may still be filling a buffer; wait before returning it to the pool
+        if (prefetchFuture != null) {
+          try {
+            prefetchFuture.get();
+          } catch (Exception ignored) {
+            // the primary failure is propagated to the caller
+          }
+        }
         prefetchExecutor.shutdownNow();
+        buffers.release(bufferA);
+        buffers.release(bufferB);
       }
     }
   }
@@ -1063,85 +2114,6 @@ public class FolderSyncWorker extends Worker {
     }
   }
 
-  /**
-   * Creates an SMBClient configured based on the connection's encryption and signing settings.
-   * Mirrors the configuration logic from {@code SmbRepositoryImpl.getClientFor()}.
-   */
-  private SMBClient createSmbClient(SmbConnection connection) {
-    boolean encrypt = false;
-    boolean sign = false;
-    boolean async = false;
-    try {
-      encrypt = connection.isEncryptData();
-      sign = connection.isSigningRequired();
-      async = connection.isAsyncTransport();
-    } catch (Throwable ignored) {
-    }
-
-    SmbConfig.Builder builder =
-        SmbConfig.builder().withEncryptData(encrypt).withSigningRequired(sign);
-
-    // Performance (issue #21): larger read/write/transact buffers reduce the number of SMB2
-    // READ/WRITE packets per transfer, which lowers per-packet overhead (especially with SMB3
-    // encryption). The effective size is still capped by what the server negotiates.
-    try {
-      builder
-          .withReadBufferSize(TRANSFER_BUFFER_SIZE)
-          .withWriteBufferSize(TRANSFER_BUFFER_SIZE)
-          .withTransactBufferSize(TRANSFER_BUFFER_SIZE);
-    } catch (Throwable ignored) {
-      /* keep SMBJ defaults if the running SMBJ version rejects these values */
-    }
-
-    if (async) {
-      builder.withTransportLayerFactory(new AsyncDirectTcpTransportFactory<>());
-      LogUtils.i(TAG, "Using AsyncDirectTcpTransport for improved sync performance");
-    }
-
-    try {
-      builder.withDialects(
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_1_1,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0_2,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_2_1,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_2_0_2);
-    } catch (Throwable ignored) {
-      /* older SMBJ versions do not support these dialects */
-    }
-
-    LogUtils.d(
-        TAG, "SMB client config: encrypt=" + encrypt + ", sign=" + sign + ", async=" + async);
-    return new SMBClient(builder.build());
-  }
-
-  /** Creates an AuthenticationContext from the connection details. */
-  private AuthenticationContext createAuthContext(SmbConnection connection) {
-    String domain = connection.getDomain() != null ? connection.getDomain() : "";
-    String username = connection.getUsername() != null ? connection.getUsername() : "";
-    String password = connection.getPassword() != null ? connection.getPassword() : "";
-
-    if (username.isEmpty() && password.isEmpty()) {
-      return AuthenticationContext.guest();
-    }
-
-    return new AuthenticationContext(username, password.toCharArray(), domain);
-  }
-
-  /** Extracts the share name from the full share path. */
-  private String getShareName(String sharePath) {
-    if (sharePath == null || sharePath.isEmpty()) return "";
-
-    String path = sharePath;
-    while (path.startsWith("/") || path.startsWith("\\")) {
-      path = path.substring(1);
-    }
-
-    int slashIndex = path.indexOf('/');
-    if (slashIndex == -1) slashIndex = path.indexOf('\\');
-
-    return slashIndex == -1 ? path : path.substring(0, slashIndex);
-  }
-
   /** Name of the per-task trash folder created at the sync root. Excluded from sync traversal. */
   static final String TRASH_DIR_NAME = ".sambalite-trash";
 
@@ -1169,16 +2141,13 @@ public class FolderSyncWorker extends Worker {
   }
 
   /**
-   * Checks whether the device has enough free disk space to continue sync operations.
+   * Checks whether the device has enough free disk space to continue sync operations, taking the
+   * space reserved by running downloads into account. Free space is re-read only periodically.
    *
-   * @return true if available space >= MIN_DISK_SPACE_BYTES, false otherwise
+   * @return true if unreserved space >= MIN_DISK_SPACE_BYTES, false otherwise
    */
   private boolean hasEnoughDiskSpace() {
-    boolean internalOk =
-        EnhancedFileUtils.hasEnoughDiskSpace(getApplicationContext().getFilesDir());
-    boolean externalOk =
-        EnhancedFileUtils.hasEnoughDiskSpace(android.os.Environment.getExternalStorageDirectory());
-    return internalOk && externalOk;
+    return DiskSpaceAccountant.getInstance().hasSpace();
   }
 
   /**
@@ -1212,66 +2181,60 @@ public class FolderSyncWorker extends Worker {
   // ---------------------------------------------------------------------------
 
   /**
-   * Mirror sweep for {@link SyncDirection#LOCAL_TO_REMOTE}: removes remote entries that are tracked
-   * in the DB but no longer present in the local source tree. When {@code useTrash} is {@code
-   * true}, entries are moved into a per-run trash folder ({@code .sambalite-trash/<ts>/<relPath>})
-   * at the root of the remote sync target instead of being deleted.
+   * Mirror phase for {@link SyncDirection#LOCAL_TO_REMOTE}: removes the remote entries the plan
+   * found tracked in the DB but no longer present in the local source tree. When {@code useTrash}
+   * is {@code true}, entries are moved into a per-run trash folder ({@code
+   * .sambalite-trash/<ts>/<relPath>}) at the root of the remote sync target instead of being
+   * deleted.
    */
-  private void runMirrorSweepLocalSource(
+  private void runMirrorLocalSource(
       DiskShare share,
-      DocumentFile localFolder,
       String remotePath,
       String rootUri,
-      boolean useTrash) {
-    Set<String> localPaths = new HashSet<>();
-    boolean complete;
-    try {
-      collectLocalPaths(localFolder, "", localPaths);
-      complete = true;
-    } catch (Exception e) {
-      LogUtils.w(TAG, "[MIRROR] Local listing failed: " + e.getMessage());
-      complete = false;
-    }
+      boolean useTrash,
+      List<SyncPlanAction> deletions,
+      PlanBuilder source,
+      PlanProgress progress) {
+    Set<String> localPaths = source.sourcePaths;
+    boolean complete = source.sourceComplete;
 
     // Lazy: only compute the trash base path on first actual deletion to avoid creating
     // empty timestamp folders on every sync run.
     final String[] trashBaseHolder = new String[1];
 
-    MirrorSweeper sweeper = new MirrorSweeper(syncStateStore);
-    MirrorSweeper.Result result =
-        sweeper.sweep(
-            rootUri,
-            localPaths,
-            complete,
-            relativePath -> {
-              String src = smbJoin(remotePath, relativePath);
-              if (useTrash) {
-                if (trashBaseHolder[0] == null) {
-                  trashBaseHolder[0] =
-                      smbJoin(remotePath, TRASH_DIR_NAME + "/" + System.currentTimeMillis());
-                }
-                String trashBase = trashBaseHolder[0];
-                boolean trashed = trashRemoteEntry(share, src, trashBase, relativePath);
-                if (trashed) {
-                  actionLog.log(SyncActionLog.Action.MIRROR_TRASHED, relativePath);
-                  return true;
-                }
-                // Fall through to delete if rename to trash failed
-                LogUtils.w(
-                    TAG, "[MIRROR] Trash move failed, falling back to delete for: " + relativePath);
-              }
-              boolean ok = deleteRemoteEntry(share, src);
-              if (ok) actionLog.log(SyncActionLog.Action.MIRROR_DELETED, relativePath);
-              return ok;
-            });
-    logMirrorResult("LOCAL→REMOTE", result);
+    runPlannedDeletions(
+        rootUri,
+        "LOCAL→REMOTE",
+        deletions,
+        relativePath -> {
+          String src = smbJoin(remotePath, relativePath);
+          if (useTrash) {
+            if (trashBaseHolder[0] == null) {
+              trashBaseHolder[0] =
+                  smbJoin(remotePath, TRASH_DIR_NAME + "/" + System.currentTimeMillis());
+            }
+            String trashBase = trashBaseHolder[0];
+            boolean trashed = trashRemoteEntry(share, src, trashBase, relativePath);
+            if (trashed) {
+              actionLog.log(SyncActionLog.Action.MIRROR_TRASHED, relativePath);
+              return true;
+            }
+            // Fall through to delete if rename to trash failed
+            LogUtils.w(
+                TAG, "[MIRROR] Trash move failed, falling back to delete for: " + relativePath);
+          }
+          boolean ok = deleteRemoteEntry(share, src);
+          if (ok) actionLog.log(SyncActionLog.Action.MIRROR_DELETED, relativePath);
+          return ok;
+        },
+        progress);
 
     // Additional cleanup: untracked empty remote directories that no longer exist in the local
     // source. The DB-driven sweep above only knows about files (saveRemoteState is called per
-    // file), so directories created remotely during sync (e.g. via ensureRemoteDirectoryExists)
-    // are never tracked. After a local rename of a parent folder, the file deletions empty out
-    // the old remote folder tree but leave the directory shells behind. We remove them here,
-    // guarded by the same safeguards (complete listing, non-empty source) as MirrorSweeper.
+    // file), so directories created remotely during sync (e.g. via createRemoteDirectory) are
+    // never tracked. After a local rename of a parent folder, the file deletions empty out the
+    // old remote folder tree but leave the directory shells behind. We remove them here, guarded
+    // by the same safeguards (complete listing, non-empty source) as MirrorSweeper.
     if (complete && !localPaths.isEmpty() && !isStopped()) {
       String trashBaseForDirs = trashBaseHolder[0];
       pruneUntrackedEmptyRemoteDirs(share, remotePath, "", localPaths, useTrash, trashBaseForDirs);
@@ -1389,64 +2352,54 @@ public class FolderSyncWorker extends Worker {
   }
 
   /**
-   * Mirror sweep for {@link SyncDirection#REMOTE_TO_LOCAL}: removes local entries that are tracked
-   * in the DB but no longer present on the remote source. When {@code useTrash} is {@code true},
-   * entries are moved into a per-run local trash folder ({@code .sambalite-trash/<ts>/<relPath>})
-   * directly under the local sync root via SAF; if the move is not supported by the SAF provider,
-   * the code falls back to a regular delete.
+   * Mirror phase for {@link SyncDirection#REMOTE_TO_LOCAL}: removes the local entries the plan
+   * found tracked in the DB but no longer present on the remote source. When {@code useTrash} is
+   * {@code true}, entries are moved into a per-run local trash folder ({@code
+   * .sambalite-trash/<ts>/<relPath>}) directly under the local sync root via SAF; if the move is
+   * not supported by the SAF provider, the code falls back to a regular delete.
    */
-  private void runMirrorSweepRemoteSource(
-      DiskShare share,
+  private void runMirrorRemoteSource(
       DocumentFile localFolder,
-      String remotePath,
       String rootUri,
-      boolean useTrash) {
-    Set<String> remotePaths = new HashSet<>();
-    boolean complete;
-    try {
-      collectRemotePaths(share, remotePath, "", remotePaths);
-      complete = true;
-    } catch (Exception e) {
-      LogUtils.w(TAG, "[MIRROR] Remote listing failed: " + e.getMessage());
-      complete = false;
-    }
+      boolean useTrash,
+      List<SyncPlanAction> deletions,
+      PlanBuilder source,
+      PlanProgress progress) {
+    Set<String> remotePaths = source.sourcePaths;
+    boolean complete = source.sourceComplete;
 
     // Lazy: only create the local trash base directory on first actual deletion to avoid
     // littering the sync root with empty timestamp folders on every sync run.
     final DocumentFile[] trashBaseHolder = new DocumentFile[1];
     final boolean[] trashBaseInitialized = new boolean[1];
 
-    MirrorSweeper sweeper = new MirrorSweeper(syncStateStore);
-    MirrorSweeper.Result result =
-        sweeper.sweep(
-            rootUri,
-            remotePaths,
-            complete,
-            relativePath -> {
-              if (useTrash) {
-                if (!trashBaseInitialized[0]) {
-                  trashBaseHolder[0] =
-                      ensureLocalTrashBase(localFolder, System.currentTimeMillis());
-                  trashBaseInitialized[0] = true;
-                }
-                DocumentFile trashBase = trashBaseHolder[0];
-                if (trashBase != null) {
-                  boolean trashed = trashLocalEntry(localFolder, trashBase, relativePath);
-                  if (trashed) {
-                    actionLog.log(SyncActionLog.Action.MIRROR_TRASHED, relativePath);
-                    return true;
-                  }
-                  LogUtils.w(
-                      TAG,
-                      "[MIRROR] Local trash move failed, falling back to delete for: "
-                          + relativePath);
-                }
+    runPlannedDeletions(
+        rootUri,
+        "REMOTE→LOCAL",
+        deletions,
+        relativePath -> {
+          if (useTrash) {
+            if (!trashBaseInitialized[0]) {
+              trashBaseHolder[0] = ensureLocalTrashBase(localFolder, System.currentTimeMillis());
+              trashBaseInitialized[0] = true;
+            }
+            DocumentFile trashBase = trashBaseHolder[0];
+            if (trashBase != null) {
+              boolean trashed = trashLocalEntry(localFolder, trashBase, relativePath);
+              if (trashed) {
+                actionLog.log(SyncActionLog.Action.MIRROR_TRASHED, relativePath);
+                return true;
               }
-              boolean ok = deleteLocalEntry(localFolder, relativePath);
-              if (ok) actionLog.log(SyncActionLog.Action.MIRROR_DELETED, relativePath);
-              return ok;
-            });
-    logMirrorResult("REMOTE→LOCAL", result);
+              LogUtils.w(
+                  TAG,
+                  "[MIRROR] Local trash move failed, falling back to delete for: " + relativePath);
+            }
+          }
+          boolean ok = deleteLocalEntry(localFolder, relativePath);
+          if (ok) actionLog.log(SyncActionLog.Action.MIRROR_DELETED, relativePath);
+          return ok;
+        },
+        progress);
 
     // Additional cleanup: untracked empty directories that no longer exist on the remote source.
     // The DB-driven sweep above only knows about files (saveRemoteState is called per file),
@@ -1461,6 +2414,44 @@ public class FolderSyncWorker extends Worker {
     }
   }
 
+  /**
+   * Runs the planned mirror deletions in plan order (deepest first) and checkpoints each of them.
+   * A deletion that fails is not retried from this plan; the next planning run finds the entry
+   * again.
+   */
+  private void runPlannedDeletions(
+      String rootUri,
+      String label,
+      List<SyncPlanAction> deletions,
+      MirrorSweeper.TargetDeleter deleter,
+      PlanProgress progress) {
+    if (deletions.isEmpty()) return;
+    MirrorSweeper sweeper = new MirrorSweeper(syncStateStore);
+    int deleted = 0;
+    int failed = 0;
+    for (SyncPlanAction action : deletions) {
+      if (isStopped()) return;
+      if (sweeper.deletePlanned(rootUri, action.relativePath, deleter)) {
+        deleted++;
+        planStore.markDone(action);
+      } else {
+        failed++;
+        planStore.markFailed(action, "delete failed");
+      }
+      progress.finished(action);
+    }
+    LogUtils.i(
+        TAG,
+        "[MIRROR] "
+            + label
+            + " sweep done: candidates="
+            + deletions.size()
+            + " deleted="
+            + deleted
+            + " failed="
+            + failed);
+  }
+
   /**
    * Recursively prunes local directories that (a) are not present in {@code remotePaths} and (b)
    * are empty after their (already swept) children have been removed. Directories that are still
@@ -1479,20 +2470,18 @@ public class FolderSyncWorker extends Worker {
       boolean useTrash,
       DocumentFile trashBase) {
     if (folder == null || isStopped()) return;
-    DocumentFile[] children = folder.listFiles();
-    if (children == null) return;
-    for (DocumentFile child : children) {
+    for (SafTreeEnumerator.Entry entry : localTree.list(folder)) {
       if (isStopped()) return;
-      String name = child.getName();
+      String name = entry.getName();
       if (name == null || name.isEmpty()) continue;
-      if (!child.isDirectory()) continue;
+      if (!entry.isDirectory()) continue;
       if (isTrashAtRoot(name, prefix)) continue;
       String rel = prefix.isEmpty() ? name : prefix + "/" + name;
+      DocumentFile child = localTree.toDocumentFile(entry);
       // Recurse first so deepest empty dirs are cleaned before their parents.
       pruneUntrackedEmptyLocalDirs(root, child, rel, remotePaths, useTrash, trashBase);
       if (remotePaths.contains(rel)) continue; // still exists on source
-      DocumentFile[] remaining = child.listFiles();
-      if (remaining != null && remaining.length > 0) continue; // not empty (untouched content)
+      if (!localTree.list(entry.getUri()).isEmpty()) continue; // not empty (untouched content)
       boolean removed = false;
       // If the per-run trash already contains a directory at this relative path, the
       // file-level sweep already created it while moving children there. Trying to move
@@ -1511,7 +2500,7 @@ public class FolderSyncWorker extends Worker {
       }
       if (!removed) {
         try {
-          if (child.delete()) {
+          if (child != null && child.delete()) {
             actionLog.log(SyncActionLog.Action.MIRROR_DELETED, rel);
             LogUtils.d(TAG, "[MIRROR] Pruned empty local dir: " + rel);
           }
@@ -1723,10 +2712,8 @@ public class FolderSyncWorker extends Worker {
    * under {@code folder}. Directory paths are included so that empty directories can also be
    * mirrored away on the target side.
    */
-  private void collectLocalPaths(DocumentFile folder, String prefix, Set<String> out) {
-    DocumentFile[] children = folder.listFiles();
-    if (children == null) return;
-    for (DocumentFile child : children) {
+  private void collectLocalPaths(Uri folder, String prefix, Set<String> out) {
+    for (SafTreeEnumerator.Entry child : localTree.list(folder)) {
       if (isStopped()) return;
       String name = child.getName();
       if (name == null || name.isEmpty()) continue;
@@ -1734,7 +2721,7 @@ public class FolderSyncWorker extends Worker {
       String rel = prefix.isEmpty() ? name : prefix + "/" + name;
       out.add(rel);
       if (child.isDirectory()) {
-        collectLocalPaths(child, rel, out);
+        collectLocalPaths(child.getUri(), rel, out);
       }
     }
   }
@@ -33,6 +33,10 @@ import java.util.Set;
  * target but were never tracked by SambaLite are never touched. This protects manually created
  * files on the target side.
  *
+ * <p>While the sync has a snapshot of the root open (see {@link SyncStateStore#openSnapshot}), the
+ * tracked entries are read from that snapshot and removed state is staged with the other changes
+ * of the sync, so a sweep issues no per-entry queries.
+ *
  * <h2>Safeguards</h2>
  *
  * <ul>
@@ -85,13 +89,46 @@ public class MirrorSweeper {
       @NonNull Set<String> sourcePaths,
       boolean sourceListingComplete,
       @NonNull TargetDeleter deleter) {
+    Plan plan = plan(rootUri, sourcePaths, sourceListingComplete);
+    if (plan.rejected != null) {
+      return plan.rejected;
+    }
+
+    int deleted = 0;
+    int failed = 0;
+    for (String rel : plan.candidates) {
+      if (deletePlanned(rootUri, rel, deleter)) {
+        deleted++;
+      } else {
+        failed++;
+      }
+    }
+
+    return Result.completed(plan.tracked, plan.candidates.size(), deleted, failed);
+  }
+
+  /**
+   * Determines the deletions of a sweep without performing them, applying the same safeguards as
+   * {@link #sweep}. The candidates can be deleted later with {@link #deletePlanned}, e.g. by the
+   * executor of a persisted sync plan.
+   *
+   * @param rootUri the local sync root URI (key into {@link SyncStateStore})
+   * @param sourcePaths set of relative paths (forward-slash separated) currently visible on the
+   *     source side
+   * @param sourceListingComplete {@code true} iff {@code sourcePaths} is a complete enumeration of
+   *     the source side
+   * @return the candidates, deepest paths first, or the reason why nothing is deleted
+   */
+  @NonNull
+  public Plan plan(
+      @NonNull String rootUri, @NonNull Set<String> sourcePaths, boolean sourceListingComplete) {
 
     List<FileSyncState> tracked = stateStore.getAllForRoot(rootUri);
     if (tracked == null) tracked = Collections.emptyList();
 
     if (!sourceListingComplete) {
       LogUtils.w(TAG, "[MIRROR] Source listing incomplete – skipping mirror sweep");
-      return Result.skipped(tracked.size(), "source listing incomplete");
+      return Plan.rejected(Result.skipped(tracked.size(), "source listing incomplete"));
     }
 
     if (sourcePaths.isEmpty() && !tracked.isEmpty()) {
@@ -100,7 +137,7 @@ public class MirrorSweeper {
           "[MIRROR] Source listing is empty but DB has "
               + tracked.size()
               + " tracked entries – refusing to wipe target");
-      return Result.skipped(tracked.size(), "empty source listing protection");
+      return Plan.rejected(Result.skipped(tracked.size(), "empty source listing protection"));
     }
 
     // Determine candidates: tracked entries whose relativePath is not in the source listing.
@@ -114,7 +151,7 @@ public class MirrorSweeper {
 
     if (candidates.isEmpty()) {
       LogUtils.d(TAG, "[MIRROR] Nothing to delete on target");
-      return Result.empty(tracked.size());
+      return Plan.rejected(Result.empty(tracked.size()));
     }
 
     // Sanity threshold: abort if too many candidates relative to tracked size.
@@ -127,7 +164,7 @@ public class MirrorSweeper {
               + " of "
               + tracked.size()
               + " tracked entries would be deleted (threshold exceeded)");
-      return Result.aborted(tracked.size(), candidates.size());
+      return Plan.rejected(Result.aborted(tracked.size(), candidates.size()));
     }
 
     // Sort by descending path depth so children are deleted before their parents.
@@ -138,27 +175,35 @@ public class MirrorSweeper {
           return Integer.compare(db, da);
         });
 
-    int deleted = 0;
-    int failed = 0;
+    List<String> paths = new ArrayList<>(candidates.size());
     for (FileSyncState st : candidates) {
-      String rel = normalize(st.relativePath);
-      try {
-        boolean ok = deleter.deleteOnTarget(rel);
-        if (ok) {
-          stateStore.deleteState(rootUri, st.relativePath);
-          deleted++;
-          LogUtils.d(TAG, "[MIRROR] Deleted on target: " + rel);
-        } else {
-          failed++;
-          LogUtils.w(TAG, "[MIRROR] Target delete reported failure: " + rel);
-        }
-      } catch (Exception e) {
-        failed++;
-        LogUtils.e(TAG, "[MIRROR] Error deleting on target: " + rel + ": " + e.getMessage());
-      }
+      paths.add(st.relativePath);
     }
+    return new Plan(tracked.size(), paths, null);
+  }
 
-    return Result.completed(tracked.size(), candidates.size(), deleted, failed);
+  /**
+   * Deletes one planned candidate on the target and, if that succeeded, its tracked state.
+   *
+   * @param relativePath the tracked relative path; the deleter gets it with forward slashes
+   * @return {@code true} if the entry is gone on the target
+   */
+  public boolean deletePlanned(
+      @NonNull String rootUri, @NonNull String relativePath, @NonNull TargetDeleter deleter) {
+    String rel = normalize(relativePath);
+    try {
+      boolean ok = deleter.deleteOnTarget(rel);
+      if (ok) {
+        stateStore.deleteState(rootUri, relativePath);
+        LogUtils.d(TAG, "[MIRROR] Deleted on target: " + rel);
+      } else {
+        LogUtils.w(TAG, "[MIRROR] Target delete reported failure: " + rel);
+      }
+      return ok;
+    } catch (Exception e) {
+      LogUtils.e(TAG, "[MIRROR] Error deleting on target: " + rel + ": " + e.getMessage());
+      return false;
+    }
   }
 
   private static String normalize(@Nullable String relPath) {
@@ -194,6 +239,27 @@ public class MirrorSweeper {
     boolean deleteOnTarget(@NonNull String relativePath) throws Exception;
   }
 
+  /** Deletions determined by {@link #plan}. */
+  public static final class Plan {
+    public final int tracked;
+
+    /** Tracked relative paths to delete, deepest first; empty if {@link #rejected} is set. */
+    @NonNull public final List<String> candidates;
+
+    /** Outcome if nothing is to be deleted (skipped, empty or aborted), otherwise null. */
+    @Nullable public final Result rejected;
+
+    private Plan(int tracked, @NonNull List<String> candidates, @Nullable Result rejected) {
+      this.tracked = tracked;
+      this.candidates = candidates;
+      this.rejected = rejected;
+    }
+
+    static Plan rejected(@NonNull Result result) {
+      return new Plan(result.tracked, Collections.emptyList(), result);
+    }
+  }
+
   /** Result of a single sweep run. */
   public static final class Result {
     public final int tracked;
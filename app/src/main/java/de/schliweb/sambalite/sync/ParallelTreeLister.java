@@ -0,0 +1,300 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.schliweb.sambalite.util.LogUtils;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lists the directories of a folder pair ahead of the sync walk on a small work-stealing pool.
+ *
+ * <p>The sync walk itself stays sequential and depth-first: it takes the listing of each directory
+ * with {@link #take}, makes its per-file decisions and updates the sync state in listing order,
+ * exactly as before. What runs in parallel is the listing. Whenever a directory has been listed,
+ * its subdirectories (as reported by {@link Source#subdirectories}) are forked onto a {@link
+ * ForkJoinPool}, so siblings are listed concurrently over the shared SMB session and idle workers
+ * steal subtrees from busy ones. At most {@code concurrency} remote listings are in flight, and
+ * at most {@link #MAX_BUFFERED} listings wait for the walk, which keeps memory bounded on large
+ * trees.
+ *
+ * <p>If the walk reaches a directory whose listing has not started yet, it lists it on its own
+ * thread instead of waiting behind other queued work. The side the sync copies from is listed
+ * first, and the other side of a directory can be left out (see {@link Source#skipSecond}). This
+ * class has no Android dependencies; the local directory handle, local entries and remote entries
+ * are type parameters.
+ *
+ * @param <D> handle of a local directory, e.g. a document URI
+ * @param <L> local directory entry
+ * @param <R> remote directory entry
+ */
+final class ParallelTreeLister<D, L, R> implements AutoCloseable {
+
+  private static final String TAG = "ParallelTreeLister";
+
+  /** Upper bound of listings kept ahead of the walk. */
+  static final int MAX_BUFFERED = 256;
+
+  /** Lists both sides of a directory and names the subdirectories the walk descends into. */
+  interface Source<D, L, R> {
+    @NonNull
+    List<L> listLocal(@NonNull D directory);
+
+    @NonNull
+    List<R> listRemote(@NonNull String path) throws Exception;
+
+    /** Returns the subdirectories of a listed directory that the walk will visit. */
+    @NonNull
+    List<Directory<D>> subdirectories(@NonNull Listing<D, L, R> listing);
+
+    /** Returns true if the remote side is listed first, i.e. the sync copies from it. */
+    default boolean remoteFirst() {
+      return false;
+    }
+
+    /**
+     * Returns true if the side listed second need not be listed, e.g. because the first side has
+     * not changed since the last sync. Called on a listing thread once the first side is listed.
+     */
+    default boolean skipSecond(@NonNull Listing<D, L, R> listing) {
+      return false;
+    }
+  }
+
+  /** A directory pair; {@code local} is null if the local directory does not exist yet. */
+  static final class Directory<D> {
+    final String relPath;
+    final D local;
+    final String remotePath;
+
+    Directory(@NonNull String relPath, @Nullable D local, @NonNull String remotePath) {
+      this.relPath = relPath;
+      this.local = local;
+      this.remotePath = remotePath;
+    }
+
+    boolean sameAs(@NonNull Directory<D> other) {
+      return relPath.equals(other.relPath)
+          && Objects.equals(local, other.local)
+          && remotePath.equals(other.remotePath);
+    }
+  }
+
+  /** Both listings of one directory pair. */
+  static final class Listing<D, L, R> {
+    final Directory<D> directory;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private List<L> local = Collections.emptyList();
+    private List<R> remote = Collections.emptyList();
+    private Exception remoteError;
+    private boolean localSkipped;
+    private boolean remoteSkipped;
+
+    Listing(@NonNull Directory<D> directory) {
+      this.directory = directory;
+    }
+
+    /** Returns true if the local side was left out by {@link Source#skipSecond}. */
+    boolean isLocalSkipped() {
+      return localSkipped;
+    }
+
+    /** Returns true if the remote side was left out by {@link Source#skipSecond}. */
+    boolean isRemoteSkipped() {
+      return remoteSkipped;
+    }
+
+    /** Returns the local entries; empty if the local directory does not exist. */
+    @NonNull
+    List<L> getLocal() {
+      return local;
+    }
+
+    /**
+     * Returns the remote entries.
+     *
+     * @throws IOException if the remote directory could not be listed
+     */
+    @NonNull
+    List<R> getRemote() throws IOException {
+      if (remoteError != null) {
+        throw remoteError instanceof IOException
+            ? (IOException) remoteError
+            : new IOException(remoteError.getMessage(), remoteError);
+      }
+      return remote;
+    }
+  }
+
+  private final Source<D, L, R> source;
+  private final BooleanSupplier stopped;
+  private final ForkJoinPool pool;
+  private final Semaphore remotePermits;
+  private final ConcurrentHashMap<String, Listing<D, L, R>> pending = new ConcurrentHashMap<>();
+  private final AtomicInteger listed = new AtomicInteger();
+  private final AtomicInteger listedAhead = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+
+  /**
+   * @param concurrency maximum number of concurrent remote listings; also the pool size
+   * @param stopped checked before each listing; once true, remaining listings are left empty
+   */
+  ParallelTreeLister(
+      @NonNull Source<D, L, R> source, int concurrency, @NonNull BooleanSupplier stopped) {
+    int n = Math.max(1, concurrency);
+    this.source = source;
+    this.stopped = stopped;
+    this.pool = new ForkJoinPool(n);
+    this.remotePermits = new Semaphore(n);
+  }
+
+  /**
+   * Returns the listing of a directory pair, waiting for it if it is being listed and listing it
+   * on the calling thread if it has not started yet. Its subdirectories are then queued.
+   */
+  @NonNull
+  Listing<D, L, R> take(@NonNull String relPath, @Nullable D local, @NonNull String remotePath) {
+    Directory<D> directory = new Directory<>(relPath, local, remotePath);
+    Listing<D, L, R> listing = pending.remove(relPath);
+    if (listing == null || !listing.directory.sameAs(directory)) {
+      // Not queued, or queued with other handles, e.g. because the walk has just created the
+      // local directory
+      listing = new Listing<>(directory);
+    } else {
+      listedAhead.incrementAndGet();
+    }
+    if (listing.claimed.compareAndSet(false, true)) {
+      load(listing);
+    } else {
+      listing.done.join();
+    }
+    return listing;
+  }
+
+  private void load(Listing<D, L, R> listing) {
+    try {
+      if (stopped.getAsBoolean()) {
+        return;
+      }
+      if (source.remoteFirst()) {
+        loadRemote(listing);
+        if (source.skipSecond(listing)) {
+          listing.localSkipped = true;
+          skipped.incrementAndGet();
+        } else {
+          loadLocal(listing);
+        }
+      } else {
+        loadLocal(listing);
+        if (source.skipSecond(listing)) {
+          listing.remoteSkipped = true;
+          skipped.incrementAndGet();
+        } else {
+          loadRemote(listing);
+        }
+      }
+      listed.incrementAndGet();
+      expand(listing);
+    } catch (RuntimeException e) {
+      LogUtils.w(TAG, "Listing " + listing.directory.relPath + " failed: " + e.getMessage());
+    } finally {
+      listing.done.complete(null);
+    }
+  }
+
+  private void loadLocal(Listing<D, L, R> listing) {
+    if (listing.directory.local != null) {
+      listing.local = source.listLocal(listing.directory.local);
+    }
+  }
+
+  private void loadRemote(Listing<D, L, R> listing) {
+    remotePermits.acquireUninterruptibly();
+    try {
+      listing.remote = source.listRemote(listing.directory.remotePath);
+    } catch (Exception e) {
+      listing.remoteError = e;
+    } finally {
+      remotePermits.release();
+    }
+  }
+
+  /** Queues the subdirectories of a listed directory, as long as the buffer has room. */
+  private void expand(Listing<D, L, R> listing) {
+    for (Directory<D> child : source.subdirectories(listing)) {
+      if (pending.size() >= MAX_BUFFERED || stopped.getAsBoolean() || pool.isShutdown()) {
+        return;
+      }
+      Listing<D, L, R> queued = new Listing<>(child);
+      if (pending.putIfAbsent(child.relPath, queued) != null) {
+        continue;
+      }
+      RecursiveAction task =
+          new RecursiveAction() {
+            @Override
+            protected void compute() {
+              if (queued.claimed.compareAndSet(false, true)) {
+                load(queued);
+              }
+            }
+          };
+      Thread current = Thread.currentThread();
+      if (current instanceof ForkJoinWorkerThread
+          && ((ForkJoinWorkerThread) current).getPool() == pool) {
+        // Pushed onto this worker's own deque; idle workers steal from the other end
+        task.fork();
+      } else {
+        try {
+          pool.execute(task);
+        } catch (RejectedExecutionException e) {
+          pending.remove(child.relPath, queued);
+          return;
+        }
+      }
+    }
+  }
+
+  /** Returns the number of directories listed so far. */
+  int getListedCount() {
+    return listed.get();
+  }
+
+  /** Returns how many of the taken listings had been prepared ahead of the walk. */
+  int getListedAheadCount() {
+    return listedAhead.get();
+  }
+
+  /** Returns how many directories were listed on one side only. */
+  int getSkippedCount() {
+    return skipped.get();
+  }
+
+  /** Stops the pool; listings that are still queued are dropped. */
+  @Override
+  public void close() {
+    pool.shutdownNow();
+    pending.clear();
+  }
+}
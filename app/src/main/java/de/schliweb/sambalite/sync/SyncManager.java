@@ -13,6 +13,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.work.BackoffPolicy;
 import androidx.work.Constraints;
 import androidx.work.ExistingPeriodicWorkPolicy;
@@ -22,8 +23,10 @@ import androidx.work.OneTimeWorkRequest;
 import androidx.work.OutOfQuotaPolicy;
 import androidx.work.PeriodicWorkRequest;
 import androidx.work.WorkManager;
+import de.schliweb.sambalite.sync.db.SyncPlanSummary;
 import de.schliweb.sambalite.util.LogUtils;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -268,6 +271,52 @@ public class SyncManager {
         .enqueueUniqueWork(UNIQUE_WORK_NAME + "_" + configId, ExistingWorkPolicy.REPLACE, request);
   }
 
+  /**
+   * Plans a sync of a specific configuration as a dry run: both folders are listed and the plan is
+   * stored apart from the plan of an interrupted sync, but nothing is transferred. The plan can be
+   * read with {@link #getSyncPreviewSummary} once the returned work has succeeded.
+   *
+   * @param configId the ID of the sync configuration to preview
+   * @return the ID of the preview work
+   */
+  public @NonNull UUID triggerSyncPreview(@NonNull String configId) {
+    LogUtils.i(TAG, "Triggering sync preview for config: " + configId);
+
+    Constraints constraints =
+        new Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build();
+
+    androidx.work.Data inputData =
+        new androidx.work.Data.Builder()
+            .putString(FolderSyncWorker.KEY_SYNC_CONFIG_ID, configId)
+            .putBoolean(FolderSyncWorker.KEY_DRY_RUN, true)
+            .build();
+
+    // Not tagged with UNIQUE_WORK_NAME: a preview does not show up as a running sync
+    OneTimeWorkRequest request =
+        new OneTimeWorkRequest.Builder(FolderSyncWorker.class)
+            .setConstraints(constraints)
+            .setInputData(inputData)
+            .addTag(UNIQUE_WORK_NAME + "_preview")
+            .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
+            .build();
+
+    WorkManager.getInstance(context)
+        .enqueueUniqueWork(
+            UNIQUE_WORK_NAME + "_preview_" + configId, ExistingWorkPolicy.REPLACE, request);
+    return request.getId();
+  }
+
+  /**
+   * Returns the stored result of {@link #triggerSyncPreview} for a configuration. Must not be
+   * called on the main thread.
+   *
+   * @param configId the ID of the sync configuration
+   * @return the plan summary, or null if there is no stored preview
+   */
+  public @Nullable SyncPlanSummary getSyncPreviewSummary(@NonNull String configId) {
+    return syncRepository.getSyncPreviewSummary(configId);
+  }
+
   /** Schedules periodic sync based on the minimum interval of all enabled configs. */
   public void schedulePeriodicSync() {
     List<SyncConfig> enabledConfigs = syncRepository.getAllEnabledConfigs();
@@ -12,10 +12,15 @@ package de.schliweb.sambalite.sync;
 import android.content.Context;
 import android.content.SharedPreferences;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.schliweb.sambalite.sync.db.DirectoryFingerprintStore;
+import de.schliweb.sambalite.sync.db.SyncPlanStore;
+import de.schliweb.sambalite.sync.db.SyncPlanSummary;
 import de.schliweb.sambalite.sync.db.SyncStateStore;
 import de.schliweb.sambalite.util.LogUtils;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -33,12 +38,16 @@ public class SyncRepository {
 
   private final SharedPreferences prefs;
   private final SyncStateStore syncStateStore;
+  private final SyncPlanStore syncPlanStore;
+  private final DirectoryFingerprintStore fingerprintStore;
 
   @Inject
   public SyncRepository(@NonNull Context context) {
     LogUtils.d(TAG, "Initializing SyncRepository");
     this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
     this.syncStateStore = new SyncStateStore(context);
+    this.syncPlanStore = new SyncPlanStore(context);
+    this.fingerprintStore = new DirectoryFingerprintStore(context);
   }
 
   /**
@@ -56,6 +65,14 @@ public class SyncRepository {
       LogUtils.d(TAG, "Generated new ID for sync config: " + config.getId());
     } else {
       LogUtils.d(TAG, "Updating existing sync config with ID: " + config.getId());
+      for (SyncConfig previous : configs) {
+        if (previous.getId().equals(config.getId()) && !sameFolderPair(previous, config)) {
+          // Fingerprints only describe the target side of the pair they were taken for
+          final String configId = config.getId();
+          new Thread(() -> fingerprintStore.deleteAllForConfig(configId)).start();
+          break;
+        }
+      }
       configs.removeIf(c -> c.getId().equals(config.getId()));
     }
 
@@ -65,6 +82,14 @@ public class SyncRepository {
     return config;
   }
 
+  /** Returns true if both configs sync the same folders in the same direction. */
+  private static boolean sameFolderPair(@NonNull SyncConfig a, @NonNull SyncConfig b) {
+    return a.getDirection() == b.getDirection()
+        && Objects.equals(a.getConnectionId(), b.getConnectionId())
+        && Objects.equals(a.getLocalFolderUri(), b.getLocalFolderUri())
+        && Objects.equals(a.getRemotePath(), b.getRemotePath());
+  }
+
   /**
    * Returns all sync configurations.
    *
@@ -149,16 +174,19 @@ public class SyncRepository {
       LogUtils.i(TAG, "Sync config deleted successfully: " + configId);
       saveConfigsToPrefs(configs);
 
-      // Clean up sync state DB entries for this config's local folder (off main thread)
-      if (localFolderUri != null && !localFolderUri.isEmpty()) {
-        final String uri = localFolderUri;
-        new Thread(
-                () -> {
+      // Clean up the sync plan and the sync state DB entries for this config's local folder
+      // (off main thread)
+      final String uri = localFolderUri;
+      new Thread(
+              () -> {
+                syncPlanStore.deletePlan(configId);
+                fingerprintStore.deleteAllForConfig(configId);
+                if (uri != null && !uri.isEmpty()) {
                   syncStateStore.deleteAllForRoot(uri);
                   LogUtils.i(TAG, "Cleaned up sync state DB for root: " + uri);
-                })
-            .start();
-      }
+                }
+              })
+          .start();
     } else {
       LogUtils.w(TAG, "Sync config not found for deletion: " + configId);
     }
@@ -176,12 +204,13 @@ public class SyncRepository {
     LogUtils.d(TAG, "Deleting sync configs for connection: " + connectionId);
     List<SyncConfig> configs = getAllSyncConfigs();
 
-    // Collect localFolderUris before removal for DB cleanup
+    // Collect config IDs and localFolderUris before removal for DB cleanup
+    List<String> configIds = new ArrayList<>();
     List<String> rootUris = new ArrayList<>();
     for (SyncConfig c : configs) {
-      if (connectionId.equals(c.getConnectionId())
-          && c.getLocalFolderUri() != null
-          && !c.getLocalFolderUri().isEmpty()) {
+      if (!connectionId.equals(c.getConnectionId())) continue;
+      configIds.add(c.getId());
+      if (c.getLocalFolderUri() != null && !c.getLocalFolderUri().isEmpty()) {
         rootUris.add(c.getLocalFolderUri());
       }
     }
@@ -197,6 +226,10 @@ public class SyncRepository {
       // Clean up sync state DB entries for all removed configs (off main thread)
       new Thread(
               () -> {
+                for (String configId : configIds) {
+                  syncPlanStore.deletePlan(configId);
+                  fingerprintStore.deleteAllForConfig(configId);
+                }
                 for (String rootUri : rootUris) {
                   syncStateStore.deleteAllForRoot(rootUri);
                 }
@@ -208,6 +241,17 @@ public class SyncRepository {
     return removed;
   }
 
+  /**
+   * Returns the stored preview of a configuration with its totals. Must not be called on the main
+   * thread.
+   *
+   * @param configId the ID of the configuration
+   * @return the plan summary, or null if there is no stored preview
+   */
+  public @Nullable SyncPlanSummary getSyncPreviewSummary(@NonNull String configId) {
+    return syncPlanStore.getPreviewSummary(configId);
+  }
+
   /**
    * Updates the last sync timestamp for a specific configuration.
    *
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room entity for the fingerprint of one source directory of a one-way sync config, as listed by
+ * the last sync of the config that completed. A directory whose listing still has the same
+ * fingerprint has not changed on the source side since then.
+ */
+@Entity(
+    tableName = "directory_fingerprint",
+    indices = {
+      @Index(
+          value = {"config_id", "relative_path"},
+          unique = true)
+    })
+public class DirectoryFingerprint {
+
+  /** The fingerprint was taken of the local directory. */
+  public static final String SIDE_LOCAL = "LOCAL";
+
+  /** The fingerprint was taken of the remote directory. */
+  public static final String SIDE_REMOTE = "REMOTE";
+
+  @PrimaryKey(autoGenerate = true)
+  public long id;
+
+  /** ID of the sync config the fingerprint was taken for. */
+  @ColumnInfo(name = "config_id")
+  @NonNull
+  public String configId = "";
+
+  /** ID of the connection the config synced with. */
+  @ColumnInfo(name = "connection_id")
+  @NonNull
+  public String connectionId = "";
+
+  /** Root URI of the sync target (e.g., SAF tree URI). */
+  @ColumnInfo(name = "root_uri")
+  @NonNull
+  public String rootUri = "";
+
+  /** Remote folder the config synced with, relative to the share. */
+  @ColumnInfo(name = "remote_root")
+  @NonNull
+  public String remoteRoot = "";
+
+  /** Relative path of the directory within the sync root; empty for the root itself. */
+  @ColumnInfo(name = "relative_path")
+  @NonNull
+  public String relativePath = "";
+
+  /** One of the {@code SIDE_*} constants. */
+  @ColumnInfo(name = "side")
+  @NonNull
+  public String side = "";
+
+  /** Number of entries in the directory. */
+  @ColumnInfo(name = "entry_count")
+  public int entryCount;
+
+  /**
+   * Hash of the (name, size, last modified) tuples of the files and the names of the
+   * subdirectories; empty if the directory has to be compared again by the next sync.
+   */
+  @ColumnInfo(name = "children_hash")
+  @NonNull
+  public String childrenHash = "";
+
+  /** Last write time of the remote directory itself (epoch millis), 0 if unknown. */
+  @ColumnInfo(name = "dir_modified")
+  public long dirModified;
+
+  /** Change time of the remote directory itself (epoch millis), 0 if unknown. */
+  @ColumnInfo(name = "dir_changed")
+  public long dirChanged;
+
+  /** Document URI of the local directory, or null if it did not exist when it was listed. */
+  @ColumnInfo(name = "local_uri")
+  @Nullable
+  public String localUri;
+
+  /** Only set on the root row: the number of syncs since the last full walk. */
+  @ColumnInfo(name = "incremental_runs")
+  public int incrementalRuns;
+
+  /** Time the fingerprint was stored (epoch millis). */
+  @ColumnInfo(name = "updated_at")
+  public long updatedAt;
+
+  /**
+   * Returns true if the fingerprint was taken for the same folder pair on the same connection.
+   * Fingerprints of another pair say nothing about the target side of this one.
+   */
+  public boolean sameScope(
+      @NonNull String connectionId, @NonNull String rootUri, @NonNull String remoteRoot) {
+    return this.connectionId.equals(connectionId)
+        && this.rootUri.equals(rootUri)
+        && this.remoteRoot.equals(remoteRoot);
+  }
+
+  /** Returns true if both fingerprints describe the same listing of the same side. */
+  public boolean matches(@NonNull DirectoryFingerprint other) {
+    return !childrenHash.isEmpty()
+        && childrenHash.equals(other.childrenHash)
+        && side.equals(other.side)
+        && entryCount == other.entryCount
+        && dirModified == other.dirModified
+        && dirChanged == other.dirChanged;
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import java.util.List;
+
+/** Data Access Object for {@link DirectoryFingerprint} entities. */
+@Dao
+public interface DirectoryFingerprintDao {
+
+  /** Inserts or replaces fingerprints. */
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  void insertAll(@NonNull List<DirectoryFingerprint> fingerprints);
+
+  /** Returns the fingerprints of one side of a sync config. */
+  @Query("SELECT * FROM directory_fingerprint WHERE config_id = :configId AND side = :side")
+  @NonNull
+  List<DirectoryFingerprint> findBySide(@NonNull String configId, @NonNull String side);
+
+  /** Deletes all fingerprints of a sync config. */
+  @Query("DELETE FROM directory_fingerprint WHERE config_id = :configId")
+  int deleteByConfigId(@NonNull String configId);
+
+  /** Replaces all fingerprints of a sync config. */
+  @Transaction
+  default void replaceConfig(
+      @NonNull String configId, @NonNull List<DirectoryFingerprint> fingerprints) {
+    deleteByConfigId(configId);
+    insertAll(fingerprints);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import de.schliweb.sambalite.util.LogUtils;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * High-level store for the directory fingerprints of one-way sync configs. Wraps the Room DAO; DB
+ * errors are logged and reported as "no fingerprints", which makes the next sync a full walk.
+ */
+public class DirectoryFingerprintStore {
+
+  private static final String TAG = "DirectoryFingerprintStore";
+  private final DirectoryFingerprintDao dao;
+
+  public DirectoryFingerprintStore(@NonNull Context context) {
+    this.dao = SyncDatabase.getInstance(context).directoryFingerprintDao();
+  }
+
+  /** Constructor for testing with an injected DAO (allows non-Android unit/integration tests). */
+  public DirectoryFingerprintStore(@NonNull DirectoryFingerprintDao dao) {
+    this.dao = dao;
+  }
+
+  /**
+   * Loads the fingerprints of one side of a sync config.
+   *
+   * @return the fingerprints by relative path; empty if there are none
+   */
+  @NonNull
+  public Map<String, DirectoryFingerprint> load(@NonNull String configId, @NonNull String side) {
+    Map<String, DirectoryFingerprint> result = new HashMap<>();
+    try {
+      for (DirectoryFingerprint fingerprint : dao.findBySide(configId, side)) {
+        result.put(fingerprint.relativePath, fingerprint);
+      }
+    } catch (Exception e) {
+      LogUtils.e(
+          TAG, "Failed to load fingerprints for config: " + configId + ": " + e.getMessage());
+      result.clear();
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the fingerprints of a sync config, including those of the other side.
+   *
+   * @return true if the fingerprints were stored
+   */
+  public boolean replace(
+      @NonNull String configId, @NonNull List<DirectoryFingerprint> fingerprints) {
+    try {
+      long now = System.currentTimeMillis();
+      for (DirectoryFingerprint fingerprint : fingerprints) {
+        fingerprint.id = 0;
+        fingerprint.configId = configId;
+        fingerprint.updatedAt = now;
+      }
+      dao.replaceConfig(configId, fingerprints);
+      LogUtils.d(
+          TAG, "Stored " + fingerprints.size() + " directory fingerprints for config " + configId);
+      return true;
+    } catch (Exception e) {
+      LogUtils.e(
+          TAG, "Failed to store fingerprints for config: " + configId + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Deletes all fingerprints of a sync config, e.g. when it is removed or its folder pair or
+   * connection changes.
+   */
+  public void deleteAllForConfig(@NonNull String configId) {
+    try {
+      dao.deleteByConfigId(configId);
+    } catch (Exception e) {
+      LogUtils.e(
+          TAG, "Failed to delete fingerprints for config: " + configId + ": " + e.getMessage());
+    }
+  }
+}
@@ -10,6 +10,7 @@
 package de.schliweb.sambalite.sync.db;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Index;
@@ -62,4 +63,12 @@ public class FileSyncState {
   /** Whether the local timestamp was successfully preserved to match remote. */
   @ColumnInfo(name = "timestamp_preserved")
   public boolean timestampPreserved;
+
+  /**
+   * Checksum of the synced content as {@code "<algorithm>:<hex>"}, computed while copying when an
+   * integrity mode is enabled (null otherwise).
+   */
+  @ColumnInfo(name = "checksum")
+  @Nullable
+  public String checksum;
 }
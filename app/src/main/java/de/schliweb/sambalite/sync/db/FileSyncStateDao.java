@@ -15,6 +15,7 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import java.util.List;
 
 /** Data Access Object for {@link FileSyncState} entities. */
@@ -25,6 +26,10 @@ public interface FileSyncStateDao {
   @Insert(onConflict = OnConflictStrategy.REPLACE)
   long upsert(@NonNull FileSyncState state);
 
+  /** Inserts or replaces several sync state entries; returns their row IDs in list order. */
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  long[] upsertAll(@NonNull List<FileSyncState> states);
+
   /** Finds a sync state by root URI and relative path. */
   @Query(
       "SELECT * FROM file_sync_state WHERE root_uri = :rootUri AND relative_path = :relativePath LIMIT 1")
@@ -40,6 +45,28 @@ public interface FileSyncStateDao {
   @Query("DELETE FROM file_sync_state WHERE root_uri = :rootUri AND relative_path = :relativePath")
   int deleteByPath(@NonNull String rootUri, @NonNull String relativePath);
 
+  /** Deletes the sync states of several relative paths below a root URI. */
+  @Query(
+      "DELETE FROM file_sync_state WHERE root_uri = :rootUri AND relative_path IN (:relativePaths)")
+  int deleteByPaths(@NonNull String rootUri, @NonNull List<String> relativePaths);
+
+  /**
+   * Writes a batch of staged changes of one root in a single transaction.
+   *
+   * @return the row IDs of {@code upserts} in list order
+   */
+  @Transaction
+  @NonNull
+  default long[] applyBatch(
+      @NonNull String rootUri,
+      @NonNull List<FileSyncState> upserts,
+      @NonNull List<String> deletes) {
+    if (!deletes.isEmpty()) {
+      deleteByPaths(rootUri, deletes);
+    }
+    return upserts.isEmpty() ? new long[0] : upsertAll(upserts);
+  }
+
   /** Deletes all sync states for a given root URI. */
   @Query("DELETE FROM file_sync_state WHERE root_uri = :rootUri")
   int deleteByRootUri(@NonNull String rootUri);
@@ -14,21 +14,95 @@ import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 /** Room database for sync metadata persistence. */
 @Database(
-    entities = {FileSyncState.class},
-    version = 1,
+    entities = {
+      FileSyncState.class,
+      SyncPlan.class,
+      SyncPlanAction.class,
+      DirectoryFingerprint.class
+    },
+    version = 4,
     exportSchema = false)
 public abstract class SyncDatabase extends RoomDatabase {
 
   private static final String DATABASE_NAME = "sambalite_sync.db";
   private static volatile SyncDatabase instance;
 
+  /**
+   * Adds the checksum column. Sync state is migrated instead of dropped, since the mirror sweep
+   * relies on it to recognize files deleted on the other side.
+   */
+  static final Migration MIGRATION_1_2 =
+      new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+          db.execSQL("ALTER TABLE file_sync_state ADD COLUMN checksum TEXT");
+        }
+      };
+
+  /** Adds the tables of persisted sync plans. */
+  static final Migration MIGRATION_2_3 =
+      new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+          db.execSQL(
+              "CREATE TABLE IF NOT EXISTS `sync_plan` (`config_id` TEXT NOT NULL,"
+                  + " `created_at` INTEGER NOT NULL, `direction` TEXT NOT NULL,"
+                  + " `local_uri` TEXT NOT NULL, `remote_path` TEXT NOT NULL,"
+                  + " `mirror` INTEGER NOT NULL, `mirror_use_trash` INTEGER NOT NULL,"
+                  + " `dry_run` INTEGER NOT NULL, `mirror_note` TEXT,"
+                  + " PRIMARY KEY(`config_id`))");
+          db.execSQL(
+              "CREATE TABLE IF NOT EXISTS `sync_plan_action` (`id` INTEGER PRIMARY KEY"
+                  + " AUTOINCREMENT NOT NULL, `config_id` TEXT NOT NULL, `seq` INTEGER NOT NULL,"
+                  + " `kind` TEXT NOT NULL, `relative_path` TEXT NOT NULL,"
+                  + " `remote_path` TEXT NOT NULL, `local_uri` TEXT, `local_parent_uri` TEXT,"
+                  + " `size` INTEGER NOT NULL, `remote_modified` INTEGER NOT NULL,"
+                  + " `local_modified` INTEGER NOT NULL, `status` INTEGER NOT NULL,"
+                  + " `error` TEXT)");
+          db.execSQL(
+              "CREATE INDEX IF NOT EXISTS `index_sync_plan_action_config_id_seq`"
+                  + " ON `sync_plan_action` (`config_id`, `seq`)");
+        }
+      };
+
+  /** Adds the table of directory fingerprints. */
+  static final Migration MIGRATION_3_4 =
+      new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+          db.execSQL(
+              "CREATE TABLE IF NOT EXISTS `directory_fingerprint` (`id` INTEGER PRIMARY KEY"
+                  + " AUTOINCREMENT NOT NULL, `config_id` TEXT NOT NULL,"
+                  + " `connection_id` TEXT NOT NULL, `root_uri` TEXT NOT NULL,"
+                  + " `remote_root` TEXT NOT NULL, `relative_path` TEXT NOT NULL,"
+                  + " `side` TEXT NOT NULL, `entry_count` INTEGER NOT NULL,"
+                  + " `children_hash` TEXT NOT NULL, `dir_modified` INTEGER NOT NULL,"
+                  + " `dir_changed` INTEGER NOT NULL, `local_uri` TEXT,"
+                  + " `incremental_runs` INTEGER NOT NULL, `updated_at` INTEGER NOT NULL)");
+          db.execSQL(
+              "CREATE UNIQUE INDEX IF NOT EXISTS"
+                  + " `index_directory_fingerprint_config_id_relative_path`"
+                  + " ON `directory_fingerprint` (`config_id`, `relative_path`)");
+        }
+      };
+
   /** Returns the DAO for file sync state operations. */
   @NonNull
   public abstract FileSyncStateDao fileSyncStateDao();
 
+  /** Returns the DAO for persisted sync plans. */
+  @NonNull
+  public abstract SyncPlanDao syncPlanDao();
+
+  /** Returns the DAO for directory fingerprints. */
+  @NonNull
+  public abstract DirectoryFingerprintDao directoryFingerprintDao();
+
   /** Returns the singleton database instance. */
   @NonNull
   public static SyncDatabase getInstance(@NonNull Context context) {
@@ -38,6 +112,7 @@ public abstract class SyncDatabase extends RoomDatabase {
           instance =
               Room.databaseBuilder(
                       context.getApplicationContext(), SyncDatabase.class, DATABASE_NAME)
+                  .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4)
                   .fallbackToDestructiveMigration(true)
                   .build();
         }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room entity for the header of a persisted sync plan; at most one per sync config. The folder
+ * pair, direction and mirror settings are recorded so that a plan is only resumed for an unchanged
+ * config.
+ */
+@Entity(tableName = "sync_plan")
+public class SyncPlan {
+
+  /** ID of the sync config. */
+  @PrimaryKey
+  @ColumnInfo(name = "config_id")
+  @NonNull
+  public String configId = "";
+
+  /** Time the plan was computed (epoch millis). */
+  @ColumnInfo(name = "created_at")
+  public long createdAt;
+
+  /** Name of the {@code SyncDirection} the plan was computed for. */
+  @ColumnInfo(name = "direction")
+  @NonNull
+  public String direction = "";
+
+  /** Local root URI of the config. */
+  @ColumnInfo(name = "local_uri")
+  @NonNull
+  public String localUri = "";
+
+  /** Remote root path of the config. */
+  @ColumnInfo(name = "remote_path")
+  @NonNull
+  public String remotePath = "";
+
+  /** Whether mirror deletions were planned. */
+  @ColumnInfo(name = "mirror")
+  public boolean mirror;
+
+  /** Whether mirror deletions were planned to go to the trash. */
+  @ColumnInfo(name = "mirror_use_trash")
+  public boolean mirrorUseTrash;
+
+  /** Whether the plan is a preview only; previews are never executed. */
+  @ColumnInfo(name = "dry_run")
+  public boolean dryRun;
+
+  /** Why the mirror sweep planned no deletions although mirror mode is on, or null. */
+  @ColumnInfo(name = "mirror_note")
+  @Nullable
+  public String mirrorNote;
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room entity for one action of a persisted sync plan. Actions are executed in {@link #seq} order
+ * within their phase; each is checkpointed with its {@link #status} as soon as it has run, so an
+ * interrupted sync resumes with the actions that are still pending.
+ */
+@Entity(
+    tableName = "sync_plan_action",
+    indices = {@Index(value = {"config_id", "seq"})})
+public class SyncPlanAction {
+
+  /** Creates a remote directory. */
+  public static final String KIND_MKDIR_REMOTE = "MKDIR_REMOTE";
+
+  /** Creates a local directory. */
+  public static final String KIND_MKDIR_LOCAL = "MKDIR_LOCAL";
+
+  /** Uploads a local file. */
+  public static final String KIND_UPLOAD = "UPLOAD";
+
+  /** Downloads a remote file. */
+  public static final String KIND_DOWNLOAD = "DOWNLOAD";
+
+  /** Moves a remote entry to the trash, or deletes it (mirror mode). */
+  public static final String KIND_TRASH_REMOTE = "TRASH_REMOTE";
+
+  /** Moves a local entry to the trash, or deletes it (mirror mode). */
+  public static final String KIND_TRASH_LOCAL = "TRASH_LOCAL";
+
+  public static final int STATUS_PENDING = 0;
+  public static final int STATUS_DONE = 1;
+  public static final int STATUS_FAILED = 2;
+
+  @PrimaryKey(autoGenerate = true)
+  public long id;
+
+  /** ID of the sync config the plan belongs to. */
+  @ColumnInfo(name = "config_id")
+  @NonNull
+  public String configId = "";
+
+  /** Position in the plan (depth-first order of the planning walk). */
+  @ColumnInfo(name = "seq")
+  public int seq;
+
+  /** One of the {@code KIND_*} constants. */
+  @ColumnInfo(name = "kind")
+  @NonNull
+  public String kind = "";
+
+  /** Relative path within the sync root. */
+  @ColumnInfo(name = "relative_path")
+  @NonNull
+  public String relativePath = "";
+
+  /** Full remote SMB path. */
+  @ColumnInfo(name = "remote_path")
+  @NonNull
+  public String remotePath = "";
+
+  /** Document URI of the local file: the upload source, or the download target if it exists. */
+  @ColumnInfo(name = "local_uri")
+  @Nullable
+  public String localUri;
+
+  /**
+   * Document URI of the local parent directory for downloads of new files, or null if the parent
+   * is created by an earlier {@link #KIND_MKDIR_LOCAL} action.
+   */
+  @ColumnInfo(name = "local_parent_uri")
+  @Nullable
+  public String localParentUri;
+
+  /** Bytes to transfer; 0 for directory and trash actions. */
+  @ColumnInfo(name = "size")
+  public long size;
+
+  /** Remote last modified time in epoch millis, as seen while planning. */
+  @ColumnInfo(name = "remote_modified")
+  public long remoteModified;
+
+  /** Local last modified time in epoch millis, as seen while planning. */
+  @ColumnInfo(name = "local_modified")
+  public long localModified;
+
+  /** One of the {@code STATUS_*} constants. */
+  @ColumnInfo(name = "status")
+  public int status = STATUS_PENDING;
+
+  /** Error message of a failed action. */
+  @ColumnInfo(name = "error")
+  @Nullable
+  public String error;
+
+  /** Returns the last path segment. */
+  @NonNull
+  public String getName() {
+    int slash = relativePath.lastIndexOf('/');
+    return slash >= 0 ? relativePath.substring(slash + 1) : relativePath;
+  }
+
+  /** Returns the relative path of the parent directory, "" for entries at the root. */
+  @NonNull
+  public String getParentPath() {
+    int slash = relativePath.lastIndexOf('/');
+    return slash >= 0 ? relativePath.substring(0, slash) : "";
+  }
+
+  /** Returns true for uploads and downloads. */
+  public boolean isTransfer() {
+    return KIND_UPLOAD.equals(kind) || KIND_DOWNLOAD.equals(kind);
+  }
+
+  /** Returns true for directory creations. */
+  public boolean isMkdir() {
+    return KIND_MKDIR_REMOTE.equals(kind) || KIND_MKDIR_LOCAL.equals(kind);
+  }
+
+  /** Returns true for mirror trash/delete actions. */
+  public boolean isTrash() {
+    return KIND_TRASH_REMOTE.equals(kind) || KIND_TRASH_LOCAL.equals(kind);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import java.util.List;
+
+/** Data Access Object for {@link SyncPlan} and {@link SyncPlanAction} entities. */
+@Dao
+public interface SyncPlanDao {
+
+  /** Inserts or replaces a plan header. */
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  void insertPlan(@NonNull SyncPlan plan);
+
+  /** Inserts plan actions. */
+  @Insert
+  void insertActions(@NonNull List<SyncPlanAction> actions);
+
+  /** Returns the plan of a sync config, or null if there is none. */
+  @Query("SELECT * FROM sync_plan WHERE config_id = :configId LIMIT 1")
+  @Nullable
+  SyncPlan findPlan(@NonNull String configId);
+
+  /** Returns all actions of a plan in plan order. */
+  @Query("SELECT * FROM sync_plan_action WHERE config_id = :configId ORDER BY seq")
+  @NonNull
+  List<SyncPlanAction> findActions(@NonNull String configId);
+
+  /** Returns the actions of a plan with the given status in plan order. */
+  @Query(
+      "SELECT * FROM sync_plan_action WHERE config_id = :configId AND status = :status"
+          + " ORDER BY seq")
+  @NonNull
+  List<SyncPlanAction> findActionsByStatus(@NonNull String configId, int status);
+
+  /** Records the outcome of an action. */
+  @Query("UPDATE sync_plan_action SET status = :status, error = :error WHERE id = :id")
+  int updateStatus(long id, int status, @Nullable String error);
+
+  /** Deletes all actions of a plan. */
+  @Query("DELETE FROM sync_plan_action WHERE config_id = :configId")
+  int deleteActions(@NonNull String configId);
+
+  /** Deletes a plan header. */
+  @Query("DELETE FROM sync_plan WHERE config_id = :configId")
+  int deletePlanHeader(@NonNull String configId);
+
+  /** Replaces the plan of a sync config and all of its actions. */
+  @Transaction
+  default void replacePlan(@NonNull SyncPlan plan, @NonNull List<SyncPlanAction> actions) {
+    deleteActions(plan.configId);
+    deletePlanHeader(plan.configId);
+    insertPlan(plan);
+    insertActions(actions);
+  }
+
+  /** Deletes the plan of a sync config and all of its actions. */
+  @Transaction
+  default void deletePlan(@NonNull String configId) {
+    deleteActions(configId);
+    deletePlanHeader(configId);
+  }
+}
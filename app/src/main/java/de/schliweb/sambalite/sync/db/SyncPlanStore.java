@@ -0,0 +1,160 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import de.schliweb.sambalite.util.LogUtils;
+import java.util.List;
+
+/**
+ * High-level store for persisted sync plans. Wraps the Room DAO; like {@link SyncStateStore}, DB
+ * errors are logged and reported as "no plan" instead of failing the sync.
+ */
+public class SyncPlanStore {
+
+  private static final String TAG = "SyncPlanStore";
+
+  /** Suffix of the key a preview is stored under, next to the plan of the config itself. */
+  private static final String PREVIEW_SUFFIX = "#preview";
+  private final SyncPlanDao dao;
+
+  public SyncPlanStore(@NonNull Context context) {
+    this.dao = SyncDatabase.getInstance(context).syncPlanDao();
+  }
+
+  /** Constructor for testing with an injected DAO (allows non-Android unit/integration tests). */
+  public SyncPlanStore(@NonNull SyncPlanDao dao) {
+    this.dao = dao;
+  }
+
+  /**
+   * Returns the key a preview of a sync config is stored under. A preview gets its own plan so
+   * that it never replaces the pending actions of an interrupted sync.
+   */
+  @NonNull
+  public static String previewKey(@NonNull String configId) {
+    return configId + PREVIEW_SUFFIX;
+  }
+
+  /**
+   * Stores a new plan for a sync config, replacing any previous one. Actions are numbered in list
+   * order and stored as pending. A preview is stored with its {@link #previewKey} as config ID.
+   *
+   * @return true if the plan was stored
+   */
+  public boolean savePlan(@NonNull SyncPlan plan, @NonNull List<SyncPlanAction> actions) {
+    try {
+      int seq = 0;
+      for (SyncPlanAction a : actions) {
+        a.id = 0;
+        a.configId = plan.configId;
+        a.seq = seq++;
+        a.status = SyncPlanAction.STATUS_PENDING;
+        a.error = null;
+      }
+      dao.replacePlan(plan, actions);
+      LogUtils.i(
+          TAG,
+          "Saved sync plan for config "
+              + plan.configId
+              + ": "
+              + actions.size()
+              + " actions"
+              + (plan.dryRun ? " (preview)" : ""));
+      return true;
+    } catch (Exception e) {
+      LogUtils.e(TAG, "Failed to save sync plan for " + plan.configId + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  /** Returns the plan header of a sync config, or null if there is none. */
+  @Nullable
+  public SyncPlan getPlan(@NonNull String configId) {
+    try {
+      return dao.findPlan(configId);
+    } catch (Exception e) {
+      LogUtils.e(TAG, "Failed to get sync plan for " + configId + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /** Returns the actions of a plan that have not run yet, in plan order. */
+  @NonNull
+  public List<SyncPlanAction> getPendingActions(@NonNull String configId) {
+    try {
+      return dao.findActionsByStatus(configId, SyncPlanAction.STATUS_PENDING);
+    } catch (Exception e) {
+      LogUtils.e(TAG, "Failed to get pending actions for " + configId + ": " + e.getMessage());
+      return List.of();
+    }
+  }
+
+  /** Returns the plan of a sync config with totals, or null if there is none. */
+  @Nullable
+  public SyncPlanSummary getSummary(@NonNull String configId) {
+    try {
+      SyncPlan plan = dao.findPlan(configId);
+      if (plan == null) {
+        return null;
+      }
+      return new SyncPlanSummary(plan, dao.findActions(configId));
+    } catch (Exception e) {
+      LogUtils.e(TAG, "Failed to load sync plan for " + configId + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /** Checkpoints an action as done. */
+  public void markDone(@NonNull SyncPlanAction action) {
+    updateStatus(action, SyncPlanAction.STATUS_DONE, null);
+  }
+
+  /** Checkpoints an action as failed; it is not retried from this plan. */
+  public void markFailed(@NonNull SyncPlanAction action, @Nullable String error) {
+    updateStatus(action, SyncPlanAction.STATUS_FAILED, error);
+  }
+
+  private void updateStatus(SyncPlanAction action, int status, @Nullable String error) {
+    action.status = status;
+    action.error = error;
+    try {
+      dao.updateStatus(action.id, status, error);
+    } catch (Exception e) {
+      // The action then runs again after an interruption, which only repeats work
+      LogUtils.e(
+          TAG, "Failed to checkpoint action " + action.relativePath + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the preview of a sync config with totals, or null if there is none.
+   *
+   * @see #previewKey
+   */
+  @Nullable
+  public SyncPlanSummary getPreviewSummary(@NonNull String configId) {
+    return getSummary(previewKey(configId));
+  }
+
+  /**
+   * Deletes the plan and the preview of a sync config, e.g. after it has been executed completely.
+   */
+  public void deletePlan(@NonNull String configId) {
+    try {
+      dao.deletePlan(configId);
+      dao.deletePlan(previewKey(configId));
+    } catch (Exception e) {
+      LogUtils.e(TAG, "Failed to delete sync plan for " + configId + ": " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts and byte totals of a sync plan, for the dry-run preview and for progress reporting while
+ * the plan is executed.
+ */
+public final class SyncPlanSummary {
+
+  @Nullable public final SyncPlan plan;
+
+  /** All actions in plan order. */
+  @NonNull public final List<SyncPlanAction> actions;
+
+  public final int uploads;
+  public final int downloads;
+  public final int directories;
+  public final int trash;
+  public final long uploadBytes;
+  public final long downloadBytes;
+
+  /** Actions that have run, successfully or not, and the bytes of the transfers among them. */
+  public final int finished;
+
+  public final long finishedBytes;
+  public final int failed;
+
+  public SyncPlanSummary(@Nullable SyncPlan plan, @NonNull List<SyncPlanAction> actions) {
+    this.plan = plan;
+    this.actions = Collections.unmodifiableList(new ArrayList<>(actions));
+    int up = 0;
+    int down = 0;
+    int dirs = 0;
+    int del = 0;
+    long upBytes = 0;
+    long downBytes = 0;
+    int fin = 0;
+    long finBytes = 0;
+    int fail = 0;
+    for (SyncPlanAction a : actions) {
+      switch (a.kind) {
+        case SyncPlanAction.KIND_UPLOAD:
+          up++;
+          upBytes += a.size;
+          break;
+        case SyncPlanAction.KIND_DOWNLOAD:
+          down++;
+          downBytes += a.size;
+          break;
+        case SyncPlanAction.KIND_MKDIR_LOCAL:
+        case SyncPlanAction.KIND_MKDIR_REMOTE:
+          dirs++;
+          break;
+        case SyncPlanAction.KIND_TRASH_LOCAL:
+        case SyncPlanAction.KIND_TRASH_REMOTE:
+          del++;
+          break;
+        default:
+          break;
+      }
+      if (a.status != SyncPlanAction.STATUS_PENDING) {
+        fin++;
+        if (a.isTransfer()) {
+          finBytes += a.size;
+        }
+        if (a.status == SyncPlanAction.STATUS_FAILED) {
+          fail++;
+        }
+      }
+    }
+    this.uploads = up;
+    this.downloads = down;
+    this.directories = dirs;
+    this.trash = del;
+    this.uploadBytes = upBytes;
+    this.downloadBytes = downBytes;
+    this.finished = fin;
+    this.finishedBytes = finBytes;
+    this.failed = fail;
+  }
+
+  /** Returns the number of actions. */
+  public int getTotal() {
+    return actions.size();
+  }
+
+  /** Returns the bytes of all uploads and downloads. */
+  public long getTotalBytes() {
+    return uploadBytes + downloadBytes;
+  }
+
+  /** Returns true if the plan has nothing to do. */
+  public boolean isEmpty() {
+    return actions.isEmpty();
+  }
+}
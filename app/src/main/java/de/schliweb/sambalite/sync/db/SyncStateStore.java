@@ -13,17 +13,40 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import de.schliweb.sambalite.util.LogUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * High-level store for sync state metadata. Wraps the Room DAO and provides convenient methods for
  * saving and querying remote file state after sync operations.
+ *
+ * <p>While a snapshot of a root is open (see {@link #openSnapshot}), all rows of that root are held
+ * in memory: lookups are served from the map and changes are staged and written in batches of
+ * {@link #FLUSH_BATCH_SIZE} in one transaction each, instead of one query per file. Staged changes
+ * that are lost when the process dies only cause files to be compared again on the next sync.
  */
 public class SyncStateStore {
 
   private static final String TAG = "SyncStateStore";
+
+  /** Number of staged changes that are written together. */
+  static final int FLUSH_BATCH_SIZE = 256;
+
   private final FileSyncStateDao dao;
 
+  /** Guards the snapshot fields; transfers save their state from several threads. */
+  private final Object snapshotLock = new Object();
+
+  @Nullable private String snapshotRoot;
+  private final Map<String, FileSyncState> snapshot = new HashMap<>();
+  private final Map<String, FileSyncState> stagedUpserts = new LinkedHashMap<>();
+  private final Set<String> stagedDeletes = new LinkedHashSet<>();
+
   public SyncStateStore(@NonNull Context context) {
     this.dao = SyncDatabase.getInstance(context).fileSyncStateDao();
   }
@@ -33,6 +56,80 @@ public class SyncStateStore {
     this.dao = dao;
   }
 
+  /**
+   * Loads all rows of a root into memory and serves lookups and changes for that root from the
+   * snapshot until {@link #closeSnapshot} is called. A snapshot that is still open is closed first.
+   *
+   * @param rootUri the root URI of the sync target
+   */
+  public void openSnapshot(@NonNull String rootUri) {
+    synchronized (snapshotLock) {
+      closeSnapshot();
+      List<FileSyncState> rows;
+      try {
+        rows = dao.findByRootUri(rootUri);
+      } catch (Exception e) {
+        LogUtils.e(
+            TAG,
+            "[TIMESTAMP] Failed to load sync states for root: " + rootUri + ": " + e.getMessage());
+        return;
+      }
+      for (FileSyncState row : rows) {
+        snapshot.put(row.relativePath, row);
+      }
+      snapshotRoot = rootUri;
+      LogUtils.d(TAG, "[TIMESTAMP] Loaded " + rows.size() + " sync states for root: " + rootUri);
+    }
+  }
+
+  /** Writes all staged changes of the open snapshot. */
+  public void flush() {
+    synchronized (snapshotLock) {
+      if (snapshotRoot == null || (stagedUpserts.isEmpty() && stagedDeletes.isEmpty())) {
+        return;
+      }
+      List<FileSyncState> upserts = new ArrayList<>(stagedUpserts.values());
+      List<String> deletes = new ArrayList<>(stagedDeletes);
+      stagedUpserts.clear();
+      stagedDeletes.clear();
+      try {
+        long[] ids = dao.applyBatch(snapshotRoot, upserts, deletes);
+        // Keep the row IDs so that a later upsert of the same path replaces the row
+        for (int i = 0; i < ids.length && i < upserts.size(); i++) {
+          upserts.get(i).id = ids[i];
+        }
+        LogUtils.d(
+            TAG,
+            "[TIMESTAMP] Flushed "
+                + upserts.size()
+                + " saved and "
+                + deletes.size()
+                + " deleted sync states");
+      } catch (Exception e) {
+        LogUtils.e(
+            TAG,
+            "[TIMESTAMP] Failed to flush "
+                + (upserts.size() + deletes.size())
+                + " sync state changes: "
+                + e.getMessage());
+      }
+    }
+  }
+
+  /** Writes all staged changes and drops the snapshot; lookups query the database again. */
+  public void closeSnapshot() {
+    synchronized (snapshotLock) {
+      flush();
+      snapshotRoot = null;
+      snapshot.clear();
+    }
+  }
+
+  /** Returns true if lookups and changes for the root are served by the open snapshot. */
+  private boolean inSnapshot(String rootUri) {
+    return rootUri.equals(snapshotRoot);
+  }
+
   /**
    * Saves the remote state after a successful sync (download or upload).
    *
@@ -50,6 +147,30 @@ public class SyncStateStore {
       long remoteSize,
       long remoteLastModified,
       boolean timestampPreserved) {
+    saveRemoteState(
+        rootUri,
+        relativePath,
+        remotePath,
+        remoteSize,
+        remoteLastModified,
+        timestampPreserved,
+        null);
+  }
+
+  /**
+   * Saves the remote file state after a successful sync, together with the content checksum
+   * computed during the transfer.
+   *
+   * @param checksum the checksum as {@code "<algorithm>:<hex>"}, or null if none was computed
+   */
+  public void saveRemoteState(
+      @NonNull String rootUri,
+      @NonNull String relativePath,
+      @NonNull String remotePath,
+      long remoteSize,
+      long remoteLastModified,
+      boolean timestampPreserved,
+      @Nullable String checksum) {
     try {
       FileSyncState state = new FileSyncState();
       state.rootUri = rootUri;
@@ -59,6 +180,23 @@ public class SyncStateStore {
       state.remoteLastModified = remoteLastModified;
       state.syncedAt = System.currentTimeMillis();
       state.timestampPreserved = timestampPreserved;
+      state.checksum = checksum;
+
+      synchronized (snapshotLock) {
+        if (inSnapshot(rootUri)) {
+          FileSyncState existing = snapshot.get(relativePath);
+          if (existing != null) {
+            state.id = existing.id;
+          }
+          snapshot.put(relativePath, state);
+          stagedDeletes.remove(relativePath);
+          stagedUpserts.put(relativePath, state);
+          if (stagedUpserts.size() + stagedDeletes.size() >= FLUSH_BATCH_SIZE) {
+            flush();
+          }
+          return;
+        }
+      }
 
       // Preserve existing ID for upsert (REPLACE strategy needs matching rowid)
       FileSyncState existing = dao.findByPath(rootUri, relativePath);
@@ -93,6 +231,11 @@ public class SyncStateStore {
    */
   @Nullable
   public FileSyncState getRemoteState(@NonNull String rootUri, @NonNull String relativePath) {
+    synchronized (snapshotLock) {
+      if (inSnapshot(rootUri)) {
+        return snapshot.get(relativePath);
+      }
+    }
     try {
       return dao.findByPath(rootUri, relativePath);
     } catch (Exception e) {
@@ -110,6 +253,11 @@ public class SyncStateStore {
    */
   @NonNull
   public List<FileSyncState> getAllForRoot(@NonNull String rootUri) {
+    synchronized (snapshotLock) {
+      if (inSnapshot(rootUri)) {
+        return new ArrayList<>(snapshot.values());
+      }
+    }
     try {
       return dao.findByRootUri(rootUri);
     } catch (Exception e) {
@@ -127,6 +275,17 @@ public class SyncStateStore {
    * @param relativePath the relative path within the sync root
    */
   public void deleteState(@NonNull String rootUri, @NonNull String relativePath) {
+    synchronized (snapshotLock) {
+      if (inSnapshot(rootUri)) {
+        snapshot.remove(relativePath);
+        stagedUpserts.remove(relativePath);
+        stagedDeletes.add(relativePath);
+        if (stagedUpserts.size() + stagedDeletes.size() >= FLUSH_BATCH_SIZE) {
+          flush();
+        }
+        return;
+      }
+    }
     try {
       dao.deleteByPath(rootUri, relativePath);
     } catch (Exception e) {
@@ -141,6 +300,13 @@ public class SyncStateStore {
    * @param rootUri the root URI of the sync target
    */
   public void deleteAllForRoot(@NonNull String rootUri) {
+    synchronized (snapshotLock) {
+      if (inSnapshot(rootUri)) {
+        snapshot.clear();
+        stagedUpserts.clear();
+        stagedDeletes.clear();
+      }
+    }
     try {
       int deleted = dao.deleteByRootUri(rootUri);
       LogUtils.i(TAG, "[TIMESTAMP] Deleted " + deleted + " sync states for root: " + rootUri);
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import androidx.annotation.NonNull;
+import de.schliweb.sambalite.transfer.db.TransferBlock;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Digests the bytes of a transfer in blocks of {@link #BLOCK_SIZE} as they pass through the copy
+ * loop. A completed block is handed out by {@link #takeCommitted} only once the target has
+ * confirmed every byte of it, so the persisted digests never describe data that may be missing
+ * after a crash. On the next attempt the tail block is read back and compared against its digest
+ * before the transfer continues behind it.
+ */
+final class BlockDigester {
+
+  /** Size of a digested block (4 MB). */
+  static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
+  private final long transferId;
+  private final MessageDigest digest = newDigest();
+  private final ArrayDeque<TransferBlock> completed = new ArrayDeque<>();
+  private int blockIndex;
+  private int filled;
+
+  /**
+   * @param startOffset offset of the first byte that will pass through; must be a block boundary
+   */
+  BlockDigester(long transferId, long startOffset) {
+    if (startOffset % BLOCK_SIZE != 0) {
+      throw new IllegalArgumentException("Start offset is not a block boundary: " + startOffset);
+    }
+    this.transferId = transferId;
+    this.blockIndex = (int) (startOffset / BLOCK_SIZE);
+  }
+
+  /** Adds the next bytes of the transfer. Called from the thread that reads or writes them. */
+  synchronized void update(@NonNull byte[] b, int off, int len) {
+    while (len > 0) {
+      int n = Math.min(len, BLOCK_SIZE - filled);
+      digest.update(b, off, n);
+      filled += n;
+      off += n;
+      len -= n;
+      if (filled == BLOCK_SIZE) {
+        TransferBlock block = new TransferBlock();
+        block.transferId = transferId;
+        block.blockIndex = blockIndex++;
+        block.digest = digest.digest();
+        completed.add(block);
+        filled = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the completed blocks that lie entirely within the first {@code position} bytes and
+   * forgets them.
+   */
+  @NonNull
+  synchronized List<TransferBlock> takeCommitted(long position) {
+    List<TransferBlock> committed = new ArrayList<>();
+    while (!completed.isEmpty() && end(completed.peek()) <= position) {
+      committed.add(completed.poll());
+    }
+    return committed;
+  }
+
+  /** Returns a stream that digests every byte read from {@code in}. */
+  @NonNull
+  InputStream wrap(@NonNull InputStream in) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+          update(b, off, n);
+        }
+        return n;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        // Skipped bytes belong to the digest as well
+        byte[] buffer = new byte[(int) Math.min(n, 64 * 1024)];
+        long skipped = 0;
+        while (skipped < n) {
+          int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+          if (r < 0) {
+            break;
+          }
+          skipped += r;
+        }
+        return skipped;
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    };
+  }
+
+  /** Returns a stream that digests every byte written to {@code out}. */
+  @NonNull
+  OutputStream wrap(@NonNull OutputStream out) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        update(b, off, len);
+      }
+    };
+  }
+
+  /** Returns the offset just behind a block, where a transfer resumes. */
+  static long end(@NonNull TransferBlock block) {
+    return (block.blockIndex + 1L) * BLOCK_SIZE;
+  }
+
+  /** Returns true if the first {@code length} bytes of {@code data} are the recorded block. */
+  static boolean matches(@NonNull TransferBlock block, @NonNull byte[] data, int length) {
+    if (length != BLOCK_SIZE) {
+      return false;
+    }
+    MessageDigest md = newDigest();
+    md.update(data, 0, length);
+    return MessageDigest.isEqual(md.digest(), block.digest);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java and Android runtime is required to provide SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+}
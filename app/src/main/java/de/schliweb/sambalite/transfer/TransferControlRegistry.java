@@ -0,0 +1,158 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.room.InvalidationTracker;
+import de.schliweb.sambalite.transfer.db.PendingTransferDao;
+import de.schliweb.sambalite.transfer.db.TransferDatabase;
+import de.schliweb.sambalite.util.LogUtils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cancellation flags of the transfers that are currently running.
+ *
+ * <p>The worker registers each transfer while it runs and its copy loops read the {@link Control}
+ * flag, so a cancellation check costs a volatile read instead of a status query per chunk. The
+ * queue UI cancels through {@link #cancel(Collection)} after writing CANCELLED to the database.
+ * Status changes that do not go through this registry (another process, or a transfer deleted from
+ * the queue) are picked up by a Room invalidation observer that re-reads the status of the running
+ * transfers.
+ */
+public final class TransferControlRegistry {
+
+  private static final String TAG = "TransferControlRegistry";
+
+  private static TransferControlRegistry instance;
+
+  /** Cancellation flag of one running transfer. */
+  public static final class Control {
+    private final long transferId;
+    private volatile boolean cancelled;
+
+    Control(long transferId) {
+      this.transferId = transferId;
+    }
+
+    public long getTransferId() {
+      return transferId;
+    }
+
+    /** Returns true once the user cancelled or removed the transfer. */
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    void cancel() {
+      cancelled = true;
+    }
+  }
+
+  private final Map<Long, Control> controls = new ConcurrentHashMap<>();
+  private TransferDatabase observedDatabase;
+
+  @VisibleForTesting
+  TransferControlRegistry() {}
+
+  /** Returns the process-wide registry. */
+  public static synchronized @NonNull TransferControlRegistry getInstance() {
+    if (instance == null) {
+      instance = new TransferControlRegistry();
+    }
+    return instance;
+  }
+
+  /** Registers a transfer that is about to run and returns its flag. */
+  public @NonNull Control register(long transferId) {
+    Control control = new Control(transferId);
+    controls.put(transferId, control);
+    return control;
+  }
+
+  /** Removes the flag of a transfer that has finished running. */
+  public void unregister(@NonNull Control control) {
+    controls.remove(control.transferId, control);
+  }
+
+  /** Returns true if the running transfer was cancelled; false if it is not running. */
+  public boolean isCancelled(long transferId) {
+    Control control = controls.get(transferId);
+    return control != null && control.cancelled;
+  }
+
+  /** Flags the given transfers as cancelled if they are running. */
+  public void cancel(@NonNull Collection<Long> transferIds) {
+    for (Long id : transferIds) {
+      Control control = controls.get(id);
+      if (control != null) {
+        control.cancel();
+        LogUtils.d(TAG, "Cancelled running transfer: " + id);
+      }
+    }
+  }
+
+  /** Flags all running transfers as cancelled. */
+  public void cancelAll() {
+    for (Control control : controls.values()) {
+      control.cancel();
+    }
+  }
+
+  /**
+   * Starts re-reading the status of running transfers whenever the transfer table changes. The
+   * database must enable multi-instance invalidation for changes made by other processes.
+   */
+  public synchronized void observe(@NonNull TransferDatabase database) {
+    if (observedDatabase == database) {
+      return;
+    }
+    observedDatabase = database;
+    PendingTransferDao dao = database.pendingTransferDao();
+    database
+        .getInvalidationTracker()
+        .addObserver(
+            new InvalidationTracker.Observer("pending_transfer") {
+              @Override
+              public void onInvalidated(@NonNull Set<String> tables) {
+                refresh(dao);
+              }
+            });
+  }
+
+  /** Flags running transfers that were cancelled or deleted in the database. */
+  @VisibleForTesting
+  void refresh(@NonNull PendingTransferDao dao) {
+    if (controls.isEmpty()) {
+      return;
+    }
+    List<Long> running = new ArrayList<>(controls.keySet());
+    try {
+      Set<Long> live = new HashSet<>(dao.getNotCancelledIds(running));
+      for (Long id : running) {
+        if (!live.contains(id)) {
+          Control control = controls.get(id);
+          if (control != null && !control.cancelled) {
+            control.cancel();
+            LogUtils.d(TAG, "Transfer cancelled in database: " + id);
+          }
+        }
+      }
+    } catch (Exception e) {
+      LogUtils.w(TAG, "Could not refresh transfer states: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import androidx.annotation.NonNull;
+import de.schliweb.sambalite.transfer.db.PendingTransfer;
+import de.schliweb.sambalite.transfer.db.TransferBlock;
+import de.schliweb.sambalite.util.LogUtils;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer for the progress of running transfers.
+ *
+ * <p>Transfer threads {@link #record} their progress without touching the database. Only the
+ * latest byte count per transfer is kept, and a background thread writes all changed counts in
+ * one {@link Store#write} call per interval, together with the block digests recorded for resume.
+ * The same snapshot is passed to the {@link Listener} after each write, so the notification shows
+ * exactly what the queue UI reads from the database. State changes call {@link #flush} or {@link
+ * #finish} first, which write synchronously, so a paused, cancelled or completed transfer never
+ * loses its last progress.
+ */
+final class TransferProgressJournal implements Closeable {
+
+  private static final String TAG = "TransferProgressJournal";
+
+  /** Interval between background writes. */
+  static final long FLUSH_INTERVAL_MS = 1000;
+
+  /** Persists a batch of progress values and block digests, ideally in one transaction. */
+  @FunctionalInterface
+  interface Store {
+    void write(@NonNull Map<Long, Long> bytesById, @NonNull List<TransferBlock> blocks, long now);
+  }
+
+  /** Receives the progress of all running transfers after each write. */
+  @FunctionalInterface
+  interface Listener {
+    void onFlushed(@NonNull List<Entry> running);
+  }
+
+  /** Progress of one running transfer. */
+  static final class Entry {
+    final long transferId;
+    final String displayName;
+    final long bytesTransferred;
+    final long fileSize;
+
+    Entry(long transferId, String displayName, long bytesTransferred, long fileSize) {
+      this.transferId = transferId;
+      this.displayName = displayName;
+      this.bytesTransferred = bytesTransferred;
+      this.fileSize = fileSize;
+    }
+  }
+
+  private final Store store;
+  private final Listener listener;
+  private final Map<Long, Entry> running = new ConcurrentHashMap<>();
+  private final Map<Long, Long> unwritten = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<TransferBlock> unwrittenBlocks =
+      new ConcurrentLinkedQueue<>();
+  private ScheduledExecutorService timer;
+
+  TransferProgressJournal(@NonNull Store store, @NonNull Listener listener) {
+    this.store = store;
+    this.listener = listener;
+  }
+
+  /** Starts the background writer. */
+  synchronized void start(long intervalMs) {
+    if (timer != null) {
+      return;
+    }
+    timer =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "transfer-progress");
+              t.setDaemon(true);
+              return t;
+            });
+    timer.scheduleWithFixedDelay(this::flushQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** Records the current progress of a running transfer; written on the next flush. */
+  void record(@NonNull PendingTransfer transfer) {
+    running.put(
+        transfer.id,
+        new Entry(transfer.id, transfer.displayName, transfer.bytesTransferred, transfer.fileSize));
+    unwritten.put(transfer.id, transfer.bytesTransferred);
+  }
+
+  /** Records digests of blocks the target has confirmed; written with the next flush. */
+  void recordBlocks(@NonNull List<TransferBlock> blocks) {
+    unwrittenBlocks.addAll(blocks);
+  }
+
+  /** Writes all recorded progress now. Called before a transfer changes its status. */
+  synchronized void flush() {
+    if (unwritten.isEmpty() && unwrittenBlocks.isEmpty()) {
+      return;
+    }
+    Map<Long, Long> batch = new HashMap<>();
+    for (Long id : new ArrayList<>(unwritten.keySet())) {
+      Long bytes = unwritten.remove(id);
+      if (bytes != null) {
+        batch.put(id, bytes);
+      }
+    }
+    List<TransferBlock> blocks = new ArrayList<>();
+    TransferBlock block;
+    while ((block = unwrittenBlocks.poll()) != null) {
+      blocks.add(block);
+    }
+    if (batch.isEmpty() && blocks.isEmpty()) {
+      return;
+    }
+    try {
+      store.write(batch, blocks, System.currentTimeMillis());
+    } catch (RuntimeException e) {
+      // Keep the values for the next attempt unless newer ones were recorded meanwhile
+      for (Map.Entry<Long, Long> pending : batch.entrySet()) {
+        unwritten.putIfAbsent(pending.getKey(), pending.getValue());
+      }
+      unwrittenBlocks.addAll(blocks);
+      throw e;
+    }
+    listener.onFlushed(snapshot());
+  }
+
+  /**
+   * Records the final progress of a transfer, writes it together with all other recorded progress
+   * and drops the transfer from the snapshot.
+   */
+  void finish(@NonNull PendingTransfer transfer) {
+    record(transfer);
+    try {
+      flush();
+    } finally {
+      running.remove(transfer.id);
+    }
+  }
+
+  /** Returns the last recorded progress of all running transfers. */
+  @NonNull
+  List<Entry> snapshot() {
+    return new ArrayList<>(running.values());
+  }
+
+  /** Stops the background writer and writes what is left. */
+  @Override
+  public void close() {
+    ScheduledExecutorService t;
+    synchronized (this) {
+      t = timer;
+      timer = null;
+    }
+    if (t != null) {
+      t.shutdown();
+      try {
+        t.awaitTermination(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flushQuietly();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      LogUtils.w(TAG, "Could not write transfer progress: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import androidx.annotation.NonNull;
+import de.schliweb.sambalite.transfer.db.PendingTransfer;
+import de.schliweb.sambalite.util.LogUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs queued transfers concurrently in per-connection lanes.
+ *
+ * <p>A lane owns the SMB session of one connection; up to {@link Limits#perConnection} transfers of
+ * that connection run on it at once. Up to {@link Limits#maxConnections} lanes are open at the same
+ * time and at most {@link Limits#maxTotal} transfers run overall. Free slots are handed out round
+ * robin, one transfer per lane at a time, so a connection with a long queue cannot starve the
+ * others.
+ *
+ * <p>All queue decisions happen on the calling thread: it checks free disk space once per round
+ * for all lanes, claims transfers (PENDING → ACTIVE) in queue order and submits them. The final
+ * status of a transfer is written by the task that ran it, so the transitions of every transfer
+ * stay in order. The queue is polled again whenever a transfer finishes and every {@link
+ * #POLL_INTERVAL_MS}, which picks up transfers enqueued while the scheduler runs. Every transfer is
+ * attempted at most once per run; a lane whose session broke is closed and its connection is not
+ * served again in this run.
+ *
+ * <p>Consecutive transfers that the host allows to batch (e.g. small uploads into one directory)
+ * are claimed together, up to {@link #MAX_BATCH}, and run one after another in a single slot. This
+ * keeps the queue round trips per file low when thousands of tiny files are queued; the transfers
+ * of a batch that could not be started are released back to the queue.
+ *
+ * @param <L> the lane type, i.e. the shared session of a connection
+ */
+final class TransferScheduler<L> {
+
+  private static final String TAG = "TransferScheduler";
+
+  /** Longest wait for a finished transfer before the queue is polled for new work. */
+  static final long POLL_INTERVAL_MS = 500;
+
+  /** Largest number of transfers run one after another in a single slot. */
+  static final int MAX_BATCH = 32;
+
+  /** Concurrency caps of the scheduler. */
+  static final class Limits {
+    final int maxConnections;
+    final int perConnection;
+    final int maxTotal;
+
+    Limits(int maxConnections, int perConnection, int maxTotal) {
+      this.maxConnections = Math.max(1, maxConnections);
+      this.perConnection = Math.max(1, perConnection);
+      this.maxTotal = Math.max(1, maxTotal);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return maxConnections + " connection(s) x " + perConnection + ", max " + maxTotal;
+    }
+  }
+
+  /** Queue access and transfer execution, implemented by the worker. */
+  interface Host<L> {
+    /** Connections that have transfers which may be started in this run. */
+    @NonNull
+    List<String> connectionsWithWork();
+
+    /** Up to {@code limit} transfers of {@code connectionId} to start next, in queue order. */
+    @NonNull
+    List<PendingTransfer> nextTransfers(@NonNull String connectionId, int limit);
+
+    /** Marks the transfer ACTIVE; returns false if its status changed meanwhile (cancelled). */
+    boolean claim(@NonNull PendingTransfer transfer);
+
+    /** Returns a claimed transfer that was not started to the queue. */
+    void release(@NonNull PendingTransfer transfer);
+
+    /** Returns true if {@code next} may run right after {@code first} in the same slot. */
+    boolean canBatch(@NonNull PendingTransfer first, @NonNull PendingTransfer next);
+
+    /** Opens the shared session of a connection. */
+    @NonNull
+    L openLane(@NonNull String connectionId) throws Exception;
+
+    /** Called when a lane could not be opened; the connection is skipped for this run. */
+    void onLaneFailed(@NonNull String connectionId, @NonNull Exception error);
+
+    /** Runs one claimed transfer and records its final status; returns true on success. */
+    boolean runTransfer(@NonNull L lane, @NonNull PendingTransfer transfer);
+
+    /** Returns false if the lane's session is broken and must not be used again. */
+    boolean isLaneHealthy(@NonNull L lane);
+
+    /** Releases a lane; {@code broken} if its session must not be reused. */
+    void closeLane(@NonNull L lane, boolean broken);
+
+    /** Returns true if there is enough free disk space to start more transfers. */
+    boolean hasDiskSpace();
+
+    /** Returns true if the run must stop; running transfers are expected to pause themselves. */
+    boolean isStopped();
+  }
+
+  /** Outcome of a run. */
+  static final class Result {
+    int succeeded;
+    int failed;
+    boolean stopped;
+    boolean diskFull;
+
+    boolean anyFailure() {
+      return failed > 0;
+    }
+  }
+
+  private final class Lane {
+    final String connectionId;
+    final L handle;
+    int running;
+    boolean exhausted;
+    boolean broken;
+
+    Lane(String connectionId, L handle) {
+      this.connectionId = connectionId;
+      this.handle = handle;
+    }
+  }
+
+  /** Outcome of one batch. */
+  private static final class Finished {
+    int succeeded;
+    int failed;
+  }
+
+  /** Transfers read for a lane in one round, consumed in queue order. */
+  private static final class Candidates {
+    final List<PendingTransfer> transfers;
+    int next;
+
+    Candidates(List<PendingTransfer> transfers) {
+      this.transfers = transfers;
+    }
+
+    boolean hasNext() {
+      return next < transfers.size();
+    }
+
+    PendingTransfer peek() {
+      return transfers.get(next);
+    }
+  }
+
+  private final Host<L> host;
+  private final Limits limits;
+  private final long pollIntervalMs;
+  private final Map<Future<Finished>, Lane> inFlight = new HashMap<>();
+  private boolean interrupted;
+
+  TransferScheduler(@NonNull Host<L> host, @NonNull Limits limits) {
+    this(host, limits, POLL_INTERVAL_MS);
+  }
+
+  TransferScheduler(@NonNull Host<L> host, @NonNull Limits limits, long pollIntervalMs) {
+    this.host = host;
+    this.limits = limits;
+    this.pollIntervalMs = pollIntervalMs;
+  }
+
+  /** Runs transfers until the queue is drained, the host stops the run or the disk is full. */
+  @NonNull
+  Result run() {
+    Result result = new Result();
+    Map<String, Lane> lanes = new LinkedHashMap<>();
+    Set<String> skipped = new HashSet<>();
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            limits.maxTotal,
+            r -> {
+              Thread t = new Thread(r, "transfer-" + threadCount.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+    CompletionService<Finished> completions = new ExecutorCompletionService<>(executor);
+    int running = 0;
+    LogUtils.i(TAG, "Starting transfer scheduler: " + limits);
+    try {
+      while (true) {
+        if (host.isStopped() || interrupted) {
+          result.stopped = true;
+          break;
+        }
+        if (!host.hasDiskSpace()) {
+          LogUtils.e(TAG, "Insufficient disk space \u2013 not starting further transfers");
+          result.diskFull = true;
+          break;
+        }
+        boolean waiting = openLanes(lanes, skipped, running);
+        running += startTransfers(lanes, completions, running);
+        closeIdleLanes(lanes);
+
+        if (running == 0) {
+          if (!waiting && allExhausted(lanes)) {
+            break; // nothing running and nothing left to start
+          }
+          continue;
+        }
+
+        Future<Finished> done = poll(completions, pollIntervalMs);
+        while (done != null) {
+          running--;
+          handle(done, skipped, result);
+          done = completions.poll();
+        }
+      }
+
+      // Let running transfers finish (or pause themselves when the run was stopped)
+      while (running > 0) {
+        Future<Finished> done = poll(completions, pollIntervalMs);
+        if (done != null) {
+          running--;
+          handle(done, skipped, result);
+        }
+      }
+    } finally {
+      executor.shutdown();
+      for (Lane lane : lanes.values()) {
+        host.closeLane(lane.handle, lane.broken);
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    LogUtils.i(
+        TAG,
+        "Transfer scheduler finished: "
+            + result.succeeded
+            + " succeeded, "
+            + result.failed
+            + " failed"
+            + (result.stopped ? ", stopped" : "")
+            + (result.diskFull ? ", disk full" : ""));
+    return result;
+  }
+
+  /**
+   * Opens lanes for connections with work while fewer than maxConnections are open.
+   *
+   * @return true if a connection with work is still waiting for a lane
+   */
+  private boolean openLanes(Map<String, Lane> lanes, Set<String> skipped, int running) {
+    boolean waiting = false;
+    for (String connectionId : host.connectionsWithWork()) {
+      if (lanes.containsKey(connectionId) || skipped.contains(connectionId)) {
+        continue;
+      }
+      if (lanes.size() >= limits.maxConnections || running >= limits.maxTotal) {
+        waiting = true;
+        continue;
+      }
+      try {
+        lanes.put(connectionId, new Lane(connectionId, host.openLane(connectionId)));
+        LogUtils.d(TAG, "Opened lane for connection: " + connectionId);
+      } catch (Exception e) {
+        LogUtils.e(TAG, "Cannot open lane for " + connectionId + ": " + e.getMessage());
+        skipped.add(connectionId);
+        host.onLaneFailed(connectionId, e);
+      }
+    }
+    return waiting;
+  }
+
+  /**
+   * Claims and submits transfers round robin over the lanes until every lane is full, has nothing
+   * left to start, or the global cap is reached.
+   *
+   * @return the number of slots taken
+   */
+  private int startTransfers(
+      Map<String, Lane> lanes, CompletionService<Finished> completions, int running) {
+    Map<Lane, Candidates> candidates = new LinkedHashMap<>();
+    for (Lane lane : lanes.values()) {
+      lane.exhausted = false;
+      int free = limits.perConnection - lane.running;
+      if (lane.broken || free <= 0) {
+        continue;
+      }
+      // Enough for one transfer per free slot, or for one full batch
+      List<PendingTransfer> next = host.nextTransfers(lane.connectionId, free + MAX_BATCH - 1);
+      if (next.isEmpty()) {
+        lane.exhausted = lane.running == 0;
+      } else {
+        candidates.put(lane, new Candidates(next));
+      }
+    }
+
+    int started = 0;
+    boolean progress = true;
+    while (progress && running + started < limits.maxTotal) {
+      progress = false;
+      for (Map.Entry<Lane, Candidates> entry : candidates.entrySet()) {
+        if (running + started >= limits.maxTotal) {
+          break;
+        }
+        Lane lane = entry.getKey();
+        if (lane.running >= limits.perConnection) {
+          continue;
+        }
+        List<PendingTransfer> batch = claimBatch(entry.getValue());
+        if (batch.isEmpty()) {
+          continue;
+        }
+        lane.running++;
+        started++;
+        progress = true;
+        inFlight.put(completions.submit(() -> runBatch(lane, batch)), lane);
+      }
+    }
+    return started;
+  }
+
+  /** Claims the next transfer and the following ones the host allows to batch with it. */
+  private List<PendingTransfer> claimBatch(Candidates candidates) {
+    List<PendingTransfer> batch = new ArrayList<>();
+    while (candidates.hasNext()) {
+      PendingTransfer transfer = candidates.peek();
+      if (!batch.isEmpty()
+          && (batch.size() >= MAX_BATCH || !host.canBatch(batch.get(0), transfer))) {
+        break;
+      }
+      candidates.next++;
+      if (host.claim(transfer)) {
+        batch.add(transfer);
+      } // else: cancelled since it was read
+    }
+    return batch;
+  }
+
+  /** Closes lanes that have nothing left to run so their connection slot can be reused. */
+  private void closeIdleLanes(Map<String, Lane> lanes) {
+    if (lanes.size() < limits.maxConnections) {
+      return; // keep sessions for work enqueued later in this run
+    }
+    for (Iterator<Lane> it = lanes.values().iterator(); it.hasNext(); ) {
+      Lane lane = it.next();
+      if (lane.running == 0 && (lane.exhausted || lane.broken)) {
+        it.remove();
+        host.closeLane(lane.handle, lane.broken);
+        LogUtils.d(TAG, "Closed lane for connection: " + lane.connectionId);
+      }
+    }
+  }
+
+  /**
+   * Runs the transfers of a batch one after another. After a failure on a broken session, or when
+   * the run is stopped, the remaining transfers are released unstarted.
+   */
+  private Finished runBatch(Lane lane, List<PendingTransfer> batch) {
+    Finished finished = new Finished();
+    for (int i = 0; i < batch.size(); i++) {
+      boolean abort =
+          host.isStopped() || (finished.failed > 0 && !host.isLaneHealthy(lane.handle));
+      if (abort) {
+        for (int j = i; j < batch.size(); j++) {
+          host.release(batch.get(j));
+        }
+        break;
+      }
+      if (runSafely(lane, batch.get(i))) {
+        finished.succeeded++;
+      } else {
+        finished.failed++;
+      }
+    }
+    return finished;
+  }
+
+  private boolean runSafely(Lane lane, PendingTransfer transfer) {
+    try {
+      return host.runTransfer(lane.handle, transfer);
+    } catch (RuntimeException e) {
+      LogUtils.e(TAG, "Transfer crashed: " + transfer.displayName + " - " + e.getMessage());
+      return false;
+    }
+  }
+
+  private void handle(Future<Finished> done, Set<String> skipped, Result result) {
+    Lane lane = inFlight.remove(done);
+    lane.running--;
+    Finished finished = await(done);
+    if (finished == null) {
+      result.failed++;
+    } else {
+      result.succeeded += finished.succeeded;
+      result.failed += finished.failed;
+    }
+    boolean failed = finished == null || finished.failed > 0;
+    if (failed && !lane.broken && !host.isLaneHealthy(lane.handle)) {
+      LogUtils.w(TAG, "Session broken, no further transfers for connection: " + lane.connectionId);
+      lane.broken = true;
+      skipped.add(lane.connectionId);
+    }
+  }
+
+  private boolean allExhausted(Map<String, Lane> lanes) {
+    for (Lane lane : lanes.values()) {
+      if (!lane.exhausted && !lane.broken) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Waits for the next finished transfer. An interrupt stops the run; the interrupt status is
+   * restored once running transfers have finished.
+   */
+  private Future<Finished> poll(CompletionService<Finished> completions, long timeoutMs) {
+    try {
+      return completions.poll(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      interrupted = true;
+      return null;
+    }
+  }
+
+  /** Returns the outcome of a finished task, or null if it could not be obtained. */
+  private Finished await(Future<Finished> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      interrupted = true;
+      return null;
+    } catch (Exception e) {
+      LogUtils.e(TAG, "Transfer task failed: " + e.getMessage());
+      return null;
+    }
+  }
+}
@@ -19,6 +19,7 @@ import android.content.pm.ServiceInfo;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.provider.OpenableColumns;
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
@@ -29,40 +30,52 @@ import androidx.work.WorkerParameters;
 import com.hierynomus.msdtyp.AccessMask;
 import com.hierynomus.msfscc.FileAttributes;
 import com.hierynomus.msfscc.fileinformation.FileBasicInformation;
+import com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation;
 import com.hierynomus.mssmb2.SMB2CreateDisposition;
 import com.hierynomus.mssmb2.SMB2ShareAccess;
-import com.hierynomus.smbj.SMBClient;
-import com.hierynomus.smbj.SmbConfig;
-import com.hierynomus.smbj.auth.AuthenticationContext;
-import com.hierynomus.smbj.connection.Connection;
-import com.hierynomus.smbj.session.Session;
+import com.hierynomus.mssmb2.SMBApiException;
+import com.hierynomus.smbj.share.Directory;
 import com.hierynomus.smbj.share.DiskShare;
 import com.hierynomus.smbj.share.File;
-import com.hierynomus.smbj.transport.tcp.async.AsyncDirectTcpTransportFactory;
 import de.schliweb.sambalite.R;
 import de.schliweb.sambalite.data.model.SmbConnection;
 import de.schliweb.sambalite.data.repository.ConnectionRepositoryImpl;
+import de.schliweb.sambalite.data.smb.BandwidthGovernor;
+import de.schliweb.sambalite.data.smb.BufferPool;
+import de.schliweb.sambalite.data.smb.ContentChecksum;
+import de.schliweb.sambalite.data.smb.PipelinedDownloader;
+import de.schliweb.sambalite.data.smb.PipelinedUploader;
+import de.schliweb.sambalite.data.smb.SmallFileUploader;
+import de.schliweb.sambalite.data.smb.SmbSessionPool;
+import de.schliweb.sambalite.transfer.db.DirectoryWalkDao;
+import de.schliweb.sambalite.transfer.db.DirectoryWalkEntry;
 import de.schliweb.sambalite.transfer.db.PendingTransfer;
 import de.schliweb.sambalite.transfer.db.PendingTransferDao;
+import de.schliweb.sambalite.transfer.db.TransferBlock;
+import de.schliweb.sambalite.transfer.db.TransferBlockDao;
 import de.schliweb.sambalite.transfer.db.TransferDatabase;
 import de.schliweb.sambalite.ui.operations.TransferActionLog;
 import de.schliweb.sambalite.ui.utils.PreferenceUtils;
-import de.schliweb.sambalite.util.EnhancedFileUtils;
+import de.schliweb.sambalite.util.DiskSpaceAccountant;
 import de.schliweb.sambalite.util.LogUtils;
+import de.schliweb.sambalite.util.SafTreeEnumerator;
 import de.schliweb.sambalite.util.TimestampUtils;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -78,43 +91,8 @@ public class TransferWorker extends Worker {
   private static final String TAG = "TransferWorker";
   private static final int BUFFER_SIZE = 1024 * 1024;
 
-  /**
-   * SMB read/write/transact buffer size (8 MB). Modern servers negotiate maxReadSize/maxWriteSize
-   * of 8 MB (SMB 3.x); requesting the maximum reduces round-trips and speeds up large transfers.
-   * SMBJ caps the effective value at the server-negotiated maximum.
-   */
-  private static final int TRANSFER_BUFFER_SIZE = 8 * 1024 * 1024;
-
-  private static final long PROGRESS_SAVE_INTERVAL = 2 * 1024 * 1024;
-
-  /**
-   * Files at or above this size are downloaded with multiple concurrently outstanding SMB READ
-   * requests (pipelined). Smaller files use the simple streamed path.
-   */
-  private static final long PARALLEL_DOWNLOAD_THRESHOLD = 16L * 1024 * 1024;
-
-  /**
-   * Chunk size for parallel downloads. Each chunk is fetched with a single SMB READ request (must
-   * stay at or below the negotiated maxReadSize, typically 8 MB on SMB 3.x servers).
-   */
-  private static final int PARALLEL_CHUNK_SIZE = 4 * 1024 * 1024;
-
-  /**
-   * Number of concurrently outstanding SMB READ requests during parallel downloads. The SMB
-   * connection is multiplexed, so multiple requests are pipelined over the same TCP connection,
-   * hiding network round-trip latency.
-   */
-  private static final int PARALLEL_READERS = 6;
-
-  /**
-   * Maximum number of chunk writes that may be queued behind the dedicated writer thread during
-   * parallel downloads. Decouples slow SAF/disk writes from the SMB read pipeline while keeping
-   * memory usage bounded (PARALLEL_WRITE_QUEUE * PARALLEL_CHUNK_SIZE additional bytes at most).
-   */
-  private static final int PARALLEL_WRITE_QUEUE = 2;
-
-  /** Interval between disk space checks during downloads (10 MB). */
-  private static final long DISK_CHECK_INTERVAL = 10 * 1024 * 1024;
+  /** Number of files a directory walk enqueues per insert. */
+  private static final int WALK_INSERT_CHUNK = 500;
 
   private static final String CHANNEL_ID = "TRANSFER_QUEUE";
   private static final int NOTIFICATION_ID = 2002;
@@ -133,10 +111,17 @@ public class TransferWorker extends Worker {
   private NotificationManager notificationManager;
   private long lastNotificationUpdateMs;
   private final TransferActionLog transferActionLog;
+  private final SafTreeEnumerator localTree;
+  private final TransferControlRegistry controls = TransferControlRegistry.getInstance();
+  private TransferProgressJournal progress;
+  private TransferBlockDao blockDao;
+  private ContentChecksum.Algorithm checksumAlgorithm;
+  private boolean verifyUploads;
 
   public TransferWorker(@NonNull Context context, @NonNull WorkerParameters params) {
     super(context, params);
     this.transferActionLog = new TransferActionLog(context.getApplicationContext());
+    this.localTree = new SafTreeEnumerator(context);
   }
 
   @NonNull
@@ -177,7 +162,7 @@ public class TransferWorker extends Worker {
         .build();
   }
 
-  private void updateNotification(String title, String content) {
+  private synchronized void updateNotification(String title, String content) {
     long now = System.currentTimeMillis();
     if (now - lastNotificationUpdateMs < NOTIFICATION_MIN_INTERVAL_MS) {
       return; // Rate-limit to avoid Android shedding notifications
@@ -209,13 +194,15 @@ public class TransferWorker extends Worker {
     }
 
     // Abort early if disk is (nearly) full to avoid filling up the device
+    DiskSpaceAccountant.getInstance().refresh();
     if (!hasEnoughDiskSpace()) {
       LogUtils.e(TAG, "Insufficient disk space \u2013 aborting transfer queue");
       return Result.failure();
     }
 
-    PendingTransferDao dao =
-        TransferDatabase.getInstance(getApplicationContext()).pendingTransferDao();
+    TransferDatabase database = TransferDatabase.getInstance(getApplicationContext());
+    PendingTransferDao dao = database.pendingTransferDao();
+    controls.observe(database);
 
     // Crash recovery: reset any ACTIVE transfers back to PENDING
     int reset = dao.resetActiveToRetry(System.currentTimeMillis());
@@ -223,79 +210,57 @@ public class TransferWorker extends Worker {
       LogUtils.i(TAG, "Crash recovery: reset " + reset + " ACTIVE transfers to PENDING");
     }
 
-    ConnectionRepositoryImpl connectionRepository =
-        new ConnectionRepositoryImpl(getApplicationContext());
-
-    boolean anyFailure = false;
-
-    // Loop: process all pending transfers, then re-check for newly added ones.
-    // This is needed because we use KEEP policy — the worker is NOT replaced when
-    // new transfers are enqueued while it's already running.
-    // Track connections that failed with a connectivity error so we don't
-    // tight-loop retrying them within the same worker run.
-    Set<String> failedConnectionIds = new HashSet<>();
-
-    while (true) {
-      if (isStopped()) {
-        LogUtils.i(TAG, "Worker stopped, will resume on next run");
-        return Result.retry();
-      }
-
-      // Group pending work by connection for Connection-Reuse
-      Map<String, SmbConnection> connectionCache = new HashMap<>();
-      List<String> connectionIds = dao.getConnectionsWithPendingWork();
-
-      // Remove connections that already failed with a connectivity error
-      // in this worker run — they will be retried on the next WorkManager run.
-      connectionIds.removeAll(failedConnectionIds);
-
-      if (connectionIds.isEmpty()) {
-        break; // No more work — exit loop
-      }
-
-      // Pre-load all needed connections
-      for (SmbConnection conn : connectionRepository.getAllConnections()) {
-        connectionCache.put(conn.getId(), conn);
-      }
-
-      for (String connectionId : connectionIds) {
-        if (isStopped()) {
-          LogUtils.i(TAG, "Worker stopped, will resume on next run");
-          return Result.retry();
-        }
-
-        // Stop processing further connections when disk is full
-        if (!hasEnoughDiskSpace()) {
-          LogUtils.e(TAG, "Insufficient disk space \u2013 stopping transfer queue");
-          cleanup(dao);
-          return Result.failure();
-        }
-
-        SmbConnection connection = connectionCache.get(connectionId);
-        if (connection == null) {
-          LogUtils.e(TAG, "Connection not found: " + connectionId);
-          List<PendingTransfer> orphaned = dao.getPendingForConnection(connectionId);
-          for (PendingTransfer t : orphaned) {
-            dao.markFailed(
-                t.id, "Connection not found: " + connectionId, System.currentTimeMillis());
-          }
-          anyFailure = true;
-          continue;
-        }
+    // Integrity mode: checksums are computed inline; uploads are optionally read back
+    checksumAlgorithm =
+        ContentChecksum.Algorithm.parse(
+            PreferenceUtils.getTransferChecksum(getApplicationContext()));
+    verifyUploads =
+        checksumAlgorithm != null && PreferenceUtils.getVerifyUploads(getApplicationContext());
+
+    // Transfers that already failed in this run are not retried before the next run
+    long runStart = System.currentTimeMillis();
+    TransferScheduler.Limits limits =
+        new TransferScheduler.Limits(
+            PreferenceUtils.getTransferMaxConnections(getApplicationContext()),
+            PreferenceUtils.getTransferPerConnection(getApplicationContext()),
+            PreferenceUtils.getTransferMaxTotal(getApplicationContext()));
+    // Progress and block digests of all concurrent transfers are written in one transaction per
+    // interval
+    blockDao = database.transferBlockDao();
+    progress =
+        new TransferProgressJournal(
+            (bytesById, blocks, now) ->
+                database.runInTransaction(
+                    () -> {
+                      for (Map.Entry<Long, Long> e : bytesById.entrySet()) {
+                        dao.updateProgress(e.getKey(), e.getValue(), now);
+                      }
+                      if (!blocks.isEmpty()) {
+                        blockDao.insertAll(blocks);
+                      }
+                    }),
+            this::updateProgressNotification);
+    progress.start(TransferProgressJournal.FLUSH_INTERVAL_MS);
+    TransferScheduler.Result outcome;
+    try {
+      outcome = new TransferScheduler<>(new QueueHost(dao, runStart), limits).run();
+    } finally {
+      progress.close();
+    }
 
-        boolean batchOk = processConnectionBatch(dao, connection);
-        if (!batchOk) {
-          anyFailure = true;
-          // Remember this connection so we don't retry it in the same
-          // worker run — avoids tight-looping on network errors.
-          failedConnectionIds.add(connectionId);
-        }
-      }
+    if (outcome.stopped) {
+      LogUtils.i(TAG, "Worker stopped, will resume on next run");
+      return Result.retry();
     }
 
     cleanup(dao);
 
-    if (anyFailure) {
+    if (outcome.diskFull) {
+      LogUtils.e(TAG, "Insufficient disk space \u2013 stopping transfer queue");
+      return Result.failure();
+    }
+
+    if (outcome.anyFailure()) {
       if (!hasEnoughDiskSpace()) {
         LogUtils.e(TAG, "Disk full after failures \u2013 returning failure instead of retry");
         return Result.failure();
@@ -308,26 +273,91 @@ public class TransferWorker extends Worker {
     return Result.success();
   }
 
+  /** Shared SMB session of one connection, used by all of its concurrent transfers. */
+  private static final class ConnectionLane {
+    final SmbConnection connection;
+    final SmbSessionPool.Lease lease;
+
+    /** Remote directories known to exist, so each is checked or created once per lane. */
+    final Set<String> directories = ConcurrentHashMap.newKeySet();
+
+    ConnectionLane(SmbConnection connection, SmbSessionPool.Lease lease) {
+      this.connection = connection;
+      this.lease = lease;
+    }
+  }
+
   /**
-   * Processes all pending transfers for a single connection using one shared SMB session.
-   *
-   * @return true if all transfers succeeded, false if any failed
+   * Connects the {@link TransferScheduler} to the queue in Room and to the SMB session pool. The
+   * queue is re-read on every round because the worker is NOT replaced when new transfers are
+   * enqueued while it's already running (KEEP policy).
    */
-  private boolean processConnectionBatch(PendingTransferDao dao, SmbConnection connection) {
-    List<PendingTransfer> transfers = dao.getPendingForConnection(connection.getId());
-    if (transfers.isEmpty()) return true;
+  private final class QueueHost implements TransferScheduler.Host<ConnectionLane> {
+    private final PendingTransferDao dao;
+    private final long runStart;
+    private final ConnectionRepositoryImpl connectionRepository;
+
+    QueueHost(PendingTransferDao dao, long runStart) {
+      this.dao = dao;
+      this.runStart = runStart;
+      this.connectionRepository = new ConnectionRepositoryImpl(getApplicationContext());
+    }
 
-    LogUtils.i(
-        TAG, "Processing " + transfers.size() + " transfers for connection: " + connection.getId());
+    @NonNull
+    @Override
+    public List<String> connectionsWithWork() {
+      return dao.getConnectionsWithStartableWork(runStart);
+    }
 
-    boolean allSuccess = true;
+    @NonNull
+    @Override
+    public List<PendingTransfer> nextTransfers(@NonNull String connectionId, int limit) {
+      return dao.getStartableForConnection(
+          connectionId, runStart, System.currentTimeMillis(), limit);
+    }
 
-    try (SMBClient client = createSmbClient(connection);
-        Connection conn = client.connect(connection.getServer())) {
+    @Override
+    public boolean claim(@NonNull PendingTransfer transfer) {
+      if (dao.claim(transfer.id, System.currentTimeMillis()) == 0) {
+        return false;
+      }
+      transfer.status = "ACTIVE";
+      return true;
+    }
+
+    @Override
+    public void release(@NonNull PendingTransfer transfer) {
+      dao.updateStatusIfActive(transfer.id, "PENDING", System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean canBatch(@NonNull PendingTransfer first, @NonNull PendingTransfer next) {
+      // Small uploads into the same directory run back to back on one slot
+      return isSmallUpload(first)
+          && isSmallUpload(next)
+          && getParentPath(first.remotePath).equals(getParentPath(next.remotePath));
+    }
+
+    @NonNull
+    @Override
+    public ConnectionLane openLane(@NonNull String connectionId) throws Exception {
+      SmbConnection connection = null;
+      for (SmbConnection conn : connectionRepository.getAllConnections()) {
+        if (connectionId.equals(conn.getId())) {
+          connection = conn;
+          break;
+        }
+      }
+      if (connection == null) {
+        throw new IOException("Connection not found: " + connectionId);
+      }
+
+      SmbSessionPool.Lease lease = SmbSessionPool.getInstance().acquire(connection);
 
       // Log negotiated SMB protocol details
       try {
-        com.hierynomus.smbj.connection.NegotiatedProtocol negotiated = conn.getNegotiatedProtocol();
+        com.hierynomus.smbj.connection.NegotiatedProtocol negotiated =
+            lease.getConnection().getNegotiatedProtocol();
         LogUtils.i(
             TAG,
             "SMB negotiated: dialect="
@@ -342,84 +372,79 @@ public class TransferWorker extends Worker {
         LogUtils.w(TAG, "Could not log SMB negotiated protocol: " + e.getMessage());
       }
 
-      AuthenticationContext authContext = createAuthContext(connection);
-      try (Session session = conn.authenticate(authContext)) {
-        String shareName = getShareName(connection.getShare());
-        LogUtils.i(
-            TAG,
-            "SMB connection: server="
-                + connection.getServer()
-                + ", share="
-                + connection.getShare()
-                + ", shareName="
-                + shareName
-                + ", user="
-                + connection.getUsername());
-        try (DiskShare share = (DiskShare) session.connectShare(shareName)) {
-
-          for (PendingTransfer transfer : transfers) {
-            if (isStopped()) {
-              LogUtils.i(TAG, "Worker stopped during batch processing");
-              return false;
-            }
-
-            // Check disk space before each transfer to avoid wasting bandwidth
-            if (!hasEnoughDiskSpace()) {
-              LogUtils.e(
-                  TAG,
-                  "Insufficient disk space \u2013 aborting remaining transfers for connection: "
-                      + connection.getId());
-              break;
-            }
+      LogUtils.i(
+          TAG,
+          "SMB connection: server="
+              + connection.getServer()
+              + ", share="
+              + connection.getShare()
+              + ", user="
+              + connection.getUsername());
+      return new ConnectionLane(connection, lease);
+    }
 
-            boolean success = processTransfer(dao, share, transfer);
-            if (!success) {
-              allSuccess = false;
-              // If the share/connection is broken, stop processing this batch
-              // so remaining transfers get a fresh connection on retry.
-              if (!share.isConnected()) {
-                LogUtils.w(
-                    TAG,
-                    "DiskShare disconnected, aborting batch for connection: " + connection.getId());
-                break;
-              }
-              // If disk is full, stop the entire batch immediately
-              if (!hasEnoughDiskSpace()) {
-                LogUtils.e(
-                    TAG,
-                    "Disk full after failed transfer \u2013 aborting batch for connection: "
-                        + connection.getId());
-                break;
-              }
-            }
-          }
-        }
-      }
-    } catch (Exception e) {
-      LogUtils.e(TAG, "Connection error for " + connection.getId() + ": " + e.getMessage());
+    @Override
+    public void onLaneFailed(@NonNull String connectionId, @NonNull Exception error) {
       try {
-        for (PendingTransfer t : transfers) {
-          if ("ACTIVE".equals(t.status) || "PENDING".equals(t.status)) {
-            dao.markFailed(t.id, "Connection error: " + e.getMessage(), System.currentTimeMillis());
-          }
+        for (PendingTransfer t : dao.getPendingForConnection(connectionId)) {
+          dao.markFailed(
+              t.id, "Connection error: " + error.getMessage(), System.currentTimeMillis());
         }
       } catch (Exception dbEx) {
         LogUtils.e(TAG, "Could not update transfer status (disk/DB full?): " + dbEx.getMessage());
       }
-      return false;
     }
 
-    return allSuccess;
+    @Override
+    public boolean runTransfer(@NonNull ConnectionLane lane, @NonNull PendingTransfer transfer) {
+      TransferControlRegistry.Control control = controls.register(transfer.id);
+      try {
+        // A cancellation between claim and registration only reached the database
+        String status = dao.getStatus(transfer.id);
+        if (status == null || "CANCELLED".equals(status)) {
+          controls.cancel(Collections.singletonList(transfer.id));
+        }
+        return processTransfer(dao, lane, transfer);
+      } finally {
+        controls.unregister(control);
+      }
+    }
+
+    @Override
+    public boolean isLaneHealthy(@NonNull ConnectionLane lane) {
+      // A broken share means the remaining transfers need a fresh connection on retry
+      return lane.lease.getShare().isConnected();
+    }
+
+    @Override
+    public void closeLane(@NonNull ConnectionLane lane, boolean broken) {
+      if (broken) {
+        LogUtils.w(
+            TAG, "DiskShare disconnected, dropping session for: " + lane.connection.getId());
+        lane.lease.invalidate();
+      }
+      lane.lease.close();
+    }
+
+    @Override
+    public boolean hasDiskSpace() {
+      return hasEnoughDiskSpace();
+    }
+
+    @Override
+    public boolean isStopped() {
+      return TransferWorker.this.isStopped();
+    }
   }
 
   /**
-   * Processes a single transfer (upload or download).
+   * Processes a single transfer (upload or download) that the scheduler has already claimed.
    *
    * @return true if the transfer completed successfully
    */
   private boolean processTransfer(
-      PendingTransferDao dao, DiskShare share, PendingTransfer transfer) {
-    dao.updateStatus(transfer.id, "ACTIVE", System.currentTimeMillis());
+      PendingTransferDao dao, ConnectionLane lane, PendingTransfer transfer) {
+    DiskShare share = lane.lease.getShare();
     updateNotification(
         getApplicationContext().getString(R.string.transfer_title), transfer.displayName);
 
@@ -431,38 +456,63 @@ public class TransferWorker extends Worker {
         transfer.displayName);
 
     try {
+      boolean finished;
       if (isUpload) {
-        processUpload(dao, share, transfer);
+        finished =
+            (isSmallUpload(transfer)
+                    && processSmallUpload(dao, share, lane.directories, transfer))
+                || processUpload(dao, share, lane.directories, transfer);
       } else if ("DOWNLOAD_DIRECTORY".equals(transfer.transferType)) {
-        processDirectoryDownload(dao, share, transfer);
         // Directory placeholder is deleted inside processDirectoryDownload;
         // skip normal completion handling.
+        if (!processDirectoryDownload(dao, share, transfer)) {
+          return false;
+        }
         transferActionLog.log(TransferActionLog.Action.DOWNLOAD_COMPLETED, transfer.displayName);
         return true;
       } else {
-        processDownload(dao, share, transfer);
+        finished = processDownload(dao, share, transfer);
+      }
+
+      progress.finish(transfer);
+
+      // Paused or stopped: the transfer stays resumable, so it is neither logged nor announced
+      // as completed and its source is kept
+      if (!finished) {
+        LogUtils.i(TAG, "Transfer interrupted before completion: " + transfer.displayName);
+        return false;
       }
 
       // If the transfer was cancelled by the user during processing, don't mark as completed
-      if (isTransferCancelled(dao, transfer.id)) {
+      if (isTransferCancelled(transfer.id)) {
         LogUtils.i(TAG, "Transfer was cancelled by user: " + transfer.displayName);
         return false;
       }
 
-      dao.updateStatus(transfer.id, "COMPLETED", System.currentTimeMillis());
+      if (transfer.checksum != null) {
+        dao.updateChecksum(transfer.id, transfer.checksum);
+      }
+      // Conditional, so a cancellation that has not reached the flag yet is not overwritten
+      dao.updateStatusIfActive(transfer.id, "COMPLETED", System.currentTimeMillis());
       LogUtils.i(TAG, "Transfer completed: " + transfer.displayName);
       transferActionLog.log(
           isUpload
               ? TransferActionLog.Action.UPLOAD_COMPLETED
               : TransferActionLog.Action.DOWNLOAD_COMPLETED,
-          transfer.displayName);
+          transfer.displayName,
+          transfer.checksum);
       cleanupSharedTextSourceFile(transfer);
       sendTransferCompletedBroadcast(transfer);
       return true;
     } catch (Exception e) {
       LogUtils.e(TAG, "Transfer failed: " + transfer.displayName + " - " + e.getMessage());
+      try {
+        progress.finish(transfer);
+      } catch (RuntimeException dbEx) {
+        LogUtils.w(TAG, "Could not save progress of failed transfer: " + dbEx.getMessage());
+      }
       // Don't overwrite CANCELLED status with FAILED
-      if (!isTransferCancelled(dao, transfer.id)) {
+      if (!isTransferCancelled(transfer.id)) {
         dao.markFailed(transfer.id, e.getMessage(), System.currentTimeMillis());
         transferActionLog.log(
             isUpload
@@ -476,10 +526,14 @@ public class TransferWorker extends Worker {
   }
 
   /**
-   * Uploads a file directly from SAF URI to SMB share without intermediate temp copy. Supports
-   * resume by skipping already-transferred bytes.
+   * Uploads a file directly from SAF URI to SMB share without intermediate temp copy. Several
+   * positional writes are kept in flight (see {@link PipelinedUploader}). Supports resume by
+   * skipping already-transferred bytes.
+   *
+   * @return true if the upload finished, false if it was cancelled or paused (state persisted)
    */
-  private void processUpload(PendingTransferDao dao, DiskShare share, PendingTransfer transfer)
+  private boolean processUpload(
+      PendingTransferDao dao, DiskShare share, Set<String> directories, PendingTransfer transfer)
       throws Exception {
     ContentResolver resolver = getApplicationContext().getContentResolver();
     Uri sourceUri = Uri.parse(transfer.localUri);
@@ -506,34 +560,62 @@ public class TransferWorker extends Worker {
       if (rawIn == null) {
         throw new IOException("Cannot open input stream for: " + transfer.displayName);
       }
+      // The checksum covers the whole file, so it also hashes the bytes skipped on resume
+      ContentChecksum checksum = ContentChecksum.create(checksumAlgorithm);
       InputStream in = new BufferedInputStream(rawIn, BUFFER_SIZE);
+      if (checksum != null) {
+        in = checksum.wrap(in);
+      }
 
       // Ensure parent directories exist
       String parentPath = getParentPath(transfer.remotePath);
       LogUtils.i(TAG, "Upload parentPath=" + parentPath + ", remotePath=" + transfer.remotePath);
-      ensureRemoteDirectoryExists(share, parentPath);
-
-      // Determine resume offset from actual remote file size (not DB progress)
-      // to avoid gaps when progress was not saved before interruption.
-      // NOTE: Resume does not take effect after a crash or device reboot because
-      // resetActiveToRetry() in PendingTransferDao resets bytes_transferred to 0.
-      // This is intentional for the current phase — uploads always restart from the
-      // beginning after an unclean interruption.
+      ensureRemoteDirectoryExists(share, parentPath, directories);
+
+      // Resume behind the last block digest that matches both the source and the partial remote
+      // file. Writes are issued out of order, so digests are only recorded for blocks inside the
+      // acknowledged prefix; the remote size alone may include chunks written ahead of a hole.
+      // This also holds after a crash or reboot, since the digests survive in the database.
       long resumeOffset = 0;
-      if (transfer.bytesTransferred > 0) {
-        long remoteSize = getRemoteFileSize(share, transfer.remotePath);
-        if (remoteSize > 0) {
-          resumeOffset = remoteSize;
-          LogUtils.i(
-              TAG,
-              "Resume: DB progress="
-                  + transfer.bytesTransferred
-                  + ", actual remote size="
-                  + remoteSize
-                  + ", using remote size as offset");
+      long remoteSize = getRemoteFileSize(share, transfer.remotePath);
+      if (remoteSize >= BlockDigester.BLOCK_SIZE) {
+        try (File partial =
+            share.openFile(
+                transfer.remotePath,
+                EnumSet.of(AccessMask.GENERIC_READ),
+                null,
+                SMB2ShareAccess.ALL,
+                SMB2CreateDisposition.FILE_OPEN,
+                null)) {
+          resumeOffset =
+              verifiedResumeOffset(
+                  transfer,
+                  remoteSize,
+                  remoteBlockReader(partial),
+                  localBlockReader(resolver, sourceUri));
+        }
+      } else {
+        blockDao.deleteForTransfer(transfer.id);
+      }
+      if (resumeOffset > 0) {
+        long skipped = skipFully(in, resumeOffset);
+        if (skipped != resumeOffset) {
+          // The source shrank since the last attempt; the consumed stream cannot be rewound
+          transfer.bytesTransferred = 0;
+          progress.record(transfer);
+          blockDao.deleteForTransfer(transfer.id);
+          throw new IOException(
+              "Could not skip to resume position ("
+                  + skipped
+                  + "/"
+                  + resumeOffset
+                  + "), restarting upload on retry");
         }
+        LogUtils.i(TAG, "Resuming upload at byte " + resumeOffset + ": " + transfer.displayName);
       }
+      transfer.bytesTransferred = resumeOffset;
       boolean resuming = resumeOffset > 0;
+      BlockDigester digester = new BlockDigester(transfer.id, resumeOffset);
 
       try (File remoteFile =
           share.openFile(
@@ -546,74 +628,26 @@ public class TransferWorker extends Worker {
                   : SMB2CreateDisposition.FILE_OVERWRITE_IF,
               null)) {
 
-        OutputStream out = remoteFile.getOutputStream(resuming);
-
-        if (resuming) {
-          long skipped = skipFully(in, resumeOffset);
-          if (skipped != resumeOffset) {
-            LogUtils.w(
-                TAG,
-                "Could not skip to resume position ("
-                    + skipped
-                    + "/"
-                    + resumeOffset
-                    + "), restarting upload");
-            transfer.bytesTransferred = 0;
-            out.close();
-            // Re-open for overwrite
-            out =
-                share
-                    .openFile(
-                        transfer.remotePath,
-                        EnumSet.of(AccessMask.GENERIC_WRITE),
-                        EnumSet.of(FileAttributes.FILE_ATTRIBUTE_NORMAL),
-                        SMB2ShareAccess.ALL,
-                        SMB2CreateDisposition.FILE_OVERWRITE_IF,
-                        null)
-                    .getOutputStream();
-          } else {
-            transfer.bytesTransferred = resumeOffset;
-            LogUtils.i(
-                TAG, "Resuming upload at byte " + resumeOffset + ": " + transfer.displayName);
-          }
+        PipelinedUploader uploader = PipelinedUploader.forShare(share);
+        LogUtils.d(TAG, "Upload window: " + uploader.getWindow());
+        boolean completed =
+            uploader.upload(
+                digester.wrap(in),
+                resumeOffset,
+                PipelinedUploader.writer(remoteFile),
+                (position, chunkLength) -> {
+                  transfer.bytesTransferred = position;
+                  progress.record(transfer);
+                  progress.recordBlocks(digester.takeCommitted(position));
+                  return uploadCheckpoint(dao, transfer);
+                });
+        if (!completed) {
+          return false;
         }
-
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int read;
-        long bytesSinceLastSave = 0;
-
-        while ((read = in.read(buffer)) != -1) {
-          if (isStopped() || isTransferCancelled(dao, transfer.id)) {
-            dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
-            if (isTransferCancelled(dao, transfer.id)) {
-              LogUtils.i(
-                  TAG,
-                  "Upload cancelled by user at byte "
-                      + transfer.bytesTransferred
-                      + ": "
-                      + transfer.displayName);
-              return;
-            }
-            // Only reset to PENDING if not already CANCELLED by user
-            dao.updateStatusIfActive(transfer.id, "PENDING", System.currentTimeMillis());
-            LogUtils.i(
-                TAG,
-                "Upload paused at byte " + transfer.bytesTransferred + ": " + transfer.displayName);
-            return;
-          }
-
-          out.write(buffer, 0, read);
-          transfer.bytesTransferred += read;
-          bytesSinceLastSave += read;
-
-          if (bytesSinceLastSave >= PROGRESS_SAVE_INTERVAL) {
-            dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
-            updateTransferNotification(transfer);
-            bytesSinceLastSave = 0;
-          }
+        if (checksum != null) {
+          transfer.checksum = checksum.getValue();
         }
 
-        out.flush();
         long uploadDurationMs = System.currentTimeMillis() - uploadStartTime;
         double uploadDurationSec = uploadDurationMs / 1000.0;
         double throughputMBs =
@@ -655,12 +689,110 @@ public class TransferWorker extends Worker {
               + localSize
               + " bytes");
     }
+    verifyUpload(share, transfer, remoteSize);
 
     // Preserve local file timestamp on remote file
     setRemoteFileTimestamp(share, transfer, resolver);
 
-    // Final progress update
-    dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
+    // Final progress, written by processTransfer before the status changes
+    progress.record(transfer);
+    return true;
+  }
+
+  /** Returns true for uploads small enough for {@link SmallFileUploader}. */
+  private static boolean isSmallUpload(PendingTransfer transfer) {
+    return "UPLOAD".equals(transfer.transferType)
+        && transfer.fileSize > 0
+        && transfer.fileSize <= SmallFileUploader.MAX_SIZE;
+  }
+
+  /**
+   * Uploads a small file with a single create, write, set-info and close on the server instead of
+   * the separate opens for resume, integrity check and timestamp of {@link #processUpload}. The
+   * integrity check uses the byte counts of the write responses.
+   *
+   * @return false if the source is larger than it was when enqueued; the caller then falls back to
+   *     the regular upload
+   */
+  private boolean processSmallUpload(
+      PendingTransferDao dao, DiskShare share, Set<String> directories, PendingTransfer transfer)
+      throws Exception {
+    ContentResolver resolver = getApplicationContext().getContentResolver();
+    Uri sourceUri = Uri.parse(transfer.localUri);
+    ensureRemoteDirectoryExists(share, getParentPath(transfer.remotePath), directories);
+
+    BufferPool buffers = BufferPool.getInstance();
+    byte[] buffer = buffers.acquire(SmallFileUploader.MAX_SIZE);
+    int length;
+    try {
+      try (InputStream in = resolver.openInputStream(sourceUri)) {
+        if (in == null) {
+          throw new IOException("Cannot open input stream for: " + transfer.displayName);
+        }
+        length = SmallFileUploader.readAll(in, buffer);
+      }
+      if (length < 0) {
+        LogUtils.i(TAG, "Source grew, using regular upload: " + transfer.displayName);
+        return false;
+      }
+      ContentChecksum checksum = ContentChecksum.create(checksumAlgorithm);
+      if (checksum != null) {
+        checksum.update(buffer, 0, length);
+        transfer.checksum = checksum.getValue();
+      }
+      SmallFileUploader.upload(
+          SmallFileUploader.opener(share),
+          transfer.remotePath,
+          buffer,
+          length,
+          getLocalLastModified(resolver, sourceUri));
+    } finally {
+      buffers.release(buffer);
+    }
+    LogUtils.d(TAG, "Small file uploaded: " + transfer.displayName);
+    verifyUpload(share, transfer, length);
+
+    transfer.bytesTransferred = length;
+    progress.record(transfer);
+    return true;
+  }
+
+  /**
+   * Reads an uploaded file back and compares its checksum with the one computed while uploading,
+   * if read-back verification is enabled. On a mismatch the transfer fails and restarts from the
+   * beginning on retry, since the block digests of the partial file can no longer be trusted.
+   */
+  private void verifyUpload(DiskShare share, PendingTransfer transfer, long size)
+      throws IOException {
+    ContentChecksum.Algorithm algorithm = ContentChecksum.algorithmOf(transfer.checksum);
+    if (!verifyUploads || algorithm == null || size < 0) {
+      return;
+    }
+    String actual;
+    try (File remoteFile =
+        share.openFile(
+            transfer.remotePath,
+            EnumSet.of(AccessMask.GENERIC_READ),
+            null,
+            SMB2ShareAccess.ALL,
+            SMB2CreateDisposition.FILE_OPEN,
+            null)) {
+      actual =
+          ContentChecksum.ofRemote(
+              remoteFile,
+              size,
+              algorithm,
+              BandwidthGovernor.Flow.TRANSFER,
+              (position, chunkLength) -> !isStopped() && !isTransferCancelled(transfer.id));
+    }
+    if (!ContentChecksum.matches(transfer.checksum, actual)) {
+      blockDao.deleteForTransfer(transfer.id);
+      transfer.bytesTransferred = 0;
+      progress.record(transfer);
+      throw new IOException(
+          "Checksum mismatch after upload: expected " + transfer.checksum + ", got " + actual);
+    }
+    LogUtils.d(TAG, "Upload verified (" + actual + "): " + transfer.displayName);
   }
 
   /**
@@ -671,24 +803,7 @@ public class TransferWorker extends Worker {
   private void setRemoteFileTimestamp(
       DiskShare share, PendingTransfer transfer, ContentResolver resolver) {
     try {
-      Uri sourceUri = Uri.parse(transfer.localUri);
-      android.database.Cursor cursor = resolver.query(sourceUri, null, null, null, null);
-      long lastModified = 0;
-      if (cursor != null) {
-        try {
-          if (cursor.moveToFirst()) {
-            int idx =
-                cursor.getColumnIndex(
-                    android.provider.DocumentsContract.Document.COLUMN_LAST_MODIFIED);
-            if (idx >= 0) {
-              lastModified = cursor.getLong(idx);
-            }
-          }
-        } finally {
-          cursor.close();
-        }
-      }
-
+      long lastModified = getLocalLastModified(resolver, Uri.parse(transfer.localUri));
       if (lastModified > 0) {
         setRemoteFileLastModified(share, transfer.remotePath, lastModified);
         LogUtils.i(
@@ -707,6 +822,22 @@ public class TransferWorker extends Worker {
     }
   }
 
+  /** Returns the last modified time of a SAF document, or 0 if it is unknown. */
+  private long getLocalLastModified(ContentResolver resolver, Uri uri) {
+    try (Cursor cursor = resolver.query(uri, null, null, null, null)) {
+      if (cursor != null && cursor.moveToFirst()) {
+        int idx =
+            cursor.getColumnIndex(android.provider.DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+        if (idx >= 0) {
+          return cursor.getLong(idx);
+        }
+      }
+    } catch (Exception e) {
+      LogUtils.w(TAG, "Could not query local last modified time: " + e.getMessage());
+    }
+    return 0;
+  }
+
   /** Sets the last modified time of a remote file. */
   private void setRemoteFileLastModified(DiskShare share, String remotePath, long timeMillis) {
     try (File remoteFile =
@@ -736,123 +867,205 @@ public class TransferWorker extends Worker {
   }
 
   /**
-   * Resolves a DOWNLOAD_DIRECTORY transfer by recursively listing the remote directory and
-   * enqueuing individual DOWNLOAD transfers for each file found. The directory transfer itself is
-   * marked as COMPLETED once all child transfers have been enqueued. This runs inside the worker
+   * Resolves a DOWNLOAD_DIRECTORY transfer by walking the remote tree and enqueuing individual
+   * DOWNLOAD transfers for each file found. Files are enqueued in chunks while the walk proceeds,
+   * so other slots start downloading them right away. The directories still to expand are
+   * persisted in {@link DirectoryWalkEntry} rows; a killed worker resumes the walk from there. The
+   * directory transfer is removed together with the last walk entry. This runs inside the worker
    * which has its own SMB connection, avoiding dependency on the UI-layer SMB session.
+   *
+   * @return true if the walk is complete, false if it was paused or cancelled
    */
-  private void processDirectoryDownload(
+  private boolean processDirectoryDownload(
       PendingTransferDao dao, DiskShare share, PendingTransfer transfer) throws Exception {
-    Uri destFolderUri = Uri.parse(transfer.localUri);
-    DocumentFile destDir = DocumentFile.fromTreeUri(getApplicationContext(), destFolderUri);
-    if (destDir == null || !destDir.isDirectory()) {
-      throw new IOException("Invalid destination folder: " + transfer.localUri);
-    }
-
-    // Create a subdirectory matching the remote directory name
-    DocumentFile subDir = destDir.findFile(transfer.displayName);
-    if (subDir == null || !subDir.isDirectory()) {
-      subDir = destDir.createDirectory(transfer.displayName);
-    }
-    if (subDir == null) {
-      throw new IOException("Cannot create local directory: " + transfer.displayName);
-    }
-
-    List<PendingTransfer> childTransfers = new ArrayList<>();
-    collectDirectoryFiles(
-        share,
-        transfer.remotePath,
-        subDir,
-        transfer.connectionId,
-        transfer.batchId,
-        childTransfers);
+    TransferDatabase db = TransferDatabase.getInstance(getApplicationContext());
+    DirectoryWalkDao walkDao = db.directoryWalkDao();
+
+    if (walkDao.countForTransfer(transfer.id) == 0) {
+      Uri destFolderUri = Uri.parse(transfer.localUri);
+      DocumentFile destDir = DocumentFile.fromTreeUri(getApplicationContext(), destFolderUri);
+      if (destDir == null || !destDir.isDirectory()) {
+        throw new IOException("Invalid destination folder: " + transfer.localUri);
+      }
 
-    if (!childTransfers.isEmpty()) {
-      dao.insertAll(childTransfers);
-      LogUtils.i(
-          TAG,
-          "Directory resolved: "
-              + transfer.displayName
-              + " -> "
-              + childTransfers.size()
-              + " files enqueued");
+      // Create a subdirectory matching the remote directory name
+      DocumentFile subDir = destDir.findFile(transfer.displayName);
+      if (subDir == null || !subDir.isDirectory()) {
+        subDir = destDir.createDirectory(transfer.displayName);
+      }
+      if (subDir == null) {
+        throw new IOException("Cannot create local directory: " + transfer.displayName);
+      }
+      walkDao.insertAll(
+          Collections.singletonList(walkEntry(transfer.id, transfer.remotePath, subDir, false)));
     } else {
-      LogUtils.i(TAG, "Directory was empty: " + transfer.displayName);
+      LogUtils.i(TAG, "Resuming directory walk: " + transfer.displayName);
     }
 
-    // Remove the directory placeholder so only individual files are visible in the queue
-    dao.deleteByIds(java.util.Collections.singletonList(transfer.id));
+    long enqueued = 0;
+    DirectoryWalkEntry entry;
+    while ((entry = walkDao.next(transfer.id)) != null) {
+      if (isStopped()) {
+        dao.updateStatusIfActive(transfer.id, "PENDING", System.currentTimeMillis());
+        LogUtils.i(TAG, "Directory walk paused: " + transfer.displayName);
+        return false;
+      }
+      if (isTransferCancelled(transfer.id)) {
+        walkDao.deleteForTransfer(transfer.id);
+        LogUtils.i(TAG, "Directory walk cancelled: " + transfer.displayName);
+        return false;
+      }
+      enqueued += expandDirectory(db, share, transfer, entry);
+    }
+    LogUtils.i(TAG, "Directory resolved: " + transfer.displayName + " -> " + enqueued + " files");
+    return true;
   }
 
   /**
-   * Recursively collects all files from a remote directory and creates corresponding SAF documents
-   * and PendingTransfer entries.
+   * Lists one directory of a walk, creates the local files and subdirectories, enqueues a DOWNLOAD
+   * transfer per file and a walk entry per subdirectory. Files are inserted every {@link
+   * #WALK_INSERT_CHUNK} entries; the last chunk is inserted in the same transaction that removes
+   * the walk entry (and the directory transfer once the walk is complete). A directory whose
+   * expansion was interrupted is expanded again, skipping entries it already enqueued.
+   *
+   * @return the number of files enqueued
    */
-  private void collectDirectoryFiles(
-      DiskShare share,
-      String remotePath,
-      DocumentFile localDir,
-      String connectionId,
-      String batchId,
-      List<PendingTransfer> outTransfers)
+  private int expandDirectory(
+      TransferDatabase db, DiskShare share, PendingTransfer transfer, DirectoryWalkEntry entry)
       throws IOException {
-    List<com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation> entries;
-    try {
-      entries = share.list(remotePath);
-    } catch (Exception e) {
-      throw new IOException("Failed to list remote directory: " + remotePath, e);
+    PendingTransferDao dao = db.pendingTransferDao();
+    DirectoryWalkDao walkDao = db.directoryWalkDao();
+    DocumentFile localDir =
+        DocumentFile.fromTreeUri(getApplicationContext(), Uri.parse(entry.localUri));
+    if (localDir == null || !localDir.isDirectory()) {
+      throw new IOException("Invalid local directory: " + entry.localUri);
     }
 
-    for (com.hierynomus.msfscc.fileinformation.FileIdBothDirectoryInformation entry : entries) {
-      String name = entry.getFileName();
-      if (".".equals(name) || "..".equals(name)) continue;
-
-      String childPath =
-          remotePath.endsWith("/") || remotePath.endsWith("\\")
-              ? remotePath + name
-              : remotePath + "\\" + name;
+    String remotePath = entry.remotePath;
+    String prefix =
+        remotePath.isEmpty() || remotePath.endsWith("/") || remotePath.endsWith("\\")
+            ? remotePath
+            : remotePath + "\\";
+
+    // After an interruption, reuse what the previous attempt already created and enqueued
+    boolean resumed = entry.started;
+    Map<String, SafTreeEnumerator.Entry> existing = new HashMap<>();
+    Set<String> queued = new HashSet<>();
+    if (resumed) {
+      for (SafTreeEnumerator.Entry f : localTree.list(localDir)) {
+        if (f.getName() != null) {
+          existing.put(f.getName(), f);
+        }
+      }
+      queued.addAll(dao.getRemotePathsInBatch(transfer.batchId, prefix));
+    } else {
+      walkDao.markStarted(entry.id);
+    }
 
-      boolean isDir =
-          (entry.getFileAttributes() & FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue()) != 0;
+    List<PendingTransfer> files = new ArrayList<>();
+    List<DirectoryWalkEntry> subdirs = new ArrayList<>();
+    int enqueued = 0;
+    try (Directory directory =
+        share.openDirectory(
+            remotePath,
+            EnumSet.of(AccessMask.FILE_LIST_DIRECTORY, AccessMask.FILE_READ_ATTRIBUTES),
+            null,
+            SMB2ShareAccess.ALL,
+            SMB2CreateDisposition.FILE_OPEN,
+            null)) {
+      for (FileIdBothDirectoryInformation info : directory) {
+        String name = info.getFileName();
+        if (".".equals(name) || "..".equals(name)) continue;
+        String childPath = prefix + name;
+
+        boolean isDir =
+            (info.getFileAttributes() & FileAttributes.FILE_ATTRIBUTE_DIRECTORY.getValue()) != 0;
+
+        if (isDir) {
+          SafTreeEnumerator.Entry known = existing.get(name);
+          DocumentFile childDir =
+              known != null && known.isDirectory() ? localTree.toDocumentFile(known) : null;
+          if (childDir == null) {
+            DocumentFile found = resumed ? localDir.findFile(name) : null;
+            childDir =
+                found != null && found.isDirectory() ? found : localDir.createDirectory(name);
+          }
+          if (childDir == null) {
+            LogUtils.w(TAG, "Cannot create local subdirectory: " + name);
+            continue;
+          }
+          // Subdirectories of an interrupted directory may have been expanded already
+          subdirs.add(walkEntry(transfer.id, childPath, childDir, resumed));
+        } else {
+          if (queued.contains(childPath)) continue;
+          SafTreeEnumerator.Entry known = existing.get(name);
+          Uri localUri = known != null && !known.isDirectory() ? known.getUri() : null;
+          if (localUri == null) {
+            DocumentFile created = localDir.createFile("application/octet-stream", name);
+            if (created == null) {
+              LogUtils.w(TAG, "Cannot create local file for download: " + name);
+              continue;
+            }
+            localUri = created.getUri();
+          }
 
-      if (isDir) {
-        DocumentFile childDir = localDir.findFile(name);
-        if (childDir == null || !childDir.isDirectory()) {
-          childDir = localDir.createDirectory(name);
-        }
-        if (childDir == null) {
-          LogUtils.w(TAG, "Cannot create local subdirectory: " + name);
-          continue;
-        }
-        collectDirectoryFiles(share, childPath, childDir, connectionId, batchId, outTransfers);
-      } else {
-        DocumentFile localFile = localDir.createFile("application/octet-stream", name);
-        if (localFile == null) {
-          LogUtils.w(TAG, "Cannot create local file for download: " + name);
-          continue;
+          PendingTransfer t = new PendingTransfer();
+          t.transferType = "DOWNLOAD";
+          t.localUri = localUri.toString();
+          t.remotePath = childPath;
+          t.connectionId = transfer.connectionId;
+          t.displayName = name;
+          t.mimeType = "application/octet-stream";
+          t.fileSize = info.getEndOfFile();
+          t.bytesTransferred = 0;
+          t.status = "PENDING";
+          t.createdAt = System.currentTimeMillis();
+          t.updatedAt = System.currentTimeMillis();
+          t.batchId = transfer.batchId;
+          t.sortOrder = transfer.sortOrder;
+          t.priority = transfer.priority;
+          files.add(t);
+
+          if (files.size() >= WALK_INSERT_CHUNK) {
+            dao.insertAll(files);
+            enqueued += files.size();
+            files.clear();
+          }
         }
-
-        PendingTransfer t = new PendingTransfer();
-        t.transferType = "DOWNLOAD";
-        t.localUri = localFile.getUri().toString();
-        t.remotePath = childPath;
-        t.connectionId = connectionId;
-        t.displayName = name;
-        t.mimeType = "application/octet-stream";
-        t.fileSize = entry.getEndOfFile();
-        t.bytesTransferred = 0;
-        t.status = "PENDING";
-        t.createdAt = System.currentTimeMillis();
-        t.updatedAt = System.currentTimeMillis();
-        t.batchId = batchId;
-        t.sortOrder = outTransfers.size();
-        outTransfers.add(t);
       }
+    } catch (SMBApiException e) {
+      throw new IOException("Failed to list remote directory: " + remotePath, e);
     }
+
+    db.runInTransaction(
+        () -> {
+          dao.insertAll(files);
+          walkDao.insertAll(subdirs);
+          walkDao.delete(entry.id);
+          if (walkDao.countForTransfer(transfer.id) == 0) {
+            // Remove the directory placeholder so only individual files are visible in the queue
+            dao.deleteByIds(Collections.singletonList(transfer.id));
+          }
+        });
+    return enqueued + files.size();
+  }
+
+  private static DirectoryWalkEntry walkEntry(
+      long transferId, String remotePath, DocumentFile localDir, boolean started) {
+    DirectoryWalkEntry e = new DirectoryWalkEntry();
+    e.transferId = transferId;
+    e.remotePath = remotePath;
+    e.localUri = localDir.getUri().toString();
+    e.started = started;
+    return e;
   }
 
-  /** Downloads a file from SMB share directly to the local SAF URI. */
-  private void processDownload(PendingTransferDao dao, DiskShare share, PendingTransfer transfer)
+  /**
+   * Downloads a file from SMB share directly to the local SAF URI.
+   *
+   * @return true if the download finished, false if it was cancelled or paused (state persisted)
+   */
+  private boolean processDownload(PendingTransferDao dao, DiskShare share, PendingTransfer transfer)
       throws Exception {
     ContentResolver resolver = getApplicationContext().getContentResolver();
     Uri targetUri = Uri.parse(transfer.localUri);
@@ -883,11 +1096,9 @@ public class TransferWorker extends Worker {
             + ")");
     if (transfer.fileSize <= 0 && remoteSize > 0) {
       transfer.fileSize = remoteSize;
-      dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
+      progress.record(transfer);
     }
 
-    // Always start fresh
-    transfer.bytesTransferred = 0;
     long downloadStartTime = System.currentTimeMillis();
     long remoteTimestamp = 0;
 
@@ -917,30 +1128,101 @@ public class TransferWorker extends Worker {
                 + e.getMessage());
       }
 
-      OutputStream rawOut = resolver.openOutputStream(targetUri, "w");
-      if (rawOut == null) {
-        throw new IOException("Cannot open SAF output stream for: " + transfer.displayName);
+      // Resume behind the last block digest that matches both the remote file and the partial
+      // local file, which also holds after a crash or reboot
+      long resumeOffset = 0;
+      long localSize =
+          remoteSize >= BlockDigester.BLOCK_SIZE ? getLocalFileSize(resolver, targetUri) : -1;
+      if (localSize >= BlockDigester.BLOCK_SIZE) {
+        resumeOffset =
+            verifiedResumeOffset(
+                transfer,
+                Math.min(localSize, remoteSize),
+                localBlockReader(resolver, targetUri),
+                remoteBlockReader(remoteFile));
+      } else {
+        blockDao.deleteForTransfer(transfer.id);
+      }
+
+      // The checksum covers the whole file, so the kept local prefix is hashed first
+      ContentChecksum checksum = ContentChecksum.create(checksumAlgorithm);
+      if (checksum != null && resumeOffset > 0) {
+        long hashed;
+        try (InputStream prefix = resolver.openInputStream(targetUri)) {
+          hashed = prefix != null ? checksum.absorb(prefix, resumeOffset) : -1;
+        }
+        if (hashed != resumeOffset) {
+          LogUtils.w(TAG, "Could not hash local prefix, restarting: " + transfer.displayName);
+          blockDao.deleteForTransfer(transfer.id);
+          resumeOffset = 0;
+          checksum = ContentChecksum.create(checksumAlgorithm);
+        }
       }
+      transfer.bytesTransferred = resumeOffset;
 
-      try (OutputStream out = new BufferedOutputStream(rawOut, BUFFER_SIZE)) {
-        boolean finished;
-        if (remoteSize >= PARALLEL_DOWNLOAD_THRESHOLD) {
+      // Reserve the rest of the file up front, so concurrent downloads cannot overcommit the disk
+      DiskSpaceAccountant.Reservation space;
+      try {
+        space =
+            DiskSpaceAccountant.getInstance()
+                .reserve(
+                    Math.max(0, remoteSize - resumeOffset),
+                    () -> isStopped() || isTransferCancelled(transfer.id));
+      } catch (InterruptedIOException e) {
+        if (!isTransferCancelled(transfer.id)) {
+          dao.updateStatusIfActive(transfer.id, "PENDING", System.currentTimeMillis());
+        }
+        LogUtils.i(TAG, "Download stopped while waiting for disk space: " + transfer.displayName);
+        return false;
+      }
+      try {
+        OutputStream rawOut;
+        if (resumeOffset > 0) {
+          rawOut = openForResume(resolver, targetUri, resumeOffset);
           LogUtils.i(
-              TAG,
-              "Using parallel download ("
-                  + PARALLEL_READERS
-                  + " readers, "
-                  + PARALLEL_CHUNK_SIZE
-                  + " byte chunks) for: "
-                  + transfer.displayName);
-          finished = downloadParallel(dao, transfer, remoteFile, out, remoteSize);
+              TAG, "Resuming download at byte " + resumeOffset + ": " + transfer.displayName);
         } else {
-          finished = downloadStreamed(dao, transfer, remoteFile, out);
+          rawOut = resolver.openOutputStream(targetUri, "w");
+        }
+        if (rawOut == null) {
+          throw new IOException("Cannot open SAF output stream for: " + transfer.displayName);
+        }
+
+        PipelinedDownloader downloader = PipelinedDownloader.forShare(share);
+        BlockDigester digester = new BlockDigester(transfer.id, resumeOffset);
+        OutputStream buffered = new BufferedOutputStream(rawOut, BUFFER_SIZE);
+        try (OutputStream out =
+            digester.wrap(checksum != null ? checksum.wrap(buffered) : buffered)) {
+          boolean finished;
+          if (resumeOffset > 0 || remoteSize >= downloader.getParallelThreshold()) {
+            LogUtils.i(
+                TAG,
+                "Using parallel download (window " + downloader.getWindow() + ") for: "
+                    + transfer.displayName);
+            finished =
+                downloadParallel(
+                    downloader,
+                    dao,
+                    transfer,
+                    digester,
+                    space,
+                    remoteFile,
+                    out,
+                    resumeOffset,
+                    remoteSize);
+          } else {
+            finished = downloadStreamed(dao, transfer, digester, space, remoteFile, out);
+          }
+          if (!finished) {
+            return false; // cancelled or paused; state has already been persisted
+          }
+          out.flush();
         }
-        if (!finished) {
-          return; // cancelled or paused; state has already been persisted
+        if (checksum != null) {
+          transfer.checksum = checksum.getValue();
         }
-        out.flush();
+      } finally {
+        space.close();
       }
     }
 
@@ -1001,91 +1283,38 @@ public class TransferWorker extends Worker {
           "[TIMESTAMP] Download completed without valid remote timestamp: " + transfer.displayName);
     }
 
-    // Final progress update
-    dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
+    // Final progress, written by processTransfer before the status changes
+    progress.record(transfer);
+    return true;
   }
 
   /**
-   * Downloads a file using multiple concurrently outstanding SMB READ requests. The SMB connection
-   * multiplexes the requests over the same TCP connection, hiding network round-trip latency and
-   * keeping the pipe full. Chunks are written to the output stream strictly in order.
+   * Downloads a file using multiple concurrently outstanding SMB READ requests via the shared
+   * {@link PipelinedDownloader}, whose window adapts to the server. Chunks are written to the
+   * output stream strictly in order.
    *
    * @return true if the download finished, false if it was cancelled or paused (state persisted)
    */
   private boolean downloadParallel(
+      PipelinedDownloader downloader,
       PendingTransferDao dao,
       PendingTransfer transfer,
+      BlockDigester digester,
+      DiskSpaceAccountant.Reservation space,
       File remoteFile,
       OutputStream out,
+      long startOffset,
       long fileSize)
       throws Exception {
-    ExecutorService pool = Executors.newFixedThreadPool(PARALLEL_READERS);
-    ExecutorService writer = Executors.newSingleThreadExecutor();
-    try {
-      ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>(PARALLEL_READERS);
-      ArrayDeque<Future<?>> pendingWrites = new ArrayDeque<>(PARALLEL_WRITE_QUEUE + 1);
-      long submitOffset = 0;
-      long[] counters = new long[2]; // [0]=bytesSinceLastSave, [1]=bytesSinceLastDiskCheck
-
-      while (submitOffset < fileSize || !inFlight.isEmpty()) {
-        // Keep the read pipeline full
-        while (inFlight.size() < PARALLEL_READERS && submitOffset < fileSize) {
-          final long offset = submitOffset;
-          final int length = (int) Math.min(PARALLEL_CHUNK_SIZE, fileSize - offset);
-          submitOffset += length;
-          inFlight.add(pool.submit(() -> readChunk(remoteFile, offset, length)));
-        }
-
-        final byte[] chunk = inFlight.remove().get();
-
-        // Hand the chunk to the dedicated writer thread so slow SAF/disk writes never stall
-        // the SMB read pipeline. Writes stay strictly in order (single writer thread).
-        pendingWrites.add(
-            writer.submit(
-                () -> {
-                  out.write(chunk);
-                  return null;
-                }));
-        // Bound the write queue to cap memory usage and surface write errors early
-        while (pendingWrites.size() > PARALLEL_WRITE_QUEUE) {
-          pendingWrites.remove().get();
-        }
-
-        transfer.bytesTransferred += chunk.length;
-        counters[0] += chunk.length;
-        counters[1] += chunk.length;
-
-        if (!downloadCheckpoint(dao, transfer, counters)) {
-          for (Future<byte[]> f : inFlight) {
-            f.cancel(true);
-          }
-          return false;
-        }
-      }
-
-      // Wait for all outstanding writes to hit the output stream before returning
-      while (!pendingWrites.isEmpty()) {
-        pendingWrites.remove().get();
-      }
-      return true;
-    } finally {
-      pool.shutdownNow();
-      writer.shutdownNow();
-    }
-  }
-
-  /** Reads exactly {@code length} bytes starting at {@code offset} from the remote file. */
-  private static byte[] readChunk(File remoteFile, long offset, int length) throws IOException {
-    byte[] buf = new byte[length];
-    int pos = 0;
-    while (pos < length) {
-      int read = remoteFile.read(buf, offset + pos, pos, length - pos);
-      if (read < 0) {
-        throw new IOException("Unexpected EOF at offset " + (offset + pos));
-      }
-      pos += read;
-    }
-    return buf;
+    return downloader.download(
+        PipelinedDownloader.reader(remoteFile),
+        startOffset,
+        fileSize,
+        out,
+        (position, chunkLength) -> {
+          transfer.bytesTransferred = position;
+          return downloadCheckpoint(dao, transfer, digester, space, chunkLength);
+        });
   }
 
   /**
@@ -1095,78 +1324,91 @@ public class TransferWorker extends Worker {
    * @return true if the download finished, false if it was cancelled or paused (state persisted)
    */
   private boolean downloadStreamed(
-      PendingTransferDao dao, PendingTransfer transfer, File remoteFile, OutputStream out)
+      PendingTransferDao dao,
+      PendingTransfer transfer,
+      BlockDigester digester,
+      DiskSpaceAccountant.Reservation space,
+      File remoteFile,
+      OutputStream out)
       throws Exception {
-    try (InputStream in = remoteFile.getInputStream()) {
-      byte[] bufferA = new byte[BUFFER_SIZE];
-      byte[] bufferB = new byte[BUFFER_SIZE];
-      long[] counters = new long[2]; // [0]=bytesSinceLastSave, [1]=bytesSinceLastDiskCheck
+    BufferPool buffers = BufferPool.getInstance();
+    try (InputStream in =
+        BandwidthGovernor.getInstance()
+            .throttle(
+                remoteFile.getInputStream(),
+                remoteFile.getDiskShare(),
+                BandwidthGovernor.Flow.TRANSFER)) {
+      byte[] bufferA = buffers.acquire(BUFFER_SIZE);
+      byte[] bufferB = buffers.acquire(BUFFER_SIZE);
 
       ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+      Future<Integer> prefetchFuture = null;
       try {
-        int read = in.read(bufferA);
+        int read = in.read(bufferA, 0, BUFFER_SIZE);
         while (read != -1) {
           final byte[] nextBuf = bufferB;
-          Future<Integer> prefetchFuture = prefetchExecutor.submit(() -> in.read(nextBuf));
+          prefetchFuture = prefetchExecutor.submit(() -> in.read(nextBuf, 0, BUFFER_SIZE));
 
           out.write(bufferA, 0, read);
 
           transfer.bytesTransferred += read;
-          counters[0] += read;
-          counters[1] += read;
 
-          if (!downloadCheckpoint(dao, transfer, counters)) {
-            prefetchFuture.cancel(true);
+          if (!downloadCheckpoint(dao, transfer, digester, space, read)) {
             return false;
           }
 
           read = prefetchFuture.get();
+          prefetchFuture = null;
 
           byte[] tmp = bufferA;
           bufferA = bufferB;
           bufferB = tmp;
         }
       } finally {
+        // The prefetch may still be filling a buffer; wait before returning it to the pool
+        awaitQuietly(prefetchFuture);
         prefetchExecutor.shutdownNow();
+        buffers.release(bufferA);
+        buffers.release(bufferB);
       }
     }
     return true;
   }
 
   /**
-   * Periodic checkpoint during a download: persists progress, updates the notification, verifies
-   * available disk space and evaluates stop/cancellation requests.
+   * Checkpoint after each download chunk: records progress and completed block digests in the
+   * journal, charges the chunk against the disk space reservation and evaluates stop/cancellation
+   * requests.
    *
-   * @param counters mutable pair of [bytesSinceLastSave, bytesSinceLastDiskCheck]
+   * @param chunkLength number of bytes written since the previous checkpoint
    * @return true if the download should continue, false if it was cancelled or paused (progress and
    *     status have already been persisted)
    * @throws IOException if the device is running out of disk space
    */
   private boolean downloadCheckpoint(
-      PendingTransferDao dao, PendingTransfer transfer, long[] counters) throws IOException {
-    if (counters[0] >= PROGRESS_SAVE_INTERVAL) {
-      if (counters[1] >= DISK_CHECK_INTERVAL) {
-        if (!hasEnoughDiskSpace()) {
-          dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
-          dao.updateStatusIfActive(transfer.id, "PENDING", System.currentTimeMillis());
-          LogUtils.e(
-              TAG,
-              "Download aborted \u2013 disk space low at byte "
-                  + transfer.bytesTransferred
-                  + ": "
-                  + transfer.displayName);
-          throw new IOException("Insufficient disk space");
-        }
-        counters[1] = 0;
-      }
-      dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
-      updateTransferNotification(transfer);
-      counters[0] = 0;
+      PendingTransferDao dao,
+      PendingTransfer transfer,
+      BlockDigester digester,
+      DiskSpaceAccountant.Reservation space,
+      int chunkLength)
+      throws IOException {
+    progress.record(transfer);
+    progress.recordBlocks(digester.takeCommitted(transfer.bytesTransferred));
+    if (!space.onWritten(chunkLength)) {
+      progress.finish(transfer);
+      dao.updateStatusIfActive(transfer.id, "PENDING", System.currentTimeMillis());
+      LogUtils.e(
+          TAG,
+          "Download aborted \u2013 disk space low at byte "
+              + transfer.bytesTransferred
+              + ": "
+              + transfer.displayName);
+      throw new IOException("Insufficient disk space");
     }
 
-    if (isStopped() || isTransferCancelled(dao, transfer.id)) {
-      dao.updateProgress(transfer.id, transfer.bytesTransferred, System.currentTimeMillis());
-      if (isTransferCancelled(dao, transfer.id)) {
+    if (isStopped() || isTransferCancelled(transfer.id)) {
+      progress.finish(transfer);
+      if (isTransferCancelled(transfer.id)) {
         LogUtils.i(
             TAG,
             "Download cancelled by user at byte "
@@ -1184,37 +1426,222 @@ public class TransferWorker extends Worker {
     return true;
   }
 
+  /**
+   * Cancellation/pause check between upload chunks. Writes the current progress and returns false
+   * if the worker was stopped or the user cancelled the transfer.
+   */
+  private boolean uploadCheckpoint(PendingTransferDao dao, PendingTransfer transfer) {
+    if (isStopped() || isTransferCancelled(transfer.id)) {
+      progress.finish(transfer);
+      if (isTransferCancelled(transfer.id)) {
+        LogUtils.i(
+            TAG,
+            "Upload cancelled by user at byte "
+                + transfer.bytesTransferred
+                + ": "
+                + transfer.displayName);
+        return false;
+      }
+      // Only reset to PENDING if not already CANCELLED by user
+      dao.updateStatusIfActive(transfer.id, "PENDING", System.currentTimeMillis());
+      LogUtils.i(
+          TAG, "Upload paused at byte " + transfer.bytesTransferred + ": " + transfer.displayName);
+      return false;
+    }
+    return true;
+  }
+
   /**
    * Checks whether the given transfer has been cancelled by the user (via queue UI). This allows
-   * individual transfer cancellation while the worker continues processing others.
+   * individual transfer cancellation while the worker continues processing others. Reads the flag
+   * in {@link TransferControlRegistry}, so it is cheap enough for every chunk.
    */
-  private boolean isTransferCancelled(PendingTransferDao dao, long transferId) {
-    String status = dao.getStatus(transferId);
-    return status == null || "CANCELLED".equals(status);
+  private boolean isTransferCancelled(long transferId) {
+    return controls.isCancelled(transferId);
   }
 
-  private void updateTransferNotification(PendingTransfer transfer) {
-    String content = transfer.displayName;
-    if (transfer.fileSize > 0) {
-      int pct = (int) (transfer.bytesTransferred * 100 / transfer.fileSize);
-      content = transfer.displayName + " • " + pct + "%";
+  /**
+   * Shows the progress snapshot the journal has just written. With several running transfers the
+   * notification names the one with the most bytes and the percentage covers all of them.
+   */
+  private void updateProgressNotification(List<TransferProgressJournal.Entry> running) {
+    if (running.isEmpty()) {
+      return;
+    }
+    TransferProgressJournal.Entry lead = running.get(0);
+    long bytes = 0;
+    long total = 0;
+    for (TransferProgressJournal.Entry entry : running) {
+      if (entry.bytesTransferred > lead.bytesTransferred) {
+        lead = entry;
+      }
+      bytes += entry.bytesTransferred;
+      total += Math.max(entry.fileSize, 0);
+    }
+    String content = lead.displayName;
+    if (total > 0) {
+      int pct = (int) (Math.min(bytes, total) * 100 / total);
+      content = lead.displayName + " • " + pct + "%";
+    }
+    if (running.size() > 1) {
+      content += " (+" + (running.size() - 1) + ")";
     }
     updateNotification(getApplicationContext().getString(R.string.transfer_title), content);
   }
 
   /** Skips exactly {@code n} bytes from the input stream. Returns the actual number skipped. */
   private long skipFully(InputStream in, long n) throws IOException {
+    // File-backed streams seek; others fall back to reading below
     long remaining = n;
-    byte[] skipBuffer = new byte[BUFFER_SIZE];
-    while (remaining > 0) {
-      int toRead = (int) Math.min(skipBuffer.length, remaining);
-      int read = in.read(skipBuffer, 0, toRead);
-      if (read < 0) break;
-      remaining -= read;
+    long skipped;
+    while (remaining > 0 && (skipped = in.skip(remaining)) > 0) {
+      remaining -= skipped;
+    }
+    byte[] skipBuffer = BufferPool.getInstance().acquire(BUFFER_SIZE);
+    try {
+      while (remaining > 0) {
+        int toRead = (int) Math.min(BUFFER_SIZE, remaining);
+        int read = in.read(skipBuffer, 0, toRead);
+        if (read < 0) break;
+        remaining -= read;
+      }
+    } finally {
+      BufferPool.getInstance().release(skipBuffer);
     }
     return n - remaining;
   }
 
+  /** Reads one block of a file for resume verification. */
+  @FunctionalInterface
+  private interface BlockReader {
+    /** Reads {@code length} bytes at {@code offset} and returns the number read (short at EOF). */
+    int read(long offset, byte[] buffer, int length) throws IOException;
+  }
+
+  private static BlockReader remoteBlockReader(File remoteFile) {
+    return (offset, buffer, length) -> {
+      int total = 0;
+      while (total < length) {
+        int n = remoteFile.read(buffer, offset + total, total, length - total);
+        if (n <= 0) {
+          break;
+        }
+        total += n;
+      }
+      return total;
+    };
+  }
+
+  private BlockReader localBlockReader(ContentResolver resolver, Uri uri) {
+    return (offset, buffer, length) -> {
+      try (InputStream in = resolver.openInputStream(uri)) {
+        if (in == null || skipFully(in, offset) != offset) {
+          return 0;
+        }
+        int total = 0;
+        while (total < length) {
+          int n = in.read(buffer, total, length - total);
+          if (n < 0) {
+            break;
+          }
+          total += n;
+        }
+        return total;
+      }
+    };
+  }
+
+  /**
+   * Determines where an interrupted transfer can continue. The last recorded block that lies
+   * within the partial target is read back from the target and the source, and the transfer
+   * resumes behind it if both match its digest. Only this tail block is read; the blocks before it
+   * were verified when they were written. Digests that cannot be used are removed.
+   *
+   * @param partialSize size of the partial target, capped by the size of the source
+   * @return the verified resume offset, or 0 to start from the beginning
+   */
+  private long verifiedResumeOffset(
+      PendingTransfer transfer, long partialSize, BlockReader target, BlockReader source)
+      throws IOException {
+    TransferBlock last = blockDao.getLast(transfer.id);
+    long fullBlocks = partialSize / BlockDigester.BLOCK_SIZE;
+    TransferBlock block = null;
+    if (last != null && fullBlocks > 0) {
+      block = last.blockIndex < fullBlocks ? last : blockDao.get(transfer.id, (int) fullBlocks - 1);
+    }
+    if (block == null) {
+      blockDao.deleteForTransfer(transfer.id);
+      return 0;
+    }
+    int index = block.blockIndex;
+    long start = (long) index * BlockDigester.BLOCK_SIZE;
+    BufferPool buffers = BufferPool.getInstance();
+    byte[] buffer = buffers.acquire(BlockDigester.BLOCK_SIZE);
+    try {
+      int n = target.read(start, buffer, BlockDigester.BLOCK_SIZE);
+      boolean valid = BlockDigester.matches(block, buffer, n);
+      if (valid) {
+        n = source.read(start, buffer, BlockDigester.BLOCK_SIZE);
+        valid = BlockDigester.matches(block, buffer, n);
+      }
+      if (!valid) {
+        LogUtils.w(
+            TAG,
+            "Resume block " + index + " does not match, restarting: " + transfer.displayName);
+        blockDao.deleteForTransfer(transfer.id);
+        return 0;
+      }
+    } finally {
+      buffers.release(buffer);
+    }
+    blockDao.deleteAfter(transfer.id, index);
+    long offset = BlockDigester.end(block);
+    LogUtils.i(
+        TAG,
+        "Resume verified: block "
+            + index
+            + ", offset "
+            + offset
+            + ", DB progress "
+            + transfer.bytesTransferred
+            + ": "
+            + transfer.displayName);
+    return offset;
+  }
+
+  /**
+   * Opens a partially downloaded file for writing at {@code offset}, dropping anything behind it
+   * that was written after the last verified block.
+   */
+  private static OutputStream openForResume(ContentResolver resolver, Uri uri, long offset)
+      throws IOException {
+    ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "rw");
+    if (pfd == null) {
+      return null;
+    }
+    FileOutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(pfd);
+    try {
+      out.getChannel().truncate(offset);
+      out.getChannel().position(offset);
+    } catch (IOException e) {
+      out.close();
+      throw e;
+    }
+    return out;
+  }
+
+  /** Waits for a background read to finish, ignoring its outcome. */
+  private static void awaitQuietly(Future<?> future) {
+    if (future == null) return;
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception ignored) {
+      // outcome is irrelevant, the caller is already leaving
+    }
+  }
+
   /** Returns the parent path of a remote file path, or empty string for root-level files. */
   private String getParentPath(String remotePath) {
     if (remotePath == null) return "";
@@ -1223,8 +1650,11 @@ public class TransferWorker extends Worker {
     return lastSep > 0 ? normalized.substring(0, lastSep) : "";
   }
 
-  /** Ensures a remote directory exists, creating it recursively if needed. */
-  private void ensureRemoteDirectoryExists(DiskShare share, String path) {
+  /**
+   * Ensures a remote directory exists, creating it recursively if needed. Directories in {@code
+   * known} are skipped; directories that exist afterwards are added to it.
+   */
+  private void ensureRemoteDirectoryExists(DiskShare share, String path, Set<String> known) {
     if (path == null || path.isEmpty()) return;
 
     String smbPath = path.replace('/', '\\');
@@ -1237,11 +1667,13 @@ public class TransferWorker extends Worker {
       current.append(part);
 
       String dirPath = current.toString();
+      if (known.contains(dirPath)) continue;
       try {
         if (!share.folderExists(dirPath)) {
           share.mkdir(dirPath);
           LogUtils.d(TAG, "Created remote directory: " + dirPath);
         }
+        known.add(dirPath);
       } catch (Exception e) {
         LogUtils.w(TAG, "Could not create remote directory " + dirPath + ": " + e.getMessage());
       }
@@ -1326,102 +1758,29 @@ public class TransferWorker extends Worker {
       if (deleted > 0) {
         LogUtils.i(TAG, "Cleaned up " + deleted + " old transfer entries");
       }
+      int orphaned =
+          TransferDatabase.getInstance(getApplicationContext())
+              .directoryWalkDao()
+              .deleteOrphaned();
+      if (orphaned > 0) {
+        LogUtils.i(TAG, "Cleaned up " + orphaned + " orphaned directory walk entries");
+      }
+      int blocks = blockDao.deleteOrphaned();
+      if (blocks > 0) {
+        LogUtils.i(TAG, "Cleaned up " + blocks + " resume block digests");
+      }
     } catch (Exception e) {
       LogUtils.w(TAG, "Cleanup failed: " + e.getMessage());
     }
   }
 
   /**
-   * Creates an SMBClient configured based on the connection's encryption and signing settings.
-   * Mirrors the configuration logic from {@code FolderSyncWorker.createSmbClient()}.
-   */
-  private SMBClient createSmbClient(SmbConnection connection) {
-    boolean encrypt = false;
-    boolean sign = false;
-    boolean async = false;
-    try {
-      encrypt = connection.isEncryptData();
-      sign = connection.isSigningRequired();
-      async = connection.isAsyncTransport();
-    } catch (Throwable ignored) {
-    }
-
-    SmbConfig.Builder builder =
-        SmbConfig.builder().withEncryptData(encrypt).withSigningRequired(sign);
-    applyTransferBufferSizes(builder);
-
-    if (async) {
-      builder.withTransportLayerFactory(new AsyncDirectTcpTransportFactory<>());
-      LogUtils.i(TAG, "Using AsyncDirectTcpTransport for improved transfer performance");
-    }
-
-    try {
-      builder.withDialects(
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_1_1,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0_2,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_3_0,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_2_1,
-          com.hierynomus.mssmb2.SMB2Dialect.SMB_2_0_2);
-    } catch (Throwable ignored) {
-    }
-
-    LogUtils.d(
-        TAG, "SMB client config: encrypt=" + encrypt + ", sign=" + sign + ", async=" + async);
-    return new SMBClient(builder.build());
-  }
-
-  /**
-   * Applies the larger transfer buffer sizes to the given config builder. Falls back to SMBJ
-   * defaults if the running SMBJ version rejects these values.
-   */
-  private static void applyTransferBufferSizes(SmbConfig.Builder builder) {
-    try {
-      builder
-          .withReadBufferSize(TRANSFER_BUFFER_SIZE)
-          .withWriteBufferSize(TRANSFER_BUFFER_SIZE)
-          .withTransactBufferSize(TRANSFER_BUFFER_SIZE);
-    } catch (Throwable ignored) {
-      /* keep SMBJ defaults if the running SMBJ version rejects these values */
-    }
-  }
-
-  /**
-   * Checks whether the device has enough free disk space to continue transfers.
+   * Checks whether the device has enough free disk space to continue transfers, taking the space
+   * reserved by running downloads into account. Free space is re-read only periodically.
    *
-   * @return true if available space >= MIN_DISK_SPACE_BYTES, false otherwise
+   * @return true if unreserved space >= MIN_DISK_SPACE_BYTES, false otherwise
    */
   private boolean hasEnoughDiskSpace() {
-    boolean internalOk =
-        EnhancedFileUtils.hasEnoughDiskSpace(getApplicationContext().getFilesDir());
-    boolean externalOk =
-        EnhancedFileUtils.hasEnoughDiskSpace(android.os.Environment.getExternalStorageDirectory());
-    return internalOk && externalOk;
-  }
-
-  private AuthenticationContext createAuthContext(SmbConnection connection) {
-    String domain = connection.getDomain() != null ? connection.getDomain() : "";
-    String username = connection.getUsername() != null ? connection.getUsername() : "";
-    String password = connection.getPassword() != null ? connection.getPassword() : "";
-
-    if (username.isEmpty() && password.isEmpty()) {
-      return AuthenticationContext.guest();
-    }
-
-    return new AuthenticationContext(username, password.toCharArray(), domain);
-  }
-
-  /** Extracts the share name from the full share path. */
-  private String getShareName(String sharePath) {
-    if (sharePath == null || sharePath.isEmpty()) return "";
-
-    String path = sharePath;
-    while (path.startsWith("/") || path.startsWith("\\")) {
-      path = path.substring(1);
-    }
-
-    int slashIndex = path.indexOf('/');
-    if (slashIndex == -1) slashIndex = path.indexOf('\\');
-
-    return slashIndex == -1 ? path : path.substring(0, slashIndex);
+    return DiskSpaceAccountant.getInstance().hasSpace();
   }
 }
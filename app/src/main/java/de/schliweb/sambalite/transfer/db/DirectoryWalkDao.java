@@ -0,0 +1,53 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import java.util.List;
+
+/** Data Access Object for {@link DirectoryWalkEntry} entities. */
+@Dao
+public interface DirectoryWalkDao {
+
+  /** Inserts directories to expand. */
+  @Insert
+  void insertAll(@NonNull List<DirectoryWalkEntry> entries);
+
+  /** Returns the next directory to expand for a transfer (breadth first), or null if none. */
+  @Query("SELECT * FROM directory_walk WHERE transfer_id = :transferId ORDER BY id LIMIT 1")
+  @Nullable
+  DirectoryWalkEntry next(long transferId);
+
+  /** Returns the number of directories a transfer still has to expand. */
+  @Query("SELECT COUNT(*) FROM directory_walk WHERE transfer_id = :transferId")
+  int countForTransfer(long transferId);
+
+  /** Marks a directory as started. */
+  @Query("UPDATE directory_walk SET started = 1 WHERE id = :id")
+  void markStarted(long id);
+
+  /** Removes an expanded directory. */
+  @Query("DELETE FROM directory_walk WHERE id = :id")
+  void delete(long id);
+
+  /** Removes the walk of a transfer (e.g. after cancellation). */
+  @Query("DELETE FROM directory_walk WHERE transfer_id = :transferId")
+  void deleteForTransfer(long transferId);
+
+  /** Removes walks whose transfer was cancelled, finished or deleted. */
+  @Query(
+      "DELETE FROM directory_walk WHERE transfer_id NOT IN"
+          + " (SELECT id FROM pending_transfer WHERE status IN ('PENDING', 'ACTIVE', 'FAILED'))")
+  int deleteOrphaned();
+}
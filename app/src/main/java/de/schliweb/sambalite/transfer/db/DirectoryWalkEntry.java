@@ -0,0 +1,51 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Room entity representing a remote directory that a DOWNLOAD_DIRECTORY transfer still has to
+ * expand. The rows of one transfer form the persisted work queue of its tree walk, so a killed
+ * worker continues the walk where it stopped instead of listing the whole tree again.
+ */
+@Entity(
+    tableName = "directory_walk",
+    indices = {@Index(value = {"transfer_id"})})
+public class DirectoryWalkEntry {
+
+  @PrimaryKey(autoGenerate = true)
+  public long id;
+
+  /** ID of the DOWNLOAD_DIRECTORY transfer this directory belongs to. */
+  @ColumnInfo(name = "transfer_id")
+  public long transferId;
+
+  /** Remote path of the directory relative to the share root. */
+  @ColumnInfo(name = "remote_path")
+  @NonNull
+  public String remotePath = "";
+
+  /** SAF URI of the local directory the files are downloaded into. */
+  @ColumnInfo(name = "local_uri")
+  @NonNull
+  public String localUri = "";
+
+  /**
+   * True once expansion of the directory has begun. A started directory may already have part of
+   * its entries enqueued, so it is expanded again without creating duplicates.
+   */
+  @ColumnInfo(name = "started")
+  public boolean started;
+}
@@ -25,6 +25,25 @@ import androidx.room.PrimaryKey;
     indices = {@Index(value = {"status"}), @Index(value = {"connection_id", "status"})})
 public class PendingTransfer {
 
+  /** Priority of bulk transfers such as folder uploads and downloads. */
+  public static final int PRIORITY_LOW = 0;
+
+  /** Priority of transfers the user picked in the file browser. */
+  public static final int PRIORITY_NORMAL = 1;
+
+  /** Priority of single files the user is waiting for, e.g. a shared or opened file. */
+  public static final int PRIORITY_HIGH = 2;
+
+  /** A waiting transfer moves up one priority lane per this many milliseconds (30 minutes). */
+  public static final long LANE_AGING_MS = 30L * 60 * 1000;
+
+  /**
+   * Inside a lane smaller transfers go first; every minute of waiting counts as this many MB less,
+   * so a large file is not starved by a steady stream of small ones. A 1 GB file overtakes newly
+   * queued small files after about a quarter of an hour.
+   */
+  public static final long AGING_MB_PER_MINUTE = 64;
+
   @PrimaryKey(autoGenerate = true)
   public long id;
 
@@ -100,4 +119,16 @@ public class PendingTransfer {
   /** Sort order within a batch. */
   @ColumnInfo(name = "sort_order")
   public int sortOrder;
+
+  /** Scheduling lane: {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} or {@link #PRIORITY_HIGH}. */
+  @ColumnInfo(name = "priority", defaultValue = "1")
+  public int priority = PRIORITY_NORMAL;
+
+  /**
+   * Checksum of the transferred content as {@code "<algorithm>:<hex>"}, computed while copying when
+   * an integrity mode is enabled (null otherwise).
+   */
+  @ColumnInfo(name = "checksum")
+  @Nullable
+  public String checksum;
 }
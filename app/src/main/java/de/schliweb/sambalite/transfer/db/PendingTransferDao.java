@@ -94,6 +94,54 @@ public interface PendingTransferDao {
   @NonNull
   List<String> getConnectionsWithPendingWork();
 
+  /**
+   * Returns distinct connection IDs with transfers that may be started in a worker run that began
+   * at {@code since}. FAILED transfers that were already attempted in that run are left out.
+   */
+  @Query(
+      "SELECT DISTINCT connection_id FROM pending_transfer"
+          + " WHERE retry_count < max_retries"
+          + " AND (status = 'PENDING' OR (status = 'FAILED' AND updated_at < :since))")
+  @NonNull
+  List<String> getConnectionsWithStartableWork(long since);
+
+  /**
+   * Returns up to {@code limit} transfers of a connection that may be started in a worker run that
+   * began at {@code since}, in queue order: higher priority lanes first, and inside a lane the
+   * transfers with the fewest remaining bytes. Waiting until {@code now} ages a transfer into
+   * higher lanes ({@link PendingTransfer#LANE_AGING_MS}) and ahead of smaller files ({@link
+   * PendingTransfer#AGING_MB_PER_MINUTE}). Files of the same size keep their batch order.
+   */
+  @Query(
+      "SELECT * FROM pending_transfer WHERE connection_id = :connectionId"
+          + " AND retry_count < max_retries"
+          + " AND (status = 'PENDING' OR (status = 'FAILED' AND updated_at < :since))"
+          + " ORDER BY MIN(priority + (:now - created_at) / "
+          + PendingTransfer.LANE_AGING_MS
+          + ", "
+          + PendingTransfer.PRIORITY_HIGH
+          + ") DESC,"
+          + " MAX(file_size - bytes_transferred, 0) / 1048576"
+          + " - (:now - created_at) / 60000 * "
+          + PendingTransfer.AGING_MB_PER_MINUTE
+          + ", sort_order, created_at LIMIT :limit")
+  @NonNull
+  List<PendingTransfer> getStartableForConnection(
+      @NonNull String connectionId, long since, long now, int limit);
+
+  /** Moves transfers to another priority lane. */
+  @Query("UPDATE pending_transfer SET priority = :priority WHERE id IN (:ids)")
+  void updatePriority(@NonNull List<Long> ids, int priority);
+
+  /**
+   * Marks a PENDING or FAILED transfer ACTIVE. Returns 0 if its status changed meanwhile, e.g.
+   * because it was cancelled.
+   */
+  @Query(
+      "UPDATE pending_transfer SET status = 'ACTIVE', updated_at = :now"
+          + " WHERE id = :id AND status IN ('PENDING', 'FAILED')")
+  int claim(long id, long now);
+
   /** Observes the count of pending/active transfers (for badge display). */
   @Query("SELECT COUNT(*) FROM pending_transfer WHERE status IN ('PENDING', 'ACTIVE')")
   @NonNull
@@ -169,25 +217,21 @@ public interface PendingTransferDao {
   int cleanupOld(long olderThan);
 
   /**
-   * Resets ACTIVE transfers back to PENDING with retry count and progress reset (crash recovery on
-   * app start). Setting bytes_transferred to 0 is intentional for the current phase — it ensures
-   * that uploads and downloads always restart from the beginning after an unclean interruption
-   * (crash/reboot). This effectively disables the resume logic in {@code
-   * TransferWorker.processUpload()}.
+   * Resets ACTIVE transfers back to PENDING with retry count reset (crash recovery on app start).
+   * The progress is kept; the worker resumes behind the last block whose digest in {@link
+   * TransferBlockDao} still matches the partial file.
    */
   @Query(
-      "UPDATE pending_transfer SET status = 'PENDING', retry_count = 0, bytes_transferred = 0, updated_at = :now"
+      "UPDATE pending_transfer SET status = 'PENDING', retry_count = 0, updated_at = :now"
           + " WHERE status = 'ACTIVE'")
   int resetActiveToRetry(long now);
 
   /**
-   * Resets FAILED transfers back to PENDING with retry count and progress reset (for retry after
-   * reboot). Setting bytes_transferred to 0 is intentional for the current phase — it ensures that
-   * uploads and downloads always restart from the beginning. This effectively disables the resume
-   * logic in {@code TransferWorker.processUpload()}.
+   * Resets FAILED transfers back to PENDING with retry count reset (for retry after reboot). The
+   * progress is kept, so the worker can resume behind the last verified block.
    */
   @Query(
-      "UPDATE pending_transfer SET status = 'PENDING', retry_count = 0, bytes_transferred = 0, updated_at = :now"
+      "UPDATE pending_transfer SET status = 'PENDING', retry_count = 0, updated_at = :now"
           + " WHERE status = 'FAILED'")
   int resetFailedToRetry(long now);
 
@@ -197,6 +241,10 @@ public interface PendingTransferDao {
           + " WHERE id = :id AND status = 'ACTIVE'")
   void updateStatusIfActive(long id, @NonNull String status, long now);
 
+  /** Stores the checksum computed while copying a transfer. */
+  @Query("UPDATE pending_transfer SET checksum = :checksum WHERE id = :id")
+  void updateChecksum(long id, @Nullable String checksum);
+
   /** Returns the current status of a transfer (for cancellation checks during active transfer). */
   @Query("SELECT status FROM pending_transfer WHERE id = :id")
   @Nullable
@@ -206,6 +254,21 @@ public interface PendingTransferDao {
   @Query("DELETE FROM pending_transfer WHERE id IN (:ids)")
   void deleteByIds(@NonNull java.util.List<Long> ids);
 
+  /**
+   * Returns the remote paths of a batch's transfers below {@code prefix} (used to skip files that
+   * an interrupted directory walk already enqueued).
+   */
+  @Query(
+      "SELECT remote_path FROM pending_transfer WHERE batch_id = :batchId"
+          + " AND remote_path LIKE :prefix || '%'")
+  @NonNull
+  List<String> getRemotePathsInBatch(@NonNull String batchId, @NonNull String prefix);
+
+  /** Returns those of the given transfer IDs that still exist and are not cancelled. */
+  @Query("SELECT id FROM pending_transfer WHERE id IN (:ids) AND status != 'CANCELLED'")
+  @NonNull
+  List<Long> getNotCancelledIds(@NonNull List<Long> ids);
+
   /** Cancels multiple transfers by their IDs. */
   @Query("UPDATE pending_transfer SET status = 'CANCELLED', updated_at = :now WHERE id IN (:ids)")
   void cancelByIds(@NonNull java.util.List<Long> ids, long now);
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Room entity holding the digest of one fixed-size block of a transfer's committed prefix. Only
+ * blocks that were completely written to the target are recorded, so the rows of a transfer
+ * describe the longest prefix it can resume from after a crash or reboot.
+ */
+@Entity(
+    tableName = "transfer_block",
+    primaryKeys = {"transfer_id", "block_index"})
+public class TransferBlock {
+
+  /** ID of the transfer this block belongs to. */
+  @ColumnInfo(name = "transfer_id")
+  public long transferId;
+
+  /** Zero-based index of the block; the block covers {@code [index * size, (index + 1) * size)}. */
+  @ColumnInfo(name = "block_index")
+  public int blockIndex;
+
+  /** SHA-256 digest of the block content. */
+  @ColumnInfo(name = "digest")
+  @NonNull
+  public byte[] digest = new byte[0];
+}
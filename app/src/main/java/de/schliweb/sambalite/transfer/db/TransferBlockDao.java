@@ -0,0 +1,57 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer.db;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import java.util.List;
+
+/** Data Access Object for {@link TransferBlock} entities. */
+@Dao
+public interface TransferBlockDao {
+
+  /** Records block digests, replacing digests recorded by an earlier attempt. */
+  @Insert(onConflict = OnConflictStrategy.REPLACE)
+  void insertAll(@NonNull List<TransferBlock> blocks);
+
+  /** Returns the block with the highest index of a transfer, or null if none was recorded. */
+  @Query(
+      "SELECT * FROM transfer_block WHERE transfer_id = :transferId"
+          + " ORDER BY block_index DESC LIMIT 1")
+  @Nullable
+  TransferBlock getLast(long transferId);
+
+  /** Returns a block of a transfer, or null if it was not recorded. */
+  @Query(
+      "SELECT * FROM transfer_block WHERE transfer_id = :transferId"
+          + " AND block_index = :blockIndex")
+  @Nullable
+  TransferBlock get(long transferId, int blockIndex);
+
+  /** Removes the blocks of a transfer behind the given block (e.g. a shorter resume point). */
+  @Query(
+      "DELETE FROM transfer_block WHERE transfer_id = :transferId"
+          + " AND block_index > :blockIndex")
+  void deleteAfter(long transferId, int blockIndex);
+
+  /** Removes the digests of a transfer (e.g. when it restarts from the beginning). */
+  @Query("DELETE FROM transfer_block WHERE transfer_id = :transferId")
+  void deleteForTransfer(long transferId);
+
+  /** Removes digests whose transfer was completed, cancelled or deleted. */
+  @Query(
+      "DELETE FROM transfer_block WHERE transfer_id NOT IN"
+          + " (SELECT id FROM pending_transfer WHERE status IN ('PENDING', 'ACTIVE', 'FAILED'))")
+  int deleteOrphaned();
+}
@@ -14,21 +14,80 @@ import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 /** Room database for persistent transfer queue. Separate from the sync database. */
 @Database(
-    entities = {PendingTransfer.class},
-    version = 2,
+    entities = {PendingTransfer.class, DirectoryWalkEntry.class, TransferBlock.class},
+    version = 6,
     exportSchema = false)
 public abstract class TransferDatabase extends RoomDatabase {
 
   private static final String DATABASE_NAME = "sambalite_transfers.db";
   private static volatile TransferDatabase instance;
 
+  /**
+   * Adds the persisted walk queue of directory downloads. The transfer queue is migrated instead of
+   * dropped, so queued and interrupted transfers survive the update.
+   */
+  static final Migration MIGRATION_2_3 =
+      new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+          db.execSQL(
+              "CREATE TABLE IF NOT EXISTS `directory_walk` (`id` INTEGER PRIMARY KEY"
+                  + " AUTOINCREMENT NOT NULL, `transfer_id` INTEGER NOT NULL,"
+                  + " `remote_path` TEXT NOT NULL, `local_uri` TEXT NOT NULL,"
+                  + " `started` INTEGER NOT NULL)");
+          db.execSQL(
+              "CREATE INDEX IF NOT EXISTS `index_directory_walk_transfer_id`"
+                  + " ON `directory_walk` (`transfer_id`)");
+        }
+      };
+
+  /** Adds the block digests that interrupted transfers resume from. */
+  static final Migration MIGRATION_3_4 =
+      new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+          db.execSQL(
+              "CREATE TABLE IF NOT EXISTS `transfer_block` (`transfer_id` INTEGER NOT NULL,"
+                  + " `block_index` INTEGER NOT NULL, `digest` BLOB NOT NULL,"
+                  + " PRIMARY KEY(`transfer_id`, `block_index`))");
+        }
+      };
+
+  /** Adds the scheduling lane; queued transfers keep the normal lane. */
+  static final Migration MIGRATION_4_5 =
+      new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+          db.execSQL("ALTER TABLE pending_transfer ADD COLUMN priority INTEGER NOT NULL DEFAULT 1");
+        }
+      };
+
+  /** Adds the content checksum computed while copying. */
+  static final Migration MIGRATION_5_6 =
+      new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+          db.execSQL("ALTER TABLE pending_transfer ADD COLUMN checksum TEXT");
+        }
+      };
+
   /** Returns the DAO for pending transfer operations. */
   @NonNull
   public abstract PendingTransferDao pendingTransferDao();
 
+  /** Returns the DAO for the persisted walks of directory downloads. */
+  @NonNull
+  public abstract DirectoryWalkDao directoryWalkDao();
+
+  /** Returns the DAO for the block digests used to resume interrupted transfers. */
+  @NonNull
+  public abstract TransferBlockDao transferBlockDao();
+
   /** Returns the singleton database instance. */
   @NonNull
   public static TransferDatabase getInstance(@NonNull Context context) {
@@ -38,7 +97,10 @@ public abstract class TransferDatabase extends RoomDatabase {
           instance =
               Room.databaseBuilder(
                       context.getApplicationContext(), TransferDatabase.class, DATABASE_NAME)
+                  .addMigrations(MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6)
                   .fallbackToDestructiveMigration(true)
+                  // Lets TransferControlRegistry see cancellations written by other processes
+                  .enableMultiInstanceInvalidation()
                   .build();
         }
       }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.ui;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import de.schliweb.sambalite.cache.IntelligentCacheManager;
+import de.schliweb.sambalite.data.model.SmbConnection;
+import de.schliweb.sambalite.data.model.SmbDirectoryChange;
+import de.schliweb.sambalite.data.model.SmbFileItem;
+import de.schliweb.sambalite.data.repository.SmbRepository;
+import de.schliweb.sambalite.util.LogUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps SMB2 CHANGE_NOTIFY watches on the directory shown in the file browser and its closest
+ * ancestors, and keeps their cached file lists current.
+ *
+ * <p>Removals and entries reported together with their metadata are applied to the cached list
+ * directly. Any other notification (e.g. after the server's change buffer overflowed) lists the
+ * directory once. The updated list is handed to the {@link Listener}, so the UI reflects server
+ * changes without polling. Directories whose watch failed are remembered as unwatchable; callers
+ * fall back to validating the cache for them.
+ */
+public class DirectoryWatchService {
+
+  private static final String TAG = "DirectoryWatchService";
+
+  /**
+   * Number of watched directories: the current one and its closest ancestors. They share one
+   * session of the pool, see {@link SmbRepository#watchDirectory}.
+   */
+  static final int MAX_WATCHED = 3;
+
+  /** Receives the new content of a watched directory after it changed on the server. */
+  public interface Listener {
+    void onDirectoryChanged(
+        @NonNull SmbConnection connection, @NonNull String path, @NonNull List<SmbFileItem> files);
+  }
+
+  @NonNull private final SmbRepository smbRepository;
+  @NonNull private final Listener listener;
+  @NonNull private final Map<String, SmbRepository.DirectoryWatch> watches = new HashMap<>();
+  @NonNull private final Set<String> unwatchable = new HashSet<>();
+  @Nullable private SmbConnection connection;
+  @NonNull private String currentPath = "";
+
+  public DirectoryWatchService(@NonNull SmbRepository smbRepository, @NonNull Listener listener) {
+    this.smbRepository = smbRepository;
+    this.listener = listener;
+  }
+
+  /**
+   * Watches {@code path} and its closest ancestors on {@code connection}, and stops watches of
+   * directories that are no longer among them. Starting a watch opens the directory on the server,
+   * so this must not be called on the main thread.
+   */
+  public synchronized void watch(@NonNull SmbConnection connection, @NonNull String path) {
+    if (!isConnection(connection)) {
+      stop();
+      this.connection = connection;
+    }
+    currentPath = path;
+    List<String> wanted = pathsToWatch(path);
+    for (String watched : new ArrayList<>(watches.keySet())) {
+      if (!wanted.contains(watched)) {
+        watches.remove(watched).cancel();
+      }
+    }
+    for (String dir : wanted) {
+      if (watches.containsKey(dir) || unwatchable.contains(dir)) {
+        continue;
+      }
+      try {
+        SmbRepository.DirectoryWatch watch =
+            smbRepository.watchDirectory(
+                connection,
+                dir,
+                new SmbRepository.DirectoryChangeListener() {
+                  @Override
+                  public void onChanged(
+                      @NonNull String changedPath, @NonNull List<SmbDirectoryChange> changes) {
+                    applyChanges(connection, changedPath, changes);
+                  }
+
+                  @Override
+                  public void onWatchFailed(@NonNull String failedPath, @NonNull Exception error) {
+                    markUnwatchable(connection, failedPath);
+                  }
+                });
+        if (watch == null) {
+          unwatchable.add(dir);
+        } else {
+          watches.put(dir, watch);
+        }
+      } catch (Exception e) {
+        LogUtils.i(TAG, "Cannot watch " + displayPath(dir) + ": " + e.getMessage());
+        unwatchable.add(dir);
+      }
+    }
+  }
+
+  /** Returns true if changes of {@code path} on {@code connection} are reported by a watch. */
+  public synchronized boolean isWatching(@NonNull SmbConnection connection, @NonNull String path) {
+    return isConnection(connection) && watches.containsKey(path);
+  }
+
+  /** Stops all watches. */
+  public synchronized void stop() {
+    for (SmbRepository.DirectoryWatch watch : watches.values()) {
+      watch.cancel();
+    }
+    watches.clear();
+    unwatchable.clear();
+    connection = null;
+  }
+
+  private synchronized void markUnwatchable(SmbConnection connection, String path) {
+    if (isConnection(connection)) {
+      watches.remove(path);
+      unwatchable.add(path);
+    }
+  }
+
+  private synchronized boolean isCurrent(SmbConnection connection, String path) {
+    return isConnection(connection) && currentPath.equals(path);
+  }
+
+  /** Returns true if {@code connection} is the one being watched. Caller holds the lock. */
+  private boolean isConnection(SmbConnection connection) {
+    return this.connection != null && Objects.equals(this.connection.getId(), connection.getId());
+  }
+
+  /** Updates the cached list of {@code path} and notifies the listener (on the watch thread). */
+  private void applyChanges(
+      SmbConnection connection, String path, List<SmbDirectoryChange> changes) {
+    LogUtils.d(TAG, "Server reported " + changes.size() + " change(s) in " + displayPath(path));
+    IntelligentCacheManager cache = IntelligentCacheManager.getInstance();
+    cache.invalidateSearchCache(connection, path);
+    for (SmbDirectoryChange change : changes) {
+      if (change.isRemoval()) {
+        // A removed or renamed subdirectory's own listing is stale as well
+        cache.invalidateFileList(connection, childPath(path, change.getName()));
+      }
+    }
+
+    List<SmbFileItem> cached = cache.getCachedFileList(connection, path);
+    if (cached == null && !isCurrent(connection, path)) {
+      // Nothing cached and nothing shown: the next visit lists the directory anyway
+      return;
+    }
+    List<SmbFileItem> updated = cached != null ? applyDelta(cached, changes) : null;
+    cache.invalidateFileList(connection, path);
+    if (updated == null) {
+      try {
+        updated = smbRepository.listFiles(connection, path);
+      } catch (Exception e) {
+        LogUtils.w(TAG, "Re-listing " + displayPath(path) + " failed: " + e.getMessage());
+        return;
+      }
+    }
+    cache.cacheFileList(connection, path, updated);
+    listener.onDirectoryChanged(connection, path, updated);
+  }
+
+  /**
+   * Applies {@code changes} to a directory listing.
+   *
+   * @return the updated listing, or null if a change cannot be applied without listing the
+   *     directory again
+   */
+  @VisibleForTesting
+  static @Nullable List<SmbFileItem> applyDelta(
+      @NonNull List<SmbFileItem> files, @NonNull List<SmbDirectoryChange> changes) {
+    if (changes.isEmpty()) {
+      return null;
+    }
+    Map<String, SmbFileItem> byName = new LinkedHashMap<>();
+    for (SmbFileItem file : files) {
+      byName.put(file.getName(), file);
+    }
+    for (SmbDirectoryChange change : changes) {
+      if (change.isRemoval()) {
+        byName.remove(change.getName());
+      } else if (change.getItem() != null) {
+        byName.put(change.getName(), change.getItem());
+      } else {
+        return null;
+      }
+    }
+    return new ArrayList<>(byName.values());
+  }
+
+  /** Returns {@code path} followed by up to {@link #MAX_WATCHED} - 1 of its ancestors. */
+  @VisibleForTesting
+  static @NonNull List<String> pathsToWatch(@NonNull String path) {
+    List<String> paths = new ArrayList<>(MAX_WATCHED);
+    String dir = path;
+    while (paths.size() < MAX_WATCHED) {
+      paths.add(dir);
+      if (dir.isEmpty()) {
+        break;
+      }
+      int slash = dir.lastIndexOf('/');
+      dir = slash > 0 ? dir.substring(0, slash) : "";
+    }
+    return paths;
+  }
+
+  private static String childPath(String path, String name) {
+    return path.isEmpty() ? name : path + "/" + name;
+  }
+
+  private static String displayPath(String path) {
+    return path.isEmpty() ? "/" : path;
+  }
+}
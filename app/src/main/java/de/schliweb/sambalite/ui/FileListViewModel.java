@@ -42,6 +42,7 @@ public class FileListViewModel extends ViewModel {
   @NonNull private final ExecutorService executor;
   @NonNull private final FileBrowserState state;
   @NonNull private final BackgroundSmbManager backgroundSmbManager;
+  @NonNull private final DirectoryWatchService watchService;
 
   @NonNull
   private final Set<String> pendingValidations =
@@ -64,6 +65,7 @@ public class FileListViewModel extends ViewModel {
     this.state = state;
     this.backgroundSmbManager = backgroundSmbManager;
     this.executor = Executors.newFixedThreadPool(4);
+    this.watchService = new DirectoryWatchService(smbRepository, this::onDirectoryChanged);
     LogUtils.d("FileListViewModel", "FileListViewModel initialized");
   }
 
@@ -86,11 +88,26 @@ public class FileListViewModel extends ViewModel {
   @Override
   protected void onCleared() {
     super.onCleared();
+    watchService.stop();
     scheduler.shutdownNow();
     executor.shutdownNow();
     LogUtils.d("FileListViewModel", "Executors shutdown");
   }
 
+  /** Shows the new content of a watched directory if it is the one being browsed. */
+  private void onDirectoryChanged(
+      @NonNull SmbConnection connection, @NonNull String path, @NonNull List<SmbFileItem> files) {
+    SmbConnection current = state.getConnection();
+    if (current == null
+        || !connection.getId().equals(current.getId())
+        || !path.equals(state.getCurrentPathString())) {
+      return;
+    }
+    List<SmbFileItem> updated = new ArrayList<>(files);
+    sortFiles(updated);
+    state.setFiles(filterHiddenFiles(updated));
+  }
+
   public @Nullable SmbConnection getConnection() {
     return state.getConnection();
   }
@@ -444,8 +461,12 @@ public class FileListViewModel extends ViewModel {
                 state.setLoading(false);
               }
 
-              // Asynchronously validate the cache
-              validateCacheAsync(state.getConnection(), state.getCurrentPathString());
+              // A watched directory's cache is kept current by change notifications; validate
+              // the cache only for directories the server cannot watch
+              if (!watchService.isWatching(state.getConnection(), state.getCurrentPathString())) {
+                validateCacheAsync(state.getConnection(), state.getCurrentPathString());
+              }
+              watchService.watch(state.getConnection(), state.getCurrentPathString());
               return;
             }
 
@@ -472,6 +493,8 @@ public class FileListViewModel extends ViewModel {
             if (showLoadingIndicator) {
               state.setLoading(false);
             }
+
+            watchService.watch(state.getConnection(), state.getCurrentPathString());
           } catch (Exception e) {
             LogUtils.e("FileListViewModel", "Failed to load files: " + e.getMessage());
             state.setFiles(new ArrayList<>());
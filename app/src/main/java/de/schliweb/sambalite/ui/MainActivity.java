@@ -50,6 +50,8 @@ import de.schliweb.sambalite.security.BiometricAuthHelper;
 import de.schliweb.sambalite.sync.SyncConfig;
 import de.schliweb.sambalite.sync.SyncDirection;
 import de.schliweb.sambalite.sync.SyncManager;
+import de.schliweb.sambalite.sync.db.SyncPlanAction;
+import de.schliweb.sambalite.sync.db.SyncPlanSummary;
 import de.schliweb.sambalite.ui.adapters.DiscoveredServerAdapter;
 import de.schliweb.sambalite.ui.adapters.SharesAdapter;
 import de.schliweb.sambalite.ui.utils.LoadingIndicator;
@@ -57,6 +59,7 @@ import de.schliweb.sambalite.util.*;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import javax.inject.Inject;
 
 /**
@@ -746,6 +749,7 @@ public class MainActivity extends AppCompatActivity
     popup.getMenu().add(0, 1, 0, R.string.sync_now);
     popup.getMenu().add(0, 2, 1, R.string.sync_edit_option);
     popup.getMenu().add(0, 3, 2, R.string.sync_remove_option);
+    popup.getMenu().add(0, 4, 3, R.string.sync_preview_option);
 
     popup.setOnMenuItemClickListener(
         item -> {
@@ -760,12 +764,124 @@ public class MainActivity extends AppCompatActivity
           } else if (itemId == 3) {
             confirmDeleteSync(config);
             return true;
+          } else if (itemId == 4) {
+            previewSync(config);
+            return true;
           }
           return false;
         });
     popup.show();
   }
 
+  /** Maximum number of planned actions listed in the sync preview dialog. */
+  private static final int SYNC_PREVIEW_MAX_LINES = 100;
+
+  /**
+   * Runs a dry run of a sync configuration and shows the planned actions once it has finished.
+   *
+   * @param config The sync configuration to preview
+   */
+  private void previewSync(SyncConfig config) {
+    UUID workId = viewModel.previewSync(config.getId());
+    EnhancedUIUtils.showInfo(this, getString(R.string.sync_preview_running));
+
+    androidx.lifecycle.LiveData<WorkInfo> workInfo =
+        WorkManager.getInstance(this).getWorkInfoByIdLiveData(workId);
+    workInfo.observe(
+        this,
+        info -> {
+          if (info == null || !info.getState().isFinished()) {
+            return;
+          }
+          workInfo.removeObservers(this);
+          if (info.getState() != WorkInfo.State.SUCCEEDED) {
+            EnhancedUIUtils.showError(this, getString(R.string.sync_preview_failed));
+            return;
+          }
+          viewModel.loadSyncPreview(
+              config.getId(),
+              summary ->
+                  runOnUiThread(
+                      () -> {
+                        if (isFinishing() || isDestroyed()) {
+                          return;
+                        }
+                        if (summary == null) {
+                          EnhancedUIUtils.showError(this, getString(R.string.sync_preview_failed));
+                        } else {
+                          showSyncPreviewDialog(config, summary);
+                        }
+                      }));
+        });
+  }
+
+  /**
+   * Shows the planned actions of a sync preview and offers to run the sync.
+   *
+   * @param config The previewed sync configuration
+   * @param summary The stored plan of the preview
+   */
+  private void showSyncPreviewDialog(SyncConfig config, SyncPlanSummary summary) {
+    StringBuilder message = new StringBuilder();
+    if (summary.isEmpty()) {
+      message.append(getString(R.string.sync_preview_empty));
+    } else {
+      message.append(
+          getString(
+              R.string.sync_preview_summary,
+              summary.uploads,
+              EnhancedFileUtils.formatFileSize(summary.uploadBytes),
+              summary.downloads,
+              EnhancedFileUtils.formatFileSize(summary.downloadBytes),
+              summary.directories,
+              summary.trash));
+      message.append("\n");
+      int lines = 0;
+      for (SyncPlanAction action : summary.actions) {
+        if (lines == SYNC_PREVIEW_MAX_LINES) {
+          int more = summary.getTotal() - SYNC_PREVIEW_MAX_LINES;
+          message.append("\n").append(getString(R.string.sync_preview_more, more));
+          break;
+        }
+        message.append("\n").append(previewSymbol(action)).append(' ');
+        message.append(action.relativePath);
+        lines++;
+      }
+    }
+    if (summary.plan != null && summary.plan.mirrorNote != null) {
+      message
+          .append("\n\n")
+          .append(getString(R.string.sync_preview_mirror_skipped, summary.plan.mirrorNote));
+    }
+
+    new MaterialAlertDialogBuilder(this)
+        .setTitle(getString(R.string.sync_preview_title, config.getLocalFolderDisplayName()))
+        .setMessage(message.toString())
+        .setPositiveButton(
+            R.string.sync_now,
+            (dialog, which) -> {
+              viewModel.triggerSync(config.getId());
+              EnhancedUIUtils.showInfo(this, getString(R.string.sync_running));
+            })
+        .setNegativeButton(R.string.cancel, null)
+        .show();
+  }
+
+  /** Returns a short marker for the kind of a planned action in the sync preview. */
+  private static String previewSymbol(SyncPlanAction action) {
+    switch (action.kind) {
+      case SyncPlanAction.KIND_UPLOAD:
+        return "\u2191";
+      case SyncPlanAction.KIND_DOWNLOAD:
+        return "\u2193";
+      case SyncPlanAction.KIND_MKDIR_REMOTE:
+      case SyncPlanAction.KIND_MKDIR_LOCAL:
+        return "+";
+      default:
+        return "\u2212";
+    }
+  }
+
   /**
    * Shows a confirmation dialog before deleting a sync configuration.
    *
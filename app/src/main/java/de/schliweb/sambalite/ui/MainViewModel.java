@@ -19,9 +19,11 @@ import de.schliweb.sambalite.data.repository.ConnectionRepository;
 import de.schliweb.sambalite.data.repository.SmbRepository;
 import de.schliweb.sambalite.sync.SyncConfig;
 import de.schliweb.sambalite.sync.SyncManager;
+import de.schliweb.sambalite.sync.db.SyncPlanSummary;
 import de.schliweb.sambalite.util.LogUtils;
 import de.schliweb.sambalite.util.SmartErrorHandler;
 import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import javax.inject.Inject;
@@ -119,6 +121,37 @@ public class MainViewModel extends ViewModel {
         });
   }
 
+  /**
+   * Starts a dry run of a specific configuration that only plans the sync.
+   *
+   * @param configId The ID of the sync configuration to preview
+   * @return The ID of the preview work, to observe its state
+   */
+  public @NonNull UUID previewSync(@NonNull String configId) {
+    LogUtils.i("MainViewModel", "Triggering sync preview for config: " + configId);
+    return syncManager.triggerSyncPreview(configId);
+  }
+
+  /**
+   * Loads the stored sync preview of a configuration after the preview has finished.
+   *
+   * @param configId The ID of the sync configuration
+   * @param callback Receives the plan, or null if there is none
+   */
+  public void loadSyncPreview(@NonNull String configId, @NonNull SyncPreviewCallback callback) {
+    executor.execute(
+        () -> {
+          try {
+            callback.onResult(syncManager.getSyncPreviewSummary(configId));
+          } catch (Exception e) {
+            LogUtils.e("MainViewModel", "Failed to load sync preview: " + e.getMessage());
+            errorHandler.recordError(
+                e, "MainViewModel.loadSyncPreview", SmartErrorHandler.ErrorSeverity.MEDIUM);
+            callback.onResult(null);
+          }
+        });
+  }
+
   /**
    * Updates an existing sync configuration.
    *
@@ -326,6 +359,11 @@ public class MainViewModel extends ViewModel {
     void onResult(boolean success, @NonNull String message);
   }
 
+  /** Callback interface for sync previews. */
+  public interface SyncPreviewCallback {
+    void onResult(@Nullable SyncPlanSummary summary);
+  }
+
   /** Callback interface for share listing operations. */
   public interface ShareListCallback {
     void onSuccess(@NonNull List<String> shares);
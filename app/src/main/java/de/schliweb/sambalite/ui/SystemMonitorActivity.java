@@ -27,10 +27,16 @@ import de.schliweb.sambalite.SambaLiteApp;
 import de.schliweb.sambalite.cache.IntelligentCacheManager;
 import de.schliweb.sambalite.cache.statistics.CacheStatistics;
 import de.schliweb.sambalite.data.background.BackgroundSmbManager;
+import de.schliweb.sambalite.data.smb.BandwidthGovernor;
+import de.schliweb.sambalite.data.smb.BufferPool;
+import de.schliweb.sambalite.data.smb.SmbClientRegistry;
+import de.schliweb.sambalite.data.smb.SmbSessionPool;
+import de.schliweb.sambalite.data.smb.TransferTuner;
 import de.schliweb.sambalite.sync.SyncActionLog;
 import de.schliweb.sambalite.sync.db.SyncStateStore;
 import de.schliweb.sambalite.ui.operations.TransferActionLog;
 import de.schliweb.sambalite.ui.utils.LoadingIndicator;
+import de.schliweb.sambalite.util.DiskSpaceAccountant;
 import de.schliweb.sambalite.util.EnhancedFileUtils;
 import de.schliweb.sambalite.util.LogUtils;
 import de.schliweb.sambalite.util.SimplePerformanceMonitor;
@@ -343,6 +349,9 @@ public class SystemMonitorActivity extends AppCompatActivity {
         .append("\n")
         .append("- Free: ")
         .append(EnhancedFileUtils.formatFileSize(externalFree))
+        .append("\n")
+        .append("Download Reservations: ")
+        .append(DiskSpaceAccountant.getInstance().describe())
         .append("\n");
 
     // Minimum required space warning
@@ -472,6 +481,46 @@ public class SystemMonitorActivity extends AppCompatActivity {
     status.append("=== Network Status ===\n");
     status.append("Network monitoring handled by system ConnectivityManager\n");
 
+    SmbClientRegistry clients = SmbClientRegistry.getInstance();
+    SmbSessionPool sessions = SmbSessionPool.getInstance();
+    status.append("SMB Clients: ").append(clients.getLiveClientCount()).append("\n");
+    status.append("- Live Transports: ").append(clients.getLiveTransportCount()).append("\n");
+    status
+        .append("- Async Transport Factories: ")
+        .append(clients.getLiveTransportFactoryCount())
+        .append("\n");
+    status
+        .append("SMB Sessions: ")
+        .append(sessions.getOpenSessionCount())
+        .append(" open, ")
+        .append(sessions.getLeaseCount())
+        .append(" in use\n");
+    for (String window : TransferTuner.getInstance().describe()) {
+      status.append("- Window ").append(window).append("\n");
+    }
+    for (String allocation : BandwidthGovernor.getInstance().describe()) {
+      status.append("- Bandwidth ").append(allocation).append("\n");
+    }
+    BufferPool buffers = BufferPool.getInstance();
+    status
+        .append("Transfer Buffers: ")
+        .append(buffers.getLeasedBytes() / (1024 * 1024))
+        .append(" MB in use, ")
+        .append(buffers.getIdleBytes() / (1024 * 1024))
+        .append(" MB idle, peak ")
+        .append(buffers.getPeakBytes() / (1024 * 1024))
+        .append("/")
+        .append(buffers.getMaxBytes() / (1024 * 1024))
+        .append(" MB\n");
+    status
+        .append("- Pool Hits/Misses: ")
+        .append(buffers.getHits())
+        .append("/")
+        .append(buffers.getMisses())
+        .append(", over cap: ")
+        .append(buffers.getOverflows())
+        .append("\n");
+
     return status.toString();
   }
 
@@ -30,6 +30,7 @@ import de.schliweb.sambalite.R;
 import de.schliweb.sambalite.transfer.db.PendingTransfer;
 import de.schliweb.sambalite.ui.adapters.TransferItemAdapter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -201,7 +202,8 @@ public class TransferQueueActivity extends AppCompatActivity
     String[] items = {
       getString(R.string.transfer_retry),
       getString(R.string.transfer_cancel),
-      getString(R.string.transfer_remove)
+      getString(R.string.transfer_remove),
+      getString(R.string.transfer_priority)
     };
 
     new MaterialAlertDialogBuilder(this)
@@ -220,6 +222,9 @@ public class TransferQueueActivity extends AppCompatActivity
                 case 2:
                   viewModel.removeTransfers(selectedIds);
                   break;
+                case 3:
+                  showPriorityDialog(new HashSet<>(selectedIds), PendingTransfer.PRIORITY_NORMAL);
+                  break;
               }
               clearSelection();
             })
@@ -275,6 +280,12 @@ public class TransferQueueActivity extends AppCompatActivity
       case 2: // by status
         sorted.sort(Comparator.comparingInt(this::statusOrder));
         break;
+      case 3: // by priority, then smallest remaining size
+        sorted.sort(
+            Comparator.comparingInt((PendingTransfer t) -> t.priority)
+                .reversed()
+                .thenComparingLong(t -> Math.max(t.fileSize - t.bytesTransferred, 0)));
+        break;
     }
     return sorted;
   }
@@ -308,6 +319,8 @@ public class TransferQueueActivity extends AppCompatActivity
       sortGroup.check(R.id.radio_date);
     } else if (currentSort == 2) {
       sortGroup.check(R.id.radio_status);
+    } else if (currentSort == 3) {
+      sortGroup.check(R.id.radio_priority);
     }
 
     hideCompletedSwitch.setChecked(hideCompleted);
@@ -324,6 +337,8 @@ public class TransferQueueActivity extends AppCompatActivity
                 currentSort = 1;
               } else if (checkedId == R.id.radio_status) {
                 currentSort = 2;
+              } else if (checkedId == R.id.radio_priority) {
+                currentSort = 3;
               }
 
               hideCompleted = hideCompletedSwitch.isChecked();
@@ -385,7 +400,8 @@ public class TransferQueueActivity extends AppCompatActivity
     String[] items = {
       getString(R.string.transfer_retry),
       getString(R.string.transfer_cancel),
-      getString(R.string.transfer_remove)
+      getString(R.string.transfer_remove),
+      getString(R.string.transfer_priority)
     };
 
     new MaterialAlertDialogBuilder(this)
@@ -403,9 +419,42 @@ public class TransferQueueActivity extends AppCompatActivity
                 case 2:
                   viewModel.removeTransfer(transfer.id);
                   break;
+                case 3:
+                  showPriorityDialog(Collections.singleton(transfer.id), transfer.priority);
+                  break;
               }
             })
         .setNegativeButton(R.string.cancel, null)
         .show();
   }
+
+  /** Lets the user move transfers to another scheduling lane. */
+  private void showPriorityDialog(Set<Long> ids, int current) {
+    int[] priorities = {
+      PendingTransfer.PRIORITY_HIGH, PendingTransfer.PRIORITY_NORMAL, PendingTransfer.PRIORITY_LOW
+    };
+    String[] items = {
+      getString(R.string.transfer_priority_high),
+      getString(R.string.transfer_priority_normal),
+      getString(R.string.transfer_priority_low)
+    };
+    int checked = 1;
+    for (int i = 0; i < priorities.length; i++) {
+      if (priorities[i] == current) {
+        checked = i;
+      }
+    }
+
+    new MaterialAlertDialogBuilder(this)
+        .setTitle(R.string.transfer_priority)
+        .setSingleChoiceItems(
+            items,
+            checked,
+            (dialog, which) -> {
+              viewModel.setPriority(ids, priorities[which]);
+              dialog.dismiss();
+            })
+        .setNegativeButton(R.string.cancel, null)
+        .show();
+  }
 }
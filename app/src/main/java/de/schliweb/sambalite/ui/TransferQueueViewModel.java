@@ -19,6 +19,7 @@ import androidx.work.ExistingWorkPolicy;
 import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
+import de.schliweb.sambalite.transfer.TransferControlRegistry;
 import de.schliweb.sambalite.transfer.TransferWorker;
 import de.schliweb.sambalite.transfer.db.PendingTransfer;
 import de.schliweb.sambalite.transfer.db.PendingTransferDao;
@@ -103,7 +104,11 @@ public class TransferQueueViewModel extends AndroidViewModel {
   /** Cancels a single transfer. */
   public void cancelTransfer(long id) {
     executor.execute(
-        () -> dao.cancelByIds(java.util.Collections.singletonList(id), System.currentTimeMillis()));
+        () -> {
+          List<Long> ids = java.util.Collections.singletonList(id);
+          dao.cancelByIds(ids, System.currentTimeMillis());
+          TransferControlRegistry.getInstance().cancel(ids);
+        });
   }
 
   /** Cancels all pending/active transfers and stops the running worker. */
@@ -111,6 +116,7 @@ public class TransferQueueViewModel extends AndroidViewModel {
     executor.execute(
         () -> {
           dao.cancelAll(System.currentTimeMillis());
+          TransferControlRegistry.getInstance().cancelAll();
           WorkManager.getInstance(getApplication()).cancelUniqueWork("transfer_queue");
         });
   }
@@ -136,7 +142,12 @@ public class TransferQueueViewModel extends AndroidViewModel {
 
   /** Removes a transfer from the database permanently. */
   public void removeTransfer(long id) {
-    executor.execute(() -> dao.deleteByIds(java.util.Collections.singletonList(id)));
+    executor.execute(
+        () -> {
+          List<Long> ids = java.util.Collections.singletonList(id);
+          dao.deleteByIds(ids);
+          TransferControlRegistry.getInstance().cancel(ids);
+        });
   }
 
   /** Removes multiple transfers by their IDs. */
@@ -147,6 +158,7 @@ public class TransferQueueViewModel extends AndroidViewModel {
         () -> {
           Log.d(TAG, "removeTransfers: starting execution for ids=" + idsCopy);
           dao.deleteByIds(idsCopy);
+          TransferControlRegistry.getInstance().cancel(idsCopy);
           Log.d(TAG, "removeTransfers: execution finished");
         });
   }
@@ -165,6 +177,15 @@ public class TransferQueueViewModel extends AndroidViewModel {
         });
   }
 
+  /**
+   * Moves multiple transfers to another scheduling lane. Takes effect the next time the worker
+   * picks transfers; running transfers are not interrupted.
+   */
+  public void setPriority(@NonNull Set<Long> ids, int priority) {
+    List<Long> idsCopy = new java.util.ArrayList<>(ids);
+    executor.execute(() -> dao.updatePriority(idsCopy, priority));
+  }
+
   /** Starts the TransferWorker to process pending transfers. */
   private void startTransferWorker() {
     OneTimeWorkRequest request =
@@ -185,6 +206,7 @@ public class TransferQueueViewModel extends AndroidViewModel {
           Log.d(TAG, "cancelTransfers: starting execution for ids=" + idsCopy);
           long now = System.currentTimeMillis();
           dao.cancelByIds(idsCopy, now);
+          TransferControlRegistry.getInstance().cancel(idsCopy);
           WorkManager.getInstance(getApplication()).cancelUniqueWork("transfer_queue");
           Log.d(TAG, "cancelTransfers: execution finished");
         });
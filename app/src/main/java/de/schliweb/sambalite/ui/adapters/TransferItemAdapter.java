@@ -9,6 +9,7 @@
  */
 package de.schliweb.sambalite.ui.adapters;
 
+import android.content.Context;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -75,7 +76,8 @@ public class TransferItemAdapter
           return oldItem.id == newItem.id
               && oldItem.bytesTransferred == newItem.bytesTransferred
               && oldItem.status.equals(newItem.status)
-              && oldItem.retryCount == newItem.retryCount;
+              && oldItem.retryCount == newItem.retryCount
+              && oldItem.priority == newItem.priority;
         }
       };
 
@@ -177,7 +179,7 @@ public class TransferItemAdapter
 
       switch (item.status) {
         case "PENDING":
-          status.setText(R.string.transfer_status_pending);
+          bindPendingStatus(item);
           statusBadge.setVisibility(View.GONE);
           bindSize(item);
           break;
@@ -212,6 +214,24 @@ public class TransferItemAdapter
       }
     }
 
+    /** Shows the pending status, plus the lane if the transfer is not in the normal one. */
+    private void bindPendingStatus(PendingTransfer item) {
+      if (item.priority == PendingTransfer.PRIORITY_NORMAL) {
+        status.setText(R.string.transfer_status_pending);
+        return;
+      }
+      Context ctx = itemView.getContext();
+      int lane =
+          item.priority > PendingTransfer.PRIORITY_NORMAL
+              ? R.string.transfer_priority_high
+              : R.string.transfer_priority_low;
+      status.setText(
+          ctx.getString(
+              R.string.transfer_status_priority_format,
+              ctx.getString(R.string.transfer_status_pending),
+              ctx.getString(lane)));
+    }
+
     private void bindActiveState(PendingTransfer item) {
       if (item.fileSize > 0) {
         status.setText(R.string.transfer_status_active);
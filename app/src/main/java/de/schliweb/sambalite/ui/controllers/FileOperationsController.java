@@ -16,11 +16,13 @@ import androidx.annotation.Nullable;
 import androidx.documentfile.provider.DocumentFile;
 import de.schliweb.sambalite.data.background.BackgroundSmbManager;
 import de.schliweb.sambalite.data.model.SmbFileItem;
+import de.schliweb.sambalite.transfer.db.PendingTransfer;
 import de.schliweb.sambalite.transfer.db.PendingTransferDao;
 import de.schliweb.sambalite.transfer.db.TransferDatabase;
 import de.schliweb.sambalite.ui.FileListViewModel;
 import de.schliweb.sambalite.ui.operations.FileOperationsViewModel;
 import de.schliweb.sambalite.util.LogUtils;
+import de.schliweb.sambalite.util.SafTreeEnumerator;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
@@ -193,7 +195,12 @@ public class FileOperationsController {
 
     // Enqueue into persistent transfer queue — no blocking dialog
     operationsViewModel.enqueueDownload(
-        uri, remotePath, displayName, fileSize, java.util.UUID.randomUUID().toString());
+        uri,
+        remotePath,
+        displayName,
+        fileSize,
+        java.util.UUID.randomUUID().toString(),
+        PendingTransfer.PRIORITY_HIGH);
 
     if (progressCallback != null) {
       progressCallback.showSuccess(
@@ -300,7 +307,8 @@ public class FileOperationsController {
       long fileSize,
       String batchId,
       @Nullable String reason) {
-    operationsViewModel.enqueueUpload(uri, remotePath, fileName, fileSize, batchId);
+    operationsViewModel.enqueueUpload(
+        uri, remotePath, fileName, fileSize, batchId, PendingTransfer.PRIORITY_HIGH);
     showSuccess(context.getString(de.schliweb.sambalite.R.string.transfer_added_to_queue));
     String suffix = reason != null ? " (" + reason + ")" : "";
     LogUtils.i(
@@ -357,7 +365,8 @@ public class FileOperationsController {
               String basePath = fileListViewModel.getCurrentPathInternal();
               if (basePath == null) basePath = "";
               java.util.List<FileToUpload> allFiles = new java.util.ArrayList<>();
-              scanFolderFiles(docFolder, basePath, "", allFiles);
+              scanFolderFiles(
+                  new SafTreeEnumerator(context), docFolder.getUri(), basePath, "", allFiles);
 
               if (allFiles.isEmpty()) {
                 new android.os.Handler(android.os.Looper.getMainLooper())
@@ -399,7 +408,12 @@ public class FileOperationsController {
                                   continue;
                                 }
                                 operationsViewModel.enqueueUpload(
-                                    f.uri, f.remotePath, f.displayName, f.fileSize, batchId);
+                                    f.uri,
+                                    f.remotePath,
+                                    f.displayName,
+                                    f.fileSize,
+                                    batchId,
+                                    PendingTransfer.PRIORITY_LOW);
                                 count++;
                               }
                               if (count > 0) {
@@ -525,23 +539,24 @@ public class FileOperationsController {
     }
   }
 
-  /** Recursively scans a DocumentFile folder and collects file info for existence checking. */
+  /**
+   * Recursively scans a SAF folder and collects file info for existence checking. Each directory is
+   * listed with a single provider query.
+   */
   private void scanFolderFiles(
-      DocumentFile folder,
+      SafTreeEnumerator localTree,
+      Uri folder,
       String remoteBasePath,
       String relativePath,
       java.util.List<FileToUpload> result) {
-    DocumentFile[] files = folder.listFiles();
-    if (files == null) return;
-
-    for (DocumentFile file : files) {
+    for (SafTreeEnumerator.Entry file : localTree.list(folder)) {
       String fileName = file.getName();
       if (fileName == null) continue;
 
       String currentRelative = relativePath.isEmpty() ? fileName : relativePath + "/" + fileName;
 
       if (file.isDirectory()) {
-        scanFolderFiles(file, remoteBasePath, currentRelative, result);
+        scanFolderFiles(localTree, file.getUri(), remoteBasePath, currentRelative, result);
       } else if (file.isFile()) {
         String remotePath =
             remoteBasePath.isEmpty() ? currentRelative : remoteBasePath + "/" + currentRelative;
@@ -611,7 +626,12 @@ public class FileOperationsController {
                                   continue;
                                 }
                                 operationsViewModel.enqueueUpload(
-                                    f.uri, f.remotePath, f.displayName, f.fileSize, batchId);
+                                    f.uri,
+                                    f.remotePath,
+                                    f.displayName,
+                                    f.fileSize,
+                                    batchId,
+                                    PendingTransfer.PRIORITY_NORMAL);
                                 count++;
                               }
                               if (count > 0) {
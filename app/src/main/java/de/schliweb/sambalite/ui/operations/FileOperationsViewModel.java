@@ -37,6 +37,7 @@ import de.schliweb.sambalite.ui.FileListViewModel;
 import de.schliweb.sambalite.ui.utils.ProgressFormat;
 import de.schliweb.sambalite.util.LogUtils;
 import de.schliweb.sambalite.util.OpenFileCacheManager;
+import de.schliweb.sambalite.util.SafTreeEnumerator;
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
@@ -973,13 +974,15 @@ public class FileOperationsViewModel extends ViewModel {
    * @param displayName human-readable file name for the queue UI
    * @param fileSize file size in bytes (0 if unknown)
    * @param batchId batch identifier grouping related transfers
+   * @param priority scheduling lane, one of the {@code PendingTransfer.PRIORITY_*} constants
    */
   public void enqueueUpload(
       @NonNull Uri sourceUri,
       @NonNull String remotePath,
       @NonNull String displayName,
       long fileSize,
-      @NonNull String batchId) {
+      @NonNull String batchId,
+      int priority) {
     safeExecute(
         () -> {
           if (state.getConnection() == null) {
@@ -1001,6 +1004,7 @@ public class FileOperationsViewModel extends ViewModel {
           transfer.createdAt = System.currentTimeMillis();
           transfer.updatedAt = System.currentTimeMillis();
           transfer.batchId = batchId;
+          transfer.priority = priority;
 
           long id = dao.insert(transfer);
           LogUtils.i(
@@ -1036,7 +1040,14 @@ public class FileOperationsViewModel extends ViewModel {
           }
 
           List<PendingTransfer> transfers = new ArrayList<>();
-          scanFolderForQueue(folder, state.getCurrentPathString(), "", transfers, batchId, 0);
+          scanFolderForQueue(
+              new SafTreeEnumerator(context),
+              folder.getUri(),
+              state.getCurrentPathString(),
+              "",
+              transfers,
+              batchId,
+              0);
 
           if (transfers.isEmpty()) {
             LogUtils.i("FileOperationsViewModel", "No files found in folder for upload");
@@ -1055,26 +1066,34 @@ public class FileOperationsViewModel extends ViewModel {
     return batchId;
   }
 
-  /** Recursively scans a DocumentFile folder and builds PendingTransfer entries for each file. */
+  /**
+   * Recursively scans a SAF folder and builds PendingTransfer entries for each file. Each directory
+   * is listed with a single provider query.
+   */
   private void scanFolderForQueue(
-      DocumentFile folder,
+      SafTreeEnumerator localTree,
+      Uri folder,
       String remoteBasePath,
       String relativePath,
       List<PendingTransfer> transfers,
       String batchId,
       int sortOrderStart) {
-    DocumentFile[] files = folder.listFiles();
-    if (files == null) return;
-
     int sortOrder = sortOrderStart;
-    for (DocumentFile file : files) {
+    for (SafTreeEnumerator.Entry file : localTree.list(folder)) {
       String fileName = file.getName();
       if (fileName == null) continue;
 
       String currentRelative = relativePath.isEmpty() ? fileName : relativePath + "/" + fileName;
 
       if (file.isDirectory()) {
-        scanFolderForQueue(file, remoteBasePath, currentRelative, transfers, batchId, sortOrder);
+        scanFolderForQueue(
+            localTree,
+            file.getUri(),
+            remoteBasePath,
+            currentRelative,
+            transfers,
+            batchId,
+            sortOrder);
       } else if (file.isFile()) {
         PendingTransfer t = new PendingTransfer();
         t.transferType = "UPLOAD";
@@ -1090,6 +1109,7 @@ public class FileOperationsViewModel extends ViewModel {
         t.updatedAt = System.currentTimeMillis();
         t.batchId = batchId;
         t.sortOrder = sortOrder++;
+        t.priority = PendingTransfer.PRIORITY_LOW;
         transfers.add(t);
       }
     }
@@ -1130,6 +1150,7 @@ public class FileOperationsViewModel extends ViewModel {
           t.updatedAt = System.currentTimeMillis();
           t.batchId = batchId;
           t.sortOrder = 0;
+          t.priority = PendingTransfer.PRIORITY_LOW;
 
           PendingTransferDao dao = TransferDatabase.getInstance(context).pendingTransferDao();
           dao.insertAll(java.util.Collections.singletonList(t));
@@ -1197,6 +1218,7 @@ public class FileOperationsViewModel extends ViewModel {
               t.updatedAt = System.currentTimeMillis();
               t.batchId = batchId;
               t.sortOrder = sortOrder++;
+              t.priority = PendingTransfer.PRIORITY_LOW;
               transfers.add(t);
             } else if (file.isFile()) {
               String mimeType = "application/octet-stream";
@@ -1253,13 +1275,15 @@ public class FileOperationsViewModel extends ViewModel {
    * @param displayName human-readable file name for the queue UI
    * @param fileSize file size in bytes (0 if unknown)
    * @param batchId batch identifier grouping related transfers
+   * @param priority scheduling lane, one of the {@code PendingTransfer.PRIORITY_*} constants
    */
   public void enqueueDownload(
       @NonNull Uri targetUri,
       @NonNull String remotePath,
       @NonNull String displayName,
       long fileSize,
-      @NonNull String batchId) {
+      @NonNull String batchId,
+      int priority) {
     safeExecute(
         () -> {
           if (state.getConnection() == null) {
@@ -1281,6 +1305,7 @@ public class FileOperationsViewModel extends ViewModel {
           transfer.createdAt = System.currentTimeMillis();
           transfer.updatedAt = System.currentTimeMillis();
           transfer.batchId = batchId;
+          transfer.priority = priority;
 
           long id = dao.insert(transfer);
           LogUtils.i(
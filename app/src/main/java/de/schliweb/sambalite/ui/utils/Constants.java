@@ -18,6 +18,18 @@ public class Constants {
   public static final String PREF_CURRENT_SMB_CONNECTION_ID = "current_smb_connection_id";
   public static final String NEEDS_REFRESH = "needs_refresh";
   public static final String PREF_LAST_DOWNLOAD_FOLDER_URI = "last_download_folder_uri";
+  public static final String PREF_TRANSFER_MAX_CONNECTIONS = "transfer_max_connections";
+  public static final String PREF_TRANSFER_PER_CONNECTION = "transfer_per_connection";
+  public static final String PREF_TRANSFER_MAX_TOTAL = "transfer_max_total";
+  public static final String PREF_BANDWIDTH_CAP_METERED = "bandwidth_cap_metered_kbps";
+  public static final String PREF_BANDWIDTH_CAP_UNMETERED = "bandwidth_cap_unmetered_kbps";
+  public static final String PREF_BANDWIDTH_CAP_SERVER_PREFIX = "bandwidth_cap_kbps_";
+  public static final String PREF_TRANSFER_WINDOW_PREFIX = "transfer_window_";
+  public static final String PREF_TRANSFER_CHECKSUM = "transfer_checksum";
+  public static final String PREF_TRANSFER_VERIFY_UPLOADS = "transfer_verify_uploads";
+  public static final String PREF_SYNC_LIST_CONCURRENCY = "sync_list_concurrency";
+  public static final String PREF_SYNC_TRANSFER_CONCURRENCY = "sync_transfer_concurrency";
+  public static final String PREF_SYNC_FULL_WALK_INTERVAL = "sync_full_walk_interval";
 
   /** Private constructor to prevent instantiation. */
   private Constants() {
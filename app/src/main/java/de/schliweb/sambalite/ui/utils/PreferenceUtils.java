@@ -10,6 +10,8 @@
 package de.schliweb.sambalite.ui.utils;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
 import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -22,6 +24,33 @@ public class PreferenceUtils {
 
   private static final String PREF_NAME = "sambalite_prefs";
 
+  /** Default number of connections the transfer queue serves at the same time. */
+  public static final int DEFAULT_TRANSFER_MAX_CONNECTIONS = 2;
+
+  /** Default number of concurrent transfers per connection. */
+  public static final int DEFAULT_TRANSFER_PER_CONNECTION = 3;
+
+  /** Default number of concurrent transfers overall. */
+  public static final int DEFAULT_TRANSFER_MAX_TOTAL = 6;
+
+  /** Default number of directories folder sync lists concurrently. */
+  public static final int DEFAULT_SYNC_LIST_CONCURRENCY = 4;
+
+  /** Upper bound for the number of directories folder sync lists concurrently. */
+  public static final int MAX_SYNC_LIST_CONCURRENCY = 16;
+
+  /** Default number of files folder sync transfers concurrently. */
+  public static final int DEFAULT_SYNC_TRANSFER_CONCURRENCY = 2;
+
+  /** Upper bound for the number of files folder sync transfers concurrently. */
+  public static final int MAX_SYNC_TRANSFER_CONCURRENCY = 8;
+
+  /** Default number of syncs after which a one-way sync compares every directory again. */
+  public static final int DEFAULT_SYNC_FULL_WALK_INTERVAL = 10;
+
+  /** Upper bound for the number of syncs between two full walks. */
+  public static final int MAX_SYNC_FULL_WALK_INTERVAL = 100;
+
   /** Private constructor to prevent instantiation. */
   private PreferenceUtils() {
     // Private constructor to prevent instantiation
@@ -144,4 +173,343 @@ public class PreferenceUtils {
             .getString(Constants.PREF_LAST_DOWNLOAD_FOLDER_URI, null);
     return uriString != null ? Uri.parse(uriString) : null;
   }
+
+  /**
+   * Returns how many connections the transfer queue serves at the same time.
+   *
+   * @param context the application context
+   * @return the maximum number of concurrently used connections
+   */
+  public static int getTransferMaxConnections(@NonNull Context context) {
+    return context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .getInt(Constants.PREF_TRANSFER_MAX_CONNECTIONS, DEFAULT_TRANSFER_MAX_CONNECTIONS);
+  }
+
+  /**
+   * Sets how many connections the transfer queue serves at the same time.
+   *
+   * @param context the application context
+   * @param value the maximum number of concurrently used connections
+   */
+  public static void setTransferMaxConnections(@NonNull Context context, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(Constants.PREF_TRANSFER_MAX_CONNECTIONS, value)
+        .apply();
+  }
+
+  /**
+   * Returns how many transfers of one connection run at the same time.
+   *
+   * @param context the application context
+   * @return the maximum number of concurrent transfers per connection
+   */
+  public static int getTransferPerConnection(@NonNull Context context) {
+    return context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .getInt(Constants.PREF_TRANSFER_PER_CONNECTION, DEFAULT_TRANSFER_PER_CONNECTION);
+  }
+
+  /**
+   * Sets how many transfers of one connection run at the same time.
+   *
+   * @param context the application context
+   * @param value the maximum number of concurrent transfers per connection
+   */
+  public static void setTransferPerConnection(@NonNull Context context, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(Constants.PREF_TRANSFER_PER_CONNECTION, value)
+        .apply();
+  }
+
+  /**
+   * Returns how many transfers run at the same time overall.
+   *
+   * @param context the application context
+   * @return the maximum number of concurrent transfers
+   */
+  public static int getTransferMaxTotal(@NonNull Context context) {
+    return context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .getInt(Constants.PREF_TRANSFER_MAX_TOTAL, DEFAULT_TRANSFER_MAX_TOTAL);
+  }
+
+  /**
+   * Sets how many transfers run at the same time overall.
+   *
+   * @param context the application context
+   * @param value the maximum number of concurrent transfers
+   */
+  public static void setTransferMaxTotal(@NonNull Context context, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(Constants.PREF_TRANSFER_MAX_TOTAL, value)
+        .apply();
+  }
+
+  /**
+   * Returns the bandwidth cap for SMB transfers on metered or unmetered networks.
+   *
+   * @param context the application context
+   * @param metered true for metered networks (e.g. mobile data)
+   * @return the cap in KB/s, 0 for no cap
+   */
+  public static int getBandwidthCapKbps(@NonNull Context context, boolean metered) {
+    return context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .getInt(
+            metered ? Constants.PREF_BANDWIDTH_CAP_METERED : Constants.PREF_BANDWIDTH_CAP_UNMETERED,
+            0);
+  }
+
+  /**
+   * Sets the bandwidth cap for SMB transfers on metered or unmetered networks.
+   *
+   * @param context the application context
+   * @param metered true for metered networks (e.g. mobile data)
+   * @param value the cap in KB/s, 0 for no cap
+   */
+  public static void setBandwidthCapKbps(@NonNull Context context, boolean metered, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(
+            metered ? Constants.PREF_BANDWIDTH_CAP_METERED : Constants.PREF_BANDWIDTH_CAP_UNMETERED,
+            value)
+        .apply();
+  }
+
+  /**
+   * Returns the bandwidth cap for SMB transfers to one server.
+   *
+   * @param context the application context
+   * @param serverId host:port of the server
+   * @return the cap in KB/s, 0 for no cap
+   */
+  public static int getServerBandwidthCapKbps(@NonNull Context context, @NonNull String serverId) {
+    return context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .getInt(Constants.PREF_BANDWIDTH_CAP_SERVER_PREFIX + serverId, 0);
+  }
+
+  /**
+   * Sets the bandwidth cap for SMB transfers to one server.
+   *
+   * @param context the application context
+   * @param serverId host:port of the server
+   * @param value the cap in KB/s, 0 for no cap
+   */
+  public static void setServerBandwidthCapKbps(
+      @NonNull Context context, @NonNull String serverId, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(Constants.PREF_BANDWIDTH_CAP_SERVER_PREFIX + serverId, value)
+        .apply();
+  }
+
+  /**
+   * Returns the transfer window learned for one server and direction.
+   *
+   * @param context the application context
+   * @param key direction and host:port of the server
+   * @param chunkSize chunk size the window is used with
+   * @return the number of outstanding requests, 0 if none was learned for this chunk size
+   */
+  public static int getLearnedTransferWindow(
+      @NonNull Context context, @NonNull String key, int chunkSize) {
+    SharedPreferences prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+    String prefix = Constants.PREF_TRANSFER_WINDOW_PREFIX + key;
+    if (prefs.getInt(prefix + "_chunk", 0) != chunkSize) {
+      return 0;
+    }
+    return prefs.getInt(prefix + "_window", 0);
+  }
+
+  /**
+   * Stores the transfer window learned for one server and direction.
+   *
+   * @param context the application context
+   * @param key direction and host:port of the server
+   * @param chunkSize chunk size the window was learned with
+   * @param window the number of outstanding requests
+   */
+  public static void setLearnedTransferWindow(
+      @NonNull Context context, @NonNull String key, int chunkSize, int window) {
+    String prefix = Constants.PREF_TRANSFER_WINDOW_PREFIX + key;
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(prefix + "_chunk", chunkSize)
+        .putInt(prefix + "_window", window)
+        .apply();
+  }
+
+  /**
+   * Returns the effective bandwidth cap for one server on the current network: the lower of the
+   * server cap and the cap for the current network type.
+   *
+   * @param context the application context
+   * @param serverId host:port of the server
+   * @return the cap in bytes per second, 0 for no cap
+   */
+  public static long getEffectiveBandwidthCap(@NonNull Context context, @NonNull String serverId) {
+    ConnectivityManager cm =
+        (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    boolean metered = cm != null && cm.isActiveNetworkMetered();
+    int networkCap = getBandwidthCapKbps(context, metered);
+    int serverCap = getServerBandwidthCapKbps(context, serverId);
+    int cap;
+    if (networkCap > 0 && serverCap > 0) {
+      cap = Math.min(networkCap, serverCap);
+    } else {
+      cap = Math.max(networkCap, serverCap);
+    }
+    return cap * 1024L;
+  }
+
+  /**
+   * Returns the checksum algorithm computed while transferring files.
+   *
+   * @param context the application context
+   * @return "crc32c", "sha256" or "off" (default)
+   */
+  public static @NonNull String getTransferChecksum(@NonNull Context context) {
+    String value =
+        context
+            .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+            .getString(Constants.PREF_TRANSFER_CHECKSUM, "off");
+    return value != null ? value : "off";
+  }
+
+  /**
+   * Sets the checksum algorithm computed while transferring files.
+   *
+   * @param context the application context
+   * @param value "crc32c", "sha256" or "off"
+   */
+  public static void setTransferChecksum(@NonNull Context context, @NonNull String value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putString(Constants.PREF_TRANSFER_CHECKSUM, value)
+        .apply();
+  }
+
+  /**
+   * Returns whether uploads are read back and compared with their checksum.
+   *
+   * @param context the application context
+   * @return true to verify uploads; only effective with a checksum algorithm
+   */
+  public static boolean getVerifyUploads(@NonNull Context context) {
+    return context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .getBoolean(Constants.PREF_TRANSFER_VERIFY_UPLOADS, false);
+  }
+
+  /**
+   * Sets whether uploads are read back and compared with their checksum.
+   *
+   * @param context the application context
+   * @param value true to verify uploads
+   */
+  public static void setVerifyUploads(@NonNull Context context, boolean value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putBoolean(Constants.PREF_TRANSFER_VERIFY_UPLOADS, value)
+        .apply();
+  }
+
+  /**
+   * Returns how many directories folder sync lists concurrently over one SMB session.
+   *
+   * @param context the application context
+   * @return the number of concurrent listings, between 1 and {@link #MAX_SYNC_LIST_CONCURRENCY}
+   */
+  public static int getSyncListConcurrency(@NonNull Context context) {
+    int value =
+        context
+            .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+            .getInt(Constants.PREF_SYNC_LIST_CONCURRENCY, DEFAULT_SYNC_LIST_CONCURRENCY);
+    return Math.max(1, Math.min(MAX_SYNC_LIST_CONCURRENCY, value));
+  }
+
+  /**
+   * Sets how many directories folder sync lists concurrently over one SMB session.
+   *
+   * @param context the application context
+   * @param value the number of concurrent listings; 1 lists one directory at a time
+   */
+  public static void setSyncListConcurrency(@NonNull Context context, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(Constants.PREF_SYNC_LIST_CONCURRENCY, value)
+        .apply();
+  }
+
+  /**
+   * Returns how many files folder sync uploads or downloads concurrently over one SMB session.
+   *
+   * @param context the application context
+   * @return the number of concurrent transfers, between 1 and {@link
+   *     #MAX_SYNC_TRANSFER_CONCURRENCY}
+   */
+  public static int getSyncTransferConcurrency(@NonNull Context context) {
+    int value =
+        context
+            .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+            .getInt(Constants.PREF_SYNC_TRANSFER_CONCURRENCY, DEFAULT_SYNC_TRANSFER_CONCURRENCY);
+    return Math.max(1, Math.min(MAX_SYNC_TRANSFER_CONCURRENCY, value));
+  }
+
+  /**
+   * Sets how many files folder sync uploads or downloads concurrently over one SMB session.
+   *
+   * @param context the application context
+   * @param value the number of concurrent transfers; 1 transfers one file at a time
+   */
+  public static void setSyncTransferConcurrency(@NonNull Context context, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(Constants.PREF_SYNC_TRANSFER_CONCURRENCY, value)
+        .apply();
+  }
+
+  /**
+   * Returns every how many syncs a one-way sync compares all directories, including those whose
+   * fingerprint is unchanged.
+   *
+   * @param context the application context
+   * @return the interval in syncs, between 1 and {@link #MAX_SYNC_FULL_WALK_INTERVAL}
+   */
+  public static int getSyncFullWalkInterval(@NonNull Context context) {
+    int value =
+        context
+            .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+            .getInt(Constants.PREF_SYNC_FULL_WALK_INTERVAL, DEFAULT_SYNC_FULL_WALK_INTERVAL);
+    return Math.max(1, Math.min(MAX_SYNC_FULL_WALK_INTERVAL, value));
+  }
+
+  /**
+   * Sets every how many syncs a one-way sync compares all directories.
+   *
+   * @param context the application context
+   * @param value the interval in syncs; 1 compares all directories on every sync
+   */
+  public static void setSyncFullWalkInterval(@NonNull Context context, int value) {
+    context
+        .getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE)
+        .edit()
+        .putInt(Constants.PREF_SYNC_FULL_WALK_INTERVAL, value)
+        .apply();
+  }
 }
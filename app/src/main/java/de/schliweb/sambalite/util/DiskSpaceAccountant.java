@@ -0,0 +1,245 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.util;
+
+import android.os.Environment;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the free disk space that concurrent downloads will still use.
+ *
+ * <p>A download reserves its expected size before it writes the first byte and charges each
+ * written chunk against the reservation. Free space is read with {@code StatFs} only every few
+ * seconds or after a larger amount has been written; in between it is estimated from the last
+ * reading minus the bytes written since. A download is admitted only if its size fits next to the
+ * space that running downloads have reserved but not written yet, and otherwise waits for them to
+ * finish.
+ */
+public final class DiskSpaceAccountant {
+
+  private static final String TAG = "DiskSpaceAccountant";
+
+  /** Free space is re-read at least this often while space is being checked. */
+  static final long RECONCILE_INTERVAL_MS = 5000;
+
+  /** Free space is also re-read after this many bytes have been written since the last reading. */
+  static final long RECONCILE_BYTES = 256L * 1024 * 1024;
+
+  /** How long {@link #reserve} waits for other reservations before checking again. */
+  private static final long WAIT_SLICE_MS = 500;
+
+  private static DiskSpaceAccountant instance;
+
+  private final LongSupplier freeBytes;
+  private final LongSupplier nanoTime;
+
+  /** Last reading of the free space, or -1 if it could not be determined. */
+  private long measuredFree = -1;
+
+  private long measuredAtNanos;
+  private boolean measured;
+
+  /** Bytes written by reservations since the last reading. */
+  private long writtenSinceMeasure;
+
+  /** Bytes reserved by open reservations and not written yet. */
+  private long outstanding;
+
+  private int openReservations;
+
+  public static synchronized @NonNull DiskSpaceAccountant getInstance() {
+    if (instance == null) {
+      instance = new DiskSpaceAccountant(DiskSpaceAccountant::statFreeBytes, System::nanoTime);
+    }
+    return instance;
+  }
+
+  @VisibleForTesting
+  DiskSpaceAccountant(@NonNull LongSupplier freeBytes, @NonNull LongSupplier nanoTime) {
+    this.freeBytes = freeBytes;
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Returns the free space of the data and external storage volumes, whichever is smaller, or -1
+   * if neither could be read.
+   */
+  private static long statFreeBytes() {
+    long data = EnhancedFileUtils.getAvailableBytes(Environment.getDataDirectory());
+    long external = EnhancedFileUtils.getAvailableBytes(Environment.getExternalStorageDirectory());
+    if (data < 0) {
+      return external;
+    }
+    return external < 0 ? data : Math.min(data, external);
+  }
+
+  /** Re-reads the free space now, e.g. at the start of a worker run. */
+  public synchronized void refresh() {
+    measuredFree = freeBytes.getAsLong();
+    measuredAtNanos = nanoTime.getAsLong();
+    measured = true;
+    writtenSinceMeasure = 0;
+  }
+
+  private void reconcileIfDue() {
+    if (!measured
+        || nanoTime.getAsLong() - measuredAtNanos >= RECONCILE_INTERVAL_MS * 1_000_000L
+        || writtenSinceMeasure >= RECONCILE_BYTES) {
+      refresh();
+    }
+  }
+
+  /** Estimated free space that is not reserved yet, or {@code Long.MAX_VALUE} if unknown. */
+  private long unreserved() {
+    if (measuredFree < 0) {
+      return Long.MAX_VALUE;
+    }
+    return measuredFree - writtenSinceMeasure - outstanding;
+  }
+
+  /**
+   * Returns true if the unreserved free space is at least {@link
+   * EnhancedFileUtils#MIN_DISK_SPACE_BYTES}. Reads the free space only if the last reading is
+   * outdated.
+   */
+  public synchronized boolean hasSpace() {
+    reconcileIfDue();
+    return unreserved() >= EnhancedFileUtils.MIN_DISK_SPACE_BYTES;
+  }
+
+  /**
+   * Reserves {@code bytes} if they fit into the unreserved free space, or returns null.
+   *
+   * @param bytes the expected number of bytes to write; 0 if unknown
+   */
+  public synchronized @Nullable Reservation tryReserve(long bytes) {
+    reconcileIfDue();
+    if (!fits(bytes)) {
+      // The estimate may be outdated, e.g. if another app has freed space meanwhile
+      refresh();
+      if (!fits(bytes)) {
+        return null;
+      }
+    }
+    long amount = Math.max(0, bytes);
+    outstanding += amount;
+    openReservations++;
+    return new Reservation(amount);
+  }
+
+  private boolean fits(long bytes) {
+    long unreserved = unreserved();
+    return unreserved == Long.MAX_VALUE
+        || unreserved - Math.max(0, bytes) >= EnhancedFileUtils.MIN_DISK_SPACE_BYTES;
+  }
+
+  /**
+   * Reserves {@code bytes}, waiting while other reservations hold the space this one needs. Those
+   * belong to running downloads, which release it when they finish.
+   *
+   * @param cancelled checked while waiting; stops the wait with an {@link InterruptedIOException}
+   * @throws IOException if the space does not suffice even without other reservations
+   */
+  public @NonNull Reservation reserve(long bytes, @NonNull BooleanSupplier cancelled)
+      throws IOException {
+    synchronized (this) {
+      boolean logged = false;
+      while (true) {
+        Reservation reservation = tryReserve(bytes);
+        if (reservation != null) {
+          return reservation;
+        }
+        if (openReservations == 0) {
+          throw new IOException(
+              "Insufficient disk space: "
+                  + EnhancedFileUtils.formatFileSize(bytes)
+                  + " needed, "
+                  + EnhancedFileUtils.formatFileSize(Math.max(0, unreserved()))
+                  + " available");
+        }
+        if (cancelled.getAsBoolean()) {
+          throw new InterruptedIOException("Stopped while waiting for disk space");
+        }
+        if (!logged) {
+          LogUtils.i(
+              TAG,
+              "Waiting for "
+                  + openReservations
+                  + " running downloads before reserving "
+                  + EnhancedFileUtils.formatFileSize(bytes));
+          logged = true;
+        }
+        try {
+          wait(WAIT_SLICE_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for disk space");
+        }
+      }
+    }
+  }
+
+  /** Returns a one-line summary for diagnostics. */
+  public synchronized @NonNull String describe() {
+    return (measuredFree < 0 ? "free unknown" : EnhancedFileUtils.formatFileSize(measuredFree))
+        + ", "
+        + openReservations
+        + " reservations, "
+        + EnhancedFileUtils.formatFileSize(outstanding)
+        + " outstanding";
+  }
+
+  /** Space reserved for one download; closing it releases what has not been written. */
+  public final class Reservation implements Closeable {
+    private long remaining;
+    private boolean closed;
+
+    private Reservation(long remaining) {
+      this.remaining = remaining;
+    }
+
+    /**
+     * Charges {@code bytes} that have been written against the reservation.
+     *
+     * @return false if the unreserved free space has dropped below the minimum, e.g. because the
+     *     file is larger than reserved or other apps are filling the disk
+     */
+    public boolean onWritten(long bytes) {
+      synchronized (DiskSpaceAccountant.this) {
+        long covered = Math.min(remaining, bytes);
+        remaining -= covered;
+        outstanding -= covered;
+        writtenSinceMeasure += bytes;
+        return hasSpace();
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (DiskSpaceAccountant.this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        outstanding -= remaining;
+        remaining = 0;
+        openReservations--;
+        DiskSpaceAccountant.this.notifyAll();
+      }
+    }
+  }
+}
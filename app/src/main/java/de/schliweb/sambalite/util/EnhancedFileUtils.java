@@ -32,8 +32,7 @@ public class EnhancedFileUtils {
   public static boolean hasEnoughDiskSpace(File dir) {
     if (dir == null) return true;
     try {
-      StatFs stat = new StatFs(dir.getPath());
-      long available = stat.getAvailableBytes();
+      long available = new StatFs(dir.getPath()).getAvailableBytes();
       if (available < MIN_DISK_SPACE_BYTES) {
         LogUtils.w(
             "EnhancedFileUtils",
@@ -50,6 +49,21 @@ public class EnhancedFileUtils {
     return true;
   }
 
+  /**
+   * Returns the free space available to the app on the volume of {@code dir}.
+   *
+   * @return the available bytes, or -1 if they could not be determined
+   */
+  public static long getAvailableBytes(File dir) {
+    if (dir == null) return -1;
+    try {
+      return new StatFs(dir.getPath()).getAvailableBytes();
+    } catch (Exception e) {
+      LogUtils.w("EnhancedFileUtils", "Could not check disk space: " + e.getMessage());
+      return -1;
+    }
+  }
+
   /** Formats file size in human-readable format. */
   public static @NonNull String formatFileSize(long bytes) {
     if (bytes < 0) return "Unknown";
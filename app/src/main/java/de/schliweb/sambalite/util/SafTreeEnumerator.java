@@ -0,0 +1,198 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.documentfile.provider.DocumentFile;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists local SAF directories with a single ContentResolver query per directory.
+ *
+ * <p>{@link DocumentFile#listFiles()} returns children whose {@code getName()}, {@code
+ * isDirectory()}, {@code length()}, {@code lastModified()} and {@code getType()} each issue a
+ * separate query to the documents provider, i.e. five IPC round-trips per file. This class asks
+ * the provider for all children of a directory with one query on {@link
+ * DocumentsContract#buildChildDocumentsUriUsingTree} and returns immutable {@link Entry} records
+ * that already carry those columns. Directories that are not part of a document tree (e.g. {@code
+ * file://} URIs) fall back to {@link DocumentFile#listFiles()}.
+ */
+public final class SafTreeEnumerator {
+
+  private static final String TAG = "SafTreeEnumerator";
+
+  private static final String[] PROJECTION = {
+    DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+    DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+    DocumentsContract.Document.COLUMN_MIME_TYPE,
+    DocumentsContract.Document.COLUMN_SIZE,
+    DocumentsContract.Document.COLUMN_LAST_MODIFIED
+  };
+
+  private final Context context;
+  private final ContentResolver resolver;
+
+  public SafTreeEnumerator(@NonNull Context context) {
+    this.context = context.getApplicationContext();
+    this.resolver = this.context.getContentResolver();
+  }
+
+  /** Lists the children of {@code directory}; returns an empty list if it cannot be listed. */
+  public @NonNull List<Entry> list(@NonNull DocumentFile directory) {
+    Uri uri = directory.getUri();
+    if (!isTreeUri(uri)) {
+      return listFallback(directory);
+    }
+    return list(uri);
+  }
+
+  /**
+   * Lists the children of the tree document {@code directoryUri}; returns an empty list if it
+   * cannot be listed.
+   */
+  public @NonNull List<Entry> list(@NonNull Uri directoryUri) {
+    if (!isTreeUri(directoryUri)) {
+      DocumentFile directory = toDocumentFile(directoryUri);
+      return directory != null ? listFallback(directory) : Collections.emptyList();
+    }
+    Uri childrenUri =
+        DocumentsContract.buildChildDocumentsUriUsingTree(directoryUri, documentId(directoryUri));
+
+    List<Entry> entries = new ArrayList<>();
+    try (Cursor cursor = resolver.query(childrenUri, PROJECTION, null, null, null)) {
+      if (cursor == null) {
+        return entries;
+      }
+      while (cursor.moveToNext()) {
+        String documentId = cursor.getString(0);
+        if (documentId == null) {
+          continue;
+        }
+        entries.add(
+            new Entry(
+                DocumentsContract.buildDocumentUriUsingTree(directoryUri, documentId),
+                cursor.getString(1),
+                cursor.getString(2),
+                cursor.isNull(3) ? 0 : cursor.getLong(3),
+                cursor.isNull(4) ? 0 : cursor.getLong(4)));
+      }
+    } catch (Exception e) {
+      // Same contract as DocumentFile.listFiles(), which also returns nothing on failure
+      LogUtils.w(TAG, "Could not list " + directoryUri + ": " + e.getMessage());
+    }
+    return entries;
+  }
+
+  /** Returns the document ID of a tree URI: the document it points to, or else the tree root. */
+  private static String documentId(Uri treeUri) {
+    List<String> segments = treeUri.getPathSegments();
+    return segments.size() >= 4 && "document".equals(segments.get(2))
+        ? DocumentsContract.getDocumentId(treeUri)
+        : DocumentsContract.getTreeDocumentId(treeUri);
+  }
+
+  /** Lists a non-tree directory through {@link DocumentFile}, one query per attribute. */
+  private static List<Entry> listFallback(DocumentFile directory) {
+    DocumentFile[] children = directory.listFiles();
+    List<Entry> entries = new ArrayList<>(children.length);
+    for (DocumentFile child : children) {
+      entries.add(
+          new Entry(
+              child.getUri(),
+              child.getName(),
+              child.isDirectory() ? DocumentsContract.Document.MIME_TYPE_DIR : child.getType(),
+              child.length(),
+              child.lastModified()));
+    }
+    return entries;
+  }
+
+  /**
+   * Returns a {@link DocumentFile} for an entry, for operations that need one (create, delete,
+   * recursion into a directory). No query is issued.
+   */
+  public @Nullable DocumentFile toDocumentFile(@NonNull Entry entry) {
+    return toDocumentFile(entry.getUri());
+  }
+
+  /**
+   * Returns a {@link DocumentFile} for the document URI of an entry, e.g. one that was persisted
+   * with a sync plan. No query is issued.
+   */
+  public @Nullable DocumentFile toDocumentFile(@NonNull Uri uri) {
+    if (ContentResolver.SCHEME_FILE.equals(uri.getScheme()) && uri.getPath() != null) {
+      return DocumentFile.fromFile(new File(uri.getPath()));
+    }
+    return isTreeUri(uri) ? DocumentFile.fromTreeUri(context, uri) : null;
+  }
+
+  private static boolean isTreeUri(Uri uri) {
+    return ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+        && DocumentsContract.isTreeUri(uri);
+  }
+
+  /** Immutable snapshot of one child document, taken from a single listing query. */
+  public static final class Entry {
+    private final Uri uri;
+    private final String name;
+    private final String mimeType;
+    private final long size;
+    private final long lastModified;
+
+    Entry(Uri uri, String name, String mimeType, long size, long lastModified) {
+      this.uri = uri;
+      this.name = name;
+      this.mimeType = mimeType;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    public @NonNull Uri getUri() {
+      return uri;
+    }
+
+    public @Nullable String getName() {
+      return name;
+    }
+
+    /** Returns the MIME type, or null for directories like {@link DocumentFile#getType()}. */
+    public @Nullable String getType() {
+      return DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType) ? null : mimeType;
+    }
+
+    public boolean isDirectory() {
+      return DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
+    }
+
+    /** Same rule as {@link DocumentFile#isFile()}: not a directory and a known MIME type. */
+    public boolean isFile() {
+      return !isDirectory() && mimeType != null && !mimeType.isEmpty();
+    }
+
+    /** Returns the size in bytes, or 0 if unknown. */
+    public long length() {
+      return size;
+    }
+
+    /** Returns the last modification time in epoch millis, or 0 if unknown. */
+    public long lastModified() {
+      return lastModified;
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/** Unit tests for {@link BandwidthGovernor}. */
+public class BandwidthGovernorTest {
+
+  private static final long MB = 1024 * 1024;
+
+  private final AtomicLong now = new AtomicLong();
+  private final BandwidthGovernor governor = new BandwidthGovernor(now::get);
+
+  @Test
+  public void withoutCapOrBrowsing_bulkIsUnlimited() throws Exception {
+    BandwidthGovernor.Gate gate = governor.gate("nas:445", BandwidthGovernor.Flow.TRANSFER);
+    for (int i = 0; i < 100; i++) {
+      gate.acquire((int) MB);
+    }
+
+    assertEquals(0, governor.bulkLimit("nas:445"));
+    assertTrue(governor.describe().get(0).startsWith("nas:445: bulk unlimited"));
+  }
+
+  @Test
+  public void browsing_limitsBulkToShareOfMeasuredRate() throws Exception {
+    BandwidthGovernor.Gate gate = governor.gate("nas:445", BandwidthGovernor.Flow.TRANSFER);
+    gate.acquire((int) (10 * MB));
+    now.addAndGet(BandwidthGovernor.MEASURE_WINDOW_MS * 1_000_000L);
+    gate.acquire(1);
+
+    BandwidthGovernor.Lease lease = governor.interactive("nas:445");
+    assertEquals(
+        (long) (10 * MB * BandwidthGovernor.BULK_SHARE_WHILE_INTERACTIVE),
+        governor.bulkLimit("nas:445"));
+    assertEquals(0, governor.bulkLimit("other:445"));
+
+    lease.close();
+    assertTrue(governor.bulkLimit("nas:445") > 0);
+    now.addAndGet(BandwidthGovernor.INTERACTIVE_GRACE_MS * 1_000_000L);
+    assertEquals(0, governor.bulkLimit("nas:445"));
+  }
+
+  @Test
+  public void browsingWithoutMeasurement_doesNotGuessALimit() {
+    try (BandwidthGovernor.Lease lease = governor.interactive("nas:445")) {
+      assertEquals(0, governor.bulkLimit("nas:445"));
+    }
+  }
+
+  @Test
+  public void browsing_keepsMinimumBulkRateUnderCap() {
+    governor.setCapSource(serverId -> 512 * 1024);
+    assertEquals(512 * 1024, governor.bulkLimit("nas:445"));
+
+    try (BandwidthGovernor.Lease lease = governor.interactive("nas:445")) {
+      assertEquals(BandwidthGovernor.MIN_BULK_RATE, governor.bulkLimit("nas:445"));
+    }
+  }
+
+  @Test
+  public void cap_throttlesBulkTraffic() throws Exception {
+    BandwidthGovernor realTime = new BandwidthGovernor(System::nanoTime);
+    realTime.setCapSource(serverId -> MB);
+    BandwidthGovernor.Gate gate = realTime.gate("nas:445", BandwidthGovernor.Flow.SYNC);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 3; i++) {
+      gate.acquire((int) (MB / 4));
+    }
+    long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+    // The first request goes into debt, the next two wait 250 ms each
+    assertTrue("elapsed " + elapsedMs + " ms", elapsedMs >= 400);
+    assertTrue("elapsed " + elapsedMs + " ms", elapsedMs < 5000);
+  }
+
+  @Test
+  public void cap_sharesBandwidthByFlowWeight() throws Exception {
+    BandwidthGovernor realTime = new BandwidthGovernor(System::nanoTime);
+    realTime.setCapSource(serverId -> 4 * MB);
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong transferBytes = new AtomicLong();
+    AtomicLong syncBytes = new AtomicLong();
+    Thread transfer = pump(realTime, BandwidthGovernor.Flow.TRANSFER, running, transferBytes);
+    Thread sync = pump(realTime, BandwidthGovernor.Flow.SYNC, running, syncBytes);
+
+    Thread.sleep(1500);
+    running.set(false);
+    transfer.join(5000);
+    sync.join(5000);
+
+    assertTrue(syncBytes.get() > 0);
+    assertTrue(
+        "transfer " + transferBytes.get() + " vs sync " + syncBytes.get(),
+        transferBytes.get() > syncBytes.get());
+  }
+
+  private static Thread pump(
+      BandwidthGovernor governor,
+      BandwidthGovernor.Flow flow,
+      AtomicBoolean running,
+      AtomicLong counter) {
+    BandwidthGovernor.Gate gate = governor.gate("nas:445", flow);
+    Thread t =
+        new Thread(
+            () -> {
+              try {
+                while (running.get()) {
+                  gate.acquire(64 * 1024);
+                  counter.addAndGet(64 * 1024);
+                }
+              } catch (Exception e) {
+                throw new RuntimeException(e);
+              }
+            });
+    t.start();
+    return t;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import org.junit.Test;
+
+/** Unit tests for {@link BufferPool}. */
+public class BufferPoolTest {
+
+  private static final int MB = 1024 * 1024;
+
+  @Test
+  public void acquire_roundsUpToSizeClass() throws Exception {
+    BufferPool pool = new BufferPool(64L * MB);
+    assertEquals(BufferPool.MIN_CLASS_SIZE, pool.acquire(1).length);
+    assertEquals(BufferPool.MIN_CLASS_SIZE, pool.acquire(64 * 1024).length);
+    assertEquals(128 * 1024, pool.acquire(64 * 1024 + 1).length);
+    assertEquals(4 * MB, pool.acquire(3 * MB).length);
+  }
+
+  @Test
+  public void releasedBuffer_isReusedAsHit() throws Exception {
+    BufferPool pool = new BufferPool(64L * MB);
+    byte[] first = pool.acquire(MB);
+    pool.release(first);
+    byte[] second = pool.acquire(MB);
+
+    assertSame(first, second);
+    assertEquals(1, pool.getHits());
+    assertEquals(1, pool.getMisses());
+    assertEquals(MB, pool.getLeasedBytes());
+    assertEquals(0, pool.getIdleBytes());
+    assertEquals(MB, pool.getPeakBytes());
+  }
+
+  @Test
+  public void tryAcquire_returnsNullAtCap() throws Exception {
+    BufferPool pool = new BufferPool(8L * MB);
+    byte[] a = pool.acquire(4 * MB);
+    byte[] b = pool.acquire(4 * MB);
+    assertNull(pool.tryAcquire(MB));
+
+    pool.release(a);
+    assertSame(a, pool.tryAcquire(4 * MB));
+    pool.release(b);
+  }
+
+  @Test
+  public void idleBuffersOfOtherClassesAreDroppedToMakeRoom() throws Exception {
+    BufferPool pool = new BufferPool(8L * MB);
+    byte[] small = pool.acquire(MB);
+    pool.release(small);
+    assertEquals(MB, pool.getIdleBytes());
+
+    byte[] a = pool.acquire(4 * MB);
+    byte[] b = pool.acquire(4 * MB);
+    assertNotNull(a);
+    assertNotNull(b);
+    assertEquals(0, pool.getIdleBytes());
+    assertEquals(8L * MB, pool.getLeasedBytes());
+  }
+
+  @Test
+  public void acquire_waitsForReleaseAtCap() throws Exception {
+    BufferPool pool = new BufferPool(8L * MB);
+    byte[] a = pool.acquire(8 * MB);
+    Thread releaser =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(50);
+              } catch (InterruptedException ignored) {
+                // test thread
+              }
+              pool.release(a);
+            });
+    releaser.start();
+
+    byte[] b = pool.acquire(8 * MB);
+    releaser.join();
+    assertSame(a, b);
+    assertEquals(0, pool.getOverflows());
+  }
+
+  @Test
+  public void foreignAndOversizedBuffersAreNotPooled() throws Exception {
+    BufferPool pool = new BufferPool(64L * MB);
+    pool.release(new byte[1000]);
+    byte[] huge = pool.acquire(BufferPool.MAX_CLASS_SIZE + 1);
+    pool.release(huge);
+    assertEquals(0, pool.getIdleBytes());
+    assertEquals(0, pool.getLeasedBytes());
+  }
+
+  @Test
+  public void engines_returnEveryBufferToThePool() throws Exception {
+    BufferPool pool = new BufferPool(64L * MB);
+    byte[] data = new byte[MB * 3 + 5];
+    new Random(3).nextBytes(data);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new PipelinedDownloader(TransferWindow.fixed(256 * 1024, 4), 2, pool)
+        .download(
+            (buffer, fileOffset, bufferOffset, length) -> {
+              int n = (int) Math.min(length, data.length - fileOffset);
+              System.arraycopy(data, (int) fileOffset, buffer, bufferOffset, n);
+              return n;
+            },
+            0,
+            data.length,
+            out,
+            (pos, len) -> true);
+    assertArrayEquals(data, out.toByteArray());
+
+    byte[] remote = new byte[data.length];
+    new PipelinedUploader(TransferWindow.fixed(256 * 1024, 4), pool)
+        .upload(
+            new ByteArrayInputStream(data),
+            0,
+            (buffer, fileOffset, bufferOffset, length) ->
+                System.arraycopy(buffer, bufferOffset, remote, (int) fileOffset, length),
+            (pos, len) -> true);
+    assertArrayEquals(data, remote);
+
+    assertEquals(0, pool.getLeasedBytes());
+    assertTrue(pool.getHits() > 0);
+  }
+}
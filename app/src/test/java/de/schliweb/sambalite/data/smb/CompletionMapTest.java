@@ -0,0 +1,86 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/** Unit tests for {@link CompletionMap}. */
+public class CompletionMapTest {
+
+  @Test
+  public void blocks_coverTheFileWithAShortLastBlock() {
+    CompletionMap map = new CompletionMap(250, 100);
+
+    assertEquals(3, map.getBlockCount());
+    assertEquals(200, map.offsetOf(2));
+    assertEquals(100, map.lengthOf(1));
+    assertEquals(50, map.lengthOf(2));
+  }
+
+  @Test
+  public void markDone_countsEachBlockOnce() {
+    CompletionMap map = new CompletionMap(250, 100);
+
+    map.markDone(2);
+    map.markDone(2);
+    map.markDone(0);
+
+    assertEquals(150, map.getCompletedBytes());
+    assertTrue(map.isDone(0));
+    assertFalse(map.isDone(1));
+    assertFalse(map.isComplete());
+
+    map.markDone(1);
+    assertTrue(map.isComplete());
+  }
+
+  @Test
+  public void nextMissing_skipsCompletedBlocks() {
+    CompletionMap map = new CompletionMap(500, 100);
+    map.markDone(0);
+    map.markDone(1);
+    map.markDone(3);
+
+    assertEquals(2, map.nextMissing(0));
+    assertEquals(4, map.nextMissing(3));
+    map.markDone(2);
+    map.markDone(4);
+    assertEquals(-1, map.nextMissing(0));
+  }
+
+  @Test
+  public void clear_forgetsCompletedBlocks() {
+    CompletionMap map = new CompletionMap(300, 100);
+    map.markDone(1);
+
+    map.clear();
+
+    assertEquals(0, map.getCompletedBytes());
+    assertEquals(0, map.nextMissing(0));
+  }
+
+  @Test
+  public void emptyFile_isCompleteWithoutBlocks() {
+    CompletionMap map = new CompletionMap(0, 100);
+
+    assertEquals(0, map.getBlockCount());
+    assertTrue(map.isComplete());
+    assertEquals(-1, map.nextMissing(0));
+  }
+
+  @Test
+  public void markDone_rejectsBlocksOutsideTheFile() {
+    CompletionMap map = new CompletionMap(100, 100);
+
+    assertThrows(IndexOutOfBoundsException.class, () -> map.markDone(1));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+/** Unit tests for {@link ContentChecksum}. */
+public class ContentChecksumTest {
+
+  private static final byte[] CHECK = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void crc32c_matchesCheckValue() {
+    ContentChecksum checksum = ContentChecksum.create(ContentChecksum.Algorithm.CRC32C);
+    checksum.update(CHECK, 0, CHECK.length);
+
+    assertEquals("crc32c:e3069283", checksum.getValue());
+    assertEquals(CHECK.length, checksum.getLength());
+  }
+
+  @Test
+  public void sha256_matchesKnownDigest() {
+    ContentChecksum checksum = ContentChecksum.create(ContentChecksum.Algorithm.SHA256);
+    byte[] abc = "abc".getBytes(StandardCharsets.US_ASCII);
+    checksum.update(abc, 0, abc.length);
+
+    assertEquals(
+        "sha256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+        checksum.getValue());
+  }
+
+  @Test
+  public void wrappedInputStream_hashesSkippedBytes() throws Exception {
+    ContentChecksum checksum = ContentChecksum.create(ContentChecksum.Algorithm.CRC32C);
+    InputStream in = checksum.wrap(new ByteArrayInputStream(CHECK));
+
+    assertEquals(4, in.skip(4));
+    byte[] rest = new byte[16];
+    assertEquals(5, in.read(rest, 0, rest.length));
+    assertEquals(-1, in.read());
+
+    assertEquals("crc32c:e3069283", checksum.getValue());
+  }
+
+  @Test
+  public void absorbedPrefixAndWrappedOutput_equalWholeFile() throws Exception {
+    ContentChecksum whole = ContentChecksum.create(ContentChecksum.Algorithm.SHA256);
+    whole.update(CHECK, 0, CHECK.length);
+
+    ContentChecksum resumed = ContentChecksum.create(ContentChecksum.Algorithm.SHA256);
+    assertEquals(3, resumed.absorb(new ByteArrayInputStream(CHECK, 0, 3), 3));
+    ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    try (OutputStream out = resumed.wrap(sink)) {
+      out.write(CHECK, 3, CHECK.length - 3);
+    }
+
+    assertEquals(CHECK.length - 3, sink.size());
+    assertTrue(ContentChecksum.matches(whole.getValue(), resumed.getValue()));
+  }
+
+  @Test
+  public void absorb_stopsAtEndOfStream() throws Exception {
+    ContentChecksum checksum = ContentChecksum.create(ContentChecksum.Algorithm.CRC32C);
+    assertEquals(CHECK.length, checksum.absorb(new ByteArrayInputStream(CHECK), 100));
+  }
+
+  @Test
+  public void parseAndAlgorithmOf() {
+    assertEquals(ContentChecksum.Algorithm.CRC32C, ContentChecksum.Algorithm.parse("CRC32C"));
+    assertEquals(ContentChecksum.Algorithm.SHA256, ContentChecksum.Algorithm.parse("sha-256"));
+    assertNull(ContentChecksum.Algorithm.parse("off"));
+    assertNull(ContentChecksum.Algorithm.parse(null));
+    assertNull(ContentChecksum.create(null));
+    assertNull(ContentChecksum.valueOf(null));
+
+    assertEquals(
+        ContentChecksum.Algorithm.SHA256, ContentChecksum.algorithmOf("sha256:ba7816bf"));
+    assertNull(ContentChecksum.algorithmOf("md5:abc"));
+    assertNull(ContentChecksum.algorithmOf("e3069283"));
+    assertFalse(ContentChecksum.matches(null, "crc32c:e3069283"));
+  }
+}
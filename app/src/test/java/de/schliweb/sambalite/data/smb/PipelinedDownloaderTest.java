@@ -0,0 +1,241 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Unit tests for {@link PipelinedDownloader} using an in-memory range reader. */
+public class PipelinedDownloaderTest {
+
+  private static final int CHUNK = 64 * 1024;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static byte[] randomData(int size) {
+    byte[] data = new byte[size];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+
+  /** Serves reads from a byte array, returning at most {@code maxPerRead} bytes per call. */
+  private static PipelinedDownloader.RangeReader readerFor(byte[] data, int maxPerRead) {
+    return (buffer, fileOffset, bufferOffset, length) -> {
+      if (fileOffset >= data.length) return -1;
+      int n = (int) Math.min(Math.min(length, maxPerRead), data.length - fileOffset);
+      System.arraycopy(data, (int) fileOffset, buffer, bufferOffset, n);
+      return n;
+    };
+  }
+
+  @Test
+  public void download_writesAllChunksInOrder() throws IOException {
+    byte[] data = randomData(CHUNK * 7 + 123);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PipelinedDownloader downloader = new PipelinedDownloader(CHUNK, 4, 2);
+
+    boolean completed =
+        downloader.download(readerFor(data, 10_000), 0, data.length, out, (pos, len) -> true);
+
+    assertTrue(completed);
+    assertArrayEquals(data, out.toByteArray());
+  }
+
+  @Test
+  public void download_resumesAtOffset() throws IOException {
+    byte[] data = randomData(CHUNK * 3);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long[] lastPosition = new long[1];
+
+    new PipelinedDownloader(CHUNK, 3, 1)
+        .download(
+            readerFor(data, CHUNK),
+            1000,
+            data.length,
+            out,
+            (pos, len) -> {
+              lastPosition[0] = pos;
+              return true;
+            });
+
+    assertArrayEquals(Arrays.copyOfRange(data, 1000, data.length), out.toByteArray());
+    assertEquals(data.length, lastPosition[0]);
+  }
+
+  @Test
+  public void download_stopsWhenListenerReturnsFalse() throws IOException {
+    byte[] data = randomData(CHUNK * 10);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    boolean completed =
+        new PipelinedDownloader(CHUNK, 4, 2)
+            .download(readerFor(data, CHUNK), 0, data.length, out, (pos, len) -> pos < CHUNK * 2);
+
+    assertFalse(completed);
+    // Every reported chunk has been written, nothing beyond it
+    assertArrayEquals(Arrays.copyOfRange(data, 0, CHUNK * 2), out.toByteArray());
+  }
+
+  @Test
+  public void download_failsOnPrematureEof() {
+    byte[] data = randomData(CHUNK);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    assertThrows(
+        IOException.class,
+        () ->
+            new PipelinedDownloader(CHUNK, 2, 1)
+                .download(readerFor(data, CHUNK), 0, CHUNK * 2L, out, (pos, len) -> true));
+  }
+
+  @Test
+  public void download_propagatesListenerException() {
+    byte[] data = randomData(CHUNK * 4);
+
+    IOException e =
+        assertThrows(
+            IOException.class,
+            () ->
+                new PipelinedDownloader(CHUNK, 2, 1)
+                    .download(
+                        readerFor(data, CHUNK),
+                        0,
+                        data.length,
+                        new ByteArrayOutputStream(),
+                        (pos, len) -> {
+                          throw new IOException("disk full");
+                        }));
+    assertEquals("disk full", e.getMessage());
+  }
+
+  @Test
+  public void downloadToFile_writesOutOfOrderChunksAtTheirOffsets() throws IOException {
+    byte[] data = randomData(CHUNK * 9 + 77);
+    File target = tempFolder.newFile("out.bin");
+    CompletionMap done = new CompletionMap(data.length, CHUNK);
+    PipelinedDownloader.RangeReader slow = readerFor(data, CHUNK);
+
+    boolean completed =
+        new PipelinedDownloader(CHUNK, 4, 1)
+            .downloadToFile(
+                (buffer, fileOffset, bufferOffset, length) -> {
+                  try {
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  return slow.read(buffer, fileOffset, bufferOffset, length);
+                },
+                target,
+                done,
+                (pos, len) -> true);
+
+    assertTrue(completed);
+    assertTrue(done.isComplete());
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+  }
+
+  @Test
+  public void downloadToFile_retryFetchesOnlyMissingBlocks() throws IOException {
+    byte[] data = randomData(CHUNK * 8);
+    File target = tempFolder.newFile("retry.bin");
+    CompletionMap done = new CompletionMap(data.length, CHUNK);
+    PipelinedDownloader downloader = new PipelinedDownloader(CHUNK, 2, 1);
+    PipelinedDownloader.RangeReader good = readerFor(data, CHUNK);
+
+    assertThrows(
+        IOException.class,
+        () ->
+            downloader.downloadToFile(
+                (buffer, fileOffset, bufferOffset, length) -> {
+                  if (fileOffset == CHUNK * 5L) throw new IOException("STATUS_CONNECTION_RESET");
+                  return good.read(buffer, fileOffset, bufferOffset, length);
+                },
+                target,
+                done,
+                (pos, len) -> true));
+    assertFalse(done.isComplete());
+    assertFalse(done.isDone(5));
+    Set<Long> fetchedBefore = new HashSet<>();
+    for (int block = 0; block < done.getBlockCount(); block++) {
+      if (done.isDone(block)) fetchedBefore.add(done.offsetOf(block));
+    }
+
+    Set<Long> fetchedOnRetry = Collections.synchronizedSet(new HashSet<>());
+    boolean completed =
+        downloader.downloadToFile(
+            (buffer, fileOffset, bufferOffset, length) -> {
+              fetchedOnRetry.add(fileOffset);
+              return good.read(buffer, fileOffset, bufferOffset, length);
+            },
+            target,
+            done,
+            (pos, len) -> true);
+
+    assertTrue(completed);
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    assertTrue(fetchedOnRetry.contains(CHUNK * 5L));
+    for (Long offset : fetchedBefore) {
+      assertFalse("block at " + offset + " fetched twice", fetchedOnRetry.contains(offset));
+    }
+  }
+
+  @Test
+  public void downloadToFile_stopsWhenListenerReturnsFalse() throws IOException {
+    byte[] data = randomData(CHUNK * 10);
+    File target = tempFolder.newFile("stop.bin");
+    CompletionMap done = new CompletionMap(data.length, CHUNK);
+
+    boolean completed =
+        new PipelinedDownloader(CHUNK, 3, 1)
+            .downloadToFile(readerFor(data, CHUNK), target, done, (pos, len) -> pos < CHUNK * 2L);
+
+    assertFalse(completed);
+    assertFalse(done.isComplete());
+    // Every block recorded as done is on disk
+    byte[] written = Files.readAllBytes(target.toPath());
+    assertEquals(data.length, written.length);
+    for (int block = 0; block < done.getBlockCount(); block++) {
+      if (!done.isDone(block)) continue;
+      int from = (int) done.offsetOf(block);
+      int to = from + done.lengthOf(block);
+      assertArrayEquals(Arrays.copyOfRange(data, from, to), Arrays.copyOfRange(written, from, to));
+    }
+  }
+
+  @Test
+  public void downloadToFile_discardsCompletedBlocksWhenFileWasTruncated() throws IOException {
+    byte[] data = randomData(CHUNK * 3);
+    File target = tempFolder.newFile("truncated.bin");
+    CompletionMap done = new CompletionMap(data.length, CHUNK);
+    done.markDone(0);
+    done.markDone(1);
+
+    boolean completed =
+        new PipelinedDownloader(CHUNK, 2, 1)
+            .downloadToFile(readerFor(data, CHUNK), target, done, (pos, len) -> true);
+
+    assertTrue(completed);
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Test;
+
+/** Unit tests for {@link PipelinedUploader} writing into an in-memory "remote file". */
+public class PipelinedUploaderTest {
+
+  private static final int CHUNK = 64 * 1024;
+
+  private static byte[] randomData(int size) {
+    byte[] data = new byte[size];
+    new Random(7).nextBytes(data);
+    return data;
+  }
+
+  /** Positional writer into a byte array; sleeps randomly so writes complete out of order. */
+  private static PipelinedUploader.RangeWriter writerInto(byte[] target) {
+    return (buffer, fileOffset, bufferOffset, length) -> {
+      try {
+        Thread.sleep(ThreadLocalRandom.current().nextInt(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      System.arraycopy(buffer, bufferOffset, target, (int) fileOffset, length);
+    };
+  }
+
+  @Test
+  public void upload_writesEveryChunkAtItsOffset() throws IOException {
+    byte[] data = randomData(CHUNK * 9 + 17);
+    byte[] remote = new byte[data.length];
+    long[] last = {-1};
+
+    boolean completed =
+        new PipelinedUploader(CHUNK, 4)
+            .upload(
+                new ByteArrayInputStream(data),
+                0,
+                writerInto(remote),
+                (pos, len) -> {
+                  assertTrue("progress must be monotonic", pos > last[0]);
+                  last[0] = pos;
+                  return true;
+                });
+
+    assertTrue(completed);
+    assertArrayEquals(data, remote);
+    assertEquals(data.length, last[0]);
+  }
+
+  @Test
+  public void upload_startsAtResumeOffset() throws IOException {
+    byte[] data = randomData(CHUNK * 3);
+    byte[] remote = new byte[data.length];
+    int resume = CHUNK + 5;
+
+    new PipelinedUploader(CHUNK, 2)
+        .upload(
+            new ByteArrayInputStream(data, resume, data.length - resume),
+            resume,
+            writerInto(remote),
+            (pos, len) -> true);
+
+    assertArrayEquals(
+        Arrays.copyOfRange(data, resume, data.length),
+        Arrays.copyOfRange(remote, resume, remote.length));
+    assertEquals(0, remote[0]);
+  }
+
+  @Test
+  public void upload_stopsWhenListenerReturnsFalse() throws IOException {
+    byte[] data = randomData(CHUNK * 20);
+    byte[] remote = new byte[data.length];
+    long[] reported = {0};
+
+    boolean completed =
+        new PipelinedUploader(CHUNK, 4)
+            .upload(
+                new ByteArrayInputStream(data),
+                0,
+                writerInto(remote),
+                (pos, len) -> {
+                  reported[0] = pos;
+                  return pos < CHUNK * 3;
+                });
+
+    assertFalse(completed);
+    // The reported prefix is complete on the remote side
+    int prefix = (int) reported[0];
+    assertArrayEquals(Arrays.copyOf(data, prefix), Arrays.copyOf(remote, prefix));
+    assertTrue(prefix < data.length);
+  }
+
+  @Test
+  public void upload_propagatesWriteFailure() {
+    byte[] data = randomData(CHUNK * 4);
+
+    IOException e =
+        assertThrows(
+            IOException.class,
+            () ->
+                new PipelinedUploader(CHUNK, 3)
+                    .upload(
+                        new ByteArrayInputStream(data),
+                        0,
+                        (buffer, fileOffset, bufferOffset, length) -> {
+                          if (fileOffset >= CHUNK * 2L) throw new IOException("STATUS_DISK_FULL");
+                        },
+                        (pos, len) -> true));
+    assertEquals("STATUS_DISK_FULL", e.getMessage());
+  }
+
+  @Test
+  public void upload_emptyStreamCompletesWithoutWrites() throws IOException {
+    boolean completed =
+        new PipelinedUploader(CHUNK, 2)
+            .upload(
+                new ByteArrayInputStream(new byte[0]),
+                0,
+                (buffer, fileOffset, bufferOffset, length) -> fail("no write expected"),
+                (pos, len) -> true);
+    assertTrue(completed);
+  }
+
+  @Test
+  public void upload_throttledGateDoesNotShrinkWindow() throws IOException {
+    BandwidthGovernor governor = new BandwidthGovernor(System::nanoTime);
+    // 64 KB chunks at 1 MB/s: every chunk waits about 60 ms in the gate
+    governor.setCapSource(serverId -> 1024 * 1024);
+    BandwidthGovernor.Gate gate = governor.gate("nas:445", BandwidthGovernor.Flow.TRANSFER);
+    byte[] data = randomData(CHUNK * 24);
+    byte[] remote = new byte[data.length];
+    TransferWindow window = new TransferWindow(CHUNK, TransferWindow.INITIAL_WINDOW);
+
+    new PipelinedUploader(window)
+        .upload(
+            new ByteArrayInputStream(data),
+            0,
+            (buffer, fileOffset, bufferOffset, length) -> {
+              gate.acquire(length);
+              try {
+                // Constant server latency
+                Thread.sleep(5);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              System.arraycopy(buffer, bufferOffset, remote, (int) fileOffset, length);
+            },
+            (pos, len) -> true);
+
+    assertArrayEquals(data, remote);
+    assertTrue(
+        "window should not shrink, was " + window.getWindow(),
+        window.getWindow() >= TransferWindow.INITIAL_WINDOW);
+  }
+}
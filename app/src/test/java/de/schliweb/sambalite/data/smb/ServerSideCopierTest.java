@@ -0,0 +1,157 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.hierynomus.mserref.NtStatus;
+import com.hierynomus.mssmb2.SMBApiException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/** Unit tests for {@link ServerSideCopier} copying between in-memory "remote files". */
+public class ServerSideCopierTest {
+
+  private static final int RANGE = 1000;
+
+  private static byte[] randomData(int size) {
+    byte[] data = new byte[size];
+    new Random(11).nextBytes(data);
+    return data;
+  }
+
+  /** Copies ranges between byte arrays; sleeps randomly so ranges complete out of order. */
+  private static ServerSideCopier.RangeCopier copierFor(byte[] source, byte[] target) {
+    return (offset, length) -> {
+      try {
+        Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      System.arraycopy(source, (int) offset, target, (int) offset, (int) length);
+    };
+  }
+
+  @Test
+  public void copy_copiesEveryRangeAndReportsAllBytes() throws IOException {
+    byte[] source = randomData(RANGE * 13 + 7);
+    byte[] target = new byte[source.length];
+    long[] last = {0};
+
+    boolean completed =
+        new ServerSideCopier(RANGE, 4)
+            .copy(
+                source.length,
+                copierFor(source, target),
+                (copied, rangeLength) -> {
+                  assertTrue("progress must grow", copied > last[0]);
+                  last[0] = copied;
+                  return true;
+                });
+
+    assertTrue(completed);
+    assertArrayEquals(source, target);
+    assertEquals(source.length, last[0]);
+  }
+
+  @Test
+  public void copy_keepsSeveralRangesInFlight() throws IOException {
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger peak = new AtomicInteger();
+
+    new ServerSideCopier(RANGE, 3)
+        .copy(
+            RANGE * 12L,
+            (offset, length) -> {
+              peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+              try {
+                Thread.sleep(5);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              active.decrementAndGet();
+            },
+            (copied, rangeLength) -> true);
+
+    assertTrue("expected concurrent ranges, peak " + peak.get(), peak.get() > 1);
+    assertTrue(peak.get() <= 3);
+  }
+
+  @Test
+  public void copy_stopsWhenListenerReturnsFalse() throws IOException {
+    AtomicInteger ranges = new AtomicInteger();
+
+    boolean completed =
+        new ServerSideCopier(RANGE, 2)
+            .copy(
+                RANGE * 50L,
+                (offset, length) -> ranges.incrementAndGet(),
+                (copied, rangeLength) -> copied < RANGE * 3L);
+
+    assertFalse(completed);
+    assertTrue(ranges.get() < 50);
+  }
+
+  @Test
+  public void copy_propagatesRangeFailure() {
+    IOException e =
+        assertThrows(
+            IOException.class,
+            () ->
+                new ServerSideCopier(RANGE, 3)
+                    .copy(
+                        RANGE * 6L,
+                        (offset, length) -> {
+                          if (offset == RANGE * 4L) throw new IOException("STATUS_DISK_FULL");
+                        },
+                        (copied, rangeLength) -> true));
+    assertEquals("STATUS_DISK_FULL", e.getMessage());
+  }
+
+  @Test
+  public void copy_emptyFileCompletesWithoutRanges() throws IOException {
+    boolean completed =
+        new ServerSideCopier(RANGE, 2)
+            .copy(0, (offset, length) -> fail("no range expected"), (copied, rangeLength) -> true);
+    assertTrue(completed);
+  }
+
+  @Test
+  public void isNotSupported_recognisesMissingServerSupport() {
+    SMBApiException notSupported = mock(SMBApiException.class);
+    when(notSupported.getStatus()).thenReturn(NtStatus.STATUS_NOT_SUPPORTED);
+    SMBApiException invalidRequest = mock(SMBApiException.class);
+    when(invalidRequest.getStatus()).thenReturn(NtStatus.STATUS_INVALID_DEVICE_REQUEST);
+    SMBApiException accessDenied = mock(SMBApiException.class);
+    when(accessDenied.getStatus()).thenReturn(NtStatus.STATUS_ACCESS_DENIED);
+
+    assertTrue(ServerSideCopier.isNotSupported(notSupported));
+    assertTrue(ServerSideCopier.isNotSupported(new IOException("wrapped", invalidRequest)));
+    assertFalse(ServerSideCopier.isNotSupported(accessDenied));
+    assertFalse(ServerSideCopier.isNotSupported(new IOException("disk full")));
+    assertFalse(ServerSideCopier.isNotSupported(null));
+  }
+
+  @Test
+  public void markUnsupported_isRememberedPerServer() {
+    assertFalse(ServerSideCopier.isKnownUnsupported("old-nas:445"));
+
+    ServerSideCopier.markUnsupported("old-nas:445");
+    ServerSideCopier.markUnsupported("unknown");
+
+    assertTrue(ServerSideCopier.isKnownUnsupported("old-nas:445"));
+    assertFalse(ServerSideCopier.isKnownUnsupported("old-nas:1445"));
+    assertFalse(ServerSideCopier.isKnownUnsupported("unknown"));
+  }
+}
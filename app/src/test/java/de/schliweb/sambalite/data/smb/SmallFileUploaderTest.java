@@ -0,0 +1,110 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/** Unit tests for {@link SmallFileUploader}. */
+public class SmallFileUploaderTest {
+
+  /** Remote file that records the calls made on its handle. */
+  private static final class FakeHandle implements SmallFileUploader.Handle {
+    final List<String> calls = new ArrayList<>();
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    long acknowledgeAtMost = Long.MAX_VALUE;
+    boolean failTimestamp;
+    long lastWriteTime;
+
+    @Override
+    public long write(byte[] buffer, long fileOffset, int bufferOffset, int length) {
+      calls.add("write " + fileOffset + " " + length);
+      content.write(buffer, bufferOffset, length);
+      return Math.min(length, acknowledgeAtMost);
+    }
+
+    @Override
+    public void setLastWriteTime(long timeMillis) throws IOException {
+      calls.add("setInfo");
+      if (failTimestamp) {
+        throw new IOException("STATUS_ACCESS_DENIED");
+      }
+      lastWriteTime = timeMillis;
+    }
+
+    @Override
+    public void close() {
+      calls.add("close");
+    }
+  }
+
+  @Test
+  public void upload_writesOnceAndSetsTimestampOnSameHandle() throws IOException {
+    FakeHandle handle = new FakeHandle();
+    List<String> created = new ArrayList<>();
+    byte[] data = "hello world".getBytes();
+
+    SmallFileUploader.upload(
+        path -> {
+          created.add(path);
+          return handle;
+        },
+        "docs\\a.txt",
+        data,
+        5,
+        1700000000000L);
+
+    assertEquals(Arrays.asList("docs\\a.txt"), created);
+    assertEquals(Arrays.asList("write 0 5", "setInfo", "close"), handle.calls);
+    assertEquals("hello", handle.content.toString());
+    assertEquals(1700000000000L, handle.lastWriteTime);
+  }
+
+  @Test
+  public void upload_failsWhenServerAcknowledgesFewerBytes() {
+    FakeHandle handle = new FakeHandle();
+    handle.acknowledgeAtMost = 3;
+
+    IOException e =
+        assertThrows(
+            IOException.class,
+            () -> SmallFileUploader.upload(path -> handle, "a.txt", new byte[10], 10, 0));
+
+    assertTrue(e.getMessage().contains("Integrity check failed"));
+    assertEquals(Arrays.asList("write 0 10", "close"), handle.calls);
+  }
+
+  @Test
+  public void upload_createsEmptyFileWithoutWriteAndIgnoresTimestampFailure()
+      throws IOException {
+    FakeHandle handle = new FakeHandle();
+    handle.failTimestamp = true;
+
+    SmallFileUploader.upload(path -> handle, "empty.txt", new byte[0], 0, 1000);
+
+    assertEquals(Arrays.asList("setInfo", "close"), handle.calls);
+  }
+
+  @Test
+  public void readAll_readsToEndOrReportsOverflow() throws IOException {
+    byte[] buffer = new byte[8];
+
+    assertEquals(5, SmallFileUploader.readAll(new ByteArrayInputStream(new byte[5]), buffer));
+    assertEquals(8, SmallFileUploader.readAll(new ByteArrayInputStream(new byte[8]), buffer));
+    assertEquals(-1, SmallFileUploader.readAll(new ByteArrayInputStream(new byte[9]), buffer));
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.hierynomus.smbj.SMBClient;
+import com.hierynomus.smbj.connection.Connection;
+import de.schliweb.sambalite.data.model.SmbConnection;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link SmbClientRegistry}. Client creation is replaced by mocks. */
+public class SmbClientRegistryTest {
+
+  private SmbClientRegistry registry;
+  private int created;
+
+  @Before
+  public void setUp() {
+    created = 0;
+    registry =
+        new SmbClientRegistry() {
+          @Override
+          SMBClient createClient(SmbClientRegistry.Profile profile) {
+            created++;
+            return mock(SMBClient.class);
+          }
+        };
+  }
+
+  private static SmbConnection connection(boolean sign, boolean async, String user) {
+    SmbConnection c = new SmbConnection();
+    c.setServer("nas");
+    c.setShare("data");
+    c.setUsername(user);
+    c.setPassword(user.isEmpty() ? "" : "secret");
+    c.setSigningRequired(sign);
+    c.setAsyncTransport(async);
+    return c;
+  }
+
+  @Test
+  public void sameProfileReusesClient() {
+    SmbClientRegistry.Profile p = SmbClientRegistry.Profile.of(connection(true, false, "alice"));
+    SmbClientRegistry.Profile q = SmbClientRegistry.Profile.of(connection(true, false, "bob"));
+    assertEquals(p, q);
+
+    try (SmbClientRegistry.ClientRef a = registry.acquire(p);
+        SmbClientRegistry.ClientRef b = registry.acquire(q)) {
+      assertSame(a.getClient(), b.getClient());
+    }
+    assertEquals(1, created);
+    assertEquals(1, registry.getLiveClientCount());
+  }
+
+  @Test
+  public void differentProfilesGetDifferentClients() {
+    SmbClientRegistry.Profile signed = SmbClientRegistry.Profile.of(connection(true, false, "a"));
+    SmbClientRegistry.Profile async = SmbClientRegistry.Profile.of(connection(false, true, "a"));
+    SmbClientRegistry.Profile anonymous = SmbClientRegistry.Profile.of(connection(false, false, ""));
+    assertNotEquals(signed, async);
+    assertNotEquals(signed, anonymous);
+
+    registry.acquire(signed).close();
+    registry.acquire(async).close();
+    registry.acquire(anonymous).close();
+    assertEquals(3, created);
+    assertEquals(3, registry.getLiveClientCount());
+  }
+
+  @Test
+  public void closeUnusedKeepsReferencedClients() throws Exception {
+    SmbClientRegistry.ClientRef held =
+        registry.acquire(SmbClientRegistry.Profile.of(connection(true, false, "a")));
+    SmbClientRegistry.ClientRef released =
+        registry.acquire(SmbClientRegistry.Profile.of(connection(false, false, "a")));
+    released.close();
+    released.close(); // idempotent
+
+    assertEquals(1, registry.closeUnused());
+    verify(released.getClient()).close();
+    verify(held.getClient(), never()).close();
+    assertEquals(1, registry.getLiveClientCount());
+
+    held.close();
+    assertEquals(1, registry.closeUnused());
+    assertEquals(0, registry.getLiveClientCount());
+  }
+
+  @Test
+  public void sharedConnectionIsClosedWithItsLastSession() throws Exception {
+    SmbClientRegistry.ClientRef ref =
+        registry.acquire(SmbClientRegistry.Profile.of(connection(false, false, "a")));
+    Connection conn = mock(Connection.class);
+    when(conn.isConnected()).thenReturn(true);
+    when(ref.getClient().connect("nas", 445)).thenReturn(conn);
+
+    assertSame(conn, registry.connect(ref, "nas", 445));
+    assertSame(conn, registry.connect(ref, "nas", 445));
+    assertEquals(1, registry.getLiveTransportCount());
+
+    registry.releaseConnection(conn);
+    verify(conn, never()).close();
+
+    registry.releaseConnection(conn);
+    verify(conn).close();
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.hierynomus.smbj.connection.Connection;
+import com.hierynomus.smbj.session.Session;
+import com.hierynomus.smbj.share.DiskShare;
+import de.schliweb.sambalite.data.model.SmbConnection;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link SmbSessionPool}. Uses a fake session factory backed by mocks. */
+public class SmbSessionPoolTest {
+
+  private final List<SmbSessionPool.PooledSession> opened = new ArrayList<>();
+  private SmbSessionPool pool;
+
+  @Before
+  public void setUp() {
+    pool =
+        new SmbSessionPool(
+            (key, connection) -> {
+              Connection conn = mock(Connection.class);
+              when(conn.isConnected()).thenReturn(true);
+              DiskShare share = null;
+              if (!key.shareName.isEmpty()) {
+                share = mock(DiskShare.class);
+                when(share.isConnected()).thenReturn(true);
+              }
+              SmbSessionPool.PooledSession s =
+                  new SmbSessionPool.PooledSession(key, null, conn, mock(Session.class), share);
+              opened.add(s);
+              return s;
+            },
+            false);
+  }
+
+  private static SmbConnection connection(String server, String share, String user) {
+    SmbConnection c = new SmbConnection();
+    c.setServer(server);
+    c.setShare(share);
+    c.setUsername(user);
+    c.setPassword("secret");
+    return c;
+  }
+
+  @Test
+  public void returnedSessionIsReused() throws IOException {
+    SmbConnection c = connection("nas", "data", "alice");
+    DiskShare first;
+    try (SmbSessionPool.Lease lease = pool.acquire(c)) {
+      first = lease.getShare();
+    }
+    try (SmbSessionPool.Lease lease = pool.acquire(c)) {
+      assertSame(first, lease.getShare());
+    }
+    assertEquals(1, opened.size());
+    assertEquals(0, pool.getLeaseCount());
+  }
+
+  @Test
+  public void differentCredentialsOrSharesGetDifferentSessions() throws IOException {
+    try (SmbSessionPool.Lease a = pool.acquire(connection("nas", "data", "alice"));
+        SmbSessionPool.Lease b = pool.acquire(connection("nas", "data", "bob"));
+        SmbSessionPool.Lease c = pool.acquire(connection("nas", "photos", "alice"))) {
+      assertNotSame(a.getShare(), b.getShare());
+      assertNotSame(a.getShare(), c.getShare());
+    }
+    assertEquals(3, opened.size());
+  }
+
+  @Test
+  public void keyIgnoresServerCaseButNotPort() {
+    SmbConnection a = connection("NAS", "data", "alice");
+    SmbConnection b = connection("nas", "/data/sub", "alice");
+    assertEquals(SmbSessionPool.Key.of(a, "data"), SmbSessionPool.Key.of(b, "data"));
+
+    b.setPort(1445);
+    assertNotEquals(SmbSessionPool.Key.of(a, "data"), SmbSessionPool.Key.of(b, "data"));
+  }
+
+  @Test
+  public void sessionIdentityCoversPortAndCredentialsButNotShare() {
+    SmbConnection a = connection("nas", "data", "alice");
+    SmbConnection b = connection("nas", "media", "alice");
+    assertEquals(SmbSessionPool.sessionIdentityOf(a), SmbSessionPool.sessionIdentityOf(b));
+
+    b.setPassword("changed");
+    assertNotEquals(SmbSessionPool.sessionIdentityOf(a), SmbSessionPool.sessionIdentityOf(b));
+
+    SmbConnection c = connection("nas", "data", "alice");
+    c.setPort(1445);
+    assertNotEquals(SmbSessionPool.sessionIdentityOf(a), SmbSessionPool.sessionIdentityOf(c));
+  }
+
+  @Test
+  public void busySessionsAreSharedOnceServerCapIsReached() throws IOException {
+    pool.setMaxSessionsPerServer(2);
+    SmbConnection c = connection("nas", "data", "alice");
+    SmbSessionPool.Lease l1 = pool.acquire(c);
+    SmbSessionPool.Lease l2 = pool.acquire(c);
+    SmbSessionPool.Lease l3 = pool.acquire(c);
+
+    assertEquals(2, opened.size());
+    assertEquals(2, pool.getOpenSessionCount());
+    assertEquals(3, pool.getLeaseCount());
+
+    l1.close();
+    l2.close();
+    l3.close();
+    assertEquals(0, pool.getLeaseCount());
+  }
+
+  @Test
+  public void idleSessionOfOtherKeyIsClosedToMakeRoom() throws Exception {
+    pool.setMaxSessionsPerServer(1);
+    try (SmbSessionPool.Lease lease = pool.acquire(connection("nas", "data", "alice"))) {
+      assertNotNull(lease.getShare());
+    }
+    try (SmbSessionPool.Lease lease = pool.acquire(connection("nas", "photos", "alice"))) {
+      assertNotNull(lease.getShare());
+    }
+    assertEquals(2, opened.size());
+    assertEquals(1, pool.getOpenSessionCount());
+    verify(opened.get(0).connection).close();
+  }
+
+  @Test
+  public void invalidatedSessionIsClosedAndNotReused() throws Exception {
+    SmbConnection c = connection("nas", "data", "alice");
+    try (SmbSessionPool.Lease lease = pool.acquire(c)) {
+      lease.invalidate();
+    }
+    verify(opened.get(0).session).close();
+
+    try (SmbSessionPool.Lease lease = pool.acquire(c)) {
+      assertSame(opened.get(1).share, lease.getShare());
+    }
+  }
+
+  @Test
+  public void disconnectedSessionIsReplacedOnAcquire() throws IOException {
+    SmbConnection c = connection("nas", "data", "alice");
+    pool.acquire(c).close();
+    when(opened.get(0).share.isConnected()).thenReturn(false);
+
+    try (SmbSessionPool.Lease lease = pool.acquire(c)) {
+      assertSame(opened.get(1).share, lease.getShare());
+    }
+    assertEquals(1, pool.getOpenSessionCount());
+  }
+
+  @Test
+  public void closeIdleKeepsLeasedSessionsUntilReturned() throws Exception {
+    SmbSessionPool.Lease lease = pool.acquire(connection("nas", "data", "alice"));
+    pool.closeIdle();
+    verify(opened.get(0).connection, never()).close();
+
+    lease.close();
+    verify(opened.get(0).connection).close();
+    assertEquals(0, pool.getOpenSessionCount());
+  }
+
+  @Test
+  public void sessionOnlyLeaseHasNoShare() throws IOException {
+    try (SmbSessionPool.Lease lease = pool.acquireSession(connection("nas", "data", "alice"))) {
+      assertNotNull(lease.getSession());
+      assertThrows(IllegalStateException.class, lease::getShare);
+    }
+  }
+
+  @Test
+  public void shareNameOf_stripsSlashesAndSubfolders() {
+    assertEquals("data", SmbSessionPool.shareNameOf("/data/sub/dir"));
+    assertEquals("data", SmbSessionPool.shareNameOf("\\data\\sub"));
+    assertEquals("", SmbSessionPool.shareNameOf(null));
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import de.schliweb.sambalite.data.model.SmbShareInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.junit.Test;
+
+/** Unit tests for {@link SrvsvcClient} against a scripted srvsvc pipe. */
+public class SrvsvcClientTest {
+
+  /** Pipe that answers each transaction with the next scripted reply, delivered in pieces. */
+  private static final class ScriptedPipe implements SrvsvcClient.PipeTransport {
+    final List<byte[]> requests = new ArrayList<>();
+    final Deque<byte[]> replies = new ArrayDeque<>();
+    private final int transactLimit;
+    private byte[] pending = new byte[0];
+    private int pendingOffset;
+
+    ScriptedPipe(int transactLimit) {
+      this.transactLimit = transactLimit;
+    }
+
+    @Override
+    public byte[] transact(byte[] request) {
+      requests.add(request);
+      pending = replies.poll();
+      int first = Math.min(transactLimit, pending.length);
+      pendingOffset = first;
+      return Arrays.copyOf(pending, first);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      int n = Math.min(Math.min(length, 100), pending.length - pendingOffset);
+      System.arraycopy(pending, pendingOffset, buffer, offset, n);
+      pendingOffset += n;
+      return n;
+    }
+  }
+
+  private static ByteBuffer pdu(int type, int flags, int length, int callId) {
+    ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    b.put((byte) 5).put((byte) 0).put((byte) type).put((byte) flags);
+    b.put(new byte[] {0x10, 0, 0, 0});
+    b.putShort((short) length).putShort((short) 0).putInt(callId);
+    return b;
+  }
+
+  private static byte[] bindAck(int result) {
+    byte[] address = "\\PIPE\\srvsvc\0".getBytes(StandardCharsets.US_ASCII);
+    int results = (26 + address.length + 3) & ~3;
+    ByteBuffer b = pdu(12, 3, results + 28, 1);
+    b.putShort((short) 4280).putShort((short) 4280).putInt(0x1234);
+    b.putShort((short) address.length).put(address);
+    b.position(results);
+    b.put((byte) 1).put((byte) 0).putShort((short) 0);
+    b.putShort((short) result).putShort((short) (result == 0 ? 0 : 2));
+    return b.array();
+  }
+
+  /** Splits {@code stub} into response fragments carrying at most {@code maxStub} bytes each. */
+  private static byte[] response(byte[] stub, int maxStub, int callId) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int offset = 0; offset < stub.length || offset == 0; offset += maxStub) {
+      int n = Math.min(maxStub, stub.length - offset);
+      int flags = (offset == 0 ? 1 : 0) | (offset + n >= stub.length ? 2 : 0);
+      ByteBuffer b = pdu(2, flags, 24 + n, callId);
+      b.putInt(stub.length).putShort((short) 0).put((byte) 0).put((byte) 0);
+      b.put(stub, offset, n);
+      out.write(b.array(), 0, b.capacity());
+      if (n == 0) {
+        break;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] fault(int status, int callId) {
+    ByteBuffer b = pdu(3, 3, 32, callId);
+    b.putInt(0).putShort((short) 0).put((byte) 0).put((byte) 0);
+    b.putInt(status);
+    return b.array();
+  }
+
+  private static byte[] shareEnumStub(int resumeHandle, int result, String[][] shares) {
+    SrvsvcClient.NdrWriter w = new SrvsvcClient.NdrWriter();
+    w.writeInt(1);
+    w.writeInt(1);
+    w.writeReferent();
+    w.writeInt(shares.length);
+    w.writeReferent();
+    w.writeInt(shares.length);
+    for (String[] share : shares) {
+      w.writeReferent();
+      w.writeInt((int) Long.parseLong(share[1], 16));
+      w.writeReferent();
+    }
+    for (String[] share : shares) {
+      w.writeString(share[0]);
+      w.writeString(share[2]);
+    }
+    w.writeInt(shares.length);
+    w.writeReferent();
+    w.writeInt(resumeHandle);
+    w.writeInt(result);
+    return w.toByteArray();
+  }
+
+  @Test
+  public void enumerateShares_returnsNamesTypesAndComments() throws IOException {
+    ScriptedPipe pipe = new ScriptedPipe(Integer.MAX_VALUE);
+    pipe.replies.add(bindAck(0));
+    pipe.replies.add(
+        response(
+            shareEnumStub(
+                0,
+                0,
+                new String[][] {
+                  {"Public", "0", "Shared files"},
+                  {"Drucker", "1", ""},
+                  {"IPC$", "80000003", "Remote IPC"},
+                  {"C$", "80000000", "Default share"}
+                }),
+            4000,
+            2));
+
+    List<SmbShareInfo> shares = SrvsvcClient.enumerateShares(pipe, "nas");
+
+    assertEquals(4, shares.size());
+    SmbShareInfo pub = shares.get(0);
+    assertEquals("Public", pub.getName());
+    assertEquals("Shared files", pub.getComment());
+    assertTrue(pub.isDisk());
+    assertFalse(pub.isSpecial());
+    assertEquals(SmbShareInfo.STYPE_PRINTQ, shares.get(1).getBaseType());
+    assertEquals(SmbShareInfo.STYPE_IPC, shares.get(2).getBaseType());
+    assertTrue(shares.get(3).isDisk());
+    assertTrue(shares.get(3).isSpecial());
+
+    byte[] bind = pipe.requests.get(0);
+    assertEquals(11, bind[2]);
+    assertEquals(72, bind.length);
+    byte[] request = pipe.requests.get(1);
+    assertEquals(0, request[2]);
+    assertEquals(SrvsvcClient.OPNUM_NET_SHARE_ENUM, request[22]);
+  }
+
+  @Test
+  public void enumerateShares_reassemblesFragmentedReplies() throws IOException {
+    String[][] many = new String[200][];
+    for (int i = 0; i < many.length; i++) {
+      many[i] = new String[] {"Share" + i, "0", "Comment number " + i};
+    }
+    ScriptedPipe pipe = new ScriptedPipe(SrvsvcClient.MAX_FRAGMENT);
+    pipe.replies.add(bindAck(0));
+    pipe.replies.add(response(shareEnumStub(0, 0, many), SrvsvcClient.MAX_FRAGMENT - 24, 2));
+
+    List<SmbShareInfo> shares = SrvsvcClient.enumerateShares(pipe, "nas");
+
+    assertEquals(200, shares.size());
+    assertEquals("Share199", shares.get(199).getName());
+    assertEquals("Comment number 199", shares.get(199).getComment());
+  }
+
+  @Test
+  public void enumerateShares_resumesWhenServerReportsMoreData() throws IOException {
+    ScriptedPipe pipe = new ScriptedPipe(Integer.MAX_VALUE);
+    pipe.replies.add(bindAck(0));
+    pipe.replies.add(
+        response(
+            shareEnumStub(7, SrvsvcClient.ERROR_MORE_DATA, new String[][] {{"a", "0", ""}}),
+            4000,
+            2));
+    pipe.replies.add(response(shareEnumStub(0, 0, new String[][] {{"b", "0", ""}}), 4000, 3));
+
+    List<SmbShareInfo> shares = SrvsvcClient.enumerateShares(pipe, "nas");
+
+    assertEquals(2, shares.size());
+    assertEquals("b", shares.get(1).getName());
+    byte[] second = pipe.requests.get(2);
+    assertEquals(7, second[second.length - 4]);
+  }
+
+  @Test
+  public void enumerateShares_reportsAccessDeniedFault() {
+    ScriptedPipe pipe = new ScriptedPipe(Integer.MAX_VALUE);
+    pipe.replies.add(bindAck(0));
+    pipe.replies.add(fault(SrvsvcClient.ERROR_ACCESS_DENIED, 2));
+
+    SrvsvcClient.RpcException e =
+        assertThrows(
+            SrvsvcClient.RpcException.class, () -> SrvsvcClient.enumerateShares(pipe, "nas"));
+
+    assertTrue(e.isAccessDenied());
+    assertTrue(SrvsvcClient.isUnavailable(new IOException("wrapped", e)));
+    assertFalse(SrvsvcClient.isUnavailable(new IOException("Connection reset")));
+  }
+
+  @Test
+  public void enumerateShares_reportsRejectedBind() {
+    ScriptedPipe pipe = new ScriptedPipe(Integer.MAX_VALUE);
+    pipe.replies.add(bindAck(2));
+
+    assertThrows(
+        SrvsvcClient.RpcException.class, () -> SrvsvcClient.enumerateShares(pipe, "nas"));
+    assertEquals(1, pipe.requests.size());
+  }
+
+  @Test
+  public void encodeShareEnum_alignsAfterOddLengthServerName() {
+    byte[] stub = SrvsvcClient.encodeShareEnum("\\\\nas1", 0);
+
+    // referent + string header + 7 UTF-16 characters, padded to 32
+    assertEquals(64, stub.length);
+    assertEquals(7, stub[4]);
+    assertEquals(7, stub[12]);
+    assertEquals(1, stub[32]);
+    assertEquals(1, stub[36]);
+    assertEquals(-1, stub[52]);
+  }
+
+  @Test
+  public void decodeShareEnum_rejectsTruncatedData() {
+    byte[] stub = shareEnumStub(0, 0, new String[][] {{"Public", "0", "files"}});
+    byte[] truncated = Arrays.copyOf(stub, stub.length - 30);
+
+    assertThrows(
+        IOException.class,
+        () ->
+            SrvsvcClient.decodeShareEnum(
+                new SrvsvcClient.NdrReader(truncated), new ArrayList<>()));
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import androidx.annotation.NonNull;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+/** Unit tests for {@link TransferTuner}. */
+public class TransferTunerTest {
+
+  @Test
+  public void sameServerAndDirection_sharesLearnedWindow() {
+    TransferTuner tuner = new TransferTuner();
+    TransferWindow first = tuner.window("read", "nas:445", 8 * 1024 * 1024);
+    first.onChunkFailed();
+
+    TransferWindow again = tuner.window("read", "nas:445", 8 * 1024 * 1024);
+    assertSame(first, again);
+    assertEquals(TransferWindow.INITIAL_WINDOW / 2, again.getWindow());
+  }
+
+  @Test
+  public void directionsAndServersAreSeparate() {
+    TransferTuner tuner = new TransferTuner();
+    TransferWindow read = tuner.window("read", "nas:445", 8 * 1024 * 1024);
+    assertNotSame(read, tuner.window("write", "nas:445", 8 * 1024 * 1024));
+    assertNotSame(read, tuner.window("read", "server:445", 8 * 1024 * 1024));
+    assertNotSame(read, tuner.window("read", "nas:445", 1024 * 1024));
+    assertEquals(4, tuner.describe().size());
+  }
+
+  @Test
+  public void rememberedWindow_isLoadedByTheNextProcess() {
+    MapStore store = new MapStore();
+    TransferTuner tuner = new TransferTuner();
+    tuner.setStore(store);
+    TransferWindow learned = tuner.window("write", "nas:445", 1024 * 1024);
+    learned.onChunkFailed();
+    tuner.remember(learned);
+
+    TransferTuner restarted = new TransferTuner();
+    restarted.setStore(store);
+    assertEquals(
+        TransferWindow.INITIAL_WINDOW / 2,
+        restarted.window("write", "nas:445", 1024 * 1024).getWindow());
+    assertEquals(
+        TransferWindow.INITIAL_WINDOW,
+        restarted.window("read", "nas:445", 1024 * 1024).getWindow());
+    // A different negotiated chunk size starts over
+    assertEquals(
+        TransferWindow.INITIAL_WINDOW,
+        restarted.window("write", "nas:445", 8 * 1024 * 1024).getWindow());
+  }
+
+  @Test
+  public void foreignAndUnknownWindows_areNotStored() {
+    MapStore store = new MapStore();
+    TransferTuner tuner = new TransferTuner();
+    tuner.setStore(store);
+    tuner.remember(TransferWindow.fixed(1024 * 1024, 2));
+    tuner.remember(tuner.window("read", "unknown", 0));
+    assertTrue(store.windows.isEmpty());
+  }
+
+  @Test
+  public void unknownShare_fallsBackToDefaultWindow() {
+    TransferTuner tuner = new TransferTuner();
+    TransferWindow w = tuner.downloadWindow(null);
+    assertEquals(TransferWindow.MAX_CHUNK_SIZE, w.getChunkSize());
+    assertEquals(TransferWindow.INITIAL_WINDOW, w.getWindow());
+  }
+
+  /** Store backed by a map, standing in for the preferences of the next process. */
+  private static final class MapStore implements TransferTuner.Store {
+    final Map<String, int[]> windows = new HashMap<>();
+
+    @Override
+    public int load(@NonNull String key, int chunkSize) {
+      int[] stored = windows.get(key);
+      return stored != null && stored[0] == chunkSize ? stored[1] : 0;
+    }
+
+    @Override
+    public void save(@NonNull String key, int chunkSize, int window) {
+      windows.put(key, new int[] {chunkSize, window});
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.data.smb;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/** Unit tests for the AIMD logic of {@link TransferWindow}. */
+public class TransferWindowTest {
+
+  private static final long MS = 1_000_000L;
+
+  /** Completes one round (one window of chunks) with the given latency. */
+  private static void round(TransferWindow w, long latencyNanos) {
+    int n = w.getWindow();
+    for (int i = 0; i < n; i++) {
+      w.onChunkCompleted(w.getChunkSize(), latencyNanos);
+    }
+  }
+
+  @Test
+  public void chunkSize_followsNegotiatedLimitWithinBounds() {
+    assertEquals(64 * 1024, new TransferWindow(64 * 1024, 4).getChunkSize());
+    assertEquals(1024 * 1024, new TransferWindow(1024 * 1024, 4).getChunkSize());
+    assertEquals(
+        TransferWindow.MAX_CHUNK_SIZE, new TransferWindow(8 * 1024 * 1024, 4).getChunkSize());
+    assertEquals(TransferWindow.MIN_CHUNK_SIZE, new TransferWindow(4096, 4).getChunkSize());
+    assertEquals(TransferWindow.MAX_CHUNK_SIZE, new TransferWindow(0, 4).getChunkSize());
+  }
+
+  @Test
+  public void parallelThreshold_scalesWithChunkSize() {
+    assertEquals(16L * 1024 * 1024, new TransferWindow(8 * 1024 * 1024, 4).getParallelThreshold());
+    assertEquals(256L * 1024, new TransferWindow(64 * 1024, 4).getParallelThreshold());
+  }
+
+  @Test
+  public void window_growsWhileLatencyStaysAtBase() {
+    TransferWindow w = new TransferWindow(4 * 1024 * 1024, 2);
+    for (int i = 0; i < 50; i++) {
+      round(w, 10 * MS);
+    }
+    assertEquals(w.getMaxWindow(), w.getWindow());
+    assertEquals(16, w.getMaxWindow());
+  }
+
+  @Test
+  public void window_shrinksWhenRequestsQueueAtServer() {
+    TransferWindow w = new TransferWindow(4 * 1024 * 1024, 8);
+    round(w, 10 * MS); // establishes base latency, grows to 9
+    // Saturated server: latency grows with the window (each extra request waits in the queue)
+    for (int i = 0; i < 30; i++) {
+      round(w, w.getWindow() * 10 * MS);
+    }
+    assertTrue("window should settle low, was " + w.getWindow(), w.getWindow() <= 4);
+  }
+
+  @Test
+  public void failure_halvesWindow() {
+    TransferWindow w = new TransferWindow(4 * 1024 * 1024, 8);
+    w.onChunkFailed();
+    assertEquals(4, w.getWindow());
+    w.onChunkFailed();
+    w.onChunkFailed();
+    w.onChunkFailed();
+    assertEquals(1, w.getWindow());
+  }
+
+  @Test
+  public void maxWindow_isBoundedByInFlightBytes() {
+    TransferWindow w = new TransferWindow(4 * 1024 * 1024, 100);
+    assertEquals(16, w.getMaxWindow());
+    assertEquals(16, w.getWindow());
+  }
+
+  @Test
+  public void fixedWindow_neverAdapts() {
+    TransferWindow w = TransferWindow.fixed(1024 * 1024, 3);
+    for (int i = 0; i < 10; i++) {
+      round(w, 5 * MS);
+    }
+    w.onChunkFailed();
+    assertEquals(3, w.getWindow());
+    assertTrue(w.getThroughputBytesPerSec() > 0);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/** Tests for {@link DirectoryFingerprinter}. */
+public class DirectoryFingerprinterTest {
+
+  private static DirectoryFingerprinter sample() {
+    DirectoryFingerprinter fp = new DirectoryFingerprinter();
+    fp.addFile("a.txt", 10, 1000L);
+    fp.addDirectory("sub");
+    fp.addFile("b.txt", 20, 2000L);
+    return fp;
+  }
+
+  @Test
+  public void digest_isIndependentOfListingOrder() {
+    DirectoryFingerprinter reordered = new DirectoryFingerprinter();
+    reordered.addFile("b.txt", 20, 2000L);
+    reordered.addFile("a.txt", 10, 1000L);
+    reordered.addDirectory("sub");
+
+    assertEquals(sample().digest(), reordered.digest());
+    assertEquals(3, reordered.getCount());
+  }
+
+  @Test
+  public void digest_changesWithFileSizeOrTimestamp() {
+    String base = sample().digest();
+
+    DirectoryFingerprinter resized = new DirectoryFingerprinter();
+    resized.addFile("a.txt", 11, 1000L);
+    resized.addDirectory("sub");
+    resized.addFile("b.txt", 20, 2000L);
+
+    DirectoryFingerprinter touched = new DirectoryFingerprinter();
+    touched.addFile("a.txt", 10, 1001L);
+    touched.addDirectory("sub");
+    touched.addFile("b.txt", 20, 2000L);
+
+    assertNotEquals(base, resized.digest());
+    assertNotEquals(base, touched.digest());
+  }
+
+  @Test
+  public void digest_distinguishesFilesFromDirectories() {
+    DirectoryFingerprinter asFile = new DirectoryFingerprinter();
+    asFile.addFile("x", 0, 0L);
+    DirectoryFingerprinter asDirectory = new DirectoryFingerprinter();
+    asDirectory.addDirectory("x");
+
+    assertNotEquals(asFile.digest(), asDirectory.digest());
+  }
+
+  @Test
+  public void digest_ofEmptyDirectoryIsStable() {
+    assertEquals(new DirectoryFingerprinter().digest(), new DirectoryFingerprinter().digest());
+    assertEquals(64, new DirectoryFingerprinter().digest().length());
+  }
+}
@@ -450,6 +450,13 @@ public class MirrorIntegrationTest {
       return state.id;
     }
 
+    @Override
+    public long[] upsertAll(List<FileSyncState> states) {
+      long[] ids = new long[states.size()];
+      for (int i = 0; i < ids.length; i++) ids[i] = upsert(states.get(i));
+      return ids;
+    }
+
     @Override
     public FileSyncState findByPath(String rootUri, String relativePath) {
       return rows.get(key(rootUri, relativePath));
@@ -469,6 +476,13 @@ public class MirrorIntegrationTest {
       return rows.remove(key(rootUri, relativePath)) != null ? 1 : 0;
     }
 
+    @Override
+    public int deleteByPaths(String rootUri, List<String> relativePaths) {
+      int removed = 0;
+      for (String relativePath : relativePaths) removed += deleteByPath(rootUri, relativePath);
+      return removed;
+    }
+
     @Override
     public int deleteByRootUri(String rootUri) {
       Collection<FileSyncState> all = new ArrayList<>(rows.values());
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.junit.Test;
+
+/** Tests for {@link ParallelTreeLister}. */
+public class ParallelTreeListerTest {
+
+  /**
+   * Fake tree: directory path to child names; names ending in "/" are directories. Local and
+   * remote sides are identical, the local handle is the path. With a gate set, listings below the
+   * root wait until as many listings as the gate counts are in flight.
+   */
+  private static class FakeSource implements ParallelTreeLister.Source<String, String, String> {
+    final Map<String, List<String>> tree = new HashMap<>();
+    final Map<String, AtomicInteger> remoteCalls = new ConcurrentHashMap<>();
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    volatile CountDownLatch gate;
+    final Map<String, AtomicInteger> localCalls = new ConcurrentHashMap<>();
+    volatile boolean remoteFirst;
+    volatile Predicate<String> skipSecond = relPath -> false;
+
+    FakeSource add(String dir, String... children) {
+      tree.put(dir, List.of(children));
+      return this;
+    }
+
+    @Override
+    public List<String> listLocal(String directory) {
+      localCalls.computeIfAbsent(directory, d -> new AtomicInteger()).incrementAndGet();
+      return tree.getOrDefault(directory, Collections.emptyList());
+    }
+
+    @Override
+    public List<String> listRemote(String path) throws Exception {
+      remoteCalls.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+      int now = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(now, Math::max);
+      try {
+        CountDownLatch g = gate;
+        if (g != null && !path.isEmpty()) {
+          g.countDown();
+          g.await(2, TimeUnit.SECONDS);
+        }
+        if (path.endsWith("broken")) {
+          throw new IllegalStateException("STATUS_ACCESS_DENIED");
+        }
+        return tree.getOrDefault(path, Collections.emptyList());
+      } finally {
+        inFlight.decrementAndGet();
+      }
+    }
+
+    @Override
+    public List<ParallelTreeLister.Directory<String>> subdirectories(
+        ParallelTreeLister.Listing<String, String, String> listing) {
+      List<ParallelTreeLister.Directory<String>> result = new ArrayList<>();
+      for (String name : listing.getLocal()) {
+        if (name.endsWith("/")) {
+          String path = join(listing.directory.relPath, name.substring(0, name.length() - 1));
+          result.add(new ParallelTreeLister.Directory<>(path, path, path));
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public boolean remoteFirst() {
+      return remoteFirst;
+    }
+
+    @Override
+    public boolean skipSecond(ParallelTreeLister.Listing<String, String, String> listing) {
+      return skipSecond.test(listing.directory.relPath);
+    }
+  }
+
+  private static String join(String parent, String name) {
+    return parent.isEmpty() ? name : parent + "/" + name;
+  }
+
+  /** Walks depth-first like FolderSyncWorker and records the files in visiting order. */
+  private static void walk(
+      ParallelTreeLister<String, String, String> lister, String dir, List<String> visited)
+      throws IOException {
+    ParallelTreeLister.Listing<String, String, String> listing = lister.take(dir, dir, dir);
+    for (String name : listing.getRemote()) {
+      if (name.endsWith("/")) {
+        walk(lister, join(dir, name.substring(0, name.length() - 1)), visited);
+      } else {
+        visited.add(join(dir, name));
+      }
+    }
+  }
+
+  private static FakeSource sampleTree() {
+    return new FakeSource()
+        .add("", "a/", "b/", "root.txt")
+        .add("a", "a1/", "a.txt")
+        .add("a/a1", "deep.txt")
+        .add("b", "b.txt", "b2.txt");
+  }
+
+  @Test
+  public void walk_visitsFilesInSequentialOrderAndListsEachDirectoryOnce() throws Exception {
+    FakeSource source = sampleTree();
+    List<String> visited = new ArrayList<>();
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 4, () -> false)) {
+      walk(lister, "", visited);
+      assertEquals(4, lister.getListedCount());
+    }
+
+    assertEquals(List.of("a/a1/deep.txt", "a/a.txt", "b/b.txt", "b/b2.txt", "root.txt"), visited);
+    for (String dir : List.of("", "a", "a/a1", "b")) {
+      assertEquals(dir, 1, source.remoteCalls.get(dir).get());
+    }
+  }
+
+  @Test
+  public void siblings_neverExceedTheConcurrencyLimit() throws Exception {
+    FakeSource source = new FakeSource().add("", "a/", "b/", "c/", "d/", "e/", "f/");
+    source.gate = new CountDownLatch(2);
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 2, () -> false)) {
+      walk(lister, "", new ArrayList<>());
+      assertEquals(7, lister.getListedCount());
+    }
+
+    assertEquals(2, source.maxInFlight.get());
+  }
+
+  @Test
+  public void concurrency_reachesTheLimitOnWideTrees() throws Exception {
+    FakeSource source = new FakeSource().add("", "a/", "b/", "c/", "d/");
+    CountDownLatch gate = new CountDownLatch(3);
+    source.gate = gate;
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 3, () -> false)) {
+      walk(lister, "", new ArrayList<>());
+      assertTrue(lister.getListedAheadCount() > 0);
+    }
+
+    // Three listings met at the gate before any of them returned
+    assertEquals(0, gate.getCount());
+    assertEquals(3, source.maxInFlight.get());
+  }
+
+  @Test
+  public void remoteError_isReportedByGetRemote() {
+    FakeSource source = new FakeSource().add("", "broken/", "ok/").add("broken", "x.txt");
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 2, () -> false)) {
+      lister.take("", "", "");
+      ParallelTreeLister.Listing<String, String, String> broken =
+          lister.take("broken", "broken", "broken");
+
+      assertEquals(List.of("x.txt"), broken.getLocal());
+      try {
+        broken.getRemote();
+        fail("Expected IOException");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("STATUS_ACCESS_DENIED"));
+      }
+    }
+  }
+
+  @Test
+  public void take_relistsWhenTheLocalHandleChanged() throws Exception {
+    FakeSource source = new FakeSource().add("", "a/").add("a", "a.txt").add("created", "new.txt");
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 2, () -> false)) {
+      lister.take("", "", "");
+
+      // The walk has created the local directory under another handle in the meantime
+      ParallelTreeLister.Listing<String, String, String> listing =
+          lister.take("a", "created", "a");
+
+      assertEquals(List.of("new.txt"), listing.getLocal());
+      assertEquals(List.of("a.txt"), listing.getRemote());
+    }
+  }
+
+  @Test
+  public void take_withoutLocalDirectoryReturnsNoLocalEntries() throws Exception {
+    FakeSource source = sampleTree();
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 2, () -> false)) {
+      ParallelTreeLister.Listing<String, String, String> listing = lister.take("b", null, "b");
+
+      assertTrue(listing.getLocal().isEmpty());
+      assertEquals(List.of("b.txt", "b2.txt"), listing.getRemote());
+    }
+  }
+
+  @Test
+  public void skipSecond_leavesOutRemoteSideAfterLocal() throws Exception {
+    FakeSource source = sampleTree();
+    source.skipSecond = "a"::equals;
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 2, () -> false)) {
+      lister.take("", "", "");
+      ParallelTreeLister.Listing<String, String, String> a = lister.take("a", "a", "a");
+
+      assertTrue(a.isRemoteSkipped());
+      assertFalse(a.isLocalSkipped());
+      assertEquals(List.of("a1/", "a.txt"), a.getLocal());
+      assertTrue(a.getRemote().isEmpty());
+      // Subdirectories of a skipped directory are still listed
+      assertFalse(lister.take("a/a1", "a/a1", "a/a1").isRemoteSkipped());
+      assertEquals(1, lister.getSkippedCount());
+    }
+    assertNull(source.remoteCalls.get("a"));
+  }
+
+  @Test
+  public void skipSecond_leavesOutLocalSideWhenRemoteIsFirst() throws Exception {
+    FakeSource source = sampleTree();
+    source.remoteFirst = true;
+    source.skipSecond = "b"::equals;
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 2, () -> false)) {
+      ParallelTreeLister.Listing<String, String, String> b = lister.take("b", "b", "b");
+
+      assertTrue(b.isLocalSkipped());
+      assertTrue(b.getLocal().isEmpty());
+      assertEquals(List.of("b.txt", "b2.txt"), b.getRemote());
+    }
+    assertNull(source.localCalls.get("b"));
+    assertEquals(1, source.remoteCalls.get("b").get());
+  }
+
+  @Test
+  public void stopped_leavesListingsEmpty() throws Exception {
+    FakeSource source = sampleTree();
+    try (ParallelTreeLister<String, String, String> lister =
+        new ParallelTreeLister<>(source, 2, () -> true)) {
+      ParallelTreeLister.Listing<String, String, String> listing = lister.take("", "", "");
+
+      assertTrue(listing.getLocal().isEmpty());
+      assertTrue(listing.getRemote().isEmpty());
+      assertEquals(0, lister.getListedCount());
+    }
+    assertTrue(source.remoteCalls.isEmpty());
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DirectoryFingerprintStore}. Uses a mocked DAO to test store logic in
+ * isolation.
+ */
+public class DirectoryFingerprintStoreTest {
+
+  private DirectoryFingerprintDao mockDao;
+  private DirectoryFingerprintStore store;
+
+  @Before
+  public void setUp() {
+    mockDao = mock(DirectoryFingerprintDao.class);
+    store = new DirectoryFingerprintStore(mockDao);
+  }
+
+  private static DirectoryFingerprint fingerprint(String relPath, String hash) {
+    DirectoryFingerprint fingerprint = new DirectoryFingerprint();
+    fingerprint.relativePath = relPath;
+    fingerprint.side = DirectoryFingerprint.SIDE_REMOTE;
+    fingerprint.entryCount = 2;
+    fingerprint.childrenHash = hash;
+    fingerprint.dirModified = 1700000000000L;
+    return fingerprint;
+  }
+
+  @Test
+  public void load_mapsByRelativePath() {
+    when(mockDao.findBySide("config-1", DirectoryFingerprint.SIDE_REMOTE))
+        .thenReturn(Arrays.asList(fingerprint("", "h0"), fingerprint("docs", "h1")));
+
+    Map<String, DirectoryFingerprint> result =
+        store.load("config-1", DirectoryFingerprint.SIDE_REMOTE);
+
+    assertEquals(2, result.size());
+    assertEquals("h1", result.get("docs").childrenHash);
+  }
+
+  @Test
+  public void load_returnsEmptyOnException() {
+    when(mockDao.findBySide(anyString(), anyString())).thenThrow(new RuntimeException("DB error"));
+
+    assertTrue(store.load("config-1", DirectoryFingerprint.SIDE_LOCAL).isEmpty());
+  }
+
+  @Test
+  public void replace_assignsConfigAndResetsIds() {
+    DirectoryFingerprint row = fingerprint("docs", "h1");
+    row.id = 9;
+    List<DirectoryFingerprint> rows = Arrays.asList(row);
+
+    assertTrue(store.replace("config-1", rows));
+
+    verify(mockDao).replaceConfig(eq("config-1"), same(rows));
+    assertEquals(0, row.id);
+    assertEquals("config-1", row.configId);
+    assertTrue(row.updatedAt > 0);
+  }
+
+  @Test
+  public void replace_reportsFailure() {
+    doThrow(new RuntimeException("DB error")).when(mockDao).replaceConfig(anyString(), any());
+
+    assertFalse(store.replace("config-1", Arrays.asList(fingerprint("", "h0"))));
+  }
+
+  @Test
+  public void deleteAllForConfig_callsDao() {
+    store.deleteAllForConfig("config-1");
+
+    verify(mockDao).deleteByConfigId("config-1");
+  }
+
+  @Test
+  public void sameScope_requiresSameFolderPairAndConnection() {
+    DirectoryFingerprint root = fingerprint("", "h0");
+    root.connectionId = "conn1";
+    root.rootUri = "root://uri";
+    root.remoteRoot = "backup";
+
+    assertTrue(root.sameScope("conn1", "root://uri", "backup"));
+    assertFalse(root.sameScope("conn2", "root://uri", "backup"));
+    assertFalse(root.sameScope("conn1", "root://other", "backup"));
+    assertFalse(root.sameScope("conn1", "root://uri", "archive"));
+  }
+
+  @Test
+  public void matches_requiresSameListing() {
+    DirectoryFingerprint stored = fingerprint("docs", "h1");
+
+    assertTrue(stored.matches(fingerprint("docs", "h1")));
+    assertFalse(stored.matches(fingerprint("docs", "h2")));
+
+    DirectoryFingerprint touched = fingerprint("docs", "h1");
+    touched.dirChanged = 1L;
+    assertFalse(stored.matches(touched));
+
+    DirectoryFingerprint otherSide = fingerprint("docs", "h1");
+    otherSide.side = DirectoryFingerprint.SIDE_LOCAL;
+    assertFalse(stored.matches(otherSide));
+  }
+
+  @Test
+  public void matches_neverForDirtyFingerprint() {
+    DirectoryFingerprint dirty = fingerprint("docs", "");
+
+    assertFalse(dirty.matches(fingerprint("docs", "")));
+  }
+}
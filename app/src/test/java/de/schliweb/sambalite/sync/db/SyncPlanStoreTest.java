@@ -0,0 +1,164 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link SyncPlanStore}. Uses a mocked DAO to test store logic in isolation. */
+public class SyncPlanStoreTest {
+
+  private SyncPlanDao mockDao;
+  private SyncPlanStore store;
+
+  @Before
+  public void setUp() {
+    mockDao = mock(SyncPlanDao.class);
+    store = new SyncPlanStore(mockDao);
+  }
+
+  private static SyncPlan plan(String configId) {
+    SyncPlan plan = new SyncPlan();
+    plan.configId = configId;
+    plan.createdAt = 1700000000000L;
+    return plan;
+  }
+
+  private static SyncPlanAction action(String kind, String relPath, long size) {
+    SyncPlanAction action = new SyncPlanAction();
+    action.kind = kind;
+    action.relativePath = relPath;
+    action.remotePath = "share/" + relPath;
+    action.size = size;
+    return action;
+  }
+
+  @Test
+  public void savePlan_numbersActionsAsPending() {
+    SyncPlanAction first = action(SyncPlanAction.KIND_MKDIR_REMOTE, "docs", 0);
+    SyncPlanAction second = action(SyncPlanAction.KIND_UPLOAD, "docs/a.txt", 10);
+    second.id = 7;
+    second.status = SyncPlanAction.STATUS_FAILED;
+    second.error = "old";
+    List<SyncPlanAction> actions = Arrays.asList(first, second);
+
+    assertTrue(store.savePlan(plan("cfg"), actions));
+
+    verify(mockDao).replacePlan(argThat(p -> "cfg".equals(p.configId)), same(actions));
+    assertEquals(0, first.seq);
+    assertEquals(1, second.seq);
+    assertEquals(0, second.id);
+    assertEquals("cfg", second.configId);
+    assertEquals(SyncPlanAction.STATUS_PENDING, second.status);
+    assertNull(second.error);
+  }
+
+  @Test
+  public void savePlan_reportsFailure() {
+    doThrow(new RuntimeException("DB error")).when(mockDao).replacePlan(any(), any());
+
+    assertFalse(store.savePlan(plan("cfg"), Collections.emptyList()));
+  }
+
+  @Test
+  public void getPendingActions_queriesPendingStatus() {
+    List<SyncPlanAction> pending =
+        Collections.singletonList(action(SyncPlanAction.KIND_DOWNLOAD, "b.txt", 5));
+    when(mockDao.findActionsByStatus("cfg", SyncPlanAction.STATUS_PENDING)).thenReturn(pending);
+
+    assertEquals(pending, store.getPendingActions("cfg"));
+  }
+
+  @Test
+  public void getPendingActions_returnsEmptyOnError() {
+    when(mockDao.findActionsByStatus(anyString(), anyInt()))
+        .thenThrow(new RuntimeException("DB error"));
+
+    assertTrue(store.getPendingActions("cfg").isEmpty());
+  }
+
+  @Test
+  public void getSummary_returnsNullWithoutPlan() {
+    when(mockDao.findPlan("cfg")).thenReturn(null);
+
+    assertNull(store.getSummary("cfg"));
+    verify(mockDao, never()).findActions(anyString());
+  }
+
+  @Test
+  public void getSummary_combinesPlanAndActions() {
+    SyncPlan plan = plan("cfg");
+    when(mockDao.findPlan("cfg")).thenReturn(plan);
+    when(mockDao.findActions("cfg"))
+        .thenReturn(Collections.singletonList(action(SyncPlanAction.KIND_UPLOAD, "a.txt", 3)));
+
+    SyncPlanSummary summary = store.getSummary("cfg");
+
+    assertNotNull(summary);
+    assertSame(plan, summary.plan);
+    assertEquals(1, summary.uploads);
+    assertEquals(3, summary.uploadBytes);
+  }
+
+  @Test
+  public void markDone_updatesActionAndDao() {
+    SyncPlanAction action = action(SyncPlanAction.KIND_UPLOAD, "a.txt", 3);
+    action.id = 5;
+
+    store.markDone(action);
+
+    assertEquals(SyncPlanAction.STATUS_DONE, action.status);
+    verify(mockDao).updateStatus(5, SyncPlanAction.STATUS_DONE, null);
+  }
+
+  @Test
+  public void markFailed_keepsErrorWhenDaoFails() {
+    SyncPlanAction action = action(SyncPlanAction.KIND_DOWNLOAD, "b.txt", 3);
+    action.id = 6;
+    when(mockDao.updateStatus(anyLong(), anyInt(), any()))
+        .thenThrow(new RuntimeException("DB error"));
+
+    // Should not throw
+    store.markFailed(action, "timeout");
+
+    assertEquals(SyncPlanAction.STATUS_FAILED, action.status);
+    assertEquals("timeout", action.error);
+  }
+
+  @Test
+  public void getPreviewSummary_readsPreviewNotPlan() {
+    SyncPlan preview = plan(SyncPlanStore.previewKey("cfg"));
+    preview.dryRun = true;
+    when(mockDao.findPlan(SyncPlanStore.previewKey("cfg"))).thenReturn(preview);
+    when(mockDao.findActions(SyncPlanStore.previewKey("cfg")))
+        .thenReturn(Collections.singletonList(action(SyncPlanAction.KIND_UPLOAD, "a.txt", 3)));
+
+    SyncPlanSummary summary = store.getPreviewSummary("cfg");
+
+    assertNotNull(summary);
+    assertSame(preview, summary.plan);
+    verify(mockDao, never()).findPlan("cfg");
+  }
+
+  @Test
+  public void deletePlan_delegatesToDao() {
+    store.deletePlan("cfg");
+
+    verify(mockDao).deletePlan("cfg");
+    verify(mockDao).deletePlan(SyncPlanStore.previewKey("cfg"));
+  }
+}
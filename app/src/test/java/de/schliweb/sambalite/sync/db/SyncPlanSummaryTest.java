@@ -0,0 +1,92 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.sync.db;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/** Unit tests for {@link SyncPlanSummary}. */
+public class SyncPlanSummaryTest {
+
+  private static SyncPlanAction action(String kind, long size, int status) {
+    SyncPlanAction action = new SyncPlanAction();
+    action.kind = kind;
+    action.relativePath = "f";
+    action.size = size;
+    action.status = status;
+    return action;
+  }
+
+  @Test
+  public void countsActionsByKind() {
+    SyncPlanSummary summary =
+        new SyncPlanSummary(
+            null,
+            Arrays.asList(
+                action(SyncPlanAction.KIND_MKDIR_REMOTE, 0, SyncPlanAction.STATUS_PENDING),
+                action(SyncPlanAction.KIND_MKDIR_LOCAL, 0, SyncPlanAction.STATUS_PENDING),
+                action(SyncPlanAction.KIND_UPLOAD, 100, SyncPlanAction.STATUS_PENDING),
+                action(SyncPlanAction.KIND_UPLOAD, 50, SyncPlanAction.STATUS_PENDING),
+                action(SyncPlanAction.KIND_DOWNLOAD, 7, SyncPlanAction.STATUS_PENDING),
+                action(SyncPlanAction.KIND_TRASH_REMOTE, 0, SyncPlanAction.STATUS_PENDING)));
+
+    assertEquals(2, summary.directories);
+    assertEquals(2, summary.uploads);
+    assertEquals(150, summary.uploadBytes);
+    assertEquals(1, summary.downloads);
+    assertEquals(7, summary.downloadBytes);
+    assertEquals(1, summary.trash);
+    assertEquals(6, summary.getTotal());
+    assertEquals(157, summary.getTotalBytes());
+    assertEquals(0, summary.finished);
+    assertFalse(summary.isEmpty());
+  }
+
+  @Test
+  public void countsFinishedTransferBytesOnly() {
+    SyncPlanSummary summary =
+        new SyncPlanSummary(
+            null,
+            Arrays.asList(
+                action(SyncPlanAction.KIND_MKDIR_REMOTE, 4096, SyncPlanAction.STATUS_DONE),
+                action(SyncPlanAction.KIND_UPLOAD, 100, SyncPlanAction.STATUS_DONE),
+                action(SyncPlanAction.KIND_DOWNLOAD, 30, SyncPlanAction.STATUS_FAILED),
+                action(SyncPlanAction.KIND_DOWNLOAD, 20, SyncPlanAction.STATUS_PENDING)));
+
+    assertEquals(3, summary.finished);
+    assertEquals(130, summary.finishedBytes);
+    assertEquals(1, summary.failed);
+  }
+
+  @Test
+  public void emptyPlan() {
+    SyncPlanSummary summary = new SyncPlanSummary(new SyncPlan(), Collections.emptyList());
+
+    assertTrue(summary.isEmpty());
+    assertEquals(0, summary.getTotalBytes());
+    assertNotNull(summary.plan);
+  }
+
+  @Test
+  public void actionsAreACopy() {
+    List<SyncPlanAction> actions = new ArrayList<>();
+    actions.add(action(SyncPlanAction.KIND_UPLOAD, 1, SyncPlanAction.STATUS_PENDING));
+    SyncPlanSummary summary = new SyncPlanSummary(null, actions);
+
+    actions.clear();
+
+    assertEquals(1, summary.getTotal());
+  }
+}
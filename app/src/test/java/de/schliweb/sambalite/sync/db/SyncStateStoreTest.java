@@ -141,6 +141,114 @@ public class SyncStateStoreTest {
     verify(mockDao).deleteByRootUri("root://uri");
   }
 
+  private static FileSyncState stored(long id, String relativePath) {
+    FileSyncState state = new FileSyncState();
+    state.id = id;
+    state.rootUri = "root://uri";
+    state.relativePath = relativePath;
+    return state;
+  }
+
+  @Test
+  public void snapshot_servesLookupsWithoutQueries() {
+    when(mockDao.findByRootUri("root://uri"))
+        .thenReturn(Arrays.asList(stored(1, "a.txt"), stored(2, "b.txt")));
+
+    store.openSnapshot("root://uri");
+
+    assertEquals(2, store.getRemoteState("root://uri", "b.txt").id);
+    assertNull(store.getRemoteState("root://uri", "missing.txt"));
+    assertEquals(2, store.getAllForRoot("root://uri").size());
+    verify(mockDao, times(1)).findByRootUri("root://uri");
+    verify(mockDao, never()).findByPath(anyString(), anyString());
+  }
+
+  @Test
+  public void snapshot_otherRootQueriesDao() {
+    when(mockDao.findByRootUri("root://uri")).thenReturn(Collections.emptyList());
+    store.openSnapshot("root://uri");
+
+    store.getRemoteState("root://other", "a.txt");
+
+    verify(mockDao).findByPath("root://other", "a.txt");
+  }
+
+  @Test
+  public void snapshot_stagesChangesUntilClosed() {
+    when(mockDao.findByRootUri("root://uri"))
+        .thenReturn(Arrays.asList(stored(1, "a.txt"), stored(2, "b.txt")));
+    when(mockDao.applyBatch(anyString(), anyList(), anyList())).thenReturn(new long[] {1, 3});
+    store.openSnapshot("root://uri");
+
+    store.saveRemoteState("root://uri", "a.txt", "/share/a.txt", 10, 100L, true);
+    store.saveRemoteState("root://uri", "c.txt", "/share/c.txt", 20, 200L, true);
+    store.deleteState("root://uri", "b.txt");
+
+    // Staged changes are visible immediately but not written yet
+    assertEquals(10, store.getRemoteState("root://uri", "a.txt").remoteSize);
+    assertNull(store.getRemoteState("root://uri", "b.txt"));
+    verify(mockDao, never()).upsert(any());
+    verify(mockDao, never()).deleteByPath(anyString(), anyString());
+
+    store.closeSnapshot();
+
+    verify(mockDao)
+        .applyBatch(
+            eq("root://uri"),
+            argThat(
+                (List<FileSyncState> list) ->
+                    list.size() == 2
+                        && list.get(0).id == 1
+                        && "a.txt".equals(list.get(0).relativePath)
+                        && list.get(1).id == 0
+                        && "c.txt".equals(list.get(1).relativePath)),
+            eq(Collections.singletonList("b.txt")));
+  }
+
+  @Test
+  public void snapshot_deleteCancelsStagedSave() {
+    when(mockDao.findByRootUri("root://uri")).thenReturn(Collections.emptyList());
+    when(mockDao.applyBatch(anyString(), anyList(), anyList())).thenReturn(new long[0]);
+    store.openSnapshot("root://uri");
+
+    store.saveRemoteState("root://uri", "a.txt", "/share/a.txt", 10, 100L, true);
+    store.deleteState("root://uri", "a.txt");
+    store.flush();
+
+    verify(mockDao)
+        .applyBatch(
+            eq("root://uri"),
+            argThat((List<FileSyncState> list) -> list.isEmpty()),
+            eq(Collections.singletonList("a.txt")));
+  }
+
+  @Test
+  public void snapshot_flushesFullBatches() {
+    when(mockDao.findByRootUri("root://uri")).thenReturn(Collections.emptyList());
+    when(mockDao.applyBatch(anyString(), anyList(), anyList())).thenReturn(new long[0]);
+    store.openSnapshot("root://uri");
+
+    for (int i = 0; i < SyncStateStore.FLUSH_BATCH_SIZE; i++) {
+      store.saveRemoteState("root://uri", "f" + i, "/share/f" + i, i, i, true);
+    }
+
+    verify(mockDao, times(1))
+        .applyBatch(
+            eq("root://uri"),
+            argThat((List<FileSyncState> list) -> list.size() == SyncStateStore.FLUSH_BATCH_SIZE),
+            anyList());
+  }
+
+  @Test
+  public void snapshot_loadFailureFallsBackToQueries() {
+    when(mockDao.findByRootUri("root://uri")).thenThrow(new RuntimeException("DB error"));
+
+    store.openSnapshot("root://uri");
+    store.getRemoteState("root://uri", "a.txt");
+
+    verify(mockDao).findByPath("root://uri", "a.txt");
+  }
+
   @Test
   public void getTimestampPreservedCount_returnsCount() {
     when(mockDao.countTimestampPreserved()).thenReturn(7);
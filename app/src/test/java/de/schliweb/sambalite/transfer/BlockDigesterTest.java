@@ -0,0 +1,95 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import static org.junit.Assert.*;
+
+import de.schliweb.sambalite.transfer.db.TransferBlock;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/** Unit tests for {@link BlockDigester}. */
+public class BlockDigesterTest {
+
+  private static final int BLOCK = BlockDigester.BLOCK_SIZE;
+
+  @Test
+  public void takeCommitted_returnsOnlyBlocksInsideConfirmedPrefix() {
+    byte[] data = randomBytes(2 * BLOCK + 100);
+    BlockDigester digester = new BlockDigester(7, 0);
+    digester.update(data, 0, data.length);
+
+    assertTrue(digester.takeCommitted(BLOCK - 1).isEmpty());
+    List<TransferBlock> first = digester.takeCommitted(BLOCK + 10);
+    assertEquals(1, first.size());
+    assertEquals(7, first.get(0).transferId);
+    assertEquals(0, first.get(0).blockIndex);
+    List<TransferBlock> second = digester.takeCommitted(data.length);
+    assertEquals(1, second.size());
+    assertEquals(1, second.get(0).blockIndex);
+    assertEquals(2L * BLOCK, BlockDigester.end(second.get(0)));
+    assertTrue(digester.takeCommitted(data.length).isEmpty());
+  }
+
+  @Test
+  public void digests_matchReadBackBlocksRegardlessOfChunking() throws IOException {
+    byte[] data = randomBytes(2 * BLOCK);
+    BlockDigester digester = new BlockDigester(1, BLOCK);
+    InputStream in = digester.wrap(new ByteArrayInputStream(data, BLOCK, BLOCK));
+    byte[] chunk = new byte[300_000];
+    while (in.read(chunk, 0, chunk.length) > 0) {
+      // consume
+    }
+
+    List<TransferBlock> blocks = digester.takeCommitted(2L * BLOCK);
+    assertEquals(1, blocks.size());
+    assertEquals(1, blocks.get(0).blockIndex);
+    byte[] tail = new byte[BLOCK];
+    System.arraycopy(data, BLOCK, tail, 0, BLOCK);
+    assertTrue(BlockDigester.matches(blocks.get(0), tail, BLOCK));
+    tail[123] ^= 1;
+    assertFalse(BlockDigester.matches(blocks.get(0), tail, BLOCK));
+    assertFalse(BlockDigester.matches(blocks.get(0), tail, BLOCK - 1));
+  }
+
+  @Test
+  public void wrappedOutputStream_digestsWrittenBytes() throws IOException {
+    byte[] data = randomBytes(BLOCK);
+    BlockDigester digester = new BlockDigester(1, 0);
+    ByteArrayOutputStream target = new ByteArrayOutputStream();
+    try (OutputStream out = digester.wrap(target)) {
+      out.write(data, 0, 10);
+      out.write(data[10]);
+      out.write(data, 11, data.length - 11);
+    }
+
+    assertArrayEquals(data, target.toByteArray());
+    List<TransferBlock> blocks = digester.takeCommitted(BLOCK);
+    assertEquals(1, blocks.size());
+    assertTrue(BlockDigester.matches(blocks.get(0), data, BLOCK));
+  }
+
+  @Test
+  public void constructor_rejectsUnalignedStart() {
+    assertThrows(IllegalArgumentException.class, () -> new BlockDigester(1, 100));
+  }
+
+  private static byte[] randomBytes(int length) {
+    byte[] data = new byte[length];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+}
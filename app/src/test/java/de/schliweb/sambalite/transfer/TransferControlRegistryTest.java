@@ -0,0 +1,101 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+import de.schliweb.sambalite.transfer.db.PendingTransferDao;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link TransferControlRegistry}. */
+public class TransferControlRegistryTest {
+
+  private TransferControlRegistry registry;
+
+  @Before
+  public void setUp() {
+    registry = new TransferControlRegistry();
+  }
+
+  @Test
+  public void cancel_flagsOnlyRunningTransfers() {
+    TransferControlRegistry.Control control = registry.register(1);
+
+    registry.cancel(Arrays.asList(1L, 2L));
+
+    assertTrue(control.isCancelled());
+    assertTrue(registry.isCancelled(1));
+    assertFalse(registry.isCancelled(2));
+    TransferControlRegistry.Control later = registry.register(2);
+    assertFalse(later.isCancelled());
+  }
+
+  @Test
+  public void unregister_forgetsTransfer() {
+    TransferControlRegistry.Control control = registry.register(1);
+    registry.cancel(Collections.singletonList(1L));
+
+    registry.unregister(control);
+
+    assertFalse(registry.isCancelled(1));
+    assertFalse(registry.register(1).isCancelled());
+  }
+
+  @Test
+  public void unregister_keepsNewerRegistrationOfSameTransfer() {
+    TransferControlRegistry.Control first = registry.register(1);
+    TransferControlRegistry.Control second = registry.register(1);
+
+    registry.unregister(first);
+    registry.cancel(Collections.singletonList(1L));
+
+    assertTrue(second.isCancelled());
+  }
+
+  @Test
+  public void cancelAll_flagsEveryRunningTransfer() {
+    TransferControlRegistry.Control a = registry.register(1);
+    TransferControlRegistry.Control b = registry.register(2);
+
+    registry.cancelAll();
+
+    assertTrue(a.isCancelled());
+    assertTrue(b.isCancelled());
+  }
+
+  @Test
+  public void refresh_flagsTransfersCancelledOrDeletedInDatabase() {
+    PendingTransferDao dao = mock(PendingTransferDao.class);
+    TransferControlRegistry.Control cancelled = registry.register(1);
+    TransferControlRegistry.Control deleted = registry.register(2);
+    TransferControlRegistry.Control running = registry.register(3);
+    when(dao.getNotCancelledIds(anyList())).thenReturn(Collections.singletonList(3L));
+
+    registry.refresh(dao);
+
+    assertTrue(cancelled.isCancelled());
+    assertTrue(deleted.isCancelled());
+    assertFalse(running.isCancelled());
+  }
+
+  @Test
+  public void refresh_skipsQueryWhenNothingRuns() {
+    PendingTransferDao dao = mock(PendingTransferDao.class);
+
+    registry.refresh(dao);
+
+    verifyNoInteractions(dao);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import static org.junit.Assert.*;
+
+import de.schliweb.sambalite.transfer.db.PendingTransfer;
+import de.schliweb.sambalite.transfer.db.TransferBlock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+/** Unit tests for {@link TransferProgressJournal}. */
+public class TransferProgressJournalTest {
+
+  private final List<Map<Long, Long>> writes = new ArrayList<>();
+  private final List<TransferBlock> writtenBlocks = new ArrayList<>();
+  private final List<List<TransferProgressJournal.Entry>> notified = new ArrayList<>();
+  private boolean failWrites;
+
+  private final TransferProgressJournal journal =
+      new TransferProgressJournal(
+          (bytesById, blocks, now) -> {
+            if (failWrites) {
+              throw new IllegalStateException("database is locked");
+            }
+            writes.add(new HashMap<>(bytesById));
+            writtenBlocks.addAll(blocks);
+          },
+          notified::add);
+
+  @Test
+  public void flush_writesLatestValuePerTransferInOneBatch() {
+    PendingTransfer a = transfer(1, "a.bin");
+    PendingTransfer b = transfer(2, "b.bin");
+
+    a.bytesTransferred = 100;
+    journal.record(a);
+    a.bytesTransferred = 300;
+    journal.record(a);
+    b.bytesTransferred = 50;
+    journal.record(b);
+    journal.flush();
+
+    assertEquals(1, writes.size());
+    assertEquals(Long.valueOf(300), writes.get(0).get(1L));
+    assertEquals(Long.valueOf(50), writes.get(0).get(2L));
+    assertEquals(1, notified.size());
+    assertEquals(2, notified.get(0).size());
+  }
+
+  @Test
+  public void flush_withoutNewProgressWritesNothing() {
+    journal.record(transfer(1, "a.bin"));
+    journal.flush();
+    journal.flush();
+
+    assertEquals(1, writes.size());
+    assertEquals(1, notified.size());
+  }
+
+  @Test
+  public void finish_writesImmediatelyAndDropsTransferFromSnapshot() {
+    PendingTransfer a = transfer(1, "a.bin");
+    PendingTransfer b = transfer(2, "b.bin");
+    journal.record(a);
+    journal.record(b);
+
+    a.bytesTransferred = 1000;
+    journal.finish(a);
+
+    assertEquals(1, writes.size());
+    assertEquals(Long.valueOf(1000), writes.get(0).get(1L));
+    assertEquals(2, writes.get(0).size());
+    List<TransferProgressJournal.Entry> snapshot = journal.snapshot();
+    assertEquals(1, snapshot.size());
+    assertEquals(2, snapshot.get(0).transferId);
+  }
+
+  @Test
+  public void flush_keepsValuesWhenWriteFails() {
+    PendingTransfer a = transfer(1, "a.bin");
+    a.bytesTransferred = 10;
+    journal.record(a);
+
+    failWrites = true;
+    assertThrows(IllegalStateException.class, journal::flush);
+    assertTrue(notified.isEmpty());
+
+    failWrites = false;
+    journal.flush();
+    assertEquals(1, writes.size());
+    assertEquals(Long.valueOf(10), writes.get(0).get(1L));
+  }
+
+  @Test
+  public void flush_writesBlocksWithProgressAndKeepsThemWhenWriteFails() {
+    PendingTransfer a = transfer(1, "a.bin");
+    TransferBlock block = new TransferBlock();
+    block.transferId = 1;
+    journal.record(a);
+    journal.recordBlocks(Collections.singletonList(block));
+
+    failWrites = true;
+    assertThrows(IllegalStateException.class, journal::flush);
+    failWrites = false;
+    journal.flush();
+
+    assertEquals(1, writes.size());
+    assertEquals(Collections.singletonList(block), writtenBlocks);
+  }
+
+  @Test
+  public void close_writesRemainingProgress() {
+    journal.start(60_000);
+    PendingTransfer a = transfer(1, "a.bin");
+    a.bytesTransferred = 42;
+    journal.record(a);
+
+    journal.close();
+
+    assertEquals(1, writes.size());
+    assertEquals(Long.valueOf(42), writes.get(0).get(1L));
+  }
+
+  private static PendingTransfer transfer(long id, String name) {
+    PendingTransfer t = new PendingTransfer();
+    t.id = id;
+    t.displayName = name;
+    t.fileSize = 1000;
+    return t;
+  }
+}
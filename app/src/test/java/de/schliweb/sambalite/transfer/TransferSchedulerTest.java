@@ -0,0 +1,338 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.transfer;
+
+import static org.junit.Assert.*;
+
+import androidx.annotation.NonNull;
+import de.schliweb.sambalite.transfer.db.PendingTransfer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/** Unit tests for {@link TransferScheduler} against an in-memory queue. */
+public class TransferSchedulerTest {
+
+  /** In-memory queue whose transfers take {@code durationMs} each. */
+  private static class FakeHost implements TransferScheduler.Host<String> {
+    final Map<String, List<PendingTransfer>> queue = new LinkedHashMap<>();
+    final Set<String> unreachable = new HashSet<>();
+    final Set<String> failedLanes = new HashSet<>();
+    final Set<String> brokenLanes = Collections.synchronizedSet(new HashSet<>());
+    final Set<Long> failing = new HashSet<>();
+    final Set<Long> cancelled = new HashSet<>();
+    final List<Long> order = Collections.synchronizedList(new ArrayList<>());
+    final List<String> events = Collections.synchronizedList(new ArrayList<>());
+    final Set<Long> released = Collections.synchronizedSet(new HashSet<>());
+    volatile boolean batching;
+    final Map<String, Boolean> closed = Collections.synchronizedMap(new HashMap<>());
+    final Map<String, AtomicInteger> perConnection = new ConcurrentHashMap<>();
+    final Map<String, Integer> peakPerConnection = Collections.synchronizedMap(new HashMap<>());
+    final AtomicInteger running = new AtomicInteger();
+    volatile int peak;
+    volatile boolean stopped;
+    volatile boolean diskFull;
+    final long durationMs;
+    private long nextId = 1;
+
+    FakeHost(long durationMs) {
+      this.durationMs = durationMs;
+    }
+
+    synchronized long enqueue(String connectionId) {
+      PendingTransfer t = new PendingTransfer();
+      t.id = nextId++;
+      t.connectionId = connectionId;
+      t.displayName = "file" + t.id;
+      queue.computeIfAbsent(connectionId, k -> new ArrayList<>()).add(t);
+      perConnection.putIfAbsent(connectionId, new AtomicInteger());
+      return t.id;
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<String> connectionsWithWork() {
+      List<String> ids = new ArrayList<>();
+      for (Map.Entry<String, List<PendingTransfer>> e : queue.entrySet()) {
+        for (PendingTransfer t : e.getValue()) {
+          if ("PENDING".equals(t.status)) {
+            ids.add(e.getKey());
+            break;
+          }
+        }
+      }
+      return ids;
+    }
+
+    @NonNull
+    @Override
+    public synchronized List<PendingTransfer> nextTransfers(
+        @NonNull String connectionId, int limit) {
+      List<PendingTransfer> next = new ArrayList<>();
+      for (PendingTransfer t : queue.getOrDefault(connectionId, Collections.emptyList())) {
+        if ("PENDING".equals(t.status) && next.size() < limit) {
+          next.add(t);
+        }
+      }
+      return next;
+    }
+
+    @Override
+    public synchronized boolean claim(@NonNull PendingTransfer transfer) {
+      if (cancelled.contains(transfer.id)) {
+        transfer.status = "CANCELLED";
+        return false;
+      }
+      transfer.status = "ACTIVE";
+      order.add(transfer.id);
+      events.add("claim " + transfer.id);
+      return true;
+    }
+
+    @Override
+    public synchronized void release(@NonNull PendingTransfer transfer) {
+      transfer.status = "PENDING";
+      released.add(transfer.id);
+    }
+
+    @Override
+    public boolean canBatch(@NonNull PendingTransfer first, @NonNull PendingTransfer next) {
+      return batching;
+    }
+
+    @NonNull
+    @Override
+    public String openLane(@NonNull String connectionId) throws Exception {
+      if (unreachable.contains(connectionId)) {
+        throw new IOException("unreachable");
+      }
+      return connectionId;
+    }
+
+    @Override
+    public synchronized void onLaneFailed(@NonNull String connectionId, @NonNull Exception error) {
+      failedLanes.add(connectionId);
+      for (PendingTransfer t : queue.get(connectionId)) {
+        t.status = "FAILED";
+      }
+    }
+
+    @Override
+    public boolean runTransfer(@NonNull String lane, @NonNull PendingTransfer transfer) {
+      events.add("run " + transfer.id);
+      int total = running.incrementAndGet();
+      int mine = perConnection.get(lane).incrementAndGet();
+      synchronized (this) {
+        peak = Math.max(peak, total);
+        peakPerConnection.merge(lane, mine, Math::max);
+      }
+      try {
+        Thread.sleep(durationMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      perConnection.get(lane).decrementAndGet();
+      running.decrementAndGet();
+      synchronized (this) {
+        boolean ok = !failing.contains(transfer.id);
+        transfer.status = ok ? "COMPLETED" : "FAILED";
+        return ok;
+      }
+    }
+
+    @Override
+    public boolean isLaneHealthy(@NonNull String lane) {
+      return !brokenLanes.contains(lane);
+    }
+
+    @Override
+    public void closeLane(@NonNull String lane, boolean broken) {
+      closed.put(lane, broken);
+    }
+
+    @Override
+    public boolean hasDiskSpace() {
+      return !diskFull;
+    }
+
+    @Override
+    public boolean isStopped() {
+      return stopped;
+    }
+  }
+
+  private static TransferScheduler<String> scheduler(FakeHost host, int conns, int per, int max) {
+    return new TransferScheduler<>(host, new TransferScheduler.Limits(conns, per, max), 10);
+  }
+
+  @Test
+  public void run_respectsPerConnectionAndGlobalCaps() {
+    FakeHost host = new FakeHost(30);
+    for (int i = 0; i < 8; i++) {
+      host.enqueue("a");
+      host.enqueue("b");
+      host.enqueue("c");
+    }
+
+    TransferScheduler.Result result = scheduler(host, 2, 3, 4).run();
+
+    assertEquals(24, result.succeeded);
+    assertFalse(result.anyFailure());
+    assertTrue(host.peak <= 4);
+    for (int peak : host.peakPerConnection.values()) {
+      assertTrue(peak <= 3);
+    }
+    assertEquals(3, host.closed.size());
+  }
+
+  @Test
+  public void run_sharesSlotsRoundRobinBetweenConnections() {
+    FakeHost host = new FakeHost(20);
+    for (int i = 0; i < 6; i++) {
+      host.enqueue("a");
+    }
+    long firstOfB = host.enqueue("b");
+
+    scheduler(host, 2, 4, 2).run();
+
+    // b's only transfer starts in the first round although a has a longer queue
+    assertTrue(host.order.indexOf(firstOfB) <= 1);
+  }
+
+  @Test
+  public void run_skipsConnectionWhoseLaneCannotBeOpened() {
+    FakeHost host = new FakeHost(5);
+    host.enqueue("a");
+    host.enqueue("down");
+    host.enqueue("down");
+    host.unreachable.add("down");
+
+    TransferScheduler.Result result = scheduler(host, 2, 2, 4).run();
+
+    assertEquals(1, result.succeeded);
+    assertTrue(host.failedLanes.contains("down"));
+    assertFalse(host.closed.containsKey("down"));
+  }
+
+  @Test
+  public void run_stopsUsingLaneAfterSessionBreaks() {
+    FakeHost host = new FakeHost(5);
+    long first = host.enqueue("a");
+    for (int i = 0; i < 4; i++) {
+      host.enqueue("a");
+    }
+    host.failing.add(first);
+    host.brokenLanes.add("a");
+
+    TransferScheduler.Result result = scheduler(host, 1, 1, 1).run();
+
+    assertEquals(1, result.failed);
+    assertEquals(0, result.succeeded);
+    assertEquals(1, host.order.size());
+    assertEquals(Boolean.TRUE, host.closed.get("a"));
+  }
+
+  @Test
+  public void run_skipsTransfersThatCannotBeClaimed() {
+    FakeHost host = new FakeHost(5);
+    long cancelled = host.enqueue("a");
+    host.enqueue("a");
+    host.cancelled.add(cancelled);
+
+    TransferScheduler.Result result = scheduler(host, 1, 1, 1).run();
+
+    assertEquals(1, result.succeeded);
+    assertFalse(host.order.contains(cancelled));
+  }
+
+  @Test
+  public void run_picksUpTransfersEnqueuedWhileRunning() {
+    FakeHost host =
+        new FakeHost(20) {
+          private boolean added;
+
+          @Override
+          public boolean runTransfer(@NonNull String lane, @NonNull PendingTransfer transfer) {
+            synchronized (this) {
+              if (!added) {
+                added = true;
+                enqueue("late");
+              }
+            }
+            return super.runTransfer(lane, transfer);
+          }
+        };
+    host.enqueue("a");
+
+    TransferScheduler.Result result = scheduler(host, 2, 1, 2).run();
+
+    assertEquals(2, result.succeeded);
+    assertTrue(host.closed.containsKey("late"));
+  }
+
+  @Test
+  public void run_claimsBatchableTransfersTogether() {
+    FakeHost host = new FakeHost(5);
+    host.enqueue("a");
+    host.enqueue("a");
+    host.enqueue("a");
+    host.batching = true;
+
+    TransferScheduler.Result result = scheduler(host, 1, 1, 1).run();
+
+    assertEquals(3, result.succeeded);
+    assertEquals(
+        Arrays.asList("claim 1", "claim 2", "claim 3", "run 1", "run 2", "run 3"), host.events);
+  }
+
+  @Test
+  public void run_releasesRestOfBatchWhenSessionBreaks() {
+    FakeHost host = new FakeHost(5);
+    long first = host.enqueue("a");
+    long second = host.enqueue("a");
+    long third = host.enqueue("a");
+    host.batching = true;
+    host.failing.add(first);
+    host.brokenLanes.add("a");
+
+    TransferScheduler.Result result = scheduler(host, 1, 1, 1).run();
+
+    assertEquals(1, result.failed);
+    assertEquals(new HashSet<>(Arrays.asList(second, third)), host.released);
+    assertEquals(Boolean.TRUE, host.closed.get("a"));
+  }
+
+  @Test
+  public void run_reportsStopAndFullDisk() {
+    FakeHost stopped = new FakeHost(5);
+    stopped.enqueue("a");
+    stopped.stopped = true;
+    TransferScheduler.Result result = scheduler(stopped, 1, 1, 1).run();
+    assertTrue(result.stopped);
+    assertEquals(0, result.succeeded);
+
+    FakeHost full = new FakeHost(5);
+    full.enqueue("a");
+    full.diskFull = true;
+    result = scheduler(full, 1, 1, 1).run();
+    assertTrue(result.diskFull);
+    assertTrue(full.order.isEmpty());
+  }
+}
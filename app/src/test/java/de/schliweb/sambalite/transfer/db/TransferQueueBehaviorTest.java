@@ -30,6 +30,8 @@ import org.robolectric.annotation.Config;
 @Config(sdk = 34)
 public class TransferQueueBehaviorTest {
 
+  private static final long GIG = 1024L * 1024 * 1024;
+
   private TransferDatabase db;
   private PendingTransferDao dao;
   private Context context;
@@ -105,13 +107,15 @@ public class TransferQueueBehaviorTest {
   }
 
   /**
-   * Verifies crash recovery: ACTIVE transfers are reset to PENDING on app start.
+   * Verifies crash recovery: ACTIVE transfers are reset to PENDING on app start and keep their
+   * progress for resume.
    * According to Guide: "All ACTIVE transfers are automatically reset to PENDING after an unclean app exit."
    */
   @Test
   public void testCrashRecovery() {
     PendingTransfer transfer = createTestTransfer("crash_file.txt");
     transfer.status = "ACTIVE";
+    transfer.bytesTransferred = 500;
     long id = dao.insert(transfer);
 
     assertEquals("ACTIVE", dao.getStatus(id));
@@ -123,7 +127,7 @@ public class TransferQueueBehaviorTest {
     PendingTransfer recovered = dao.getNextPending();
     assertNotNull(recovered);
     assertEquals("PENDING", recovered.status);
-    assertEquals(0, recovered.bytesTransferred);
+    assertEquals(500, recovered.bytesTransferred);
   }
 
   @Test
@@ -176,6 +180,186 @@ public class TransferQueueBehaviorTest {
     assertEquals(1, dao.countAll());
   }
 
+  /**
+   * Verifies that a transfer is claimed only once and that transfers which failed during the
+   * current worker run are not offered again before the next run.
+   */
+  @Test
+  public void testClaimAndStartableWork() {
+    long runStart = System.currentTimeMillis();
+    PendingTransfer failedEarlier = createTestTransfer("earlier.txt");
+    failedEarlier.status = "FAILED";
+    failedEarlier.createdAt = runStart - 1000;
+    failedEarlier.updatedAt = runStart - 1000;
+    long earlierId = dao.insert(failedEarlier);
+    PendingTransfer failedNow = createTestTransfer("now.txt");
+    failedNow.status = "FAILED";
+    failedNow.updatedAt = runStart + 1000;
+    dao.insert(failedNow);
+    long pendingId = dao.insert(createTestTransfer("pending.txt"));
+
+    List<PendingTransfer> startable =
+        dao.getStartableForConnection("conn1", runStart, runStart, 10);
+    assertEquals(2, startable.size());
+    assertEquals(earlierId, startable.get(0).id);
+    assertEquals(1, dao.getStartableForConnection("conn1", runStart, runStart, 1).size());
+    assertEquals(1, dao.getConnectionsWithStartableWork(runStart).size());
+
+    assertEquals(1, dao.claim(pendingId, runStart));
+    assertEquals("ACTIVE", dao.getStatus(pendingId));
+    assertEquals(0, dao.claim(pendingId, runStart));
+
+    dao.updateStatus(earlierId, "CANCELLED", runStart);
+    assertEquals(0, dao.claim(earlierId, runStart));
+    assertTrue(dao.getConnectionsWithStartableWork(runStart).isEmpty());
+  }
+
+  /**
+   * Verifies the queue order: higher priority lanes first, small files before large ones inside a
+   * lane, and aging that lets long-waiting transfers overtake.
+   */
+  @Test
+  public void testPriorityAndSizeOrdering() {
+    long now = System.currentTimeMillis();
+    long big = 50L * 1024 * 1024 * 1024;
+    long bulkSmall = insertQueued("bulk_small.txt", PendingTransfer.PRIORITY_LOW, 10, now);
+    long normalBig = insertQueued("normal_big.mkv", PendingTransfer.PRIORITY_NORMAL, big, now);
+    long normalSmall = insertQueued("normal_small.txt", PendingTransfer.PRIORITY_NORMAL, 10, now);
+    long shared = insertQueued("shared.jpg", PendingTransfer.PRIORITY_HIGH, 2_000_000, now);
+
+    assertEquals(
+        java.util.Arrays.asList(shared, normalSmall, normalBig, bulkSmall),
+        ids(dao.getStartableForConnection("conn1", now, now, 10)));
+
+    // Twenty minutes of waiting outweigh 1 GB inside the lane
+    long agedGig =
+        insertQueued("aged_gig.mkv", PendingTransfer.PRIORITY_NORMAL, GIG, now - 20 * 60_000);
+    assertEquals(agedGig, dao.getStartableForConnection("conn1", now, now, 10).get(1).id);
+
+    // After an hour a bulk transfer has aged into the highest lane
+    long hourAgo = now - 2 * PendingTransfer.LANE_AGING_MS;
+    long agedBulk = insertQueued("aged_bulk.txt", PendingTransfer.PRIORITY_LOW, 10, hourAgo);
+    assertEquals(agedBulk, dao.getStartableForConnection("conn1", now, now, 10).get(0).id);
+
+    dao.updatePriority(java.util.Arrays.asList(bulkSmall), PendingTransfer.PRIORITY_HIGH);
+    assertEquals(
+        java.util.Arrays.asList(agedBulk, bulkSmall, shared),
+        ids(dao.getStartableForConnection("conn1", now, now, 3)));
+  }
+
+  /**
+   * Verifies that size ordering also holds across batches: a large file queued a few seconds
+   * before a small one does not block it, but does not wait behind later small files forever.
+   */
+  @Test
+  public void testSizeOrderingAcrossBatches() {
+    long now = System.currentTimeMillis();
+    long earlierGig =
+        insertQueued("earlier.mkv", PendingTransfer.PRIORITY_NORMAL, GIG, now - 10_000);
+    long laterSmall = insertQueued("later.txt", PendingTransfer.PRIORITY_NORMAL, 1024, now);
+
+    assertEquals(
+        java.util.Arrays.asList(laterSmall, earlierGig),
+        ids(dao.getStartableForConnection("conn1", now, now, 10)));
+
+    long muchLater = now + 20 * 60_000;
+    long newSmall = insertQueued("new.txt", PendingTransfer.PRIORITY_NORMAL, 1024, muchLater);
+    assertEquals(
+        java.util.Arrays.asList(laterSmall, earlierGig, newSmall),
+        ids(dao.getStartableForConnection("conn1", muchLater, muchLater, 10)));
+  }
+
+  private long insertQueued(String name, int priority, long size, long createdAt) {
+    PendingTransfer t = createTestTransfer(name);
+    t.priority = priority;
+    t.fileSize = size;
+    t.createdAt = createdAt;
+    return dao.insert(t);
+  }
+
+  private static List<Long> ids(List<PendingTransfer> transfers) {
+    List<Long> ids = new java.util.ArrayList<>();
+    for (PendingTransfer t : transfers) {
+      ids.add(t.id);
+    }
+    return ids;
+  }
+
+  /**
+   * Verifies the persisted walk of a directory download: directories are expanded in insertion
+   * order and walks of transfers that no longer exist are cleaned up.
+   */
+  @Test
+  public void testDirectoryWalkQueue() {
+    DirectoryWalkDao walkDao = db.directoryWalkDao();
+    PendingTransfer dir = createTestTransfer("folder");
+    dir.transferType = "DOWNLOAD_DIRECTORY";
+    long dirId = dao.insert(dir);
+
+    walkDao.insertAll(
+        java.util.Arrays.asList(
+            walkEntry(dirId, "folder"), walkEntry(dirId, "folder\\a"), walkEntry(99, "gone")));
+    assertEquals(2, walkDao.countForTransfer(dirId));
+
+    DirectoryWalkEntry first = walkDao.next(dirId);
+    assertNotNull(first);
+    assertEquals("folder", first.remotePath);
+    assertFalse(first.started);
+    walkDao.markStarted(first.id);
+    assertTrue(walkDao.next(dirId).started);
+
+    walkDao.delete(first.id);
+    assertEquals("folder\\a", walkDao.next(dirId).remotePath);
+
+    assertEquals(1, walkDao.deleteOrphaned());
+    dao.updateStatus(dirId, "CANCELLED", System.currentTimeMillis());
+    assertEquals(1, walkDao.deleteOrphaned());
+    assertNull(walkDao.next(dirId));
+  }
+
+  /**
+   * Verifies the block digests used for resume: the last block is found, blocks behind a shorter
+   * resume point are dropped and digests of finished transfers are cleaned up.
+   */
+  @Test
+  public void testTransferBlocks() {
+    TransferBlockDao blockDao = db.transferBlockDao();
+    long id = dao.insert(createTestTransfer("large.bin"));
+    assertNull(blockDao.getLast(id));
+
+    blockDao.insertAll(
+        java.util.Arrays.asList(block(id, 0, 1), block(id, 1, 2), block(id, 2, 3)));
+    assertEquals(2, blockDao.getLast(id).blockIndex);
+    blockDao.insertAll(java.util.Collections.singletonList(block(id, 2, 9)));
+    assertEquals(9, blockDao.getLast(id).digest[0]);
+    assertEquals(2, blockDao.get(id, 1).digest[0]);
+
+    blockDao.deleteAfter(id, 0);
+    assertEquals(0, blockDao.getLast(id).blockIndex);
+    assertNull(blockDao.get(id, 1));
+
+    assertEquals(0, blockDao.deleteOrphaned());
+    dao.updateStatus(id, "COMPLETED", System.currentTimeMillis());
+    assertEquals(1, blockDao.deleteOrphaned());
+    assertNull(blockDao.getLast(id));
+  }
+
+  private static TransferBlock block(long transferId, int index, int digest) {
+    TransferBlock b = new TransferBlock();
+    b.transferId = transferId;
+    b.blockIndex = index;
+    b.digest = new byte[] {(byte) digest};
+    return b;
+  }
+
+  private static DirectoryWalkEntry walkEntry(long transferId, String remotePath) {
+    DirectoryWalkEntry e = new DirectoryWalkEntry();
+    e.transferId = transferId;
+    e.remotePath = remotePath;
+    e.localUri = "content://test/tree/" + remotePath;
+    return e;
+  }
+
   private PendingTransfer createTestTransfer(String name) {
     PendingTransfer t = new PendingTransfer();
     t.transferType = "UPLOAD";
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.ui;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import de.schliweb.sambalite.data.model.SmbConnection;
+import de.schliweb.sambalite.data.model.SmbDirectoryChange;
+import de.schliweb.sambalite.data.model.SmbFileItem;
+import de.schliweb.sambalite.data.repository.SmbRepository;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link DirectoryWatchService}. */
+public class DirectoryWatchServiceTest {
+
+  private SmbRepository smbRepository;
+  private DirectoryWatchService service;
+  private SmbConnection connection;
+
+  @Before
+  public void setUp() {
+    smbRepository = mock(SmbRepository.class);
+    service = new DirectoryWatchService(smbRepository, (conn, path, files) -> {});
+    connection = new SmbConnection();
+    connection.setId("connection-1");
+  }
+
+  private static SmbFileItem file(String name, long size) {
+    return new SmbFileItem(name, "dir/" + name, SmbFileItem.Type.FILE, size, new Date(0));
+  }
+
+  private static List<String> names(List<SmbFileItem> files) {
+    List<String> names = new ArrayList<>();
+    for (SmbFileItem f : files) {
+      names.add(f.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void pathsToWatch_returnsPathAndClosestAncestors() {
+    assertEquals(
+        Arrays.asList("a/b/c/d", "a/b/c", "a/b"), DirectoryWatchService.pathsToWatch("a/b/c/d"));
+    assertEquals(Arrays.asList("a/b", "a", ""), DirectoryWatchService.pathsToWatch("a/b"));
+    assertEquals(Arrays.asList("a", ""), DirectoryWatchService.pathsToWatch("a"));
+    assertEquals(Collections.singletonList(""), DirectoryWatchService.pathsToWatch(""));
+  }
+
+  @Test
+  public void applyDelta_appliesAdditionsRemovalsAndRenames() {
+    List<SmbFileItem> files = Arrays.asList(file("a.txt", 1), file("b.txt", 2), file("c.txt", 3));
+    List<SmbDirectoryChange> changes =
+        Arrays.asList(
+            new SmbDirectoryChange(SmbDirectoryChange.Action.REMOVED, "a.txt", null),
+            new SmbDirectoryChange(SmbDirectoryChange.Action.MODIFIED, "b.txt", file("b.txt", 20)),
+            new SmbDirectoryChange(SmbDirectoryChange.Action.RENAMED_OLD_NAME, "c.txt", null),
+            new SmbDirectoryChange(
+                SmbDirectoryChange.Action.RENAMED_NEW_NAME, "d.txt", file("d.txt", 3)),
+            new SmbDirectoryChange(SmbDirectoryChange.Action.ADDED, "e.txt", file("e.txt", 5)));
+
+    List<SmbFileItem> updated = DirectoryWatchService.applyDelta(files, changes);
+
+    assertNotNull(updated);
+    assertEquals(Arrays.asList("b.txt", "d.txt", "e.txt"), names(updated));
+    assertEquals(20, updated.get(0).getSize());
+    assertEquals(3, files.size());
+  }
+
+  @Test
+  public void applyDelta_requiresRelistWhenChangesAreUnknown() {
+    List<SmbFileItem> files = Collections.singletonList(file("a.txt", 1));
+
+    assertNull(DirectoryWatchService.applyDelta(files, Collections.emptyList()));
+    assertNull(
+        DirectoryWatchService.applyDelta(
+            files,
+            Collections.singletonList(
+                new SmbDirectoryChange(SmbDirectoryChange.Action.ADDED, "b.txt", null))));
+  }
+
+  @Test
+  public void watch_watchesPathAndAncestorsAndCancelsStaleWatches() throws Exception {
+    SmbRepository.DirectoryWatch rootWatch = mock(SmbRepository.DirectoryWatch.class);
+    SmbRepository.DirectoryWatch aWatch = mock(SmbRepository.DirectoryWatch.class);
+    SmbRepository.DirectoryWatch abWatch = mock(SmbRepository.DirectoryWatch.class);
+    SmbRepository.DirectoryWatch xWatch = mock(SmbRepository.DirectoryWatch.class);
+    when(smbRepository.watchDirectory(eq(connection), eq(""), any())).thenReturn(rootWatch);
+    when(smbRepository.watchDirectory(eq(connection), eq("a"), any())).thenReturn(aWatch);
+    when(smbRepository.watchDirectory(eq(connection), eq("a/b"), any())).thenReturn(abWatch);
+    when(smbRepository.watchDirectory(eq(connection), eq("x"), any())).thenReturn(xWatch);
+
+    service.watch(connection, "a/b");
+    assertTrue(service.isWatching(connection, "a/b"));
+    assertTrue(service.isWatching(connection, "a"));
+    assertTrue(service.isWatching(connection, ""));
+
+    service.watch(connection, "x");
+    verify(abWatch).cancel();
+    verify(aWatch).cancel();
+    verify(rootWatch, never()).cancel();
+    verify(smbRepository, times(1)).watchDirectory(eq(connection), eq(""), any());
+    assertTrue(service.isWatching(connection, "x"));
+    assertFalse(service.isWatching(connection, "a/b"));
+
+    service.stop();
+    verify(rootWatch).cancel();
+    verify(xWatch).cancel();
+    assertFalse(service.isWatching(connection, "x"));
+  }
+
+  @Test
+  public void watch_doesNotRetryDirectoriesTheServerCannotWatch() throws Exception {
+    when(smbRepository.watchDirectory(eq(connection), eq(""), any()))
+        .thenThrow(new IOException("STATUS_NOT_SUPPORTED"));
+
+    service.watch(connection, "");
+    service.watch(connection, "");
+
+    assertFalse(service.isWatching(connection, ""));
+    verify(smbRepository, times(1)).watchDirectory(eq(connection), eq(""), any());
+  }
+
+  @Test
+  public void watch_switchingConnectionStopsPreviousWatches() throws Exception {
+    SmbRepository.DirectoryWatch watch = mock(SmbRepository.DirectoryWatch.class);
+    when(smbRepository.watchDirectory(any(), eq(""), any())).thenReturn(watch);
+    SmbConnection other = new SmbConnection();
+    other.setId("connection-2");
+
+    service.watch(connection, "");
+    service.watch(other, "");
+
+    verify(watch).cancel();
+    assertFalse(service.isWatching(connection, ""));
+    assertTrue(service.isWatching(other, ""));
+  }
+}
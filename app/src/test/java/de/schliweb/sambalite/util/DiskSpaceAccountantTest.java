@@ -0,0 +1,139 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/** Unit tests for {@link DiskSpaceAccountant}. */
+public class DiskSpaceAccountantTest {
+
+  private static final long MB = 1024 * 1024;
+  private static final long MIN = EnhancedFileUtils.MIN_DISK_SPACE_BYTES;
+
+  private final AtomicLong free = new AtomicLong(100 * MB);
+  private final AtomicInteger statCalls = new AtomicInteger();
+  private final AtomicLong now = new AtomicLong();
+  private final DiskSpaceAccountant accountant =
+      new DiskSpaceAccountant(
+          () -> {
+            statCalls.incrementAndGet();
+            return free.get();
+          },
+          now::get);
+
+  @Test
+  public void writes_doNotReadFreeSpaceUntilReconcileIsDue() {
+    DiskSpaceAccountant.Reservation reservation = accountant.tryReserve(50 * MB);
+    assertNotNull(reservation);
+    int calls = statCalls.get();
+
+    for (int i = 0; i < 50; i++) {
+      assertTrue(reservation.onWritten(MB));
+    }
+    assertEquals(calls, statCalls.get());
+
+    now.addAndGet(DiskSpaceAccountant.RECONCILE_INTERVAL_MS * 1_000_000L);
+    assertTrue(accountant.hasSpace());
+    assertEquals(calls + 1, statCalls.get());
+    reservation.close();
+  }
+
+  @Test
+  public void reservations_admitOnlyWhatFits() {
+    DiskSpaceAccountant.Reservation first = accountant.tryReserve(60 * MB);
+    assertNotNull(first);
+    assertNull(accountant.tryReserve(40 * MB));
+
+    DiskSpaceAccountant.Reservation second = accountant.tryReserve(100 * MB - 60 * MB - MIN);
+    assertNotNull(second);
+    assertTrue(accountant.hasSpace());
+
+    first.close();
+    second.close();
+    assertNotNull(accountant.tryReserve(80 * MB));
+  }
+
+  @Test
+  public void writtenBytes_areEstimatedUntilNextReading() {
+    DiskSpaceAccountant.Reservation reservation = accountant.tryReserve(0);
+    assertNotNull(reservation);
+
+    // The file turned out larger than expected: 95 MB written, 5 MB estimated free
+    assertFalse(reservation.onWritten(95 * MB));
+    assertFalse(accountant.hasSpace());
+
+    // The next reading shows that another app has freed space meanwhile
+    free.set(200 * MB);
+    now.addAndGet(DiskSpaceAccountant.RECONCILE_INTERVAL_MS * 1_000_000L);
+    assertTrue(accountant.hasSpace());
+    reservation.close();
+  }
+
+  @Test
+  public void reserve_failsIfNothingElseHoldsSpace() {
+    try {
+      accountant.reserve(200 * MB, () -> false);
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("Insufficient disk space"));
+    }
+  }
+
+  @Test
+  public void reserve_waitsForRunningDownloads() throws Exception {
+    DiskSpaceAccountant.Reservation running = accountant.tryReserve(80 * MB);
+    assertNotNull(running);
+    CountDownLatch admitted = new CountDownLatch(1);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread waiting =
+        new Thread(
+            () -> {
+              try (DiskSpaceAccountant.Reservation r = accountant.reserve(50 * MB, () -> false)) {
+                admitted.countDown();
+              } catch (Throwable t) {
+                error.set(t);
+              }
+            });
+    waiting.start();
+
+    assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+    running.close();
+    assertTrue(admitted.await(5, TimeUnit.SECONDS));
+    waiting.join(5000);
+    assertNull(error.get());
+  }
+
+  @Test
+  public void reserve_stopsWaitingWhenCancelled() throws Exception {
+    accountant.tryReserve(80 * MB);
+    try {
+      accountant.reserve(50 * MB, () -> true);
+      fail("expected InterruptedIOException");
+    } catch (InterruptedIOException expected) {
+      // stopped instead of waiting
+    }
+  }
+
+  @Test
+  public void unknownFreeSpace_admitsEverything() {
+    free.set(-1);
+    assertTrue(accountant.hasSpace());
+    assertNotNull(accountant.tryReserve(Long.MAX_VALUE / 2));
+  }
+}
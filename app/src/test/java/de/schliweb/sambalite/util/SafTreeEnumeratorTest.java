@@ -0,0 +1,217 @@
+/*
+ * Copyright 2025 Christian Kierdorf
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ */
+package de.schliweb.sambalite.util;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ProviderInfo;
+import android.content.pm.ResolveInfo;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import androidx.documentfile.provider.DocumentFile;
+import androidx.test.core.app.ApplicationProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Tests for {@link SafTreeEnumerator}. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SafTreeEnumeratorTest {
+
+  private static final String AUTHORITY = "de.schliweb.sambalite.test.documents";
+
+  private Context context;
+  private SafTreeEnumerator enumerator;
+  private Uri root;
+
+  @Before
+  public void setUp() {
+    context = ApplicationProvider.getApplicationContext();
+    Robolectric.setupContentProvider(FakeDocumentsProvider.class, AUTHORITY);
+    registerAsDocumentsProvider();
+    FakeDocumentsProvider.queries.clear();
+    FakeDocumentsProvider.fail = false;
+    enumerator = new SafTreeEnumerator(context);
+    root = DocumentsContract.buildTreeDocumentUri(AUTHORITY, "root");
+  }
+
+  @Test
+  public void list_usesOneQueryPerDirectory() {
+    List<SafTreeEnumerator.Entry> entries = enumerator.list(root);
+
+    assertEquals(1, FakeDocumentsProvider.queries.size());
+    assertEquals(2, entries.size());
+
+    SafTreeEnumerator.Entry photo = find(entries, "photo.jpg");
+    assertTrue(photo.isFile());
+    assertFalse(photo.isDirectory());
+    assertEquals("image/jpeg", photo.getType());
+    assertEquals(1234, photo.length());
+    assertEquals(5000, photo.lastModified());
+    assertEquals("root/photo.jpg", DocumentsContract.getDocumentId(photo.getUri()));
+    assertEquals("root", DocumentsContract.getTreeDocumentId(photo.getUri()));
+
+    SafTreeEnumerator.Entry album = find(entries, "album");
+    assertTrue(album.isDirectory());
+    assertFalse(album.isFile());
+    assertNull(album.getType());
+  }
+
+  @Test
+  public void list_recursesIntoChildDocuments() {
+    SafTreeEnumerator.Entry album = find(enumerator.list(root), "album");
+
+    List<SafTreeEnumerator.Entry> children = enumerator.list(album.getUri());
+
+    assertEquals(1, children.size());
+    assertEquals("inner.txt", children.get(0).getName());
+    assertEquals("root/album", FakeDocumentsProvider.queries.get(1));
+    assertEquals(0, children.get(0).lastModified());
+  }
+
+  @Test
+  public void toDocumentFile_keepsTheEntryUri() {
+    SafTreeEnumerator.Entry album = find(enumerator.list(root), "album");
+
+    DocumentFile file = enumerator.toDocumentFile(album);
+
+    assertNotNull(file);
+    assertEquals(album.getUri(), file.getUri());
+  }
+
+  @Test
+  public void list_returnsEmptyListWhenProviderFails() {
+    FakeDocumentsProvider.fail = true;
+    assertTrue(enumerator.list(root).isEmpty());
+  }
+
+  @Test
+  public void list_fallsBackToDocumentFileForPlainDirectories() throws Exception {
+    File dir = Files.createTempDirectory("saf").toFile();
+    try (FileOutputStream out = new FileOutputStream(new File(dir, "a.txt"))) {
+      out.write(new byte[] {1, 2, 3});
+    }
+    assertTrue(new File(dir, "sub").mkdir());
+
+    List<SafTreeEnumerator.Entry> entries = enumerator.list(DocumentFile.fromFile(dir));
+
+    assertEquals(2, entries.size());
+    assertEquals(3, find(entries, "a.txt").length());
+    assertTrue(find(entries, "sub").isDirectory());
+    assertTrue(enumerator.toDocumentFile(find(entries, "sub")).isDirectory());
+  }
+
+  /**
+   * Makes the fake resolvable as a DocumentsProvider. DocumentsContract.isDocumentUri only accepts
+   * authorities of such providers, and DocumentFile.fromTreeUri falls back to the tree root
+   * otherwise.
+   */
+  private void registerAsDocumentsProvider() {
+    ProviderInfo provider = new ProviderInfo();
+    provider.authority = AUTHORITY;
+    provider.packageName = context.getPackageName();
+    provider.name = FakeDocumentsProvider.class.getName();
+    provider.applicationInfo = context.getApplicationInfo();
+    provider.exported = true;
+    ResolveInfo info = new ResolveInfo();
+    info.providerInfo = provider;
+    shadowOf(context.getPackageManager())
+        .addResolveInfoForIntent(new Intent(DocumentsContract.PROVIDER_INTERFACE), info);
+  }
+
+  private static SafTreeEnumerator.Entry find(List<SafTreeEnumerator.Entry> entries, String name) {
+    for (SafTreeEnumerator.Entry e : entries) {
+      if (name.equals(e.getName())) {
+        return e;
+      }
+    }
+    throw new AssertionError("No entry " + name);
+  }
+
+  /** Answers child-document queries from a fixed tree and records the listed parents. */
+  public static class FakeDocumentsProvider extends ContentProvider {
+    static final List<String> queries = new java.util.ArrayList<>();
+    static volatile boolean fail;
+
+    private static final Map<String, Object[][]> TREE = new HashMap<>();
+
+    static {
+      TREE.put(
+          "root",
+          new Object[][] {
+            {"root/photo.jpg", "photo.jpg", "image/jpeg", 1234L, 5000L},
+            {"root/album", "album", DocumentsContract.Document.MIME_TYPE_DIR, null, 6000L}
+          });
+      TREE.put(
+          "root/album",
+          new Object[][] {{"root/album/inner.txt", "inner.txt", "text/plain", 10L, null}});
+    }
+
+    @Override
+    public boolean onCreate() {
+      return true;
+    }
+
+    @Override
+    public Cursor query(
+        Uri uri, String[] projection, String selection, String[] args, String sortOrder) {
+      if (fail) {
+        throw new SecurityException("Permission revoked");
+      }
+      String parent = DocumentsContract.getDocumentId(uri);
+      queries.add(parent);
+      MatrixCursor cursor = new MatrixCursor(projection);
+      Object[][] rows = TREE.get(parent);
+      if (rows != null) {
+        for (Object[] row : rows) {
+          cursor.addRow(row);
+        }
+      }
+      return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+      return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+      return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] args) {
+      return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] args) {
+      return 0;
+    }
+  }
+}